@@ -0,0 +1,158 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.ActuationLimiter;
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.CommandScheduler;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.structural.FanAdapter;
+import com.smarthome.structural.OldFan;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class to demonstrate per-device actuation limits: slider drags
+ * and an AI loop send thousands of writes, the devices see a few per
+ * second each, every device still ends where the last write said, and
+ * what got through is in the controller's history.
+ */
+public class TestActuationLimiter {
+    private static final int LIGHTS = 20;
+    private static final long RUN_MILLIS = 3_000;
+    private static final int SLIDER_TICKS_PER_SECOND = 60;
+    private static final int AI_WRITES_PER_SECOND = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("============================================");
+        System.out.println("   ACTUATION LIMITER DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        CentralController.resetInstance();
+        CentralController controller = CentralController.getInstance();
+        CommandScheduler scheduler = controller.getCommandScheduler();
+        List<Light> lights = new ArrayList<>();
+        for (int i = 0; i < LIGHTS; i++) {
+            lights.add(new Light("Light " + i));
+        }
+        FanAdapter fan = new FanAdapter(new OldFan("Attic Fan"));
+        Thermostat thermostat = new Thermostat("Hall Thermostat", 70);
+        thermostat.turnOn();
+        controller.addDevices(lights);
+        controller.addDevice(fan);
+        controller.addDevice(thermostat);
+
+        // Count what actually reaches each device
+        AtomicLong deviceWrites = new AtomicLong();
+        for (Light light : lights) {
+            light.addObserver(device -> deviceWrites.incrementAndGet());
+        }
+        fan.addObserver(device -> deviceWrites.incrementAndGet());
+        thermostat.addObserver(device -> deviceWrites.incrementAndGet());
+        deviceWrites.set(0);
+
+        ActuationLimiter limiter = controller.getActuationLimiter();
+        int historyBefore = controller.getCommandHistory().size();
+        int[] lastBrightness = new int[LIGHTS];
+        int[] lastSpeed = new int[1];
+        double[] lastTemp = new double[1];
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+
+        Thread sliders = new Thread(() -> {
+            int tick = 0;
+            while (System.currentTimeMillis() < deadline) {
+                for (int i = 0; i < LIGHTS; i++) {
+                    int value = Math.abs((tick + i * 7) % 200 - 100); // Dragging back and forth
+                    limiter.setLevel(lights.get(i), value);
+                    lastBrightness[i] = value;
+                }
+                tick++;
+                sleep(1000 / SLIDER_TICKS_PER_SECOND);
+            }
+        });
+        Thread ai = new Thread(() -> {
+            Random random = new Random(7);
+            while (System.currentTimeMillis() < deadline) {
+                for (int i = 0; i < AI_WRITES_PER_SECOND / 100; i++) {
+                    lastSpeed[0] = random.nextInt(4);
+                    limiter.setLevel(fan, lastSpeed[0]);
+                    lastTemp[0] = 66 + random.nextInt(9);
+                    limiter.setTargetTemp(thermostat, lastTemp[0]);
+                }
+                sleep(10);
+            }
+        });
+        System.setOut(console);
+        System.out.println("Step 1: " + LIGHTS + " sliders dragged at " + SLIDER_TICKS_PER_SECOND +
+                           " ticks/s and an AI loop retuning a legacy fan and a thermostat, for " +
+                           RUN_MILLIS / 1000 + " s");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        sliders.start();
+        ai.start();
+        sliders.join();
+        ai.join();
+        long waitUntil = System.currentTimeMillis() + 5_000;
+        while (limiter.getPendingDevices() > 0 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(20); // Last values go out as tokens come in
+        }
+        scheduler.awaitIdle(5_000);
+        System.setOut(console);
+
+        long requested = limiter.getRequestedCount();
+        System.out.printf("  %d writes requested, %d reached the devices (%.1f per device per second)%n",
+                          requested, deviceWrites.get(),
+                          deviceWrites.get() / ((LIGHTS + 2) * (RUN_MILLIS / 1000.0)));
+        System.out.printf("  %.0fx fewer device writes%n", (double) requested / Math.max(1, deviceWrites.get()));
+        limiter.displayStats();
+
+        System.out.println("\nStep 2: final state matches the last write");
+        int mismatches = 0;
+        for (int i = 0; i < LIGHTS; i++) {
+            if (lights.get(i).getBrightness() != lastBrightness[i]) {
+                mismatches++;
+            }
+        }
+        if (fan.getSpeed() != lastSpeed[0]) {
+            mismatches++;
+        }
+        if (thermostat.getTargetTemp() != lastTemp[0]) {
+            mismatches++;
+        }
+        System.out.println("  " + describe(lights.get(0)) + ", wanted " + lastBrightness[0] + "%");
+        System.out.println("  " + describe(fan) + ", wanted speed " + lastSpeed[0]);
+        System.out.println("  " + describe(thermostat) + ", wanted " + lastTemp[0] + "°F");
+        System.out.println("  " + mismatches + " of " + (LIGHTS + 2) + " devices differ from their last write");
+
+        System.out.println("\nStep 3: the writes went through the controller");
+        System.out.println("  Commands added to the history: " +
+                           (controller.getCommandHistory().size() - historyBefore) +
+                           " (limiter wrote " + limiter.getWrittenCount() + ")");
+        System.out.println("  Run in the AI lane: " + scheduler.getExecutedCount(CommandScheduler.Lane.AI) +
+                           ", dropped as late: " + scheduler.getExpiredCount(CommandScheduler.Lane.AI) +
+                           ", final values given a fresh deadline: " +
+                           scheduler.getRenewedCount(CommandScheduler.Lane.AI));
+
+        System.out.println("\nStep 4: idle devices are forgotten once their buckets refill");
+        System.out.println("  Devices held now: " + limiter.getDeviceCount());
+        Thread.sleep(2_500); // The legacy fan refills slowest
+        System.out.println("  Devices held after 2.5 s idle: " + limiter.getDeviceCount());
+    }
+
+    private static String describe(SmartDevice device) {
+        return device.getStatus();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.cluster.ClusterController;
+import com.smarthome.cluster.LocalTransport;
+import com.smarthome.cluster.ShardServer;
+import com.smarthome.cluster.ShardTransport;
+import com.smarthome.cluster.SocketTransport;
+import com.smarthome.creational.DeviceSpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class to demonstrate the sharded controller cluster.
+ *
+ * <p>Runs the shards in this JVM by default. Pass {@code jvm} to start
+ * each shard as its own JVM on loopback instead.</p>
+ */
+public class TestCluster {
+    private static final int DEVICES = 20_000;
+    private static final int COMMANDS = 200_000;
+    private static final int BATCH_SIZE = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean separateJvms = args.length > 0 && args[0].equals("jvm");
+        System.out.println("============================================");
+        System.out.println("   SHARDED CONTROLLER CLUSTER DEMONSTRATION");
+        System.out.println("   (" + (separateJvms ? "one JVM per shard, loopback TCP" : "shards in this JVM") + ")");
+        System.out.println("============================================\n");
+
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int shards = 1; shards <= 4; shards *= 2) {
+                System.out.println("--- " + shards + " shard(s) ---");
+                ShardTransport transport = separateJvms ? new SocketTransport() : new LocalTransport();
+                ClusterController cluster = new ClusterController(transport);
+                for (int i = 0; i < shards; i++) {
+                    cluster.join(separateJvms ? startShardJvm(processes) : "shard-" + i);
+                }
+                cluster.provision(new DeviceSpec("light", "Light #").setCount(DEVICES));
+                cluster.provision(new DeviceSpec("thermostat", "Kitchen Thermostat").setRoom("Kitchen"));
+                cluster.provision(new DeviceSpec("light", "Kitchen Light #").setRoom("Kitchen").setCount(4));
+
+                System.out.printf("  Throughput: %,.0f commands/s%n", measure(cluster));
+                cluster.displayStatus();
+
+                if (shards == 4) {
+                    System.out.println("\nStep: a fifth node joins");
+                    ClusterController.Batch firstLights = cluster.batch();
+                    for (int i = 1; i <= 50; i++) {
+                        firstLights.turnOff("Light " + i).turnOn("Light " + i).setBrightness("Light " + i, 40);
+                    }
+                    firstLights.send().join();
+                    String newNode = separateJvms ? startShardJvm(processes) : "shard-4";
+                    cluster.join(newNode);
+                    for (int i = 1; i <= 50; i++) {
+                        if (cluster.ownerOf("Light " + i).equals(newNode)) {
+                            System.out.println("  Moved to " + newNode + ": " + cluster.getStatus("Light " + i));
+                            break;
+                        }
+                    }
+                    System.out.println("  Kitchen devices stay together on " + cluster.ownerOf("Kitchen Light 1") +
+                                       " / " + cluster.ownerOf("Kitchen Thermostat"));
+                    cluster.displayStatus();
+                }
+                cluster.shutdown();
+                System.out.println();
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Sends batches of on/off/brightness commands and returns commands
+     * per second. Device output is muted so the console is not the
+     * bottleneck being measured.
+     */
+    private static double measure(ClusterController cluster) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long started = System.nanoTime();
+            List<CompletableFuture<ClusterController.Result>> inFlight = new ArrayList<>();
+            for (int sent = 0; sent < COMMANDS; sent += BATCH_SIZE) {
+                ClusterController.Batch batch = cluster.batch();
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    String light = "Light " + (1 + (sent + i) % DEVICES);
+                    switch (i % 3) {
+                        case 0: batch.turnOn(light); break;
+                        case 1: batch.setBrightness(light, 20 + i % 80); break;
+                        default: batch.turnOff(light); break;
+                    }
+                }
+                inFlight.add(batch.send());
+            }
+            int failed = 0;
+            for (CompletableFuture<ClusterController.Result> result : inFlight) {
+                failed += result.join().getFailed();
+            }
+            long elapsed = System.nanoTime() - started;
+            System.setOut(console);
+            if (failed > 0) {
+                System.out.println("  " + failed + " commands failed");
+            }
+            return COMMANDS / (elapsed / 1e9);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Starts a shard in a new JVM on a free loopback port and waits
+     * until it accepts connections.
+     */
+    private static String startShardJvm(List<Process> processes) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                             ShardServer.class.getName(), Integer.toString(port))
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        processes.add(process);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return "127.0.0.1:" + port;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IOException("Shard JVM on port " + port + " did not start");
+    }
+}
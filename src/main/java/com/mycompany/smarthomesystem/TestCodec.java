@@ -0,0 +1,155 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.AdjustBrightnessCommand;
+import com.smarthome.behavioral.Command;
+import com.smarthome.codec.CommandCodec;
+import com.smarthome.codec.CommandView;
+import com.smarthome.codec.DeviceStateCodec;
+import com.smarthome.codec.DeviceStateView;
+import com.smarthome.codec.RoomTreeCodec;
+import com.smarthome.codec.RoomView;
+import com.smarthome.codec.WireFormat;
+import com.smarthome.devices.Co2Sensor;
+import com.smarthome.devices.ContactSensor;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Speaker;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.structural.Room;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class to demonstrate the binary wire format and measure its throughput.
+ */
+public class TestCodec {
+    private static final int BENCH_MESSAGES = 5_000_000;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("     BINARY WIRE FORMAT DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        Light light = new Light("Kitchen Light");
+        Thermostat thermostat = new Thermostat("Hall Thermostat", 68.0);
+        Speaker speaker = new Speaker("Den Speaker");
+        ContactSensor door = new ContactSensor("Front Door");
+        Co2Sensor co2 = new Co2Sensor("Den CO2");
+        List<SmartDevice> ids = new ArrayList<>();
+        ids.add(light);
+        ids.add(thermostat);
+        ids.add(speaker);
+
+        light.setBrightness(60);
+        thermostat.turnOn();
+        speaker.play("Morning Jazz");
+        door.setOpen(true);
+        co2.setPpm(820);
+        System.out.println();
+
+        // ===== DEVICE STATE =====
+        System.out.println("Step 1: Encode and decode device state\n");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        int offset = 0;
+        offset += DeviceStateCodec.encode(buffer, offset, 0, light);
+        offset += DeviceStateCodec.encode(buffer, offset, 1, thermostat);
+        offset += DeviceStateCodec.encode(buffer, offset, 2, speaker);
+        offset += DeviceStateCodec.encode(buffer, offset, 3, door);
+        offset += DeviceStateCodec.encode(buffer, offset, 4, co2);
+        System.out.println("  5 devices encoded in " + offset + " bytes");
+
+        DeviceStateView state = new DeviceStateView();
+        for (int pos = 0; pos < offset; pos += state.length()) {
+            state.wrap(buffer, pos);
+            System.out.println("  id=" + state.deviceId() + " type=" + state.deviceType() +
+                               " on=" + state.isOn() + " armed=" + state.isArmed() +
+                               " open=" + state.isOpen() + " level=" + state.level() +
+                               " target=" + state.targetTemp() +
+                               " mode=" + DeviceStateCodec.modeName(state.mode()) +
+                               " text=" + state.text());
+        }
+        try {
+            DeviceStateCodec.encode(buffer, offset, 5, WireFormat.DEVICE_SPEAKER, 0, 0, 0f, 0f,
+                                    DeviceStateCodec.MODE_OFF, "x".repeat(WireFormat.MAX_TEXT_BYTES + 1));
+        } catch (IllegalArgumentException e) {
+            System.out.println("  Oversized text refused: " + e.getMessage());
+        }
+        System.out.println();
+
+        // ===== ROOM TREE =====
+        System.out.println("Step 2: Encode a nested room tree\n");
+        Room house = new Room("House");
+        Room kitchen = new Room("Kitchen");
+        kitchen.addDevice(light);
+        kitchen.addDevice(speaker);
+        house.addDevice(kitchen);
+        house.addDevice(thermostat);
+
+        int roomLength = RoomTreeCodec.encode(buffer, 1024, house, ids::indexOf);
+        RoomView root = new RoomView().wrap(buffer, 1024);
+        RoomView nested = new RoomView();
+        System.out.println("  " + root.name() + " (" + roomLength + " bytes, " + root.childCount() + " children)");
+        for (int c = root.firstChild(); c >= 0; c = root.nextChild(c)) {
+            if (root.isRoom(c)) {
+                root.nestedRoom(c, nested);
+                System.out.println("    room " + nested.name() + " with " + nested.childCount() + " children");
+            } else {
+                System.out.println("    device id " + root.deviceId(c));
+            }
+        }
+        System.out.println();
+
+        // ===== COMMANDS =====
+        System.out.println("Step 3: Encode a command and rebuild it\n");
+        CommandCodec.encode(buffer, 2048, new AdjustBrightnessCommand(light, 25), ids::indexOf);
+        CommandView commandView = new CommandView().wrap(buffer, 2048);
+        Command rebuilt = CommandCodec.toCommand(commandView, ids::get);
+        System.out.println("  Decoded: " + rebuilt.getDescription());
+        System.out.println();
+
+        // ===== THROUGHPUT =====
+        System.out.println("Step 4: Throughput (" + BENCH_MESSAGES + " messages, after warm-up)\n");
+        ByteBuffer bench = ByteBuffer.allocateDirect(DeviceStateCodec.FIXED_LENGTH * 1024);
+        for (int round = 0; round < 3; round++) {
+            benchmarkState(bench, state, round == 2);
+            benchmarkCommand(bench, commandView, round == 2);
+        }
+        System.out.println("============================================");
+    }
+
+    private static void benchmarkState(ByteBuffer buffer, DeviceStateView view, boolean report) {
+        int slots = buffer.capacity() / DeviceStateCodec.FIXED_LENGTH;
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCH_MESSAGES; i++) {
+            int offset = (i % slots) * DeviceStateCodec.FIXED_LENGTH;
+            DeviceStateCodec.encode(buffer, offset, i, WireFormat.DEVICE_LIGHT, DeviceStateCodec.FLAG_ON,
+                                    i & 0x7F, 0f, 0f, DeviceStateCodec.MODE_OFF, null);
+            view.wrap(buffer, offset);
+            checksum += view.deviceId() + view.level();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("  Device state encode+decode: %.1f million msg/s (checksum %d)%n",
+                              BENCH_MESSAGES * 1000.0 / elapsed, checksum);
+        }
+    }
+
+    private static void benchmarkCommand(ByteBuffer buffer, CommandView view, boolean report) {
+        int slots = buffer.capacity() / CommandCodec.LENGTH;
+        double checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCH_MESSAGES; i++) {
+            int offset = (i % slots) * CommandCodec.LENGTH;
+            CommandCodec.encode(buffer, offset, CommandCodec.KIND_ADJUST_BRIGHTNESS, i, i & 0x7F);
+            view.wrap(buffer, offset);
+            checksum += view.argument();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("  Command encode+decode:      %.1f million msg/s (checksum %.0f)%n",
+                              BENCH_MESSAGES * 1000.0 / elapsed, checksum);
+        }
+    }
+}
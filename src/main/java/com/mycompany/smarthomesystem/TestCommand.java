@@ -4,6 +4,7 @@ import com.smarthome.creational.CentralController;
 import com.smarthome.creational.DeviceFactory;
 import com.smarthome.devices.SmartDevice;
 import com.smarthome.devices.Light;
+import com.smarthome.devices.Speaker;
 import com.smarthome.devices.Thermostat;
 import com.smarthome.behavioral.*;
 
@@ -229,11 +230,22 @@ public class TestCommand {
         System.out.println("\n✓ Back to perfect reading light: " + bedroomLight.getStatus());
         System.out.println();
         
+        System.out.println("Same for a speaker playing quietly:");
+        Speaker nightSpeaker = (Speaker) factory.createDevice("speaker", "Night Speaker");
+        nightSpeaker.setVolume(15);
+        controller.executeCommand(new TurnOffCommand(nightSpeaker));
+        controller.undoLastCommand();
+        System.out.println("\n✓ Back to quiet: " + nightSpeaker.getStatus());
+        System.out.println("  (each command keeps its before/after state as two packed longs - " +
+                           "16 bytes of history)");
+        System.out.println();
+        
         // ===== SUMMARY =====
         System.out.println("============================================");
         System.out.println("       COMMAND PATTERN BENEFITS:");
         System.out.println("============================================");
         System.out.println("✓ Undo/Redo functionality");
+        System.out.println("✓ Undo restores the exact earlier state (Memento)");
         System.out.println("✓ Command history tracking");
         System.out.println("✓ Encapsulates actions as objects");
         System.out.println("✓ Can queue commands");
@@ -0,0 +1,183 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.TurnOffCommand;
+import com.smarthome.behavioral.TurnOnCommand;
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.CommandScheduler;
+import com.smarthome.creational.CommandScheduler.Lane;
+import com.smarthome.devices.Light;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class to demonstrate priority command lanes: a person's commands
+ * stay quick while AI and scheduled automation keep their lanes full.
+ * Each command spins for {@value #COMMAND_MICROS} µs, standing in for
+ * the round trip to a real device.
+ */
+public class TestCommandLanes {
+    private static final int COMMAND_MICROS = 200;
+    private static final int USER_COMMANDS = 150;
+    private static final int USER_INTERVAL_MS = 10;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("============================================");
+        System.out.println("   PRIORITY COMMAND LANES DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        CentralController controller = CentralController.getInstance();
+        Light hallLight = new Light("Hall Light");
+        controller.addDevice(hallLight);
+        PrintStream console = System.out;
+
+        System.out.println("Step 1: user commands on a quiet controller");
+        CommandScheduler scheduler = new CommandScheduler(controller, 512);
+        scheduler.start();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        runUser(scheduler, hallLight, Lane.USER); // Warm-up
+        List<Long> quiet = runUser(scheduler, hallLight, Lane.USER);
+        System.setOut(console);
+        report("quiet", quiet);
+
+        System.out.println("\nStep 2: same, while AI and schedule lanes are flooded");
+        Flood flood = new Flood(scheduler, hallLight, Lane.AI, Lane.SCHEDULE);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        flood.start();
+        List<Long> lanes = runUser(scheduler, hallLight, Lane.USER);
+        flood.stop();
+        scheduler.awaitIdle(30_000);
+        System.setOut(console);
+        report("flooded, own lane", lanes);
+        scheduler.displayStats();
+        scheduler.shutdown();
+
+        System.out.println("\nStep 3: one shared queue, as before (user commands wait behind the flood)");
+        CommandScheduler fifo = new CommandScheduler(controller, 512);
+        fifo.start();
+        flood = new Flood(fifo, hallLight, Lane.SCHEDULE);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        flood.start();
+        List<Long> shared = runUser(fifo, hallLight, Lane.SCHEDULE);
+        flood.stop();
+        fifo.awaitIdle(30_000);
+        System.setOut(console);
+        report("flooded, shared queue", shared);
+        fifo.shutdown();
+        System.out.println("  (" + Runtime.getRuntime().availableProcessors() + " CPU(s))");
+    }
+
+    /**
+     * Sends user commands at a steady pace and collects how long each took
+     * from submit until it had run.
+     */
+    private static List<Long> runUser(CommandScheduler scheduler, Light light, Lane lane) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < USER_COMMANDS; i++) {
+            Command toggle = i % 2 == 0 ? new TurnOffCommand(light) : new TurnOnCommand(light);
+            DeviceRoundTrip command = new DeviceRoundTrip(toggle, latencies);
+            while (!scheduler.submit(command, lane)) {
+                Thread.sleep(1); // Lane full: keep trying, the wait counts against the command
+            }
+            Thread.sleep(USER_INTERVAL_MS);
+        }
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (latencies.size() < USER_COMMANDS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return latencies;
+    }
+
+    private static void report(String label, List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("  %-22s user p50 %7.2f ms, p99 %7.2f ms, max %7.2f ms (%d commands)%n", label,
+                          percentile(sorted, 50), percentile(sorted, 99),
+                          sorted.get(sorted.size() - 1) / 1e6, sorted.size());
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int at = (int) Math.ceil(p / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, at)) / 1e6;
+    }
+
+    /**
+     * Wraps a command with the time a real device takes to answer, and
+     * optionally records how long the command took from creation to done.
+     */
+    private static class DeviceRoundTrip implements Command {
+        private final Command command;
+        private final List<Long> latencies;
+        private final long created;
+
+        DeviceRoundTrip(Command command, List<Long> latencies) {
+            this.command = command;
+            this.latencies = latencies;
+            this.created = System.nanoTime();
+        }
+
+        @Override
+        public void execute() {
+            command.execute();
+            long until = System.nanoTime() + COMMAND_MICROS * 1_000L;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            if (latencies != null) {
+                latencies.add(System.nanoTime() - created);
+            }
+        }
+
+        @Override
+        public void undo() {
+            command.undo();
+        }
+
+        @Override
+        public String getDescription() {
+            return command.getDescription();
+        }
+    }
+
+    /**
+     * Threads that keep automation lanes full.
+     */
+    private static class Flood {
+        private final List<Thread> threads = new ArrayList<>();
+        private volatile boolean running = true;
+
+        Flood(CommandScheduler scheduler, Light light, Lane... lanes) {
+            for (Lane lane : lanes) {
+                threads.add(new Thread(() -> {
+                    int i = 0;
+                    while (running) {
+                        Command command = i++ % 2 == 0 ? new TurnOnCommand(light) : new TurnOffCommand(light);
+                        if (!scheduler.submit(new DeviceRoundTrip(command, null), lane)) {
+                            try {
+                                Thread.sleep(1); // Lane full
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }
+                }, "flood-" + lane));
+            }
+        }
+
+        void start() {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.AdjustBrightnessCommand;
+import com.smarthome.behavioral.CommandRing;
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class to demonstrate the encoded command ring and measure what
+ * each command allocates, next to the same traffic sent as
+ * {@code Command} objects through the controller.
+ */
+public class TestCommandRing {
+    private static final int LAMPS = 64;
+    private static final int WARMUP = 300_000;
+    private static final int MEASURED = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("============================================");
+        System.out.println("   COMMAND RING DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        // ===== UNDO THROUGH THE RING =====
+        System.out.println("Step 1: Commands and undo through the ring\n");
+        Light porch = new Light("Porch Light");
+        List<SmartDevice> ids = new ArrayList<>();
+        ids.add(porch);
+        CommandRing ring = new CommandRing(8, 4, ids::get);
+        ring.offer(CommandRing.ADJUST_BRIGHTNESS, 0, 70);
+        ring.offer(CommandRing.TURN_OFF, 0, 0);
+        ring.offer(CommandRing.ADJUST_TEMPERATURE, 0, 68); // A light has no thermostat
+        ring.drain(CommandRing.BATCH);
+        System.out.println("  " + porch.getStatus() + " (" + ring.getRejectedCount() + " rejected)");
+        ring.offer(CommandRing.UNDO, -1, 0);
+        ring.drain(CommandRing.BATCH);
+        System.out.println("  After undo: " + porch.getStatus());
+        ring.offer(CommandRing.REDO, -1, 0);
+        ring.drain(CommandRing.BATCH);
+        System.out.println("  After redo: " + porch.getStatus());
+
+        // ===== ALLOCATION =====
+        CentralController controller = CentralController.getInstance();
+        System.out.println("\nStep 2: Bytes allocated per command (" + MEASURED + " slider ticks, " +
+                           "one undo every 16)\n");
+        List<SmartDevice> lamps = new ArrayList<>();
+        for (int i = 0; i < LAMPS; i++) {
+            lamps.add(new QuietLamp("Lamp " + i));
+        }
+        CommandRing lampRing = new CommandRing(1024, 256, lamps::get);
+        runRing(lampRing, WARMUP);
+        long started = System.nanoTime();
+        long bytes = runRing(lampRing, MEASURED);
+        report("ring, quiet lamps", bytes, started);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        runCommands(controller, lamps, WARMUP);
+        started = System.nanoTime();
+        bytes = runCommands(controller, lamps, MEASURED);
+        System.setOut(console);
+        report("Command objects, quiet lamps", bytes, started);
+
+        List<SmartDevice> lights = new ArrayList<>();
+        for (int i = 0; i < LAMPS; i++) {
+            lights.add(new Light("Light " + i));
+        }
+        CommandRing lightRing = new CommandRing(1024, 256, lights::get);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        runRing(lightRing, WARMUP);
+        started = System.nanoTime();
+        bytes = runRing(lightRing, MEASURED);
+        System.setOut(console);
+        report("ring, ordinary lights", bytes, started);
+        System.out.println("  (ordinary lights build a log line for every change; the ring adds nothing)");
+
+        // ===== PRODUCERS AND APPLIER =====
+        System.out.println("\nStep 3: Two automation threads feeding the applier thread\n");
+        CommandRing shared = new CommandRing(4096, 256, lamps::get);
+        shared.start("command-applier");
+        long full = 0;
+        started = System.nanoTime();
+        Thread[] producers = new Thread[2];
+        long[] retries = new long[producers.length];
+        for (int t = 0; t < producers.length; t++) {
+            int id = t;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < MEASURED / 2; i++) {
+                    while (!shared.offer(CommandRing.ADJUST_BRIGHTNESS, (i + id) % LAMPS, i % 101)) {
+                        retries[id]++;
+                        Thread.yield(); // Ring full; let the applier catch up
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        shared.stop();
+        for (long r : retries) {
+            full += r;
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("  %d commands applied in %.2f s (%.0f per second), ring full %d times%n",
+                          shared.getExecutedCount(), seconds, shared.getExecutedCount() / seconds, full);
+        System.out.println("  (" + Runtime.getRuntime().availableProcessors() + " CPU(s))");
+    }
+
+    private static long runRing(CommandRing ring, int commands) {
+        long before = allocatedBytes();
+        for (int i = 0; i < commands; i++) {
+            if (i % 16 == 15) {
+                ring.offer(CommandRing.UNDO, -1, 0);
+            } else {
+                ring.offer(CommandRing.ADJUST_BRIGHTNESS, i % LAMPS, i % 101);
+            }
+            if ((i & 63) == 63) {
+                ring.drain(CommandRing.BATCH);
+            }
+        }
+        ring.drain(CommandRing.BATCH);
+        return allocatedBytes() - before;
+    }
+
+    private static long runCommands(CentralController controller, List<SmartDevice> lamps, int commands) {
+        long before = allocatedBytes();
+        for (int i = 0; i < commands; i++) {
+            if (i % 16 == 15) {
+                controller.undoLastCommand();
+            } else {
+                controller.executeCommand(new AdjustBrightnessCommand((Light) lamps.get(i % LAMPS), i % 101));
+            }
+            if (controller.getHistorySize() > 256) {
+                controller.clearHistory(); // Keep the history as short as the ring's
+            }
+        }
+        return allocatedBytes() - before;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    private static void report(String path, long bytes, long started) {
+        double millis = (System.nanoTime() - started) / 1e6;
+        System.out.printf("  %-30s %8.1f bytes/command %,13d in all  %6.0f ns/command%n",
+                          path, (double) bytes / MEASURED, bytes, millis * 1e6 / MEASURED);
+    }
+
+    /**
+     * A light that keeps no log, so the benchmark sees only what the
+     * command path itself allocates.
+     */
+    private static class QuietLamp extends Light {
+        private boolean on;
+        private int level;
+
+        QuietLamp(String name) {
+            super(name);
+        }
+
+        @Override
+        public void turnOn() {
+            on = true;
+            level = 100;
+        }
+
+        @Override
+        public void turnOff() {
+            on = false;
+            level = 0;
+        }
+
+        @Override
+        public void setBrightness(int brightness) {
+            if (brightness < 0 || brightness > 100) {
+                throw new IllegalArgumentException("Brightness must be between 0 and 100");
+            }
+            level = brightness;
+            on = brightness > 0;
+        }
+
+        @Override
+        public int getBrightness() {
+            return level;
+        }
+
+        @Override
+        public boolean isOn() {
+            return on;
+        }
+
+        @Override
+        public String getStatus() {
+            return getName() + " is " + (on ? "ON" : "OFF") + ", Brightness: " + level + "%";
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.gui.DashboardPanel;
+import com.smarthome.gui.DeviceBridge;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * Test class to demonstrate the whole-home dashboard under automation:
+ * 50,000 devices changing from background threads, with the dashboard
+ * redrawing changed tiles once per frame. Runs headless; each frame also
+ * copies the dashboard to an offscreen image, standing in for the screen.
+ */
+public class TestDashboard {
+    private static final int LIGHTS = 45_000;
+    private static final int THERMOSTATS = 5_000;
+    private static final int AUTOMATION_THREADS = 2;
+    private static final long RUN_MILLIS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        System.out.println("============================================");
+        System.out.println("   DASHBOARD DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        CentralController controller = CentralController.getInstance();
+        DeviceFactory factory = new DeviceFactory();
+        controller.addDevices(factory.buildDevices(
+            new DeviceSpec("light", "Light #").addDecorator("energy").setParam("watts", "9"), LIGHTS));
+        controller.addDevices(factory.buildDevices(
+            new DeviceSpec("thermostat", "Thermostat #").setParam("temp", "70"), THERMOSTATS));
+        List<SmartDevice> devices = controller.getAllDevices();
+
+        DashboardPanel[] holder = new DashboardPanel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            DashboardPanel dashboard = new DashboardPanel();
+            dashboard.setSize(1200, 800);
+            dashboard.addDevices(devices);
+            dashboard.setColorMode(DashboardPanel.ColorMode.BRIGHTNESS);
+            holder[0] = dashboard;
+        });
+        DashboardPanel dashboard = holder[0];
+        SwingUtilities.invokeAndWait(() -> { }); // Let the resize land
+        System.out.println("Step 1: " + dashboard.getTileCount() + " tiles on a 1200x800 panel");
+
+        BufferedImage screen = new BufferedImage(1200, 800, BufferedImage.TYPE_INT_RGB);
+        AtomicLong frames = new AtomicLong();
+        AtomicLong maxFrameNanos = new AtomicLong();
+        AtomicLong changedDevices = new AtomicLong();
+        AtomicLong frameNanos = new AtomicLong();
+        DeviceBridge bridge = new DeviceBridge(controller, changed -> {
+            long started = System.nanoTime();
+            dashboard.devicesChanged(changed);
+            Graphics g = screen.getGraphics();
+            dashboard.paint(g); // What the repaint manager would do for the dirty region
+            g.dispose();
+            long elapsed = System.nanoTime() - started;
+            frames.incrementAndGet();
+            frameNanos.addAndGet(elapsed);
+            changedDevices.addAndGet(changed.size());
+            if (elapsed > maxFrameNanos.get()) {
+                maxFrameNanos.set(elapsed);
+            }
+        });
+
+        System.out.println("\nStep 2: " + AUTOMATION_THREADS + " automation threads change devices for " +
+                           RUN_MILLIS / 1000 + " s");
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        AtomicLong changes = new AtomicLong();
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        Thread[] automation = new Thread[AUTOMATION_THREADS];
+        for (int t = 0; t < automation.length; t++) {
+            long seed = t;
+            automation[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                while (System.currentTimeMillis() < deadline) {
+                    for (int i = 0; i < 1_000; i++) {
+                        SmartDevice device = devices.get(random.nextInt(devices.size()));
+                        Capabilities capabilities = Capabilities.of(device);
+                        Dimmable light = capabilities.dimmable();
+                        Thermostatic thermostat = capabilities.thermostatic();
+                        if (light != null && random.nextInt(4) != 0) {
+                            if (!device.isOn()) {
+                                device.turnOn();
+                            }
+                            light.setBrightness(random.nextInt(101));
+                        } else if (thermostat != null) {
+                            thermostat.setTargetTemp(60 + random.nextInt(26));
+                        } else {
+                            device.turnOff();
+                        }
+                    }
+                    changes.addAndGet(1_000);
+                    Thread.yield();
+                }
+            });
+            automation[t].start();
+        }
+        for (Thread thread : automation) {
+            thread.join();
+        }
+        SwingUtilities.invokeAndWait(() -> { });
+        Thread.sleep(3 * DeviceBridge.FRAME_MS);
+        SwingUtilities.invokeAndWait(() -> { });
+        bridge.shutdown();
+
+        double seconds = RUN_MILLIS / 1000.0;
+        console.printf("  %d device changes (%.0f per second)%n", changes.get(), changes.get() / seconds);
+        console.printf("  %d frames (%.1f per second), %d devices per frame on average%n",
+                       frames.get(), frames.get() / seconds, changedDevices.get() / Math.max(1, frames.get()));
+        console.printf("  Tiles redrawn: %d; longest tile pass %.2f ms%n",
+                       dashboard.getTilesPainted(), dashboard.getMaxRenderMillis());
+        console.printf("  Frame time (tiles plus copy to screen): %.2f ms on average, %.2f ms at most%n",
+                       frameNanos.get() / 1e6 / Math.max(1, frames.get()), maxFrameNanos.get() / 1e6);
+        console.println("  (" + Runtime.getRuntime().availableProcessors() +
+                       " CPU(s), shared by the EDT and the automation threads)");
+    }
+}
@@ -0,0 +1,147 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.gui.DeviceListModel;
+import com.smarthome.structural.Room;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.DefaultListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * Test class to demonstrate the GUI's device list model with a 100,000
+ * device home: fine-grained list events, incremental search and
+ * grouping by room. Runs headless.
+ */
+public class TestDeviceList {
+    private static final int DEVICES = 100_000;
+    private static final int ROOMS = 1_000;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.out.println("============================================");
+        System.out.println("   DEVICE LIST MODEL DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        List<SmartDevice> devices = new DeviceFactory().buildDevices(new DeviceSpec("light", "Light #"), DEVICES);
+        List<Room> rooms = new ArrayList<>();
+        for (int r = 0; r < ROOMS; r++) {
+            rooms.add(new Room("Room " + r));
+        }
+        System.setOut(console);
+
+        DeviceListModel model = new DeviceListModel();
+        EventLog events = new EventLog();
+        model.addListDataListener(events);
+
+        System.out.println("Step 1: add " + DEVICES + " devices, one batch per room");
+        long started = System.nanoTime();
+        int perRoom = DEVICES / ROOMS;
+        for (int r = 0; r < ROOMS; r++) {
+            model.addDevices(rooms.get(r), devices.subList(r * perRoom, (r + 1) * perRoom));
+        }
+        System.out.printf("  %.1f ms, %d rows, %d list events%n", millis(started), model.getSize(), events.count);
+
+        System.out.println("\nStep 2: typing \"light 4242\" one key at a time (after one warm-up pass)");
+        String query = "light 4242";
+        for (int i = 1; i <= query.length(); i++) {
+            model.setQuery(query.substring(0, i));
+        }
+        model.setQuery("");
+        for (int i = 1; i <= query.length(); i++) {
+            started = System.nanoTime();
+            model.setQuery(query.substring(0, i));
+            System.out.printf("  %-12s %6d rows  %.2f ms%n", "\"" + query.substring(0, i) + "\"",
+                              model.getSize(), millis(started));
+        }
+
+        System.out.println("\nStep 3: letters in order");
+        started = System.nanoTime();
+        model.setQuery("lt4242");
+        System.out.printf("  \"lt4242\": %d rows in %.2f ms, best match %s%n", model.getSize(), millis(started),
+                          name(model.getElementAt(0)));
+
+        System.out.println("\nStep 4: group the matches by room");
+        model.setQuery("light 99");
+        started = System.nanoTime();
+        model.setGrouped(true);
+        System.out.printf("  \"light 99\": %d rows (headers included) in %.2f ms; first rows: %s, %s%n",
+                          model.getSize(), millis(started), model.getElementAt(0), name(model.getElementAt(1)));
+
+        System.out.println("\nStep 5: add and remove single devices while grouped");
+        model.setQuery("");
+        events.clear();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        SmartDevice added = new DeviceFactory().createDevice("light", "Light Extra");
+        System.setOut(console);
+        started = System.nanoTime();
+        model.addDevice(added, rooms.get(500));
+        System.out.printf("  add to %s: %s in %.3f ms%n", rooms.get(500).getName(), events.last, millis(started));
+        started = System.nanoTime();
+        model.removeDevice(devices.get(DEVICES / 2));
+        System.out.printf("  remove %s: %s in %.3f ms%n", devices.get(DEVICES / 2).getName(), events.last,
+                          millis(started));
+
+        System.out.println("\nStep 6: the old way, display strings in a DefaultListModel");
+        DefaultListModel<String> strings = new DefaultListModel<>();
+        started = System.nanoTime();
+        for (SmartDevice device : devices) {
+            strings.addElement(device.getName());
+        }
+        System.out.printf("  add %d names one by one: %.1f ms%n", DEVICES, millis(started));
+        String name = devices.get(DEVICES / 2 + 1).getName();
+        started = System.nanoTime();
+        strings.removeElement(name);
+        strings.removeElement(name + " ⚡");
+        strings.removeElement(name + " 🌀");
+        System.out.printf("  remove one (three removeElement scans): %.3f ms%n", millis(started));
+    }
+
+    private static double millis(long started) {
+        return (System.nanoTime() - started) / 1e6;
+    }
+
+    private static String name(Object row) {
+        return row instanceof SmartDevice ? ((SmartDevice) row).getName() : String.valueOf(row);
+    }
+
+    /**
+     * Counts list events and remembers the last one.
+     */
+    private static class EventLog implements ListDataListener {
+        int count;
+        String last;
+
+        void clear() {
+            count = 0;
+            last = null;
+        }
+
+        private void record(String kind, ListDataEvent e) {
+            count++;
+            last = kind + " rows " + e.getIndex0() + ".." + e.getIndex1();
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            record("added", e);
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            record("removed", e);
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            record("changed", e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.gui.DeviceBridge;
+import com.smarthome.gui.LogView;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+/**
+ * Test class to demonstrate the GUI bridge under heavy automation load:
+ * how long the Event Dispatch Thread is held when every device change
+ * posts its own {@code invokeLater}, compared with the bridge's one
+ * coalesced flush per frame, and what one more log line costs in a long
+ * text area compared with a bounded log view. Runs headless.
+ */
+public class TestGuiBridge {
+    private static final int LIGHTS = 2_000;
+    private static final int AUTOMATION_THREADS = 4;
+    private static final int CHANGES_PER_THREAD = 25_000;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        System.out.println("============================================");
+        System.out.println("   GUI BRIDGE DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        CentralController controller = CentralController.getInstance();
+        controller.addDevices(new DeviceFactory().buildDevices(new DeviceSpec("light", "Light #"), LIGHTS));
+        List<SmartDevice> lights = controller.getAllDevices();
+        int changes = AUTOMATION_THREADS * CHANGES_PER_THREAD;
+
+        System.out.println("Step 1: " + changes + " automated changes, one invokeLater each");
+        JTextArea naiveLog = new JTextArea();
+        Probe naive = run(lights, (device, line) -> SwingUtilities.invokeLater(() -> {
+            naiveLog.append(line);
+            naiveLog.setCaretPosition(naiveLog.getDocument().getLength());
+        }));
+        System.out.printf("  Longest EDT stall seen by a 1 ms probe: %.1f ms%n", naive.maxDelayMs());
+
+        System.out.println("\nStep 2: the same load through the bridge");
+        LogView bridgedLog = new LogView(LogView.DEFAULT_CAPACITY);
+        AtomicLong refreshed = new AtomicLong();
+        DeviceBridge bridge = new DeviceBridge(controller, changed -> refreshed.addAndGet(changed.size()));
+        Probe bridged = run(lights, (device, line) -> bridge.append(bridgedLog, line));
+        while (onEdt(bridgedLog::getTotalLines) < changes) { // Let the last frames land
+            Thread.sleep(DeviceBridge.FRAME_MS);
+        }
+        System.out.printf("  Longest EDT stall seen by a 1 ms probe: %.1f ms%n", bridged.maxDelayMs());
+        System.out.printf("  %d frames flushed, longest flush %.1f ms%n",
+                          bridge.getFlushCount(), bridge.getMaxFlushMillis());
+        System.out.println("  Device refreshes handed to the GUI: " + refreshed.get() + " (for " + changes +
+                           " changes)");
+        System.out.println("  Log lines: " + naiveLog.getLineCount() + " in the text area, last " +
+                           bridgedLog.getLineCount() + " of " + bridgedLog.getTotalLines() + " in the log view");
+        bridge.shutdown();
+
+        System.out.println("\nStep 3: cost of one more line once the log is long");
+        System.out.printf("  Text area, empty: %.1f us per line%n", appendCost(new JTextArea()));
+        System.out.printf("  Text area, %d lines: %.1f us per line%n", naiveLog.getLineCount(),
+                          appendCost(naiveLog));
+        System.out.printf("  Log view, empty: %.1f us per line%n", appendCost(new LogView(LogView.DEFAULT_CAPACITY)));
+        System.out.printf("  Log view, full (%d lines): %.1f us per line%n", bridgedLog.getLineCount(),
+                          appendCost(bridgedLog));
+    }
+
+    /**
+     * Times appending lines one by one on the EDT, scrolling to the end
+     * after each as the old status log did.
+     */
+    private static double appendCost(Object log) throws Exception {
+        int lines = 2_000;
+        return onEdt(() -> {
+            long started = System.nanoTime();
+            for (int i = 0; i < lines; i++) {
+                String line = "[12:00:00] Light " + i + " turned ON";
+                if (log instanceof JTextArea) {
+                    JTextArea area = (JTextArea) log;
+                    area.append(line + "\n");
+                    area.setCaretPosition(area.getDocument().getLength());
+                } else {
+                    ((LogView) log).appendLine(line);
+                }
+            }
+            return (System.nanoTime() - started) / 1e3 / lines;
+        });
+    }
+
+    private static <T> T onEdt(Callable<T> work) throws Exception {
+        FutureTask<T> task = new FutureTask<>(work);
+        SwingUtilities.invokeAndWait(task);
+        return task.get();
+    }
+
+    /**
+     * Something that reports a device change to the GUI.
+     */
+    private interface Reporter {
+        void report(SmartDevice device, String line);
+    }
+
+    /**
+     * Measures how late small tasks posted to the EDT run.
+     */
+    private static class Probe extends Thread {
+        private volatile boolean running = true;
+        private volatile long maxDelayNanos;
+
+        Probe() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                long posted = System.nanoTime();
+                try {
+                    SwingUtilities.invokeAndWait(() -> {
+                        long delay = System.nanoTime() - posted;
+                        if (delay > maxDelayNanos) {
+                            maxDelayNanos = delay;
+                        }
+                    });
+                    Thread.sleep(1);
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        }
+
+        double maxDelayMs() {
+            return maxDelayNanos / 1e6;
+        }
+    }
+
+    /**
+     * Flips random lights from several threads, reporting each change,
+     * and waits until the EDT has caught up.
+     */
+    private static Probe run(List<SmartDevice> lights, Reporter reporter) throws Exception {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Probe probe = new Probe();
+        probe.start();
+        try {
+            Thread[] automation = new Thread[AUTOMATION_THREADS];
+            for (int t = 0; t < automation.length; t++) {
+                long seed = t;
+                automation[t] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < CHANGES_PER_THREAD; i++) {
+                        SmartDevice device = lights.get(random.nextInt(lights.size()));
+                        boolean on = random.nextBoolean();
+                        if (on) {
+                            device.turnOn();
+                        } else {
+                            device.turnOff();
+                        }
+                        reporter.report(device, device.getName() + (on ? " turned ON\n" : " turned OFF\n"));
+                    }
+                });
+                automation[t].start();
+            }
+            for (Thread thread : automation) {
+                thread.join();
+            }
+            SwingUtilities.invokeAndWait(() -> { }); // Everything posted so far has run
+            return probe;
+        } finally {
+            probe.running = false;
+            probe.join();
+            System.setOut(console);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.devices.Thermostat;
+import com.smarthome.energy.OutdoorTemperatureModel;
+import com.smarthome.energy.PreconditioningPlanner;
+import com.smarthome.energy.PriceCurve;
+import com.smarthome.energy.ThermalFleet;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Random;
+
+/**
+ * Test class to demonstrate the thermal model and cost-aware
+ * pre-conditioning planner on a fleet of thermostats.
+ */
+public class TestHvac {
+    private static final int FLEET_SIZE = 5000;
+    private static final long STEP_MILLIS = 5 * 60 * 1000;
+    private static final long PLAN_STEP_MILLIS = 15 * 60 * 1000;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("   MODEL-PREDICTIVE HVAC DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        ZoneId zone = ZoneId.systemDefault();
+        long noon = LocalDate.of(2026, 1, 15).atTime(LocalTime.NOON).atZone(zone).toInstant().toEpochMilli();
+        long sixPm = noon + 6 * 3_600_000L;
+
+        // Cold winter day, peak pricing from 4 PM to 9 PM
+        OutdoorTemperatureModel outdoor = new OutdoorTemperatureModel(30.0, 8.0, zone);
+        PriceCurve tariff = PriceCurve.typicalTimeOfUse();
+
+        System.out.println("Step 1: Build a fleet of " + FLEET_SIZE + " zones\n");
+        Thermostat living = new Thermostat("Living Room Thermostat", 60.0);
+        living.turnOn();
+        living.setTargetTemp(70);
+
+        ThermalFleet planned = buildFleet(outdoor, tariff, living);
+        ThermalFleet baseline = buildFleet(outdoor, tariff, null);
+        System.out.println("  Zones set back to about 60°F while everyone is out");
+        System.out.println("  Goal: every zone at its setpoint by 6 PM\n");
+
+        System.out.println("Step 2: Plan start times against the tariff\n");
+        PreconditioningPlanner planner = new PreconditioningPlanner(PLAN_STEP_MILLIS);
+        PreconditioningPlanner.Result plan = planner.plan(planned, noon, sixPm);
+        plan.apply(planned);
+        System.out.printf("  Solved %d zones in %.2f ms%n", FLEET_SIZE, plan.getSolveNanos() / 1e6);
+        System.out.printf("  Estimated cost: $%.2f planned vs $%.2f starting now%n",
+                          plan.getPlannedCost(), plan.getImmediateCost());
+        System.out.println("  Living room starts at " +
+                           java.time.Instant.ofEpochMilli(plan.getStartMillis(0)).atZone(zone).toLocalTime());
+        System.out.println();
+
+        System.out.println("Step 3: Simulate noon to 9 PM in 5 minute steps\n");
+        long stepNanos = 0;
+        int steps = 0;
+        for (long now = noon; now < sixPm + 3 * 3_600_000L; now += STEP_MILLIS) {
+            planned.readThermostats();
+            long started = System.nanoTime();
+            planned.step(now, STEP_MILLIS);
+            stepNanos += System.nanoTime() - started;
+            steps++;
+            baseline.step(now, STEP_MILLIS);
+            if (now + STEP_MILLIS == sixPm) {
+                System.out.printf("  At 6 PM: living room %.1f°F, fleet average %.1f°F (baseline %.1f°F)%n",
+                                  planned.getTemperature(0), average(planned), average(baseline));
+            }
+        }
+        planned.writeThermostats();
+        System.out.println("  " + living.getStatus());
+        System.out.printf("  Actual cost: $%.2f planned vs $%.2f starting at noon (%.0f%% saved)%n",
+                          planned.getTotalCost(), baseline.getTotalCost(),
+                          100 * (1 - planned.getTotalCost() / baseline.getTotalCost()));
+        System.out.printf("  One step over %d zones: %.3f ms on average%n", FLEET_SIZE, stepNanos / 1e6 / steps);
+
+        System.out.println("\n============================================");
+        System.out.println("  ✓ HVAC demonstration complete");
+        System.out.println("============================================");
+    }
+
+    private static ThermalFleet buildFleet(OutdoorTemperatureModel outdoor, PriceCurve tariff,
+                                           Thermostat first) {
+        Random random = new Random(42);
+        ThermalFleet fleet = new ThermalFleet(outdoor, tariff);
+        for (int i = 0; i < FLEET_SIZE; i++) {
+            int z = fleet.addZone(i == 0 ? first : null,
+                                  2.5 + random.nextDouble(),        // R, °F per kW
+                                  1.5 + random.nextDouble(),        // C, kWh per °F
+                                  18.0 + 6 * random.nextDouble(),   // Heat pump output, kW
+                                  2.5 + random.nextDouble());       // COP
+            fleet.setTemperature(z, 58 + 4 * random.nextDouble());
+            if (i > 0 || first == null) {
+                fleet.setSetpoint(z, 68 + 4 * random.nextInt(2), true);
+            }
+        }
+        return fleet;
+    }
+
+    private static double average(ThermalFleet fleet) {
+        double sum = 0;
+        for (int i = 0; i < fleet.size(); i++) {
+            sum += fleet.getTemperature(i);
+        }
+        return sum / fleet.size();
+    }
+}
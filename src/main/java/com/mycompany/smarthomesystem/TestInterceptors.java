@@ -0,0 +1,226 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.AdjustTemperatureCommand;
+import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.CommandInterceptor;
+import com.smarthome.behavioral.CommandPipeline;
+import com.smarthome.behavioral.ControllerListener;
+import com.smarthome.behavioral.TurnOnCommand;
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.Thermostat;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Test class to demonstrate the command interceptor pipeline: refusing
+ * commands, counting and journaling the ones that ran, and what three
+ * interceptors cost compared with walking them in a loop. The chain is
+ * timed on its own, since a whole executeCommand costs far more than
+ * three interceptor calls and would hide the difference.
+ */
+public class TestInterceptors {
+    private static final int ROUNDS = 5;
+    private static final int COMMANDS = 2_000_000;
+    private static final int CHAIN_CALLS = 50_000_000;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("   COMMAND INTERCEPTOR DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        CentralController controller = CentralController.getInstance();
+        Light light = new Light("Porch Light");
+        Thermostat thermostat = new Thermostat("Hall Thermostat", 70);
+        controller.addDevice(light);
+        controller.addDevice(thermostat);
+
+        Validation validation = new Validation();
+        GuestMode guestMode = new GuestMode();
+        RateLimit rateLimit = new RateLimit(1_000);
+        Metrics metrics = new Metrics();
+        Journal journal = new Journal();
+        controller.setCommandPipeline(CommandPipeline.of(validation, guestMode, rateLimit));
+        controller.addControllerListener(metrics);
+        controller.addControllerListener(journal);
+
+        // ===== REFUSING COMMANDS =====
+        System.out.println("\nStep 1: Commands through the pipeline\n");
+        controller.executeCommand(new TurnOnCommand(light));
+        controller.executeCommand(new AdjustTemperatureCommand(thermostat, 88)); // Out of the safe range
+        guestMode.enabled = true;
+        controller.executeCommand(new AdjustTemperatureCommand(thermostat, 71)); // Guests can't
+        guestMode.enabled = false;
+        controller.executeCommand(new AdjustTemperatureCommand(thermostat, 71));
+        System.out.println("\n  Metrics: " + metrics.accepted + " run; journal: " + journal.entries + " entries, last: " +
+                           journal.last.getDescription());
+
+        // ===== COST OF THE CHAIN =====
+        System.out.println("\nStep 2: The three interceptors alone (" + CHAIN_CALLS + " calls)\n");
+        CommandPipeline compiled = controller.getCommandPipeline();
+        CommandPipeline loop = CommandPipeline.of(new Looping(compiled.getInterceptors()));
+        CommandPipeline[] pipelines = {CommandPipeline.EMPTY, compiled, loop};
+        Command command = new NoOp();
+        rateLimit.perSecond = Long.MAX_VALUE;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Keep device timers out of the table
+        long refusals = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            double[] nanos = new double[pipelines.length];
+            for (int p = 0; p < pipelines.length; p++) {
+                CommandPipeline pipeline = pipelines[p];
+                long started = System.nanoTime();
+                for (int i = 0; i < CHAIN_CALLS; i++) {
+                    if (pipeline.before(command) != CommandPipeline.ACCEPTED) {
+                        refusals++;
+                    }
+                }
+                nanos[p] = (System.nanoTime() - started) / (double) CHAIN_CALLS;
+            }
+            console.printf("  round %d: no interceptors %5.2f ns, compiled pipeline %5.2f ns, loop %5.2f ns%n",
+                           round, nanos[0], nanos[1], nanos[2]);
+        }
+        console.println("  (" + refusals + " refused; the first round includes JIT warm-up)");
+
+        // ===== COST IN CONTEXT =====
+        console.println("\nStep 3: The same chains inside executeCommand (" + COMMANDS + " no-op commands)\n");
+        for (int round = 1; round <= ROUNDS; round++) {
+            double[] nanos = new double[pipelines.length];
+            for (int p = 0; p < pipelines.length; p++) {
+                controller.setCommandPipeline(pipelines[p]);
+                controller.clearHistory();
+                long started = System.nanoTime();
+                for (int i = 0; i < COMMANDS; i++) {
+                    controller.executeCommand(command);
+                }
+                nanos[p] = (System.nanoTime() - started) / (double) COMMANDS;
+            }
+            console.printf("  round %d: no interceptors %5.1f ns, compiled pipeline %5.1f ns, loop %5.1f ns%n",
+                           round, nanos[0], nanos[1], nanos[2]);
+        }
+        controller.setCommandPipeline(compiled);
+        controller.clearHistory();
+        System.setOut(console);
+        System.out.println("  (" + metrics.accepted + " commands counted; the first round includes JIT warm-up)");
+    }
+
+    /**
+     * A command that does nothing, so the timings are the controller's own.
+     */
+    private static class NoOp implements Command {
+        @Override
+        public void execute() {
+        }
+
+        @Override
+        public void undo() {
+        }
+
+        @Override
+        public String getDescription() {
+            return "No-op";
+        }
+    }
+
+    /**
+     * Walks other interceptors in a loop, for comparison.
+     */
+    private static class Looping implements CommandInterceptor {
+        private final List<CommandInterceptor> interceptors;
+
+        Looping(List<CommandInterceptor> interceptors) {
+            this.interceptors = interceptors;
+        }
+
+        @Override
+        public boolean beforeExecute(Command command) {
+            for (CommandInterceptor interceptor : interceptors) {
+                if (!interceptor.beforeExecute(command)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Refuses thermostat targets outside a safe range.
+     */
+    private static class Validation implements CommandInterceptor {
+        @Override
+        public boolean beforeExecute(Command command) {
+            if (command instanceof AdjustTemperatureCommand) {
+                double temp = ((AdjustTemperatureCommand) command).getNewTemp();
+                return temp >= 60 && temp <= 80;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Refuses thermostat changes while guests are in charge.
+     */
+    private static class GuestMode implements CommandInterceptor {
+        volatile boolean enabled;
+
+        @Override
+        public boolean beforeExecute(Command command) {
+            return !(enabled && command instanceof AdjustTemperatureCommand);
+        }
+    }
+
+    /**
+     * Refuses commands beyond a per-second budget.
+     */
+    private static class RateLimit implements CommandInterceptor {
+        long perSecond;
+        long windowStart;
+        long inWindow;
+
+        RateLimit(long perSecond) {
+            this.perSecond = perSecond;
+            this.windowStart = System.nanoTime();
+        }
+
+        @Override
+        public boolean beforeExecute(Command command) {
+            if (++inWindow <= perSecond) {
+                return true;
+            }
+            long now = System.nanoTime(); // Only read the clock once the budget is spent
+            if (now - windowStart < 1_000_000_000L) {
+                return false;
+            }
+            windowStart = now;
+            inWindow = 1;
+            return true;
+        }
+    }
+
+    /**
+     * Counts commands that ran.
+     */
+    private static class Metrics implements ControllerListener {
+        long accepted;
+
+        @Override
+        public void commandExecuted(Command command) {
+            accepted++;
+        }
+    }
+
+    /**
+     * Remembers the commands that ran.
+     */
+    private static class Journal implements ControllerListener {
+        long entries;
+        Command last;
+
+        @Override
+        public void commandExecuted(Command command) {
+            entries++;
+            last = command;
+        }
+    }
+}
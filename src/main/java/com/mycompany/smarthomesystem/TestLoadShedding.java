@@ -0,0 +1,149 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.CommandScheduler;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.energy.LoadShedder;
+import com.smarthome.structural.EnergyMonitorDecorator;
+import com.smarthome.structural.FanAdapter;
+import com.smarthome.structural.OldFan;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test class to demonstrate demand-response load shedding on a large
+ * site: how long a re-plan takes as the uncontrolled load swings under
+ * a cap, and every device being put back when the cap lifts. Shedding
+ * commands go through the controller's safety lane.
+ */
+public class TestLoadShedding {
+    private static final int LIGHTS = 3_000;
+    private static final int FANS = 1_000;
+    private static final int HEATERS = 200;
+    private static final double HEATER_KW = 2.0;
+    private static final double BUDGET_KW = 300.0;
+    private static final int SWINGS = 200;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("============================================");
+        System.out.println("      LOAD SHEDDING DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Random random = new Random(5);
+        CentralController.resetInstance();
+        CentralController controller = CentralController.getInstance();
+        CommandScheduler scheduler = controller.getCommandScheduler();
+        LoadShedder shedder = new LoadShedder();
+        shedder.setCommandSink(command -> controller.submitCommand(command, CommandScheduler.Lane.SAFETY));
+        List<SmartDevice> devices = new ArrayList<>();
+        for (int i = 0; i < LIGHTS; i++) {
+            Light light = new Light("Light " + i);
+            light.turnOn();
+            light.setBrightness(40 + random.nextInt(61));
+            devices.add(light);
+        }
+        for (int i = 0; i < FANS; i++) {
+            FanAdapter fan = new FanAdapter(new OldFan("Fan " + i));
+            fan.turnOn();
+            fan.setSpeed(1 + random.nextInt(fan.getMaxSpeed()));
+            devices.add(fan);
+        }
+        for (int i = 0; i < HEATERS; i++) {
+            Thermostat heater = new Thermostat("Heater " + i, 70);
+            heater.turnOn();
+            devices.add(new EnergyMonitorDecorator(heater, 0.15, HEATER_KW));
+        }
+        for (SmartDevice device : devices) {
+            shedder.register(device, random.nextInt(LoadShedder.PRIORITY_CRITICAL + 1));
+        }
+        String[] before = statusOf(devices);
+        System.setOut(console);
+
+        System.out.println("Site: " + LIGHTS + " lights, " + FANS + " fans, " + HEATERS + " heaters");
+        System.out.printf("Demand with nothing shed: %.1f kW%n%n", shedder.getDemandKw());
+
+        // ===== CAP =====
+        System.out.println("Step 1: Peak event, budget " + BUDGET_KW + " kW\n");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long t0 = System.nanoTime();
+        shedder.setBudgetKw(BUDGET_KW);
+        scheduler.awaitIdle(10_000);
+        long capNanos = System.nanoTime() - t0;
+        System.setOut(console);
+        System.out.printf("  Planned in %.2f ms, applied in %.2f ms: %.1f kW shed from %d devices%n",
+                          shedder.getLastPlanNanos() / 1e6, capNanos / 1e6, shedder.getShedKw(),
+                          shedder.getShedDevices().size());
+
+        // ===== SWINGS =====
+        System.out.println("\nStep 2: Uncontrolled load swings " + SWINGS + " times under the cap\n");
+        long[] planNanos = new long[SWINGS];
+        long[] callNanos = new long[SWINGS];
+        int overBudget = 0;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        for (int i = 0; i < SWINGS; i++) {
+            double base = random.nextInt(150);
+            t0 = System.nanoTime();
+            shedder.setBaseLoadKw(base);
+            callNanos[i] = System.nanoTime() - t0;
+            planNanos[i] = shedder.getLastPlanNanos();
+            if (shedder.getDeficitKw() > 0) {
+                overBudget++;
+            }
+        }
+        scheduler.awaitIdle(10_000);
+        System.setOut(console);
+        Arrays.sort(planNanos);
+        Arrays.sort(callNanos);
+        System.out.printf("  Plan:            median %.2f ms, worst %.2f ms%n",
+                          planNanos[SWINGS / 2] / 1e6, planNanos[SWINGS - 1] / 1e6);
+        System.out.printf("  Plan and queue:  median %.2f ms, worst %.2f ms%n",
+                          callNanos[SWINGS / 2] / 1e6, callNanos[SWINGS - 1] / 1e6);
+        System.out.println("  Swings the shedder could not cover: " + overBudget);
+
+        // ===== USER CHANGE =====
+        System.out.println("\nStep 3: Someone turns a light up to full during the event\n");
+        Light overridden = (Light) devices.get(0);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        overridden.setBrightness(100);
+        scheduler.awaitIdle(10_000);
+        System.setOut(console);
+        System.out.printf("  %s re-planned in %.2f ms, now %.1f kW shed%n", overridden.getName(),
+                          shedder.getLastPlanNanos() / 1e6, shedder.getShedKw());
+
+        // ===== LIFT =====
+        System.out.println("\nStep 4: Peak event over\n");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        shedder.setBaseLoadKw(0);
+        shedder.liftBudget();
+        scheduler.awaitIdle(10_000);
+        System.setOut(console);
+        String[] after = statusOf(devices);
+        // The overridden light should come back at the level it was turned up to
+        int restored = overridden.isOn() && overridden.getBrightness() == 100 ? 1 : 0;
+        for (int i = 1; i < devices.size(); i++) {
+            if (before[i].equals(after[i])) {
+                restored++;
+            }
+        }
+        System.out.println("  Devices back where they were: " + restored + " of " + devices.size());
+        System.out.println("  Still shed: " + shedder.getShedDevices().size());
+        System.out.println("  Commands run in the safety lane: " +
+                           scheduler.getExecutedCount(CommandScheduler.Lane.SAFETY));
+    }
+
+    private static String[] statusOf(List<SmartDevice> devices) {
+        String[] status = new String[devices.size()];
+        for (int i = 0; i < status.length; i++) {
+            status[i] = devices.get(i).getStatus();
+        }
+        return status;
+    }
+}
@@ -0,0 +1,94 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.PresenceEstimator;
+import com.smarthome.behavioral.PresenceMonitor;
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.Co2Sensor;
+import com.smarthome.devices.ContactSensor;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.MotionSensor;
+import com.smarthome.structural.Room;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class to demonstrate presence inference: several weak sensors
+ * adding up to an occupied room, the room going vacant as evidence
+ * fades, and sensors staying armed through whole-room "off" sweeps.
+ */
+public class TestPresence {
+    private static final long HALF_LIFE_MILLIS = 60_000;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("      PRESENCE INFERENCE DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        CentralController.resetInstance();
+        CentralController controller = CentralController.getInstance();
+        AtomicLong now = new AtomicLong(1_000_000);
+        PresenceMonitor presence = new PresenceMonitor(HALF_LIFE_MILLIS, now::get);
+
+        Room study = new Room("Study");
+        MotionSensor motion = new MotionSensor("Study Motion");
+        ContactSensor door = new ContactSensor("Study Door");
+        Co2Sensor co2 = new Co2Sensor("Study CO2");
+        Light desk = new Light("Desk Lamp");
+        study.addDevice(motion);
+        study.addDevice(door);
+        study.addDevice(co2);
+        study.addDevice(desk);
+        controller.addDevice(motion);
+        controller.addDevice(door);
+        controller.addDevice(co2);
+        controller.addDevice(desk);
+        presence.trackRoom(study);
+
+        // ===== FUSION =====
+        System.out.println("\nStep 1: Weak evidence adds up\n");
+        co2.setPpm(900);
+        report(presence, study);
+        now.addAndGet(5_000);
+        door.setOpen(true);
+        report(presence, study);
+        now.addAndGet(2_000);
+        motion.detectMotion();
+        report(presence, study);
+
+        // ===== DECAY =====
+        System.out.println("\nStep 2: No events for a few minutes\n");
+        now.addAndGet(4 * HALF_LIFE_MILLIS);
+        presence.refresh();
+        report(presence, study);
+
+        // ===== SWEEPS =====
+        System.out.println("\nStep 3: Bulk 'off' sweeps leave the sensors armed\n");
+        study.turnOff();
+        controller.turnOffAllDevices();
+        System.out.println();
+        System.out.println("  " + motion.getStatus() + " (on: " + motion.isOn() + ")");
+        now.addAndGet(1_000);
+        motion.detectMotion();
+        report(presence, study);
+
+        // ===== DISARM =====
+        System.out.println("\nStep 4: A disarmed sensor ignores readings\n");
+        now.addAndGet(4 * HALF_LIFE_MILLIS);
+        presence.refresh();
+        motion.disarm();
+        long events = motion.getEventCount();
+        motion.detectMotion();
+        System.out.println("  Motion events recorded while disarmed: " + (motion.getEventCount() - events));
+        report(presence, study);
+        motion.arm();
+        motion.detectMotion();
+        report(presence, study);
+
+        System.out.println("\nRooms changed since last poll: " + presence.pollChanges().size());
+    }
+
+    private static void report(PresenceMonitor presence, Room room) {
+        PresenceEstimator estimator = presence.getEstimator(room);
+        System.out.printf("  %s: %s, score %.2f%n", room.getName(),
+                          estimator.isOccupied() ? "OCCUPIED" : "VACANT", estimator.getScore());
+    }
+}
@@ -0,0 +1,167 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.AdjustBrightnessCommand;
+import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.ManualControl;
+import com.smarthome.behavioral.TurnOffCommand;
+import com.smarthome.behavioral.TurnOnCommand;
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Speaker;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.replication.ReplicationLeader;
+import com.smarthome.replication.StandbyController;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.DeviceIndex;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class to demonstrate hot-standby replication: a standby follows
+ * the leader's journal over loopback and takes over when the leader
+ * goes away.
+ */
+public class TestReplication {
+    private static final int LIGHTS = 1_000;
+    private static final int COMMANDS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("============================================");
+        System.out.println("   HOT-STANDBY REPLICATION DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        CentralController leaderController = CentralController.getInstance();
+        DeviceFactory factory = new DeviceFactory();
+        leaderController.addDevices(factory.buildDevices(
+            new DeviceSpec("light", "Light #").addDecorator("energy").setParam("watts", "9"), LIGHTS));
+        leaderController.addDevices(factory.buildDevices(
+            new DeviceSpec("thermostat", "Hall Thermostat").setParam("temp", "68"), 1));
+        leaderController.addDevices(factory.buildDevices(new DeviceSpec("speaker", "Kitchen Speaker"), 1));
+        leaderController.setControlStrategy(new ManualControl());
+        List<SmartDevice> lights = leaderController.getAllDevices().subList(0, LIGHTS);
+
+        System.out.println("\nStep 1: executeCommand cost without replication");
+        double baseline = measure(leaderController, lights);
+        System.out.printf("  %.0f ns per command%n", baseline);
+
+        System.out.println("\nStep 2: start the leader and a standby");
+        ReplicationLeader leader = new ReplicationLeader(leaderController, 0);
+        leader.start();
+        CentralController standbyController = CentralController.createForHome("standby", DeviceIndex.newInstance());
+        StandbyController standby = new StandbyController(standbyController, "127.0.0.1", leader.getPort(),
+                                                          StandbyController.DEFAULT_TAKEOVER_TIMEOUT_MS);
+        standby.start();
+        awaitCaughtUp(leader, standby);
+        compare(leaderController, standbyController);
+
+        System.out.println("\nStep 3: executeCommand cost while replicating");
+        double replicated = measure(leaderController, lights);
+        System.out.printf("  %.0f ns per command (%.0f ns without replication)%n", replicated, baseline);
+        System.out.println("  (the standby replays the same commands in this JVM, sharing " +
+                           Runtime.getRuntime().availableProcessors() + " CPU(s) with the leader)");
+        awaitCaughtUp(leader, standby);
+        compare(leaderController, standbyController);
+
+        System.out.println("\nStep 4: undo, music and a new temperature reading on the leader");
+        leaderController.undoLastCommand();
+        leaderController.undoLastCommand();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ((Speaker) leaderController.getDevice("Kitchen Speaker")).play("Evening Jazz");
+        ((Thermostat) leaderController.getDevice("Hall Thermostat")).setCurrentTemp(66.5);
+        System.setOut(console);
+        awaitCaughtUp(leader, standby);
+        compare(leaderController, standbyController);
+
+        System.out.println("\nStep 5: the leader goes away");
+        long stopped = System.nanoTime();
+        leader.stop();
+        if (standby.awaitTakeover(2, TimeUnit.SECONDS)) {
+            System.out.printf("  Standby took over in %.0f ms%n", (System.nanoTime() - stopped) / 1e6);
+        } else {
+            System.out.println("  Standby did not take over");
+        }
+
+        System.out.println("\nStep 6: the standby carries on, with the same undo history");
+        SmartDevice light = standbyController.getDevice("Light 1");
+        standbyController.executeCommand(new TurnOnCommand(light));
+        standbyController.undoLastCommand();
+        System.out.println("  History size on standby: " + standbyController.getHistorySize());
+        System.out.println("  Commands it could not apply: " + standby.getFailedEntries());
+    }
+
+    /**
+     * Runs commands through a controller with output muted and returns
+     * the average cost per {@code executeCommand}.
+     */
+    private static double measure(CentralController controller, List<SmartDevice> lights) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long started = System.nanoTime();
+            for (int i = 0; i < COMMANDS; i++) {
+                SmartDevice device = lights.get(i % lights.size());
+                Command command;
+                switch (i % 3) {
+                    case 0: command = new TurnOnCommand(device); break;
+                    case 1: command = new AdjustBrightnessCommand(unwrap(device), 10 + i % 90); break;
+                    default: command = new TurnOffCommand(device); break;
+                }
+                controller.executeCommand(command);
+            }
+            return (System.nanoTime() - started) / (double) COMMANDS;
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static Light unwrap(SmartDevice device) {
+        return (Light) DeviceDecorator.unwrap(device);
+    }
+
+    private static void awaitCaughtUp(ReplicationLeader leader, StandbyController standby)
+            throws InterruptedException {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long started = System.nanoTime();
+            while (leader.getPendingCount() > 0 || leader.getFollowerCount() == 0 ||
+                   standby.getAppliedSequence() != leader.getShippedSequence()) {
+                Thread.sleep(5);
+            }
+            console.printf("  Standby caught up at sequence %d (waited %.0f ms)%n",
+                           standby.getAppliedSequence(), (System.nanoTime() - started) / 1e6);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static void compare(CentralController leader, CentralController standby) {
+        System.out.println("  Leader : " + summary(leader));
+        System.out.println("  Standby: " + summary(standby));
+    }
+
+    private static String summary(CentralController controller) {
+        int on = 0;
+        int brightness = 0;
+        Speaker speaker = (Speaker) controller.getDevice("Kitchen Speaker");
+        Thermostat thermostat = (Thermostat) controller.getDevice("Hall Thermostat");
+        for (SmartDevice device : controller.getAllDevices()) {
+            if (device.isOn()) {
+                on++;
+            }
+            if (device.getName().startsWith("Light ")) {
+                brightness += unwrap(device).getBrightness();
+            }
+        }
+        return controller.getDeviceCount() + " devices, " + on + " on, brightness sum " + brightness +
+               ", " + controller.getHistorySize() + " commands in history, strategy " +
+               controller.getControlStrategy().getStrategyName() + ", playing " +
+               speaker.getCurrentlyPlaying() + ", hall at " + thermostat.getCurrentTemp() + "°F";
+    }
+}
@@ -0,0 +1,145 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.DeviceCondition;
+import com.smarthome.behavioral.Rule;
+import com.smarthome.behavioral.RuleEngine;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Speaker;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.structural.Room;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test class to demonstrate the rule engine: rules firing on device and
+ * room changes, removing rules and devices, and how many condition
+ * tests a change costs as the rule set grows.
+ */
+public class TestRules {
+    private static final int ROOMS = 100;
+    private static final int LIGHTS_PER_ROOM = 10;
+    private static final int THERMOSTATS = 200;
+    private static final int SPEAKERS = 200;
+    private static final int CHANGES = 20_000;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("      RULE ENGINE DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        // ===== FIRING =====
+        System.out.println("Step 1: Rules fire as devices and rooms change\n");
+        PrintStream console = System.out;
+        RuleEngine engine = new RuleEngine();
+        Room nursery = new Room("Nursery");
+        Light nightLight = new Light("Night Light");
+        Light hallLight = new Light("Hall Light");
+        nursery.addDevice(nightLight);
+        engine.watchRoom(nursery);
+        Rule soft = new Rule("Soft nursery lights")
+            .when(DeviceCondition.ofType(Light.class))
+            .when(DeviceCondition.inRoom(nursery))
+            .when(DeviceCondition.isOn())
+            .then((device, commands) -> commands.setBrightness((Light) device, 30));
+        engine.addRule(soft);
+        engine.insert(nightLight);
+        engine.insert(hallLight);
+
+        System.out.println("\n  > Night light switched on");
+        nightLight.turnOn();
+        System.out.println("\n  > Hall light (on) carried into the nursery");
+        hallLight.turnOn();
+        nursery.addDevice(hallLight);
+        System.out.println("\n  > Rule removed, night light switched off and on again");
+        engine.removeRule(soft);
+        nightLight.turnOff();
+        nightLight.turnOn();
+        System.out.println("  Night light brightness: " + nightLight.getBrightness() + "% (rule no longer applies)");
+
+        // ===== COST =====
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        RuleEngine large = new RuleEngine();
+        List<SmartDevice> devices = new ArrayList<>();
+        List<Light> lights = new ArrayList<>();
+        List<Thermostat> thermostats = new ArrayList<>();
+        for (int r = 0; r < ROOMS; r++) {
+            Room room = new Room("Room " + r);
+            for (int i = 0; i < LIGHTS_PER_ROOM; i++) {
+                Light light = new Light("Light " + r + "-" + i);
+                room.addDevice(light);
+                lights.add(light);
+            }
+            large.watchRoom(room);
+            // One rule per room: lights there go to a room-specific level when switched on
+            int level = 20 + r % 60;
+            large.addRule(new Rule("Room " + r + " level")
+                .when(DeviceCondition.ofType(Light.class))
+                .when(DeviceCondition.inRoom(room))
+                .when(DeviceCondition.isOn())
+                .then((device, commands) -> commands.setBrightness((Light) device, level)));
+        }
+        for (int i = 0; i < THERMOSTATS; i++) {
+            thermostats.add(new Thermostat("Thermostat " + i, 68));
+        }
+        for (int i = 0; i < SPEAKERS; i++) {
+            devices.add(new Speaker("Speaker " + i));
+        }
+        devices.addAll(lights);
+        devices.addAll(thermostats);
+        // Many thermostat-only conditions: "target above X" for a range of X
+        for (int t = 60; t < 80; t++) {
+            double threshold = t;
+            large.addRule(new Rule("Above " + t)
+                .when(DeviceCondition.ofType(Thermostat.class))
+                .when(new DeviceCondition("target>" + t, d -> ((Thermostat) d).getTargetTemp() > threshold))
+                .between(LocalTime.of(0, 0), LocalTime.of(0, 1)));
+        }
+        for (SmartDevice device : devices) {
+            large.insert(device);
+        }
+        System.setOut(console);
+
+        System.out.println("\nStep 2: Cost per change with " + large.getRuleCount() + " rules and " +
+                           devices.size() + " devices\n");
+        Random random = new Random(3);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long before = large.getConditionTests();
+        for (int i = 0; i < CHANGES; i++) {
+            Light light = lights.get(random.nextInt(lights.size()));
+            if (light.isOn()) {
+                light.turnOff();
+            } else {
+                light.turnOn();
+            }
+        }
+        long lightTests = large.getConditionTests() - before;
+        before = large.getConditionTests();
+        for (int i = 0; i < CHANGES; i++) {
+            thermostats.get(random.nextInt(THERMOSTATS)).setTargetTemp(60 + random.nextInt(20));
+        }
+        long thermostatTests = large.getConditionTests() - before;
+        System.setOut(console);
+        System.out.printf("  Light switched:        %.1f condition tests per change%n", (double) lightTests / CHANGES);
+        System.out.printf("  Thermostat retargeted: %.1f condition tests per change%n",
+                          (double) thermostatTests / CHANGES);
+        System.out.println("  (re-testing every condition node would be " + (ROOMS + 2 + 20 + 1) +
+                           " per change; " + large.getFirings() + " actions fired)");
+
+        // ===== RETRACT =====
+        System.out.println("\nStep 3: A retracted device is no longer matched\n");
+        Light retired = lights.get(0);
+        large.retract(retired);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long firings = large.getFirings();
+        retired.turnOff();
+        retired.turnOn();
+        System.setOut(console);
+        System.out.println("  Actions fired for " + retired.getName() + " after retract: " +
+                           (large.getFirings() - firings));
+    }
+}
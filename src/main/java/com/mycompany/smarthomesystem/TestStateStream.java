@@ -0,0 +1,232 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.Light;
+import com.smarthome.network.StateStreamPublisher;
+import com.smarthome.network.StateStreamServer;
+import com.smarthome.structural.Room;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class to demonstrate the TCP state stream: room filters, a
+ * misspelled room being refused, resuming after a reconnect, devices
+ * being added and removed, and stalled dashboards being dropped while a
+ * live one keeps receiving.
+ */
+public class TestStateStream {
+    private static final int LIGHTS = 2_000;
+    private static final int STALLED_CLIENTS = 3;
+    private static final long MAX_LAG_MILLIS = 1_000;
+    private static final long LOAD_MILLIS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("============================================");
+        System.out.println("      STATE STREAM DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        CentralController controller = CentralController.getInstance();
+        Room kitchen = new Room("Kitchen");
+        Light kitchenLight = new Light("Kitchen Light");
+        Light counterLight = new Light("Counter Light");
+        kitchen.addDevice(kitchenLight);
+        kitchen.addDevice(counterLight);
+        controller.addDevice(kitchenLight);
+        controller.addDevice(counterLight);
+        List<Light> lights = new ArrayList<>();
+        for (int i = 0; i < LIGHTS; i++) {
+            Light light = new Light("Strip " + i);
+            lights.add(light);
+            controller.addDevice(light);
+        }
+
+        StateStreamPublisher publisher = new StateStreamPublisher();
+        publisher.attach(controller);
+        publisher.registerRoom(kitchen);
+        StateStreamServer server = new StateStreamServer(publisher, 0, MAX_LAG_MILLIS);
+        server.start();
+        System.setOut(console);
+
+        // ===== FILTERS =====
+        System.out.println("Step 1: Room filters\n");
+        try (Client client = new Client(server.getPort(), "rooms=Kitchen")) {
+            System.out.println("  rooms=Kitchen -> " + client.readLine());
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            kitchenLight.setBrightness(40);
+            lights.get(0).setBrightness(40); // Not in the kitchen
+            counterLight.setBrightness(70);
+            System.setOut(console);
+            for (int i = 0; i < 4; i++) {
+                System.out.println("    " + client.readLine());
+            }
+        }
+        try (Client client = new Client(server.getPort(), "rooms=Kitchn")) {
+            System.out.println("  rooms=Kitchn -> " + client.readLine());
+        }
+
+        // ===== RESUME =====
+        System.out.println("\nStep 2: Resume after a reconnect\n");
+        long seen;
+        try (Client client = new Client(server.getPort(), "devices=Kitchen Light")) {
+            client.readLine();
+            client.readLine();
+            seen = publisher.getLastSequence();
+        }
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        kitchenLight.setBrightness(55);
+        kitchenLight.setBrightness(65); // Missed while away: arrives merged with the one before
+        System.setOut(console);
+        try (Client client = new Client(server.getPort(), "devices=Kitchen Light\tfrom=" + seen)) {
+            System.out.println("  from=" + seen + " -> " + client.readLine());
+            System.out.println("    " + client.readLine());
+        }
+
+        // ===== ADD AND REMOVE =====
+        System.out.println("\nStep 3: A device is added, then removed\n");
+        try (Client client = new Client(server.getPort(), "devices=Porch Light")) {
+            System.out.println("  devices=Porch Light -> " + client.readLine());
+            Light porchLight = new Light("Porch Light");
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            controller.addDevice(porchLight);
+            porchLight.setBrightness(20);
+            controller.removeDevice(porchLight);
+            System.setOut(console);
+            String line;
+            do { // The brightness change may arrive merged into the added device's event
+                line = client.readLine();
+                System.out.println("    " + line);
+            } while (line != null && !line.startsWith("R"));
+        }
+
+        // ===== BACKPRESSURE =====
+        System.out.println("\nStep 4: " + STALLED_CLIENTS + " dashboards stop reading while one keeps up (lag limit " +
+                           MAX_LAG_MILLIS + " ms)\n");
+        List<Client> stalled = new ArrayList<>();
+        for (int i = 0; i < STALLED_CLIENTS; i++) {
+            stalled.add(new Client(server.getPort(), ""));
+        }
+        Client live = new Client(server.getPort(), "");
+        AtomicLong lines = new AtomicLong();
+        AtomicLong longestGap = new AtomicLong();
+        AtomicLong backwards = new AtomicLong();
+        AtomicBoolean liveDropped = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            long last = System.nanoTime();
+            long lastSequence = 0;
+            try {
+                String line;
+                while ((line = live.readLine()) != null) {
+                    String[] parts = line.split("\t", 3);
+                    if (parts.length > 1 && !parts[0].equals("OK")) {
+                        long sequence = Long.parseLong(parts[1]);
+                        if (sequence < lastSequence) {
+                            backwards.incrementAndGet(); // A client resuming from here would miss changes
+                        }
+                        lastSequence = Math.max(lastSequence, sequence);
+                    }
+                    long now = System.nanoTime();
+                    longestGap.accumulateAndGet(now - last, Math::max);
+                    last = now;
+                    lines.incrementAndGet();
+                }
+            } catch (IOException e) {
+                // Closed at the end
+            }
+            liveDropped.set(true);
+        });
+        reader.start();
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long deadline = System.currentTimeMillis() + LOAD_MILLIS;
+        int round = 0;
+        while (System.currentTimeMillis() < deadline) {
+            for (Light light : lights) {
+                light.setBrightness(round % 100);
+            }
+            round++;
+        }
+        System.setOut(console);
+        Thread.sleep(MAX_LAG_MILLIS);
+
+        int droppedStalled = 0;
+        for (Client client : stalled) {
+            if (client.isDropped()) {
+                droppedStalled++;
+            }
+        }
+        System.out.println("  " + round * LIGHTS + " changes published in " + LOAD_MILLIS / 1000 + " s");
+        System.out.println("  Stalled dashboards dropped: " + droppedStalled + " of " + STALLED_CLIENTS);
+        System.out.println("  Live dashboard: " + lines.get() + " lines, longest wait between lines " +
+                           longestGap.get() / 1_000_000 + " ms, still connected: " + !liveDropped.get());
+        System.out.println("  Times its sequence went backwards: " + backwards.get());
+
+        live.close();
+        for (Client client : stalled) {
+            client.close();
+        }
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        server.stop();
+        publisher.shutdown();
+        System.setOut(console);
+    }
+
+    /**
+     * A dashboard connection speaking the line protocol.
+     */
+    private static class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+
+        Client(int port, String options) throws IOException {
+            socket = new Socket();
+            socket.setReceiveBufferSize(4096); // Small, so a client that stops reading stalls quickly
+            socket.connect(new InetSocketAddress("localhost", port));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write("SUBSCRIBE" + (options.isEmpty() ? "" : "\t" + options) + "\n");
+            out.flush();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        String readLine() throws IOException {
+            return in.readLine();
+        }
+
+        /**
+         * Checks whether the server closed the connection, reading
+         * through anything it had sent first.
+         */
+        boolean isDropped() {
+            try {
+                socket.setSoTimeout(200);
+                char[] skip = new char[65536];
+                while (true) {
+                    if (in.read(skip) < 0) {
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                return !(e instanceof SocketTimeoutException);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.runtime.Home;
+import com.smarthome.runtime.HomeRuntime;
+import com.smarthome.structural.DeviceIndex;
+import com.smarthome.structural.Room;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class to demonstrate many homes sharing one runtime, each with
+ * its own controller and device index, and fair scheduling between them.
+ */
+public class TestTenancy {
+    private static final int HOMES = 10_000;
+    private static final int FLOOD_TASKS = 200_000;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("   MULTI-HOME RUNTIME DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        HomeRuntime runtime = new HomeRuntime();
+        DeviceFactory factory = new DeviceFactory();
+        DeviceSpec lights = new DeviceSpec("light", "Light #");
+        DeviceSpec thermostat = new DeviceSpec("thermostat", "Thermostat").setParam("temp", "68");
+
+        System.out.println("Step 1: Create " + HOMES + " homes with 4 to 6 devices each\n");
+        long started = System.nanoTime();
+        List<CompletableFuture<Void>> setup = new ArrayList<>();
+        BulkProvisioning.begin();
+        try {
+            for (int i = 0; i < HOMES; i++) {
+                Home home = runtime.createHome("home-" + i);
+                int lightCount = 3 + i % 3;
+                setup.add(home.submit(() -> {
+                    BulkProvisioning.begin();
+                    try {
+                        // getInstance() is this home's controller and index here
+                        Room room = new Room("Main Room");
+                        room.addDevices(factory.buildDevices(lights, lightCount));
+                        room.addDevices(factory.buildDevices(thermostat, 1));
+                        CentralController.getInstance().addDevices(room.getDevices());
+                    } finally {
+                        BulkProvisioning.end();
+                    }
+                }));
+            }
+        } finally {
+            BulkProvisioning.end();
+        }
+        CompletableFuture.allOf(setup.toArray(new CompletableFuture<?>[0])).join();
+        System.out.printf("  Created in %.0f ms%n%n", (System.nanoTime() - started) / 1e6);
+
+        System.out.println("Step 2: Each home only sees its own devices\n");
+        for (int i = 0; i < 3; i++) {
+            Home home = runtime.getHome("home-" + i);
+            int count = home.supply(() -> DeviceIndex.getInstance().select().ofType(Light.class).count()).join();
+            System.out.println("  " + home.getId() + ": " + count + " lights, " +
+                               home.getController().getDeviceCount() + " devices");
+        }
+        System.out.println("  Shared controller: " + CentralController.getInstance().getDeviceCount() + " devices\n");
+
+        System.out.println("Step 3: home-0 floods its queue; everyone else still gets a turn\n");
+        Home noisy = runtime.getHome("home-0");
+        for (int i = 0; i < FLOOD_TASKS; i++) {
+            noisy.execute(() -> Math.sqrt(System.nanoTime()));
+        }
+        started = System.nanoTime();
+        List<CompletableFuture<Void>> others = new ArrayList<>();
+        for (int i = 1; i < HOMES; i++) {
+            Home home = runtime.getHome("home-" + i);
+            others.add(home.submit(() -> {
+                for (SmartDevice device : CentralController.getInstance().getAllDevices()) {
+                    device.isOn();
+                }
+            }));
+        }
+        CompletableFuture.allOf(others.toArray(new CompletableFuture<?>[0])).join();
+        System.out.printf("  %d quiet homes served in %.0f ms, home-0 still has %d tasks queued%n",
+                          HOMES - 1, (System.nanoTime() - started) / 1e6, noisy.getPendingTasks());
+
+        runtime.displayStatus();
+        runtime.shutdown();
+    }
+}
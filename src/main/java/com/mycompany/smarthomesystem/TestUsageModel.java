@@ -0,0 +1,99 @@
+package com.mycompany.smarthomesystem;
+
+import com.smarthome.behavioral.UsageModel;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+/**
+ * Test class to demonstrate the learned usage model at scale: learning
+ * four weeks of routines for 100,000 devices, then predicting every
+ * device for one hour well inside a 1 s tick.
+ */
+public class TestUsageModel {
+    private static final int DEVICES = 100_000;
+    private static final int WEEKS = 4;
+    private static final double ROUTINE_SHARE = 0.9; // Days a device keeps to its routine
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    // Monday 2026-01-05 00:00 UTC
+    private static final long START_MILLIS = 1_767_571_200_000L;
+    private static final int PREDICTION_ROUNDS = 20;
+
+    public static void main(String[] args) {
+        System.out.println("============================================");
+        System.out.println("      USAGE MODEL DEMONSTRATION");
+        System.out.println("============================================\n");
+
+        UsageModel model = new UsageModel(ZoneOffset.UTC);
+        for (int d = 0; d < DEVICES; d++) {
+            model.addDevice(false);
+        }
+
+        // ===== LEARNING =====
+        System.out.println("Step 1: Learning " + WEEKS + " weeks of on/off changes for " + DEVICES + " devices\n");
+        Random random = new Random(11);
+        long begin = System.nanoTime();
+        for (int day = 0; day < WEEKS * 7; day++) {
+            long dayStart = START_MILLIS + day * DAY_MILLIS;
+            for (int d = 0; d < DEVICES; d++) {
+                int onHour = routineOnHour(d);
+                int hours = routineHours(d);
+                if (random.nextDouble() >= ROUTINE_SHARE) {
+                    onHour = random.nextInt(24 - hours);
+                }
+                long on = dayStart + onHour * HOUR_MILLIS + random.nextInt(30) * 60_000L;
+                model.observe(d, true, on);
+                model.observe(d, false, on + hours * HOUR_MILLIS);
+            }
+        }
+        long learnNanos = System.nanoTime() - begin;
+        System.out.printf("  %,d updates in %d ms (%.0f ns per update)%n", model.getUpdateCount(),
+                          learnNanos / 1_000_000, (double) learnNanos / model.getUpdateCount());
+        System.out.printf("  Accuracy of confident predictions made while learning: %.1f%% of %,d%n",
+                          model.getAccuracy() * 100, model.getPredictionCount());
+        System.out.printf("  Model footprint: %.1f MB%n", model.getFootprintBytes() / 1_048_576.0);
+
+        // ===== PREDICTION =====
+        System.out.println("\nStep 2: Predicting every device for the next hour\n");
+        byte[] out = new byte[model.getDeviceCount()];
+        long at = START_MILLIS + WEEKS * 7 * DAY_MILLIS + 9 * HOUR_MILLIS + 15 * 60_000L;
+        long worst = 0;
+        for (int round = 0; round < PREDICTION_ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            model.predictAll(at, out);
+            worst = Math.max(worst, System.nanoTime() - t0);
+        }
+        int predictedOn = 0;
+        int predictedOff = 0;
+        int unknown = 0;
+        int agrees = 0;
+        for (int d = 0; d < DEVICES; d++) {
+            boolean routineOn = routineOnHour(d) <= 9 && 9 < routineOnHour(d) + routineHours(d);
+            if (out[d] == UsageModel.PREDICT_ON) {
+                predictedOn++;
+                agrees += routineOn ? 1 : 0;
+            } else if (out[d] == UsageModel.PREDICT_OFF) {
+                predictedOff++;
+                agrees += routineOn ? 0 : 1;
+            } else {
+                unknown++;
+            }
+        }
+        System.out.printf("  Slowest of %d passes over %,d devices: %.2f ms (tick budget 1000 ms)%n",
+                          PREDICTION_ROUNDS, DEVICES, worst / 1_000_000.0);
+        System.out.printf("  Predicted ON: %,d  OFF: %,d  unknown (too few changes at this hour): %,d%n",
+                          predictedOn, predictedOff, unknown);
+        System.out.printf("  Matching each device's routine at 09:15: %.1f%%%n",
+                          100.0 * agrees / Math.max(1, predictedOn + predictedOff));
+    }
+
+    /** Hour a device usually comes on, spread over the day. */
+    private static int routineOnHour(int device) {
+        return (device * 7) % 20;
+    }
+
+    /** How many hours a device usually stays on. */
+    private static int routineHours(int device) {
+        return 1 + device % 4;
+    }
+}
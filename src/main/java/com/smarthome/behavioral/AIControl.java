@@ -1,11 +1,17 @@
 package com.smarthome.behavioral;
 
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
 import com.smarthome.devices.SmartDevice;
-import com.smarthome.devices.Light;
-import com.smarthome.devices.Thermostat;
+import com.smarthome.devices.OccupancySensor;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.structural.DeviceIndex;
+import com.smarthome.structural.Room;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * AI-powered control strategy.
@@ -17,10 +23,21 @@ import java.util.Random;
  * 
  * Supports both intelligent analysis and random automation modes.
  * 
+ * Occupancy comes from motion, contact and CO2 sensors through a
+ * {@link PresenceMonitor}. Each run only acts on rooms whose occupancy
+ * changed since the previous run.
+ * 
+ * Random automation sends its switches through the command sink, which
+ * may delay, merge or drop them. A switch is only reported, on the
+ * console and to the {@link AutomationCallback}, once the device is seen
+ * to change.
+ * 
  * @author dwayne headley
  * @version 2.0
  */
 public class AIControl implements ControlStrategy {
+    // How sure the usage model must be before acting on a prediction
+    private static final double PREDICTION_CONFIDENCE = 0.75;
     
     /**
      * Callback interface for device state changes during automation.
@@ -30,25 +47,47 @@ public class AIControl implements ControlStrategy {
     }
     
     private Random random;
-    private int occupancyLevel; // 0-100 (simulated occupancy detection)
+    private PresenceMonitor presenceMonitor;
+    private UsageModel usageModel;
     private Thread aiThread;
-    private boolean isRunning;
+    private volatile boolean isRunning; // Read by the automation thread
     private List<SmartDevice> controlledDevices;
-    private AutomationCallback callback;
+    private volatile AutomationCallback callback;
+    private volatile CommandSink commands;
+    private final Map<SmartDevice, Boolean> requestedPower; // Keyed by innermost device; switches not yet seen
+    private final Observer powerWatcher;
     
     /**
      * Creates an AI control strategy.
      */
     public AIControl() {
         this.random = new Random();
-        this.occupancyLevel = random.nextInt(101);
+        this.presenceMonitor = new PresenceMonitor();
+        this.usageModel = new UsageModel();
         this.isRunning = false;
         this.aiThread = null;
         this.callback = null;
+        this.commands = CommandSink.DIRECT;
+        this.requestedPower = new ConcurrentHashMap<>();
+        this.powerWatcher = this::powerChanged;
+    }
+    
+    /**
+     * Sends this strategy's device changes to the controller's AI lane,
+     * through its actuation limiter.
+     * 
+     * @param sink Queues commands on the controller
+     */
+    @Override
+    public void setCommandSink(CommandSink sink) {
+        this.commands = sink;
     }
     
     /**
-     * Sets the callback for device state changes.
+     * Sets the callback for device state changes. It is called once a
+     * device has actually switched, on the thread that switched it, so a
+     * GUI callback must hand its work to the Event Dispatch Thread rather
+     * than touch Swing itself.
      * 
      * @param callback The callback to invoke when devices change state
      */
@@ -56,6 +95,33 @@ public class AIControl implements ControlStrategy {
         this.callback = callback;
     }
     
+    /**
+     * Starts following a room's occupancy sensors.
+     * 
+     * @param room The room to track
+     */
+    public void trackRoom(Room room) {
+        presenceMonitor.trackRoom(room);
+    }
+    
+    /**
+     * Gets the presence monitor fed by the tracked rooms' sensors.
+     * 
+     * @return The presence monitor
+     */
+    public PresenceMonitor getPresenceMonitor() {
+        return presenceMonitor;
+    }
+    
+    /**
+     * Gets the usage model learned from device on/off changes.
+     * 
+     * @return The usage model
+     */
+    public UsageModel getUsageModel() {
+        return usageModel;
+    }
+    
     /**
      * AI analyzes environment and makes intelligent decisions.
      * 
@@ -63,6 +129,11 @@ public class AIControl implements ControlStrategy {
      */
     @Override
     public void controlDevices(List<SmartDevice> devices) {
+        for (SmartDevice device : devices) {
+            if (!(DeviceCondition.unwrap(device) instanceof OccupancySensor)) {
+                usageModel.track(device);
+            }
+        }
         System.out.println("[AI MODE] 🤖 Analyzing environment...");
         analyzeEnvironment(devices);
         System.out.println();
@@ -84,6 +155,9 @@ public class AIControl implements ControlStrategy {
         
         this.controlledDevices = devices;
         this.isRunning = true;
+        for (SmartDevice device : devices) {
+            device.addObserver(powerWatcher);
+        }
         
         System.out.println("[AI MODE] Starting Random Device Automation...");
         System.out.println("[AI MODE] Devices will turn on/off randomly every 5 seconds");
@@ -100,18 +174,14 @@ public class AIControl implements ControlStrategy {
                             
                             boolean turnOn = random.nextBoolean();
                             
+                            // Reported by powerChanged once the device switches
+                            if (device.isOn() != turnOn) {
+                                requestedPower.put(DeviceCondition.unwrap(device), turnOn);
+                            }
                             if (turnOn) {
-                                device.turnOn();
-                                System.out.println("[AI MODE] 🟢 " + device.getName() + " turned ON automatically");
-                                if (callback != null) {
-                                    callback.onDeviceStateChanged(device.getName(), true);
-                                }
+                                commands.turnOn(device);
                             } else {
-                                device.turnOff();
-                                System.out.println("[AI MODE] 🔴 " + device.getName() + " turned OFF automatically");
-                                if (callback != null) {
-                                    callback.onDeviceStateChanged(device.getName(), false);
-                                }
+                                commands.turnOff(device);
                             }
                         }
                     }
@@ -150,10 +220,36 @@ public class AIControl implements ControlStrategy {
             }
             aiThread = null;
         }
+        for (SmartDevice device : controlledDevices) {
+            device.removeObserver(powerWatcher);
+        }
+        requestedPower.clear();
         
         System.out.println("[AI MODE] Random automation stopped");
     }
     
+    /**
+     * Reports an automatic switch once the device has made it.
+     * 
+     * @param device The device that changed
+     */
+    private void powerChanged(SmartDevice device) {
+        SmartDevice target = DeviceCondition.unwrap(device);
+        Boolean turnedOn = requestedPower.get(target);
+        if (turnedOn == null || device.isOn() != turnedOn || !requestedPower.remove(target, turnedOn)) {
+            return;
+        }
+        if (turnedOn) {
+            System.out.println("[AI MODE] 🟢 " + device.getName() + " turned ON automatically");
+        } else {
+            System.out.println("[AI MODE] 🔴 " + device.getName() + " turned OFF automatically");
+        }
+        AutomationCallback current = callback;
+        if (current != null) {
+            current.onDeviceStateChanged(device.getName(), turnedOn);
+        }
+    }
+    
     /**
      * Checks if random automation is currently running.
      * 
@@ -168,15 +264,15 @@ public class AIControl implements ControlStrategy {
      */
     private void analyzeEnvironment(List<SmartDevice> devices) {
         LocalTime currentTime = LocalTime.now();
-        int hour = currentTime.getHour();
-        occupancyLevel = random.nextInt(101);
+        presenceMonitor.refresh();
         
         // Simulate outside temperature
         int outsideTemp = 60 + random.nextInt(40); // 60-100°F
         
         System.out.println("  📊 Environment Analysis:");
         System.out.println("     • Time: " + currentTime.format(java.time.format.DateTimeFormatter.ofPattern("HH:mm")));
-        System.out.println("     • Occupancy detected: " + occupancyLevel + "%");
+        System.out.println("     • Occupied rooms: " + presenceMonitor.getOccupiedCount() +
+                         " of " + presenceMonitor.getRoomCount() + " tracked");
         System.out.println("     • Outside temperature: " + outsideTemp + "°F");
         System.out.println("     • Active devices: " + countActiveDevices(devices));
         System.out.println("     • Energy mode: " + (outsideTemp > 80 ? "High usage" : "Normal"));
@@ -189,15 +285,29 @@ public class AIControl implements ControlStrategy {
         LocalTime currentTime = LocalTime.now();
         int hour = currentTime.getHour();
         
-        // Decision 1: Occupancy-based control
-        if (occupancyLevel < 20) {
-            System.out.println("  🤖 Decision: Low occupancy detected");
-            System.out.println("     → Turning off devices in unoccupied rooms");
-            turnOffUnoccupiedRooms(devices);
-        } else if (occupancyLevel > 80) {
-            System.out.println("  🤖 Decision: High occupancy detected");
-            System.out.println("     → Optimizing comfort settings");
-            optimizeForComfort(devices);
+        // Decision 1: Occupancy-based control, only where occupancy changed
+        List<PresenceEstimator> changes = presenceMonitor.pollChanges();
+        if (presenceMonitor.getRoomCount() == 0) {
+            System.out.println("  🤖 Decision: No occupancy sensors tracked");
+            System.out.println("     → Skipping occupancy-based control");
+        } else if (changes.isEmpty()) {
+            System.out.println("  🤖 Decision: Occupancy unchanged");
+            System.out.println("     → Leaving rooms as they are");
+        }
+        for (PresenceEstimator change : changes) {
+            List<SmartDevice> roomDevices = DeviceIndex.getInstance().select()
+                .inRoom(change.getRoom())
+                .within(DeviceIndex.getInstance().bitsOf(devices))
+                .devices();
+            if (change.isOccupied()) {
+                System.out.println("  🤖 Decision: " + change.getRoom().getName() + " is now occupied");
+                System.out.println("     → Optimizing comfort settings");
+                optimizeForComfort(roomDevices);
+            } else {
+                System.out.println("  🤖 Decision: " + change.getRoom().getName() + " is now empty");
+                System.out.println("     → Turning off devices in the room");
+                turnOffUnoccupiedRoom(roomDevices);
+            }
         }
         
         // Decision 2: Time-based adjustments
@@ -210,19 +320,20 @@ public class AIControl implements ControlStrategy {
         // Decision 3: Predictive adjustments
         System.out.println("  🤖 Decision: Predictive comfort adjustment");
         System.out.println("     → Learning from usage patterns");
-        predictiveAdjustment(devices);
+        predictiveAdjustment();
     }
     
     /**
-     * Turns off devices in unoccupied rooms.
+     * Turns off the devices of a room that just became empty.
+     * Sensors stay armed so the room can be detected again.
      */
-    private void turnOffUnoccupiedRooms(List<SmartDevice> devices) {
-        for (SmartDevice device : devices) {
-            // Simulate: randomly mark some rooms as unoccupied
-            if (random.nextBoolean()) {
-                System.out.println("     → " + device.getName() + " turned off (room empty)");
-                device.turnOff();
+    private void turnOffUnoccupiedRoom(List<SmartDevice> roomDevices) {
+        for (SmartDevice device : roomDevices) {
+            if (DeviceCondition.unwrap(device) instanceof OccupancySensor || !device.isOn()) {
+                continue;
             }
+            System.out.println("     → " + device.getName() + " turned off (room empty)");
+            commands.turnOff(device);
         }
     }
     
@@ -231,16 +342,17 @@ public class AIControl implements ControlStrategy {
      */
     private void optimizeForComfort(List<SmartDevice> devices) {
         for (SmartDevice device : devices) {
-            if (device instanceof Light) {
-                Light light = (Light) device;
-                light.turnOn();
-                light.setBrightness(80);
+            Capabilities capabilities = Capabilities.of(device);
+            Dimmable light = capabilities.dimmable();
+            if (light != null) {
+                commands.turnOn(device);
+                commands.setBrightness(light, 80);
                 System.out.println("     → " + device.getName() + " optimized (80% brightness)");
             }
-            if (device instanceof Thermostat) {
-                Thermostat thermostat = (Thermostat) device;
-                thermostat.turnOn();
-                thermostat.setTargetTemp(72);
+            Thermostatic thermostat = capabilities.thermostatic();
+            if (thermostat != null) {
+                commands.turnOn(device);
+                commands.setTargetTemp(thermostat, 72);
                 System.out.println("     → " + device.getName() + " optimized (72°F)");
             }
         }
@@ -251,32 +363,44 @@ public class AIControl implements ControlStrategy {
      */
     private void enableEnergySaving(List<SmartDevice> devices) {
         for (SmartDevice device : devices) {
-            if (device instanceof Light) {
-                Light light = (Light) device;
-                if (light.getBrightness() > 30) {
-                    light.setBrightness(30);
-                    System.out.println("     → " + device.getName() + " dimmed (energy saving)");
-                }
+            Capabilities capabilities = Capabilities.of(device);
+            Dimmable light = capabilities.dimmable();
+            if (light != null && light.getBrightness() > 30) {
+                commands.setBrightness(light, 30);
+                System.out.println("     → " + device.getName() + " dimmed (energy saving)");
             }
-            if (device instanceof Thermostat) {
-                Thermostat thermostat = (Thermostat) device;
-                thermostat.setTargetTemp(68);
+            Thermostatic thermostat = capabilities.thermostatic();
+            if (thermostat != null) {
+                commands.setTargetTemp(thermostat, 68);
                 System.out.println("     → " + device.getName() + " adjusted (68°F - energy saving)");
             }
         }
     }
     
     /**
-     * Makes predictive adjustments based on patterns.
+     * Makes predictive adjustments based on learned usage patterns.
+     * Devices the model is confident should be in the other state for
+     * this hour of the week are switched.
      */
-    private void predictiveAdjustment(List<SmartDevice> devices) {
-        // Simulate AI learning
-        int deviceCount = Math.min(2, devices.size());
-        System.out.println("     → Adjusting " + deviceCount + " devices based on learned preferences");
+    private void predictiveAdjustment() {
+        List<SmartDevice> changes = usageModel.predictChanges(System.currentTimeMillis(), PREDICTION_CONFIDENCE);
+        System.out.println("     → Model: " + usageModel.getUpdateCount() + " changes learned, " +
+                         String.format("%.0f%%", usageModel.getAccuracy() * 100) + " accurate over " +
+                         usageModel.getPredictionCount() + " predictions");
+        if (changes.isEmpty()) {
+            System.out.println("     → No confident predictions for this hour");
+            return;
+        }
         
-        for (int i = 0; i < deviceCount && i < devices.size(); i++) {
-            SmartDevice device = devices.get(i);
-            System.out.println("     → " + device.getName() + " adjusted proactively");
+        for (SmartDevice device : changes) {
+            usageModel.ignoreNextChange(device); // Don't learn from our own guesses
+            if (device.isOn()) {
+                commands.turnOff(device);
+                System.out.println("     → " + device.getName() + " turned off (usually off now)");
+            } else {
+                commands.turnOn(device);
+                System.out.println("     → " + device.getName() + " turned on (usually on now)");
+            }
         }
     }
     
@@ -286,7 +410,7 @@ public class AIControl implements ControlStrategy {
     private int countActiveDevices(List<SmartDevice> devices) {
         int count = 0;
         for (SmartDevice device : devices) {
-            if (device.getStatus().contains("ON")) {
+            if (device.isOn()) {
                 count++;
             }
         }
@@ -0,0 +1,655 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.DeviceTimers;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.FanAdapter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits between fast callers (slider drags, AI loops) and slow hardware,
+ * so each device is written at most a few times a second whatever the
+ * callers send.
+ *
+ * <p>Every device gets a token bucket. A write that finds a token goes
+ * out at once; otherwise it waits as a pending value and goes out when
+ * the next token arrives, on the shared device timer. Pending values are
+ * last-write-wins per property (power, level, target temperature), so a
+ * burst of slider ticks reaches the device as its final value only.
+ * Pending properties are sent in the order they were last set, which
+ * leaves the device exactly as it would be had every call gone straight
+ * through. A level or temperature the device already has is not sent
+ * again.</p>
+ *
+ * <p>Writes leave as commands through a {@link CommandSink}. Given the
+ * controller's sink they land in the undo history and reach listeners
+ * and standbys like any other command; {@link CommandSink#DIRECT} runs
+ * them on the calling thread or the device timer. They are sent outside
+ * the limiter's locks, one device at a time and in order. A write the
+ * sink refuses is sent again next time. A write that had to wait for a
+ * token stands for every value merged into it, so it may go to a second
+ * sink that never drops what it accepts; the controller sends those
+ * with {@code CommandScheduler.submitFinal}, and the rest to the AI
+ * lane, which drops them once they are late.</p>
+ *
+ * <p>A device's bucket is dropped once it has been idle long enough to
+ * refill, so the limiter only holds state for devices written lately.
+ * Limits set with {@link #setLimit} are kept until cleared.</p>
+ *
+ * <p>Legacy fans behind a {@link FanAdapter} get a slower default limit
+ * ({@value #LEGACY_PER_SECOND} per second) than other devices.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * ActuationLimiter limiter = new ActuationLimiter(4, 2,
+ *         command -> controller.submitCommand(command, CommandScheduler.Lane.AI),
+ *         command -> scheduler.submitFinal(command, CommandScheduler.Lane.AI));
+ * for (int value = 0; value <= 100; value++) {
+ *     limiter.setLevel(light, value);  // Light sees a handful of commands, ending at 100
+ * }
+ * limiter.displayStats();
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ActuationLimiter {
+    /** Default writes per second for a device. */
+    public static final double DEFAULT_PER_SECOND = 4;
+    /** Default writes per second for a legacy fan. */
+    public static final double LEGACY_PER_SECOND = 1;
+    /** Default number of writes a device can take back to back. */
+    public static final int DEFAULT_BURST = 2;
+
+    private static final int POWER = 0;
+    private static final int LEVEL = 1;
+    private static final int TEMPERATURE = 2;
+
+    private final double perSecond;
+    private final int burst;
+    private final CommandSink commands;
+    private final CommandSink mergedCommands;           // For writes that waited for a token
+    private final Map<SmartDevice, Actuator> actuators; // By innermost device; idle ones are dropped
+    private final Map<SmartDevice, double[]> limits;    // Per-device {perSecond, burst}
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();     // Replaced while pending
+    private final AtomicLong unchanged = new AtomicLong();  // Device already had the value
+    private final AtomicLong written = new AtomicLong();    // Commands sent
+    private final AtomicLong refused = new AtomicLong();    // Commands the sink or device turned down
+    private final AtomicLong delayed = new AtomicLong();    // Flushes that had to wait for a token
+    private final AtomicLong retired = new AtomicLong();    // Idle buckets dropped
+
+    /**
+     * Creates a limiter with the default limits that writes devices
+     * directly.
+     */
+    public ActuationLimiter() {
+        this(DEFAULT_PER_SECOND, DEFAULT_BURST, CommandSink.DIRECT);
+    }
+
+    /**
+     * Creates a limiter with the default limits.
+     *
+     * @param commands Where writes are sent
+     */
+    public ActuationLimiter(CommandSink commands) {
+        this(DEFAULT_PER_SECOND, DEFAULT_BURST, commands);
+    }
+
+    /**
+     * Creates a limiter that writes devices directly.
+     *
+     * @param perSecond Writes per second each device gets (legacy fans get at most {@value #LEGACY_PER_SECOND})
+     * @param burst Writes a device can take back to back after being idle
+     */
+    public ActuationLimiter(double perSecond, int burst) {
+        this(perSecond, burst, CommandSink.DIRECT);
+    }
+
+    /**
+     * Creates a limiter.
+     *
+     * @param perSecond Writes per second each device gets (legacy fans get at most {@value #LEGACY_PER_SECOND})
+     * @param burst Writes a device can take back to back after being idle
+     * @param commands Where writes are sent
+     */
+    public ActuationLimiter(double perSecond, int burst, CommandSink commands) {
+        this(perSecond, burst, commands, commands);
+    }
+
+    /**
+     * Creates a limiter with the default limits that sends writes which
+     * had to wait for a token to their own sink.
+     *
+     * @param commands Where writes are sent
+     * @param mergedCommands Where waited-for writes are sent; must not drop what it accepts
+     */
+    public ActuationLimiter(CommandSink commands, CommandSink mergedCommands) {
+        this(DEFAULT_PER_SECOND, DEFAULT_BURST, commands, mergedCommands);
+    }
+
+    /**
+     * Creates a limiter that sends writes which had to wait for a token,
+     * and so stand for every value merged into them, to their own sink.
+     *
+     * @param perSecond Writes per second each device gets (legacy fans get at most {@value #LEGACY_PER_SECOND})
+     * @param burst Writes a device can take back to back after being idle
+     * @param commands Where writes are sent
+     * @param mergedCommands Where waited-for writes are sent; must not drop what it accepts
+     */
+    public ActuationLimiter(double perSecond, int burst, CommandSink commands, CommandSink mergedCommands) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Need a positive rate and a burst of at least 1");
+        }
+        this.perSecond = perSecond;
+        this.burst = burst;
+        this.commands = commands;
+        this.mergedCommands = mergedCommands;
+        this.actuators = new ConcurrentHashMap<>();
+        this.limits = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Sets a device's own limit, e.g. for hardware slower than the rest.
+     *
+     * @param device The device
+     * @param perSecond Writes per second
+     * @param burst Writes it can take back to back
+     */
+    public void setLimit(SmartDevice device, double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Need a positive rate and a burst of at least 1");
+        }
+        SmartDevice key = DeviceDecorator.unwrap(device);
+        limits.put(key, new double[] {perSecond, burst});
+        Actuator actuator = actuators.get(key);
+        if (actuator != null) {
+            synchronized (actuator) {
+                actuator.perSecond = perSecond;
+                actuator.burst = burst;
+                actuator.tokens = Math.min(actuator.tokens, burst);
+            }
+        }
+    }
+
+    /**
+     * Puts a device back on the default limit. Takes effect the next
+     * time its bucket is created.
+     *
+     * @param device The device
+     */
+    public void clearLimit(SmartDevice device) {
+        limits.remove(DeviceDecorator.unwrap(device));
+    }
+
+    /**
+     * Turns a device on or off.
+     *
+     * @param device The device
+     * @param on true for on
+     */
+    public void setPower(SmartDevice device, boolean on) {
+        request(device, POWER, on ? 1 : 0);
+    }
+
+    /**
+     * Sets a device's level: brightness, volume or fan speed, whichever
+     * it has.
+     *
+     * @param device The device
+     * @param level The level
+     * @throws IllegalArgumentException if the device has no level
+     */
+    public void setLevel(SmartDevice device, int level) {
+        if (DeviceMemento.level(DeviceMemento.capture(device)) < 0) {
+            throw new IllegalArgumentException(device.getName() + " has no level to set");
+        }
+        request(device, LEVEL, level);
+    }
+
+    /**
+     * Sets a thermostat's target temperature.
+     *
+     * @param device The device
+     * @param temp Target temperature in °F
+     * @throws IllegalArgumentException if the device is not a thermostat
+     */
+    public void setTargetTemp(SmartDevice device, double temp) {
+        if (Capabilities.of(device).thermostatic() == null) {
+            throw new IllegalArgumentException(device.getName() + " has no target temperature");
+        }
+        request(device, TEMPERATURE, temp);
+    }
+
+    /**
+     * Gets a sink that sends device changes through this limiter, for
+     * handing to automation with {@link ControlStrategy#setCommandSink}.
+     * Other commands go straight to the limiter's own sink, possibly
+     * ahead of writes still waiting for a token.
+     *
+     * <p>A device change returns {@code true} once the limiter has
+     * accepted it for limiting, not once it is done: it may still wait
+     * for a token, be merged into a later value or be refused by the
+     * sink. Callers that report changes should watch the device.</p>
+     *
+     * @return The limited sink
+     */
+    public CommandSink asCommandSink() {
+        return new CommandSink() {
+            @Override
+            public boolean submit(Command command) {
+                return commands.submit(command);
+            }
+
+            @Override
+            public boolean turnOn(SmartDevice device) {
+                setPower(device, true);
+                return true;
+            }
+
+            @Override
+            public boolean turnOff(SmartDevice device) {
+                setPower(device, false);
+                return true;
+            }
+
+            @Override
+            public boolean setBrightness(Dimmable dimmer, int brightness) {
+                if (!(dimmer instanceof SmartDevice)) {
+                    return commands.setBrightness(dimmer, brightness);
+                }
+                setLevel((SmartDevice) dimmer, brightness);
+                return true;
+            }
+
+            @Override
+            public boolean setTargetTemp(Thermostatic thermostat, double temp) {
+                if (!(thermostat instanceof SmartDevice)) {
+                    return commands.setTargetTemp(thermostat, temp);
+                }
+                ActuationLimiter.this.setTargetTemp((SmartDevice) thermostat, temp);
+                return true;
+            }
+
+            @Override
+            public boolean setSpeed(SmartDevice device, int speed) {
+                Capabilities capabilities = Capabilities.of(device);
+                if (capabilities.dimmable() != null || capabilities.volume() != null) {
+                    return commands.setSpeed(device, speed); // Its level is something else
+                }
+                setLevel(device, speed);
+                return true;
+            }
+
+            @Override
+            public boolean setVolume(SmartDevice device, int volume) {
+                if (Capabilities.of(device).dimmable() != null) {
+                    return commands.setVolume(device, volume);
+                }
+                setLevel(device, volume);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sends everything still pending now, ignoring the limits, e.g.
+     * before shutting down.
+     */
+    public void flushAll() {
+        for (Actuator actuator : actuators.values()) {
+            boolean send;
+            synchronized (actuator) {
+                send = actuator.hasPending() && queue(actuator, true);
+            }
+            if (send) {
+                send(actuator);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of devices with values not yet sent.
+     *
+     * @return Devices with pending writes
+     */
+    public int getPendingDevices() {
+        int count = 0;
+        for (Actuator actuator : actuators.values()) {
+            synchronized (actuator) {
+                if (actuator.hasPending() || actuator.sending) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of devices the limiter holds a bucket for.
+     *
+     * @return Devices written lately
+     */
+    public int getDeviceCount() {
+        return actuators.size();
+    }
+
+    public long getRequestedCount() {
+        return requested.get();
+    }
+
+    public long getMergedCount() {
+        return merged.get();
+    }
+
+    public long getUnchangedCount() {
+        return unchanged.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getRefusedCount() {
+        return refused.get();
+    }
+
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    public long getRetiredCount() {
+        return retired.get();
+    }
+
+    /**
+     * Displays what was asked for and what was sent on.
+     */
+    public void displayStats() {
+        long asked = requested.get();
+        long sent = written.get();
+        System.out.println("\n=== Actuation Limiter ===");
+        System.out.println("Devices: " + actuators.size() + ", pending: " + getPendingDevices() +
+                           ", idle buckets dropped: " + retired.get());
+        System.out.println("Requested: " + asked + ", written: " + sent +
+                           (sent > 0 ? String.format(" (1 in %.0f)", (double) asked / sent) : ""));
+        System.out.println("Suppressed: " + merged.get() + " merged while pending, " +
+                           unchanged.get() + " already at the value, " + refused.get() + " refused");
+        System.out.println("Waited for a token: " + delayed.get() + " times");
+    }
+
+    private Actuator actuator(SmartDevice device) {
+        SmartDevice key = DeviceDecorator.unwrap(device);
+        return actuators.computeIfAbsent(key, k -> {
+            double[] limit = limits.get(k);
+            if (limit != null) {
+                return new Actuator(k, limit[0], (int) limit[1]);
+            }
+            boolean legacy = k instanceof FanAdapter;
+            return new Actuator(k, legacy ? Math.min(perSecond, LEGACY_PER_SECOND) : perSecond, burst);
+        });
+    }
+
+    private void request(SmartDevice device, int property, double value) {
+        requested.incrementAndGet();
+        while (true) {
+            Actuator actuator = actuator(device);
+            boolean send = false;
+            synchronized (actuator) {
+                if (actuator.retired) {
+                    continue; // Dropped while we looked it up; take the new one
+                }
+                if (device instanceof DeviceDecorator) {
+                    actuator.device = device; // Write through the decorators
+                }
+                if (actuator.pending[property]) {
+                    merged.incrementAndGet();
+                }
+                actuator.pending[property] = true;
+                actuator.values[property] = value;
+                actuator.order[property] = ++actuator.stamp;
+                if (!actuator.scheduled) {
+                    long wait = actuator.take(System.nanoTime());
+                    if (wait == 0) {
+                        send = queue(actuator, false);
+                    } else {
+                        actuator.scheduled = true;
+                        delayed.incrementAndGet();
+                        DeviceTimers.schedule(() -> flush(actuator), wait, TimeUnit.NANOSECONDS);
+                    }
+                } // Otherwise the timer will pick it up
+            }
+            if (send) {
+                send(actuator);
+            }
+            return;
+        }
+    }
+
+    private void flush(Actuator actuator) {
+        boolean send = false;
+        synchronized (actuator) {
+            actuator.scheduled = false;
+            if (!actuator.hasPending()) {
+                retireWhenIdle(actuator);
+                return;
+            }
+            long wait = actuator.take(System.nanoTime());
+            if (wait == 0) {
+                send = queue(actuator, true);
+            } else {
+                actuator.scheduled = true; // Woke a little early
+                DeviceTimers.schedule(() -> flush(actuator), wait, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (send) {
+            send(actuator);
+        }
+    }
+
+    /**
+     * Moves a device's pending properties to its outbox, oldest first,
+     * dropping values the device already has. Called with the actuator
+     * locked.
+     *
+     * @param merged Whether the values waited for a token, merging later writes
+     * @return true if the caller should send the outbox, false if
+     *         another thread is already sending it
+     */
+    private boolean queue(Actuator actuator, boolean merged) {
+        List<Integer> properties = new ArrayList<>(3);
+        for (int property = POWER; property <= TEMPERATURE; property++) {
+            if (actuator.pending[property]) {
+                properties.add(property);
+                actuator.pending[property] = false;
+            }
+        }
+        properties.sort((a, b) -> Long.compare(actuator.order[a], actuator.order[b]));
+        long state = DeviceMemento.capture(actuator.device);
+        for (int property : properties) {
+            double value = actuator.values[property];
+            // Skip what the device has, unless a different value of ours may still be on its way
+            double last = actuator.last[property];
+            boolean settled = Double.isNaN(last) || last == value;
+            boolean has;
+            if (property == POWER) {
+                has = value == 0 && !DeviceMemento.isOn(state); // Turning on is always sent: it resets the level
+            } else if (property == LEVEL) {
+                int level = (int) value;
+                has = DeviceMemento.level(state) == level && DeviceMemento.isOn(state) == (level > 0);
+            } else {
+                has = DeviceMemento.targetTemp(state) == value;
+            }
+            if (has && settled) {
+                unchanged.incrementAndGet();
+                continue;
+            }
+            actuator.last[property] = value;
+            actuator.outbox.add(new double[] {property, value, merged ? 1 : 0});
+        }
+        if (actuator.sending || actuator.outbox.isEmpty()) {
+            return false;
+        }
+        actuator.sending = true;
+        return true;
+    }
+
+    /**
+     * Sends a device's outbox, outside its lock. Only one thread sends a
+     * given device at a time, so its writes go out in order.
+     */
+    private void send(Actuator actuator) {
+        while (true) {
+            SmartDevice device;
+            double[] write;
+            synchronized (actuator) {
+                write = actuator.outbox.poll();
+                if (write == null) {
+                    actuator.sending = false;
+                    retireWhenIdle(actuator);
+                    return;
+                }
+                device = actuator.device;
+            }
+            int property = (int) write[0];
+            boolean sent;
+            try {
+                sent = send(write[2] != 0 ? mergedCommands : commands, device, property, write[1]);
+            } catch (IllegalArgumentException e) {
+                System.out.println("[LIMITER] " + device.getName() + " refused a write: " + e.getMessage());
+                sent = false;
+            }
+            if (sent) {
+                written.incrementAndGet();
+            } else {
+                refused.incrementAndGet();
+                synchronized (actuator) {
+                    actuator.last[property] = Double.NaN; // Not on its way after all
+                }
+            }
+        }
+    }
+
+    private static boolean send(CommandSink commands, SmartDevice device, int property, double value) {
+        if (property == POWER) {
+            return value != 0 ? commands.turnOn(device) : commands.turnOff(device);
+        }
+        Capabilities capabilities = Capabilities.of(device);
+        if (property == TEMPERATURE) {
+            return commands.setTargetTemp(capabilities.thermostatic(), value);
+        }
+        int level = (int) value;
+        if (capabilities.dimmable() != null) {
+            return commands.setBrightness(capabilities.dimmable(), level);
+        }
+        if (capabilities.volume() != null) {
+            return commands.setVolume(device, level);
+        }
+        return commands.setSpeed(device, level);
+    }
+
+    /**
+     * Drops an idle device's bucket once it has refilled, when dropping
+     * it changes nothing. Called with the actuator locked.
+     */
+    private void retireWhenIdle(Actuator actuator) {
+        if (actuator.retiring || actuator.scheduled || actuator.sending || actuator.hasPending()) {
+            return;
+        }
+        actuator.retiring = true;
+        long wait = actuator.untilFull(System.nanoTime());
+        DeviceTimers.schedule(() -> retire(actuator), Math.max(1, wait), TimeUnit.NANOSECONDS);
+    }
+
+    private void retire(Actuator actuator) {
+        synchronized (actuator) {
+            actuator.retiring = false;
+            if (actuator.scheduled || actuator.sending || actuator.hasPending()) {
+                return; // Busy again; whoever finishes will try later
+            }
+            if (actuator.untilFull(System.nanoTime()) > 0) {
+                retireWhenIdle(actuator); // Written since, so not full yet
+                return;
+            }
+            actuator.retired = true;
+            actuators.remove(actuator.key, actuator);
+            retired.incrementAndGet();
+        }
+    }
+
+    /**
+     * Token bucket and pending values for one device.
+     */
+    private static final class Actuator {
+        private final SmartDevice key;
+        private SmartDevice device;     // Outermost form seen, written through
+        private double perSecond;
+        private int burst;
+        private double tokens;
+        private long refilled;
+        private boolean scheduled;      // A flush is on the timer
+        private boolean sending;        // A thread is sending the outbox
+        private boolean retiring;       // A retire check is on the timer
+        private boolean retired;        // Dropped from the map
+        private long stamp;
+        private final boolean[] pending = new boolean[3];
+        private final double[] values = new double[3];
+        private final long[] order = new long[3];
+        private final double[] last = {Double.NaN, Double.NaN, Double.NaN}; // Last value queued
+        private final ArrayDeque<double[]> outbox = new ArrayDeque<>(3); // {property, value, merged}
+
+        Actuator(SmartDevice key, double perSecond, int burst) {
+            this.key = key;
+            this.device = key;
+            this.perSecond = perSecond;
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilled = System.nanoTime();
+        }
+
+        boolean hasPending() {
+            return pending[POWER] || pending[LEVEL] || pending[TEMPERATURE];
+        }
+
+        /**
+         * Takes a token if there is one.
+         *
+         * @return 0 if taken, otherwise nanoseconds until one is due
+         */
+        long take(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / perSecond * 1e9));
+        }
+
+        /**
+         * Gets how long until the bucket is full again.
+         *
+         * @return Nanoseconds, 0 if full
+         */
+        long untilFull(long now) {
+            refill(now);
+            return tokens >= burst ? 0 : (long) Math.ceil((burst - tokens) / perSecond * 1e9);
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilled) * perSecond / 1e9);
+            refilled = now;
+        }
+    }
+}
@@ -4,7 +4,8 @@ import com.smarthome.devices.Light;
 
 /**
  * Command to adjust the brightness of a light.
- * The undo operation restores the previous brightness.
+ * The undo operation restores the brightness the light had when the
+ * command executed.
  * 
  * @author dwayne headley
  * @version 1.0
@@ -13,6 +14,9 @@ public class AdjustBrightnessCommand implements Command {
     private Light light;
     private int newBrightness;
     private int previousBrightness;
+    private long before; // Packed light state around the last execute
+    private long after;
+    private boolean executed;
     
     /**
      * Creates a command to adjust light brightness.
@@ -23,27 +27,54 @@ public class AdjustBrightnessCommand implements Command {
     public AdjustBrightnessCommand(Light light, int newBrightness) {
         this.light = light;
         this.newBrightness = newBrightness;
-        this.previousBrightness = light.getBrightness(); // Remember current!
+        this.previousBrightness = light.getBrightness(); // Until executed, for the description
     }
     
     /**
-     * Executes the command - sets new brightness.
+     * Executes the command - sets new brightness, remembering the state
+     * the light is in right now.
      */
     @Override
     public void execute() {
         System.out.println("[COMMAND] Executing: Adjust " + light.getName() + 
                          " brightness to " + newBrightness + "%");
+        before = DeviceMemento.capture(light);
+        previousBrightness = light.getBrightness();
         light.setBrightness(newBrightness);
+        after = DeviceMemento.capture(light);
+        executed = true;
     }
     
     /**
-     * Undoes the command - restores previous brightness.
+     * Undoes the command - restores the state from before it executed.
      */
     @Override
     public void undo() {
         System.out.println("[COMMAND] Undoing: Adjust " + light.getName() + 
                          " brightness (restoring to " + previousBrightness + "%)");
-        light.setBrightness(previousBrightness);
+        if (executed) {
+            DeviceMemento.restore(light, before, after);
+        } else {
+            light.setBrightness(previousBrightness); // Restored into history without running here
+        }
+    }
+    
+    /**
+     * Gets the light this command controls.
+     * 
+     * @return The target light
+     */
+    public Light getLight() {
+        return light;
+    }
+    
+    /**
+     * Gets the brightness this command sets.
+     * 
+     * @return New brightness (0-100)
+     */
+    public int getNewBrightness() {
+        return newBrightness;
     }
     
     /**
@@ -0,0 +1,96 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+
+/**
+ * Command to change the speed of a fan or other stepped device.
+ * The undo operation restores the state the device had when the
+ * command executed.
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class AdjustSpeedCommand implements Command {
+    private SmartDevice device;
+    private SpeedAdjustable speed;
+    private int newSpeed;
+    private int previousSpeed;
+    private long before; // Packed device state around the last execute
+    private long after;
+    private boolean executed;
+    
+    /**
+     * Creates a command to change a device's speed.
+     * 
+     * @param device The device (decorated or not)
+     * @param newSpeed The new speed; 0 stops the device
+     * @throws IllegalArgumentException if the device has no speed setting
+     */
+    public AdjustSpeedCommand(SmartDevice device, int newSpeed) {
+        this.device = device;
+        this.speed = Capabilities.of(device).speed();
+        if (speed == null) {
+            throw new IllegalArgumentException(device.getName() + " has no speed setting");
+        }
+        this.newSpeed = newSpeed;
+        this.previousSpeed = speed.getSpeed(); // Until executed, for the description
+    }
+    
+    /**
+     * Executes the command - sets the new speed, remembering the state
+     * the device is in right now.
+     */
+    @Override
+    public void execute() {
+        System.out.println("[COMMAND] Executing: Set " + device.getName() + " speed to " + newSpeed);
+        before = DeviceMemento.capture(device);
+        previousSpeed = speed.getSpeed();
+        speed.setSpeed(newSpeed);
+        after = DeviceMemento.capture(device);
+        executed = true;
+    }
+    
+    /**
+     * Undoes the command - restores the state from before it executed.
+     */
+    @Override
+    public void undo() {
+        System.out.println("[COMMAND] Undoing: Set " + device.getName() + 
+                         " speed (restoring to " + previousSpeed + ")");
+        if (executed) {
+            DeviceMemento.restore(device, before, after);
+        } else {
+            speed.setSpeed(previousSpeed); // Restored into history without running here
+        }
+    }
+    
+    /**
+     * Gets the device this command controls.
+     * 
+     * @return The target device
+     */
+    public SmartDevice getDevice() {
+        return device;
+    }
+    
+    /**
+     * Gets the speed this command sets.
+     * 
+     * @return New speed
+     */
+    public int getNewSpeed() {
+        return newSpeed;
+    }
+    
+    /**
+     * Gets the command description.
+     * 
+     * @return Description string
+     */
+    @Override
+    public String getDescription() {
+        return "Set Speed: " + device.getName() + " (" + previousSpeed + " → " + newSpeed + ")";
+    }
+}
@@ -4,7 +4,8 @@ import com.smarthome.devices.Thermostat;
 
 /**
  * Command to adjust the temperature of a thermostat.
- * The undo operation restores the previous temperature.
+ * The undo operation restores the target temperature the thermostat had
+ * when the command executed.
  * 
  * @author dwayne headley
  * @version 1.0
@@ -13,6 +14,9 @@ public class AdjustTemperatureCommand implements Command {
     private Thermostat thermostat;
     private double newTemp;
     private double previousTemp;
+    private long before; // Packed thermostat state around the last execute
+    private long after;
+    private boolean executed;
     
     /**
      * Creates a command to adjust thermostat temperature.
@@ -23,27 +27,54 @@ public class AdjustTemperatureCommand implements Command {
     public AdjustTemperatureCommand(Thermostat thermostat, double newTemp) {
         this.thermostat = thermostat;
         this.newTemp = newTemp;
-        this.previousTemp = thermostat.getTargetTemp(); // Remember current!
+        this.previousTemp = thermostat.getTargetTemp(); // Until executed, for the description
     }
     
     /**
-     * Executes the command - sets new temperature.
+     * Executes the command - sets new temperature, remembering the state
+     * the thermostat is in right now.
      */
     @Override
     public void execute() {
         System.out.println("[COMMAND] Executing: Adjust " + thermostat.getName() + 
                          " to " + newTemp + "°F");
+        before = DeviceMemento.capture(thermostat);
+        previousTemp = thermostat.getTargetTemp();
         thermostat.setTargetTemp(newTemp);
+        after = DeviceMemento.capture(thermostat);
+        executed = true;
     }
     
     /**
-     * Undoes the command - restores previous temperature.
+     * Undoes the command - restores the state from before it executed.
      */
     @Override
     public void undo() {
         System.out.println("[COMMAND] Undoing: Adjust " + thermostat.getName() + 
                          " (restoring to " + previousTemp + "°F)");
-        thermostat.setTargetTemp(previousTemp);
+        if (executed) {
+            DeviceMemento.restore(thermostat, before, after);
+        } else {
+            thermostat.setTargetTemp(previousTemp); // Restored into history without running here
+        }
+    }
+    
+    /**
+     * Gets the thermostat this command controls.
+     * 
+     * @return The target thermostat
+     */
+    public Thermostat getThermostat() {
+        return thermostat;
+    }
+    
+    /**
+     * Gets the target temperature this command sets.
+     * 
+     * @return New target temperature
+     */
+    public double getNewTemp() {
+        return newTemp;
     }
     
     /**
@@ -0,0 +1,96 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.VolumeAdjustable;
+
+/**
+ * Command to change the volume of a speaker or other audio device.
+ * The undo operation restores the state the device had when the
+ * command executed.
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class AdjustVolumeCommand implements Command {
+    private SmartDevice device;
+    private VolumeAdjustable volume;
+    private int newVolume;
+    private int previousVolume;
+    private long before; // Packed device state around the last execute
+    private long after;
+    private boolean executed;
+    
+    /**
+     * Creates a command to change a device's volume.
+     * 
+     * @param device The device (decorated or not)
+     * @param newVolume The new volume (0-100)
+     * @throws IllegalArgumentException if the device has no volume setting
+     */
+    public AdjustVolumeCommand(SmartDevice device, int newVolume) {
+        this.device = device;
+        this.volume = Capabilities.of(device).volume();
+        if (volume == null) {
+            throw new IllegalArgumentException(device.getName() + " has no volume setting");
+        }
+        this.newVolume = newVolume;
+        this.previousVolume = volume.getVolume(); // Until executed, for the description
+    }
+    
+    /**
+     * Executes the command - sets the new volume, remembering the state
+     * the device is in right now.
+     */
+    @Override
+    public void execute() {
+        System.out.println("[COMMAND] Executing: Set " + device.getName() + " volume to " + newVolume);
+        before = DeviceMemento.capture(device);
+        previousVolume = volume.getVolume();
+        volume.setVolume(newVolume);
+        after = DeviceMemento.capture(device);
+        executed = true;
+    }
+    
+    /**
+     * Undoes the command - restores the state from before it executed.
+     */
+    @Override
+    public void undo() {
+        System.out.println("[COMMAND] Undoing: Set " + device.getName() + 
+                         " volume (restoring to " + previousVolume + ")");
+        if (executed) {
+            DeviceMemento.restore(device, before, after);
+        } else {
+            volume.setVolume(previousVolume); // Restored into history without running here
+        }
+    }
+    
+    /**
+     * Gets the device this command controls.
+     * 
+     * @return The target device
+     */
+    public SmartDevice getDevice() {
+        return device;
+    }
+    
+    /**
+     * Gets the volume this command sets.
+     * 
+     * @return New volume
+     */
+    public int getNewVolume() {
+        return newVolume;
+    }
+    
+    /**
+     * Gets the command description.
+     * 
+     * @return Description string
+     */
+    @Override
+    public String getDescription() {
+        return "Set Volume: " + device.getName() + " (" + previousVolume + " → " + newVolume + ")";
+    }
+}
@@ -11,6 +11,8 @@ package com.smarthome.behavioral;
  *   <li>{@link TurnOffCommand} - Turns off a device</li>
  *   <li>{@link AdjustBrightnessCommand} - Adjusts light brightness</li>
  *   <li>{@link AdjustTemperatureCommand} - Adjusts thermostat temperature</li>
+ *   <li>{@link AdjustSpeedCommand} - Changes fan speed</li>
+ *   <li>{@link AdjustVolumeCommand} - Changes speaker volume</li>
  * </ul>
  * 
  * <h2>Example Usage:</h2>
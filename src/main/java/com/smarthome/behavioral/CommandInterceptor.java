@@ -0,0 +1,36 @@
+package com.smarthome.behavioral;
+
+/**
+ * Cross-cutting checks in front of {@code CentralController.executeCommand}:
+ * validation, authorization, rate limiting.
+ *
+ * <p>Interceptors are assembled once into a {@link CommandPipeline} and
+ * set on the controller. Before a command runs, each interceptor's
+ * {@link #beforeExecute(Command)} is called in order and any of them can
+ * refuse it. Work that follows a command, such as metrics or
+ * journaling, belongs in a {@link ControllerListener}, which hears of
+ * every executed command.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * CommandInterceptor guestMode =
+ *     command -> !(command instanceof AdjustTemperatureCommand); // Guests can't touch the heat
+ * controller.setCommandPipeline(CommandPipeline.of(validation, guestMode));
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see CommandPipeline
+ */
+@FunctionalInterface
+public interface CommandInterceptor {
+    /**
+     * Called before a command runs.
+     *
+     * @param command The command
+     * @return true to let it run, false to refuse it
+     */
+    boolean beforeExecute(Command command);
+}
@@ -0,0 +1,415 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostatic;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Command Pattern without command objects, for high-rate traffic such as
+ * slider drags and automation.
+ *
+ * <p>A command here is an opcode, a device id and an argument, written
+ * into a ring that is allocated once. Any thread may {@link #offer} a
+ * command; a single applier executes them in order, either a thread
+ * calling {@link #drain(int)} itself, a thread of the ring's own
+ * ({@link #start(String)}), or tasks on an executor that runs one task
+ * at a time ({@link #start(Executor)}).
+ * Undo history is kept the same way: a fixed number of entries, each a
+ * device id and two {@link DeviceMemento} snapshots, with the oldest
+ * entry dropped when it is full. Undo and redo are opcodes too, so they
+ * run on the applier in order with everything else. Once the ring is
+ * built, offering, applying, undoing and redoing allocate nothing; what
+ * the devices themselves allocate (log lines, observers) is up to them.</p>
+ *
+ * <p>Opcodes use the same numbers as the {@code CommandCodec} kinds, so a
+ * decoded command message can be offered as it is. Commands applied here
+ * have their own undo history, separate from the controller's command
+ * stack, and are not reported to {@link ControllerListener}s; observers
+ * still see every device change.</p>
+ *
+ * <p>Each controller has one, started on first use by
+ * {@code CentralController.getCommandRing()}; the GUI's brightness and
+ * temperature sliders send their drags through it.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * CommandRing ring = controller.getCommandRing();
+ * ring.offer(CommandRing.ADJUST_BRIGHTNESS, controller.getDeviceId(livingRoomLight), 40);
+ * ring.offer(CommandRing.UNDO, -1, 0); // Back to the old brightness
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see Command
+ * @see DeviceMemento
+ */
+public class CommandRing {
+    public static final int TURN_ON = 1;
+    public static final int TURN_OFF = 2;
+    public static final int ADJUST_BRIGHTNESS = 3;
+    public static final int ADJUST_TEMPERATURE = 4;
+    /** Undoes the last command applied through this ring; ignores the device id. */
+    public static final int UNDO = 16;
+    /** Redoes the last command undone through this ring; ignores the device id. */
+    public static final int REDO = 17;
+
+    /** Commands that can wait at once when no capacity is given. */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /** Commands that can be undone when no history size is given. */
+    public static final int DEFAULT_HISTORY_SIZE = 256;
+
+    /** Most commands the applier thread runs between checks for {@link #stop()}. */
+    public static final int BATCH = 256;
+
+    private static final long IDLE_PARK_NANOS = 100_000; // 0.1 ms
+
+    private final IntFunction<SmartDevice> devices;
+
+    // Ring: two longs per slot (opcode and device id, argument bits)
+    private final int mask;
+    private final long[] slots;
+    private final AtomicLongArray published; // Sequence last written to each slot
+    private final AtomicLong claimed;        // Next sequence a producer may take
+    private volatile long applied;           // Next sequence the applier will run
+
+    // Undo history, oldest first from historyStart; entries past historyCount can be redone
+    private final int[] historyDevice;
+    private final long[] historyBefore;
+    private final long[] historyAfter;
+    private int historyStart;
+    private int historyCount;
+    private int historyTop;
+
+    private volatile long executed;
+    private volatile long rejected;
+    private volatile Thread applier;
+    private volatile boolean running;
+
+    // Executor mode: one drain task queued per burst, built once
+    private volatile Executor executor;
+    private final AtomicBoolean drainQueued;
+    private final Runnable drainTask;
+
+    /**
+     * Creates a ring.
+     *
+     * @param capacity Commands that can wait at once; rounded up to a power of two
+     * @param historySize Commands that can be undone
+     * @param devices Resolves device ids to devices, e.g. {@code controller::getDeviceById}
+     */
+    public CommandRing(int capacity, int historySize, IntFunction<SmartDevice> devices) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        if (historySize < 0) {
+            throw new IllegalArgumentException("History size cannot be negative");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.devices = devices;
+        this.mask = size - 1;
+        this.slots = new long[size * 2];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.claimed = new AtomicLong();
+        this.historyDevice = new int[historySize];
+        this.historyBefore = new long[historySize];
+        this.historyAfter = new long[historySize];
+        this.drainQueued = new AtomicBoolean();
+        this.drainTask = this::drainOnExecutor;
+    }
+
+    /**
+     * Queues a command. Safe to call from any thread.
+     *
+     * @param opcode What to do (TURN_ON, ADJUST_BRIGHTNESS, UNDO, ...)
+     * @param deviceId The device's controller id
+     * @param argument Brightness or temperature; 0 if unused
+     * @return true if queued, false if the ring is full
+     */
+    public boolean offer(int opcode, int deviceId, double argument) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - applied > mask) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        slots[slot * 2] = ((long) opcode << 32) | (deviceId & 0xFFFFFFFFL);
+        slots[slot * 2 + 1] = Double.doubleToRawLongBits(argument);
+        published.set(slot, sequence); // Makes the two writes above visible to the applier
+        Executor target = executor;
+        if (target != null && drainQueued.compareAndSet(false, true)) {
+            target.execute(drainTask);
+        }
+        return true;
+    }
+
+    /**
+     * Runs queued commands, in the order they were offered. Only one
+     * thread may drain at a time.
+     *
+     * @param max Most commands to run
+     * @return Number of commands run
+     */
+    public int drain(int max) {
+        long sequence = applied;
+        int count = 0;
+        while (count < max) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                break;
+            }
+            long header = slots[slot * 2];
+            double argument = Double.longBitsToDouble(slots[slot * 2 + 1]);
+            applied = ++sequence; // The slot is free for producers again
+            apply((int) (header >>> 32), (int) header, argument);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Starts a daemon thread that applies commands as they arrive.
+     *
+     * @param threadName Name for the applier thread
+     */
+    public synchronized void start(String threadName) {
+        if (applier != null || executor != null) {
+            throw new IllegalStateException("Applier already running");
+        }
+        running = true;
+        Thread thread = new Thread(this::applyLoop, threadName);
+        thread.setDaemon(true);
+        applier = thread;
+        thread.start();
+        System.out.println("[RING] Applier started: " + threadName + " (" + (mask + 1) + " slots)");
+    }
+
+    /**
+     * Applies commands as tasks on an executor instead of a thread of the
+     * ring's own. An offer queues one drain task if none is waiting, so a
+     * burst of commands costs one task. The executor must run one task
+     * at a time.
+     *
+     * @param executor Runs the drain tasks, e.g. the GUI's device worker
+     */
+    public synchronized void start(Executor executor) {
+        if (applier != null || this.executor != null) {
+            throw new IllegalStateException("Applier already running");
+        }
+        this.executor = executor;
+        if (getPending() > 0 && drainQueued.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+        System.out.println("[RING] Applier started on an executor (" + (mask + 1) + " slots)");
+    }
+
+    /**
+     * Stops the applier after it has run everything queued so far.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor = null;
+            System.out.println("[RING] Applier stopped after " + executed + " commands");
+            return;
+        }
+        Thread thread = applier;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        applier = null;
+        System.out.println("[RING] Applier stopped after " + executed + " commands");
+    }
+
+    /**
+     * Gets the number of commands waiting to be applied.
+     *
+     * @return Queued commands
+     */
+    public int getPending() {
+        return (int) (claimed.get() - applied);
+    }
+
+    /**
+     * Gets the number of slots in the ring.
+     *
+     * @return Ring capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the number of commands applied, undos and redos included.
+     *
+     * @return Applied commands
+     */
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    /**
+     * Gets the number of commands that could not be applied: unknown or
+     * removed device, a device without the capability, an argument out
+     * of range, or nothing to undo or redo.
+     *
+     * @return Rejected commands
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Gets the number of commands that can be undone. Read it from the
+     * applier thread for an exact figure.
+     *
+     * @return Undo history size
+     */
+    public int getHistorySize() {
+        return historyCount;
+    }
+
+    private void applyLoop() {
+        while (running) {
+            if (drain(BATCH) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        while (drain(BATCH) > 0) {
+            // Run what was queued before stop()
+        }
+    }
+
+    private void drainOnExecutor() {
+        drainQueued.set(false); // Offers from here on queue another task
+        drain(BATCH);
+        if (getPending() > 0 && executor != null && drainQueued.compareAndSet(false, true)) {
+            executor.execute(drainTask); // Let other tasks in before the next batch
+        }
+    }
+
+    private void apply(int opcode, int deviceId, double argument) {
+        if (opcode == UNDO) {
+            count(undo());
+            return;
+        }
+        if (opcode == REDO) {
+            count(redo());
+            return;
+        }
+        SmartDevice device = devices.apply(deviceId);
+        if (device == null) {
+            count(false);
+            return;
+        }
+        long before = DeviceMemento.capture(device);
+        try {
+            switch (opcode) {
+                case TURN_ON:
+                    device.turnOn();
+                    break;
+                case TURN_OFF:
+                    device.turnOff();
+                    break;
+                case ADJUST_BRIGHTNESS:
+                    Dimmable light = Capabilities.of(device).dimmable();
+                    if (light == null) {
+                        count(false);
+                        return;
+                    }
+                    light.setBrightness((int) argument);
+                    break;
+                case ADJUST_TEMPERATURE:
+                    Thermostatic thermostat = Capabilities.of(device).thermostatic();
+                    if (thermostat == null) {
+                        count(false);
+                        return;
+                    }
+                    thermostat.setTargetTemp(argument);
+                    break;
+                default:
+                    count(false);
+                    return;
+            }
+        } catch (IllegalArgumentException e) {
+            count(false); // Argument out of range; the device refused it
+            return;
+        }
+        record(deviceId, before, DeviceMemento.capture(device));
+        count(true);
+    }
+
+    private void record(int deviceId, long before, long after) {
+        int size = historyDevice.length;
+        if (size == 0) {
+            return;
+        }
+        if (historyCount == size) {
+            historyStart = (historyStart + 1) % size; // Forget the oldest
+            historyCount--;
+        }
+        int at = (historyStart + historyCount) % size;
+        historyDevice[at] = deviceId;
+        historyBefore[at] = before;
+        historyAfter[at] = after;
+        historyCount++;
+        historyTop = historyCount; // A new command ends what could be redone
+    }
+
+    private boolean undo() {
+        if (historyCount == 0) {
+            return false;
+        }
+        historyCount--;
+        int at = (historyStart + historyCount) % historyDevice.length;
+        SmartDevice device = devices.apply(historyDevice[at]);
+        if (device != null) {
+            DeviceMemento.restore(device, historyBefore[at], historyAfter[at]);
+        }
+        return true;
+    }
+
+    private boolean redo() {
+        if (historyCount == historyTop) {
+            return false;
+        }
+        int at = (historyStart + historyCount) % historyDevice.length;
+        historyCount++;
+        SmartDevice device = devices.apply(historyDevice[at]);
+        if (device != null) {
+            DeviceMemento.restore(device, historyAfter[at], historyBefore[at]); // Forward again
+        }
+        return true;
+    }
+
+    private void count(boolean ok) {
+        // Only the applier writes these, so a plain increment is safe
+        if (ok) {
+            executed++;
+        } else {
+            rejected++;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
+
+/**
+ * Where automation sends the device changes it decides on.
+ *
+ * <p>The controller hands each strategy a sink that queues commands on
+ * its {@code CommandScheduler}, in the lane that fits the strategy, so
+ * automation never runs at the same time as a person's command and
+ * every change lands in the undo history. {@link #DIRECT} runs commands
+ * on the calling thread instead, for strategies used without a
+ * controller.</p>
+ *
+ * <p>A sink returning {@code true} only means it took the change. A
+ * queued command may still be dropped when late, and a limiting sink
+ * ({@link ActuationLimiter#asCommandSink()}) may hold or merge it, so
+ * anything reported to the user should come from the device's own
+ * change notification.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * CommandSink commands = command -> controller.submitCommand(command, CommandScheduler.Lane.AI);
+ * commands.turnOff(porchLight);
+ * commands.setBrightness(Capabilities.of(hallLight).dimmable(), 30);
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see ControlStrategy#setCommandSink(CommandSink)
+ */
+@FunctionalInterface
+public interface CommandSink {
+    /** Executes each command on the calling thread, outside any history. */
+    CommandSink DIRECT = command -> {
+        command.execute();
+        return true;
+    };
+
+    /**
+     * Sends a command.
+     *
+     * @param command The command
+     * @return true if sent, false if refused (e.g. the lane is full)
+     */
+    boolean submit(Command command);
+
+    default boolean turnOn(SmartDevice device) {
+        return submit(new TurnOnCommand(device));
+    }
+
+    default boolean turnOff(SmartDevice device) {
+        return submit(new TurnOffCommand(device));
+    }
+
+    /**
+     * Sends a brightness change. Dimmers that are not a {@link Light}
+     * have no command and are set directly.
+     *
+     * @param dimmer The dimmer, as found by {@code Capabilities}
+     * @param brightness The new brightness (0-100)
+     * @return true if sent
+     */
+    default boolean setBrightness(Dimmable dimmer, int brightness) {
+        if (dimmer instanceof Light) {
+            return submit(new AdjustBrightnessCommand((Light) dimmer, brightness));
+        }
+        dimmer.setBrightness(brightness);
+        return true;
+    }
+
+    /**
+     * Sends a target temperature change. Thermostatic devices that are
+     * not a {@link Thermostat} have no command and are set directly.
+     *
+     * @param thermostat The thermostat, as found by {@code Capabilities}
+     * @param temp The new target temperature
+     * @return true if sent
+     */
+    default boolean setTargetTemp(Thermostatic thermostat, double temp) {
+        if (thermostat instanceof Thermostat) {
+            return submit(new AdjustTemperatureCommand((Thermostat) thermostat, temp));
+        }
+        thermostat.setTargetTemp(temp);
+        return true;
+    }
+
+    /**
+     * Sends a speed change.
+     *
+     * @param device The device (decorated or not)
+     * @param speed The new speed; 0 stops it
+     * @return true if sent
+     * @see SpeedAdjustable
+     */
+    default boolean setSpeed(SmartDevice device, int speed) {
+        return submit(new AdjustSpeedCommand(device, speed));
+    }
+
+    /**
+     * Sends a volume change.
+     *
+     * @param device The device (decorated or not)
+     * @param volume The new volume (0-100)
+     * @return true if sent
+     * @see VolumeAdjustable
+     */
+    default boolean setVolume(SmartDevice device, int volume) {
+        return submit(new AdjustVolumeCommand(device, volume));
+    }
+}
@@ -0,0 +1,36 @@
+package com.smarthome.behavioral;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Template for the class that holds one {@link CommandPipeline}'s
+ * handle tree.
+ *
+ * <p>This class is never loaded as itself. {@link CommandPipeline}
+ * reads its bytes and defines a fresh hidden copy per pipeline, passing
+ * the tree as class data. The tree then lands in a {@code static final}
+ * field, which the JIT treats as a constant and can inline through,
+ * interceptors included. The copy is unloaded once its pipeline is no
+ * longer used.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+final class CompiledChain implements CommandPipeline.Chain {
+    private static final MethodHandle TREE; // (Command)int
+
+    static {
+        try {
+            TREE = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public int before(Command command) throws Throwable {
+        return (int) TREE.invokeExact(command);
+    }
+}
@@ -34,4 +34,22 @@ public interface ControlStrategy {
      * @return Strategy description
      */
     String getDescription();
+    
+    /**
+     * Called when the controller switches away from this strategy.
+     * Strategies that run background work should stop it here.
+     */
+    default void deactivate() {
+    }
+    
+    /**
+     * Called when a controller makes this its strategy, with where the
+     * strategy should send the device changes it decides on. Strategies
+     * that change devices themselves should use it; until it is called
+     * they can use {@link CommandSink#DIRECT}.
+     * 
+     * @param sink Queues commands on the controller
+     */
+    default void setCommandSink(CommandSink sink) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+
+/**
+ * Receives the changes a controller makes to its own state: devices
+ * added or removed, commands executed, undone or redone, and strategy
+ * switches. Device state changes go to {@link Observer}s instead.
+ *
+ * <p>Listeners are called on the thread that made the change, right
+ * after it was made and while the controller's journal lock is held, so
+ * they should only record what happened and do any slow work elsewhere.
+ * Every method does nothing by default.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface ControllerListener {
+    /**
+     * Called after a device was added.
+     *
+     * @param device The device
+     * @param deviceId The id the controller gave it
+     */
+    default void deviceAdded(SmartDevice device, int deviceId) {
+    }
+
+    /**
+     * Called after a device was removed.
+     *
+     * @param device The device
+     * @param deviceId Its (still reserved) id
+     */
+    default void deviceRemoved(SmartDevice device, int deviceId) {
+    }
+
+    /**
+     * Called after a command was executed and added to the history.
+     *
+     * @param command The command
+     */
+    default void commandExecuted(Command command) {
+    }
+
+    /**
+     * Called after the last command moved to the redo history, just
+     * before its undo runs.
+     *
+     * @param command The command that was undone
+     */
+    default void commandUndone(Command command) {
+    }
+
+    /**
+     * Called after the last undone command moved back to the history,
+     * just before it runs again.
+     *
+     * @param command The command that was redone
+     */
+    default void commandRedone(Command command) {
+    }
+
+    /**
+     * Called after the command history was cleared.
+     */
+    default void historyCleared() {
+    }
+
+    /**
+     * Called after the control strategy was changed.
+     *
+     * @param strategy The new strategy
+     */
+    default void strategyChanged(ControlStrategy strategy) {
+    }
+}
@@ -0,0 +1,34 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+
+/**
+ * An action applied to a single device by an automation
+ * (a {@link Rule} or a scheduled entry).
+ * 
+ * <p>Actions send their device changes through the {@link CommandSink}
+ * they are given, so under a controller the changes are queued in a
+ * lane and recorded like any other command.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface DeviceAction {
+    /**
+     * Applies the action.
+     * 
+     * @param device The device to act on
+     * @param commands Where to send the device changes
+     */
+    void apply(SmartDevice device, CommandSink commands);
+    
+    /**
+     * Applies the action straight to the device, outside any history.
+     * 
+     * @param device The device to act on
+     */
+    default void apply(SmartDevice device) {
+        apply(device, CommandSink.DIRECT);
+    }
+}
@@ -0,0 +1,134 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.Room;
+import java.util.function.Predicate;
+
+/**
+ * A single test on one device, used as a building block of a {@link Rule}.
+ *
+ * <p>Conditions are identified by a key. Rules that use conditions with
+ * the same key share one node in the {@link RuleEngine} network, so the
+ * test runs once per device change no matter how many rules use it.</p>
+ *
+ * <p>The engine also knows what each built-in condition depends on. A
+ * type condition never changes its answer for a device, a room
+ * condition only changes when devices move in or out of that room, and
+ * only the remaining conditions are re-tested when a device changes.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DeviceCondition {
+    private final String key;
+    private final Predicate<SmartDevice> test;
+    private final Class<? extends SmartDevice> type; // Set for type conditions
+    private final Room room;                         // Set for room conditions
+
+    /**
+     * Creates a custom condition. It is re-tested whenever a device
+     * changes.
+     *
+     * @param key Unique description; equal keys must mean equal tests
+     * @param test The test to run against a device
+     */
+    public DeviceCondition(String key, Predicate<SmartDevice> test) {
+        this(key, test, null, null);
+    }
+
+    private DeviceCondition(String key, Predicate<SmartDevice> test, Class<? extends SmartDevice> type, Room room) {
+        this.key = key;
+        this.test = test;
+        this.type = type;
+        this.room = room;
+    }
+
+    /**
+     * Matches devices of a given class, looking through decorators.
+     *
+     * @param type The device class (e.g. Light.class)
+     * @return The condition
+     */
+    public static DeviceCondition ofType(Class<? extends SmartDevice> type) {
+        return new DeviceCondition("type:" + type.getName(), device -> type.isInstance(unwrap(device)), type, null);
+    }
+
+    /**
+     * Matches devices that are on.
+     *
+     * @return The condition
+     */
+    public static DeviceCondition isOn() {
+        return new DeviceCondition("on", SmartDevice::isOn);
+    }
+
+    /**
+     * Matches devices that are off.
+     *
+     * @return The condition
+     */
+    public static DeviceCondition isOff() {
+        return new DeviceCondition("off", device -> !device.isOn());
+    }
+
+    /**
+     * Matches devices that belong to a room.
+     * Register the room with {@link RuleEngine#watchRoom(Room)} so that
+     * devices moving in or out are picked up.
+     *
+     * @param room The room
+     * @return The condition
+     */
+    public static DeviceCondition inRoom(Room room) {
+        return new DeviceCondition("room:" + System.identityHashCode(room),
+                                   device -> room.containsDevice(device), null, room);
+    }
+
+    /**
+     * Gets the key that identifies this condition.
+     *
+     * @return The key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the device class a type condition matches.
+     *
+     * @return The class, or null if this is not a type condition
+     */
+    Class<? extends SmartDevice> getType() {
+        return type;
+    }
+
+    /**
+     * Gets the room a room condition matches.
+     *
+     * @return The room, or null if this is not a room condition
+     */
+    Room getRoom() {
+        return room;
+    }
+
+    /**
+     * Runs the test.
+     *
+     * @param device The device to test
+     * @return true if the device satisfies the condition
+     */
+    public boolean test(SmartDevice device) {
+        return test.test(device);
+    }
+
+    /**
+     * Strips decorators to reach the underlying device.
+     *
+     * @param device A device, possibly decorated
+     * @return The innermost device
+     */
+    static SmartDevice unwrap(SmartDevice device) {
+        return DeviceDecorator.unwrap(device);
+    }
+}
@@ -37,7 +37,7 @@ public class DeviceLogger implements Observer {
      * @param device The device that changed
      */
     @Override
-    public void update(SmartDevice device) {
+    public synchronized void update(SmartDevice device) {
         String timestamp = LocalDateTime.now().format(formatter);
         String logEntry = "[" + timestamp + "] " + device.getName() + " - " + device.getStatus();
         logs.add(logEntry);
@@ -48,7 +48,7 @@ public class DeviceLogger implements Observer {
     /**
      * Displays all logged events.
      */
-    public void displayLogs() {
+    public synchronized void displayLogs() {
         System.out.println("\n═══════════════════════════════════════════");
         System.out.println("  " + loggerName + " - Activity Log");
         System.out.println("═══════════════════════════════════════════");
@@ -69,14 +69,14 @@ public class DeviceLogger implements Observer {
      * 
      * @return Log count
      */
-    public int getLogCount() {
+    public synchronized int getLogCount() {
         return logs.size();
     }
     
     /**
      * Clears all logs.
      */
-    public void clearLogs() {
+    public synchronized void clearLogs() {
         logs.clear();
         System.out.println("[LOGGER-" + loggerName + "] Logs cleared");
     }
@@ -86,7 +86,7 @@ public class DeviceLogger implements Observer {
      * 
      * @return List of log entries
      */
-    public List<String> getLogs() {
+    public synchronized List<String> getLogs() {
         return new ArrayList<>(logs); // Return copy
     }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
+
+/**
+ * Memento Pattern for commands: a device's undoable state, packed into
+ * a single {@code long}.
+ *
+ * <p>A command captures the state of its device right before and right
+ * after it executes, so undo costs 16 bytes of history per command no
+ * matter what kind of device it touched, and restores what was really
+ * there when the command ran rather than what the command assumed.
+ * Undo only reverts the fields the command changed (the diff between its
+ * two snapshots), so a change the command did not make, say the HVAC
+ * model moving a target temperature, is left alone.</p>
+ *
+ * <h2>Packed layout:</h2>
+ * <pre>
+ * bit  0      on
+ * bit  1      has a level (brightness, volume or fan speed)
+ * bit  2      has a target temperature
+ * bits 8-15   level
+ * bits 32-63  target temperature, as float bits
+ * </pre>
+ *
+ * <p>The target temperature is kept to float precision, far finer than
+ * any setpoint.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * long before = DeviceMemento.capture(light);
+ * light.turnOff();
+ * long after = DeviceMemento.capture(light);
+ * DeviceMemento.restore(light, before, after); // Back on at its old brightness
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class DeviceMemento {
+    public static final int ON = 1;
+    public static final int LEVEL = 1 << 1;
+    public static final int TEMPERATURE = 1 << 2;
+
+    private static final int LEVEL_SHIFT = 8;
+    private static final int TEMPERATURE_SHIFT = 32;
+
+    private DeviceMemento() {
+    }
+
+    /**
+     * Captures a device's state.
+     *
+     * @param device The device (decorated or not)
+     * @return The packed state
+     */
+    public static long capture(SmartDevice device) {
+        Capabilities capabilities = Capabilities.of(device);
+        long packed = device.isOn() ? ON : 0;
+        int level = level(capabilities);
+        if (level >= 0) {
+            packed |= LEVEL | ((long) level << LEVEL_SHIFT);
+        }
+        Thermostatic thermostat = capabilities.thermostatic();
+        if (thermostat != null) {
+            long bits = Float.floatToIntBits((float) thermostat.getTargetTemp()) & 0xFFFFFFFFL;
+            packed |= TEMPERATURE | (bits << TEMPERATURE_SHIFT);
+        }
+        return packed;
+    }
+
+    /**
+     * Finds which fields differ between two snapshots of a device.
+     *
+     * @param before The earlier state
+     * @param after The later state
+     * @return A mask of {@link #ON}, {@link #LEVEL} and {@link #TEMPERATURE}
+     */
+    public static int diff(long before, long after) {
+        int changed = 0;
+        if (isOn(before) != isOn(after)) {
+            changed |= ON;
+        }
+        if ((before & LEVEL) != 0 && level(before) != level(after)) {
+            changed |= LEVEL;
+        }
+        if ((before & TEMPERATURE) != 0 && targetTemp(before) != targetTemp(after)) {
+            changed |= TEMPERATURE;
+        }
+        return changed;
+    }
+
+    /**
+     * Puts back the fields that changed between two snapshots, using
+     * their earlier values.
+     *
+     * @param device The device (decorated or not)
+     * @param before The state to go back to
+     * @param after The state the change left behind
+     */
+    public static void restore(SmartDevice device, long before, long after) {
+        int changed = diff(before, after);
+        if (changed == 0) {
+            return;
+        }
+        Capabilities capabilities = Capabilities.of(device);
+        if ((changed & TEMPERATURE) != 0) {
+            capabilities.thermostatic().setTargetTemp(targetTemp(before));
+        }
+        boolean on = (changed & ON) != 0 ? isOn(before) : device.isOn();
+        if (!on) {
+            if (device.isOn()) {
+                device.turnOff(); // Turning off also zeroes the level
+            }
+            return;
+        }
+        boolean turnedOn = false;
+        if (!device.isOn()) {
+            device.turnOn(); // Through any decorators, so energy tracking sees it
+            turnedOn = true;
+        }
+        // Turning on resets the level to the device's default, so it always needs putting back
+        if ((before & LEVEL) != 0 && (turnedOn || (changed & LEVEL) != 0)
+                && level(capabilities) != level(before)) {
+            setLevel(capabilities, level(before));
+        }
+    }
+
+    /**
+     * Checks the on flag of a snapshot.
+     *
+     * @param packed The packed state
+     * @return true if the device was on
+     */
+    public static boolean isOn(long packed) {
+        return (packed & ON) != 0;
+    }
+
+    /**
+     * Gets the level of a snapshot.
+     *
+     * @param packed The packed state
+     * @return Brightness, volume or fan speed, or -1 if the device has none
+     */
+    public static int level(long packed) {
+        return (packed & LEVEL) != 0 ? (int) (packed >>> LEVEL_SHIFT) & 0xFF : -1;
+    }
+
+    /**
+     * Gets the target temperature of a snapshot.
+     *
+     * @param packed The packed state
+     * @return The target temperature, or NaN if the device has none
+     */
+    public static double targetTemp(long packed) {
+        if ((packed & TEMPERATURE) == 0) {
+            return Double.NaN;
+        }
+        return Float.intBitsToFloat((int) (packed >>> TEMPERATURE_SHIFT));
+    }
+
+    /**
+     * Describes a snapshot, for logs.
+     *
+     * @param packed The packed state
+     * @return e.g. "ON, level 40" or "OFF, target 68.0°F"
+     */
+    public static String describe(long packed) {
+        StringBuilder text = new StringBuilder(isOn(packed) ? "ON" : "OFF");
+        if ((packed & LEVEL) != 0) {
+            text.append(", level ").append(level(packed));
+        }
+        if ((packed & TEMPERATURE) != 0) {
+            text.append(", target ").append(targetTemp(packed)).append("°F");
+        }
+        return text.toString();
+    }
+
+    private static int level(Capabilities capabilities) {
+        Dimmable light = capabilities.dimmable();
+        if (light != null) {
+            return light.getBrightness();
+        }
+        VolumeAdjustable speaker = capabilities.volume();
+        if (speaker != null) {
+            return speaker.getVolume();
+        }
+        SpeedAdjustable fan = capabilities.speed();
+        return fan != null ? fan.getSpeed() : -1;
+    }
+
+    private static void setLevel(Capabilities capabilities, int level) {
+        if (capabilities.dimmable() != null) {
+            capabilities.dimmable().setBrightness(level);
+        } else if (capabilities.volume() != null) {
+            capabilities.volume().setVolume(level);
+        } else if (capabilities.speed() != null) {
+            capabilities.speed().setSpeed(level);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.structural.Room;
+
+/**
+ * Running estimate of whether one room is occupied.
+ *
+ * <p>The estimate is a score between 0 and 1. Each sensor event pulls
+ * the score towards 1 by the event's evidence; between events the score
+ * decays exponentially with a fixed half-life. Decay is applied lazily
+ * from the time of the last update, so each event costs O(1) and idle
+ * rooms cost nothing.</p>
+ *
+ * <p>Two thresholds give hysteresis: the room becomes occupied when the
+ * score rises to {@code occupiedThreshold} and only becomes vacant again
+ * once it falls to {@code vacantThreshold}, so a score hovering near one
+ * threshold does not flip the room back and forth.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class PresenceEstimator {
+    private final Room room;
+    private final double decayPerMilli;
+    private final double occupiedThreshold;
+    private final double vacantThreshold;
+
+    private double score;
+    private long lastUpdateMillis;
+    private boolean occupied;
+    private long eventCount;
+
+    /**
+     * Creates an estimator for a room that starts out vacant.
+     *
+     * @param room The room
+     * @param halfLifeMillis Time for the score to halve with no events
+     * @param occupiedThreshold Score at which the room becomes occupied
+     * @param vacantThreshold Score at which the room becomes vacant
+     * @param nowMillis The current time
+     * @throws IllegalArgumentException if the thresholds are not 0 &lt; vacant &lt; occupied &lt;= 1
+     */
+    public PresenceEstimator(Room room, long halfLifeMillis, double occupiedThreshold,
+                             double vacantThreshold, long nowMillis) {
+        if (!(vacantThreshold > 0 && vacantThreshold < occupiedThreshold && occupiedThreshold <= 1)) {
+            throw new IllegalArgumentException("Thresholds must satisfy 0 < vacant < occupied <= 1");
+        }
+        this.room = room;
+        this.decayPerMilli = Math.log(2) / halfLifeMillis;
+        this.occupiedThreshold = occupiedThreshold;
+        this.vacantThreshold = vacantThreshold;
+        this.lastUpdateMillis = nowMillis;
+    }
+
+    /**
+     * Adds one sensor event.
+     *
+     * @param evidence How strongly the event suggests presence (0 to 1)
+     * @param nowMillis When the event happened
+     * @return true if the room's occupancy changed
+     */
+    public boolean addEvidence(double evidence, long nowMillis) {
+        decayTo(nowMillis);
+        score += (1.0 - score) * Math.max(0.0, Math.min(1.0, evidence));
+        eventCount++;
+        return applyHysteresis();
+    }
+
+    /**
+     * Applies decay up to the given time without a new event.
+     *
+     * @param nowMillis The current time
+     * @return true if the room's occupancy changed
+     */
+    public boolean refresh(long nowMillis) {
+        decayTo(nowMillis);
+        return applyHysteresis();
+    }
+
+    private void decayTo(long nowMillis) {
+        long elapsed = nowMillis - lastUpdateMillis;
+        if (elapsed > 0) {
+            score *= Math.exp(-decayPerMilli * elapsed);
+            lastUpdateMillis = nowMillis;
+        }
+    }
+
+    private boolean applyHysteresis() {
+        if (!occupied && score >= occupiedThreshold) {
+            occupied = true;
+            return true;
+        }
+        if (occupied && score <= vacantThreshold) {
+            occupied = false;
+            return true;
+        }
+        return false;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    public boolean isOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Gets the score as of the last update.
+     *
+     * @return Score from 0.0 to 1.0
+     */
+    public double getScore() {
+        return score;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+}
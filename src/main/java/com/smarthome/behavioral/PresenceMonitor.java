@@ -0,0 +1,214 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.OccupancySensor;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.Room;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Streams occupancy sensor events into one {@link PresenceEstimator}
+ * per room and remembers which rooms changed.
+ *
+ * <p>The monitor observes every sensor it tracks. An event is looked up
+ * by sensor in O(1) and applied to that room's estimator only. Rooms
+ * whose occupancy flipped are queued until {@link #pollChanges()}, so a
+ * strategy can act on those rooms alone instead of sweeping every
+ * device.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * PresenceMonitor presence = new PresenceMonitor();
+ * presence.trackRoom(livingRoom);  // picks up sensors already in the room
+ * ...
+ * for (PresenceEstimator changed : presence.pollChanges()) {
+ *     if (!changed.isOccupied()) {
+ *         // turn things off in changed.getRoom()
+ *     }
+ * }
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class PresenceMonitor implements Observer {
+    private static final long DEFAULT_HALF_LIFE_MILLIS = 5 * 60 * 1000;
+    private static final double DEFAULT_OCCUPIED_THRESHOLD = 0.6;
+    private static final double DEFAULT_VACANT_THRESHOLD = 0.2;
+
+    /**
+     * Per-sensor state: the room it feeds and the last event seen.
+     */
+    private static final class SensorFeed {
+        final PresenceEstimator estimator;
+        long lastEventCount;
+
+        SensorFeed(PresenceEstimator estimator, long lastEventCount) {
+            this.estimator = estimator;
+            this.lastEventCount = lastEventCount;
+        }
+    }
+
+    private final LongSupplier clock;
+    private final long halfLifeMillis;
+    private final Map<Room, PresenceEstimator> estimators;
+    private final Map<OccupancySensor, SensorFeed> feeds;
+    private final Set<PresenceEstimator> changed;
+
+    /**
+     * Creates a monitor with a five minute half-life on the system clock.
+     */
+    public PresenceMonitor() {
+        this(DEFAULT_HALF_LIFE_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a monitor.
+     *
+     * @param halfLifeMillis How quickly evidence fades with no events
+     * @param clock Source of the current time in millis
+     */
+    public PresenceMonitor(long halfLifeMillis, LongSupplier clock) {
+        this.clock = clock;
+        this.halfLifeMillis = halfLifeMillis;
+        this.estimators = new LinkedHashMap<>();
+        this.feeds = new IdentityHashMap<>();
+        this.changed = new LinkedHashSet<>();
+    }
+
+    /**
+     * Starts tracking a room and every occupancy sensor already in it.
+     *
+     * @param room The room
+     * @return The room's estimator
+     */
+    public synchronized PresenceEstimator trackRoom(Room room) {
+        PresenceEstimator estimator = estimators.get(room);
+        if (estimator == null) {
+            estimator = new PresenceEstimator(room, halfLifeMillis, DEFAULT_OCCUPIED_THRESHOLD,
+                                              DEFAULT_VACANT_THRESHOLD, clock.getAsLong());
+            estimators.put(room, estimator);
+        }
+        for (SmartDevice device : room.getDevices()) {
+            SmartDevice inner = DeviceCondition.unwrap(device);
+            if (inner instanceof OccupancySensor) {
+                addSensor(room, (OccupancySensor) inner);
+            }
+        }
+        return estimator;
+    }
+
+    /**
+     * Feeds a sensor's events into a room's estimate.
+     *
+     * @param room The room the sensor watches
+     * @param sensor The sensor
+     */
+    public synchronized void addSensor(Room room, OccupancySensor sensor) {
+        if (feeds.containsKey(sensor)) {
+            return;
+        }
+        PresenceEstimator estimator = estimators.containsKey(room) ? estimators.get(room) : trackRoom(room);
+        feeds.put(sensor, new SensorFeed(estimator, sensor.getEventCount()));
+        sensor.addObserver(this);
+        System.out.println("[PRESENCE] " + sensor.getSensorType() + " sensor " + sensor.getName() +
+                         " feeds " + room.getName());
+    }
+
+    /**
+     * Applies a sensor event to its room's estimate.
+     *
+     * @param device The sensor that changed
+     */
+    @Override
+    public synchronized void update(SmartDevice device) {
+        SensorFeed feed = feeds.get(device);
+        if (feed == null) {
+            return;
+        }
+        OccupancySensor sensor = (OccupancySensor) device;
+        if (sensor.getEventCount() == feed.lastEventCount) {
+            return; // Switched or (dis)armed, not a reading
+        }
+        feed.lastEventCount = sensor.getEventCount();
+        if (feed.estimator.addEvidence(sensor.getPresenceEvidence(), clock.getAsLong())) {
+            recordChange(feed.estimator);
+        }
+    }
+
+    /**
+     * Lets evidence decay up to now in every tracked room, so rooms with
+     * no recent events can turn vacant.
+     */
+    public synchronized void refresh() {
+        long now = clock.getAsLong();
+        for (PresenceEstimator estimator : estimators.values()) {
+            if (estimator.refresh(now)) {
+                recordChange(estimator);
+            }
+        }
+    }
+
+    private void recordChange(PresenceEstimator estimator) {
+        // A room that flipped twice since the last poll is back where it was
+        if (!changed.remove(estimator)) {
+            changed.add(estimator);
+        }
+        System.out.println("[PRESENCE] " + estimator.getRoom().getName() + " is now " +
+                         (estimator.isOccupied() ? "OCCUPIED" : "VACANT") +
+                         String.format(" (score %.2f)", estimator.getScore()));
+    }
+
+    /**
+     * Gets and clears the rooms whose occupancy changed since the last call.
+     *
+     * @return Estimators of the changed rooms
+     */
+    public synchronized List<PresenceEstimator> pollChanges() {
+        List<PresenceEstimator> result = new ArrayList<>(changed);
+        changed.clear();
+        return result;
+    }
+
+    /**
+     * Gets the estimator for a room.
+     *
+     * @param room The room
+     * @return The estimator, or null if the room is not tracked
+     */
+    public synchronized PresenceEstimator getEstimator(Room room) {
+        return estimators.get(room);
+    }
+
+    /**
+     * Gets the number of tracked rooms.
+     *
+     * @return Room count
+     */
+    public synchronized int getRoomCount() {
+        return estimators.size();
+    }
+
+    /**
+     * Gets the number of tracked rooms currently occupied.
+     *
+     * @return Occupied room count
+     */
+    public synchronized int getOccupiedCount() {
+        int count = 0;
+        for (PresenceEstimator estimator : estimators.values()) {
+            if (estimator.isOccupied()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,186 @@
+package com.smarthome.behavioral;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A cron-like recurrence used by the {@link ScheduleEngine}.
+ *
+ * <p>Uses the classic five cron fields: minute, hour, day of month,
+ * month and day of week (0 or 7 = Sunday). Each field accepts
+ * {@code *}, single values, ranges ({@code 1-5}), lists ({@code 6,18})
+ * and steps ({@code *}{@code /15}, {@code 8-18/2}). As in cron, when both
+ * day fields are restricted a day matches if either one does.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * Recurrence weekdayMornings = Recurrence.parse("30 6 * * 1-5");
+ * Recurrence everyQuarterHour = Recurrence.parse("*" + "/15 * * * *");
+ * Recurrence bedtime = Recurrence.daily(LocalTime.of(22, 0));
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class Recurrence {
+    // How far ahead to search before deciding an expression never matches
+    private static final int MAX_SEARCH_DAYS = 366 * 5;
+
+    private final String expression;
+    private final long minutes;      // bits 0-59
+    private final int hours;         // bits 0-23
+    private final long daysOfMonth;  // bits 1-31
+    private final int months;        // bits 1-12
+    private final int daysOfWeek;    // bits 0-6, 0 = Sunday
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+
+    private Recurrence(String expression, long minutes, int hours, long daysOfMonth, int months,
+                       int daysOfWeek, boolean dayOfMonthRestricted, boolean dayOfWeekRestricted) {
+        this.expression = expression;
+        this.minutes = minutes;
+        this.hours = hours;
+        this.daysOfMonth = daysOfMonth;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek;
+        this.dayOfMonthRestricted = dayOfMonthRestricted;
+        this.dayOfWeekRestricted = dayOfWeekRestricted;
+    }
+
+    /**
+     * Parses a five-field cron expression.
+     *
+     * @param expression e.g. "0 6 * * *"
+     * @return The recurrence
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    public static Recurrence parse(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Expected 5 cron fields: " + expression);
+        }
+        long dow = parseField(fields[4], 0, 7);
+        if ((dow & (1L << 7)) != 0) {
+            dow = (dow | 1L) & ~(1L << 7); // 7 is also Sunday
+        }
+        return new Recurrence(expression,
+                              parseField(fields[0], 0, 59),
+                              (int) parseField(fields[1], 0, 23),
+                              parseField(fields[2], 1, 31),
+                              (int) parseField(fields[3], 1, 12),
+                              (int) dow,
+                              !fields[2].equals("*"),
+                              !fields[4].equals("*"));
+    }
+
+    /**
+     * Creates a recurrence that fires every day at the given time.
+     *
+     * @param time Time of day (seconds are ignored)
+     * @return The recurrence
+     */
+    public static Recurrence daily(LocalTime time) {
+        return parse(time.getMinute() + " " + time.getHour() + " * * *");
+    }
+
+    /**
+     * Creates a recurrence that fires on the given days at the given time.
+     *
+     * @param time Time of day (seconds are ignored)
+     * @param days Days of the week
+     * @return The recurrence
+     */
+    public static Recurrence weekly(LocalTime time, DayOfWeek... days) {
+        StringBuilder list = new StringBuilder();
+        for (DayOfWeek day : days) {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(day.getValue() % 7);
+        }
+        return parse(time.getMinute() + " " + time.getHour() + " * * " + list);
+    }
+
+    private static long parseField(String field, int min, int max) {
+        long mask = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                to = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+            } else {
+                from = Integer.parseInt(part);
+                to = slash >= 0 ? max : from;
+            }
+            if (from < min || to > max || from > to || step < 1) {
+                throw new IllegalArgumentException("Cron field out of range: " + field);
+            }
+            for (int value = from; value <= to; value += step) {
+                mask |= 1L << value;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Finds the first occurrence strictly after the given time.
+     *
+     * @param after The reference time
+     * @return The next occurrence, at a whole minute
+     * @throws IllegalStateException if the expression never matches
+     */
+    public LocalDateTime nextAfter(LocalDateTime after) {
+        LocalDateTime start = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDate date = start.toLocalDate();
+        for (int day = 0; day < MAX_SEARCH_DAYS; day++, date = date.plusDays(1)) {
+            if (!matchesDate(date)) {
+                continue;
+            }
+            int fromHour = day == 0 ? start.getHour() : 0;
+            for (int hour = fromHour; hour < 24; hour++) {
+                if ((hours & (1 << hour)) == 0) {
+                    continue;
+                }
+                int fromMinute = (day == 0 && hour == start.getHour()) ? start.getMinute() : 0;
+                for (int minute = fromMinute; minute < 60; minute++) {
+                    if ((minutes & (1L << minute)) != 0) {
+                        return date.atTime(hour, minute);
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("Recurrence never fires: " + expression);
+    }
+
+    private boolean matchesDate(LocalDate date) {
+        if ((months & (1 << date.getMonthValue())) == 0) {
+            return false;
+        }
+        boolean domMatch = (daysOfMonth & (1L << date.getDayOfMonth())) != 0;
+        boolean dowMatch = (daysOfWeek & (1 << (date.getDayOfWeek().getValue() % 7))) != 0;
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return domMatch || dowMatch;
+        }
+        return domMatch && dowMatch;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
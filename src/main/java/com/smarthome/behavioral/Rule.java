@@ -0,0 +1,121 @@
+package com.smarthome.behavioral;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A declarative automation rule: <i>when</i> a device satisfies all
+ * conditions, and the current time is inside the rule's window,
+ * <i>then</i> run the action on that device.
+ *
+ * <p>Rules are edge triggered. The action runs when a device starts
+ * matching, or when the time window opens for devices that already
+ * match; it does not run again while nothing changes.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * Rule morning = new Rule("Morning bedroom lights")
+ *     .when(DeviceCondition.ofType(Light.class))
+ *     .when(DeviceCondition.inRoom(bedroom))
+ *     .between(LocalTime.of(6, 0), LocalTime.of(8, 0))
+ *     .then((device, commands) -> commands.setBrightness((Light) device, 60));
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class Rule {
+    private final String name;
+    private final List<DeviceCondition> conditions;
+    private LocalTime windowStart;
+    private LocalTime windowEnd;
+    private DeviceAction action;
+
+    /**
+     * Creates an empty rule.
+     *
+     * @param name The rule name, used in logs
+     */
+    public Rule(String name) {
+        this.name = name;
+        this.conditions = new ArrayList<>();
+    }
+
+    /**
+     * Adds a condition every matching device must satisfy.
+     *
+     * @param condition The condition
+     * @return This rule, for chaining
+     */
+    public Rule when(DeviceCondition condition) {
+        conditions.add(condition);
+        return this;
+    }
+
+    /**
+     * Limits the rule to a daily time window. The window may wrap past
+     * midnight (e.g. 22:00 to 06:00).
+     *
+     * @param start Start of the window (inclusive)
+     * @param end End of the window (exclusive)
+     * @return This rule, for chaining
+     */
+    public Rule between(LocalTime start, LocalTime end) {
+        this.windowStart = start;
+        this.windowEnd = end;
+        return this;
+    }
+
+    /**
+     * Sets the action to run on matching devices. It should send its
+     * changes through the sink it is given. Look capabilities up with
+     * {@code Capabilities.of} if it needs device-specific methods.
+     *
+     * @param action The action
+     * @return This rule, for chaining
+     */
+    public Rule then(DeviceAction action) {
+        this.action = action;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<DeviceCondition> getConditions() {
+        return conditions;
+    }
+
+    public DeviceAction getAction() {
+        return action;
+    }
+
+    /**
+     * Checks whether the rule has a time window.
+     *
+     * @return true if timed
+     */
+    public boolean isTimed() {
+        return windowStart != null;
+    }
+
+    /**
+     * Checks whether the time window is open.
+     *
+     * @param time The time to check
+     * @return true if the rule has no window or the time is inside it
+     */
+    public boolean isActiveAt(LocalTime time) {
+        if (!isTimed()) {
+            return true;
+        }
+        if (windowStart.isBefore(windowEnd)) {
+            return !time.isBefore(windowStart) && time.isBefore(windowEnd);
+        }
+        return !time.isBefore(windowStart) || time.isBefore(windowEnd);
+    }
+}
@@ -0,0 +1,116 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.Room;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Rule-based control strategy.
+ * Devices are controlled by declarative {@link Rule}s instead of
+ * hard-coded if/else routines.
+ *
+ * <p>The first call to {@link #controlDevices(List)} loads the devices
+ * into the {@link RuleEngine}; after that the engine reacts to device
+ * changes on its own, and each further call only adds new devices and
+ * advances the clock. Rule actions send their changes through the
+ * sink the controller gives the strategy, so they go through the
+ * schedule lane and into the undo history.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * RuleBasedControl rules = new RuleBasedControl();
+ * rules.watchRoom(bedroom);
+ * rules.addRule(new Rule("Night light")
+ *     .when(DeviceCondition.ofType(Light.class))
+ *     .when(DeviceCondition.inRoom(bedroom))
+ *     .between(LocalTime.of(22, 0), LocalTime.of(6, 0))
+ *     .then((device, commands) -> commands.turnOff(device)));
+ * controller.setControlStrategy(rules);
+ * controller.activateControlStrategy();
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class RuleBasedControl implements ControlStrategy {
+    private final RuleEngine engine;
+
+    /**
+     * Creates a rule-based strategy with no rules.
+     */
+    public RuleBasedControl() {
+        this.engine = new RuleEngine();
+    }
+
+    /**
+     * Sends the rules' device changes to the controller's schedule lane.
+     *
+     * @param sink Queues commands on the controller
+     */
+    @Override
+    public void setCommandSink(CommandSink sink) {
+        engine.setCommandSink(sink);
+    }
+
+    /**
+     * Adds a rule.
+     *
+     * @param rule The rule to add
+     */
+    public void addRule(Rule rule) {
+        engine.addRule(rule);
+    }
+
+    /**
+     * Follows a room used in room conditions.
+     *
+     * @param room The room to watch
+     */
+    public void watchRoom(Room room) {
+        engine.watchRoom(room);
+    }
+
+    /**
+     * Gets the underlying engine.
+     *
+     * @return The rule engine
+     */
+    public RuleEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Loads new devices into the engine and advances its clock.
+     *
+     * @param devices List of devices to control
+     */
+    @Override
+    public void controlDevices(List<SmartDevice> devices) {
+        int added = 0;
+        for (SmartDevice device : devices) {
+            if (!engine.contains(device)) {
+                engine.insert(device);
+                added++;
+            }
+        }
+        engine.tick(LocalTime.now());
+
+        System.out.println("[RULES MODE] " + engine.getRuleCount() + " rules active");
+        System.out.println("  → " + added + " new devices loaded");
+        System.out.println("  → " + engine.getFirings() + " actions fired, " +
+                           engine.getConditionTests() + " condition tests so far");
+    }
+
+    @Override
+    public String getStrategyName() {
+        return "Rule-Based Control";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Declarative rules matched incrementally as devices change.";
+    }
+}
@@ -0,0 +1,547 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.Room;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental matcher for {@link Rule}s, in the style of a Rete network.
+ *
+ * <p>Each distinct {@link DeviceCondition} becomes one condition node
+ * that remembers which devices currently pass it. Each rule becomes a
+ * rule node that remembers which devices pass all of its conditions.
+ * When a device changes, only that device is re-tested, and only the
+ * rule nodes fed by a condition whose result flipped are touched. A
+ * clock tick only looks at timed rules whose window opened. The work
+ * done follows the changes, not devices &times; rules.</p>
+ *
+ * <p>Condition nodes are indexed by what can change their answer (the
+ * alpha memory). Type conditions are tested once, when a device is
+ * inserted. Room conditions are indexed by room and re-tested only for
+ * devices that moved in or out of it, using the room's
+ * {@code DeviceIndex}. The other conditions are indexed by device type
+ * and re-tested when a device changes, and only those feeding a rule
+ * the device's type can satisfy. So a light switching on does not touch
+ * conditions that only thermostat rules use.</p>
+ *
+ * <p>Actions run after matching has settled, outside the engine's lock,
+ * and send their device changes through the engine's
+ * {@link CommandSink}; under a controller that is its command scheduler,
+ * so rule actions take a lane, pass the limits and land in the undo
+ * history like any other automation. Changes an action makes on the
+ * spot (with {@link CommandSink#DIRECT}) are fed back in the same
+ * cycle, with a cap to stop rules that undo each other from looping
+ * forever.</p>
+ *
+ * <p>Devices are tracked by identity (the undecorated device), so two
+ * devices that share a name are two facts.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class RuleEngine implements Observer {
+    private static final int MAX_FIRINGS_PER_CYCLE = 10000;
+
+    /**
+     * Shared node for one condition: the devices that currently pass it.
+     */
+    private static final class ConditionNode {
+        final DeviceCondition condition;
+        final Set<SmartDevice> passing = new HashSet<>();
+        final List<RuleNode> successors = new ArrayList<>();
+
+        ConditionNode(DeviceCondition condition) {
+            this.condition = condition;
+        }
+
+        /** True if the answer can change when the device itself changes. */
+        boolean dependsOnState() {
+            return condition.getType() == null && condition.getRoom() == null;
+        }
+    }
+
+    /**
+     * Node for one rule: the devices that pass all of its conditions.
+     */
+    private static final class RuleNode {
+        final Rule rule;
+        final List<ConditionNode> inputs = new ArrayList<>();
+        final Set<SmartDevice> matched = new LinkedHashSet<>();
+        boolean windowOpen;
+
+        RuleNode(Rule rule) {
+            this.rule = rule;
+        }
+
+        boolean passesAll(SmartDevice device) {
+            for (ConditionNode input : inputs) {
+                if (!input.passing.contains(device)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** False if a type condition of this rule rules out the class. */
+        boolean admits(Class<?> deviceClass) {
+            for (ConditionNode input : inputs) {
+                Class<?> type = input.condition.getType();
+                if (type != null && !type.isAssignableFrom(deviceClass)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A rule that is due to run its action on one device.
+     */
+    private static final class Activation {
+        final RuleNode node;
+        final SmartDevice device;
+
+        Activation(RuleNode node, SmartDevice device) {
+            this.node = node;
+            this.device = device;
+        }
+    }
+
+    private final Map<String, ConditionNode> conditionNodes;
+    private final Map<Room, List<ConditionNode>> roomNodes;
+    private final Map<Class<?>, List<ConditionNode>> insertNodesByType; // Built on demand
+    private final Map<Class<?>, List<ConditionNode>> stateNodesByType;
+    private final List<RuleNode> ruleNodes;
+    private final List<RuleNode> timedRules;
+    private final Map<SmartDevice, SmartDevice> facts;   // Undecorated device -> as inserted
+    private final Map<Room, Set<SmartDevice>> watchedRooms;
+
+    // Undecorated device -> condition nodes to re-test for it, oldest change first
+    private final LinkedHashMap<SmartDevice, Set<ConditionNode>> dirty;
+    private final ArrayDeque<Activation> agenda;
+    private boolean firing;                  // Some thread is running the agenda
+    private volatile CommandSink commands;
+
+    private LocalTime currentTime;
+    private long conditionTests;
+    private long firings;
+
+    /**
+     * Creates an empty engine.
+     */
+    public RuleEngine() {
+        this.conditionNodes = new LinkedHashMap<>();
+        this.roomNodes = new IdentityHashMap<>();
+        this.insertNodesByType = new HashMap<>();
+        this.stateNodesByType = new HashMap<>();
+        this.ruleNodes = new ArrayList<>();
+        this.timedRules = new ArrayList<>();
+        this.facts = new IdentityHashMap<>();
+        this.watchedRooms = new IdentityHashMap<>();
+        this.dirty = new LinkedHashMap<>();
+        this.agenda = new ArrayDeque<>();
+        this.currentTime = LocalTime.now();
+        this.commands = CommandSink.DIRECT;
+    }
+
+    /**
+     * Sets where rule actions send their device changes.
+     *
+     * @param sink The sink, e.g. the controller's schedule lane
+     */
+    public void setCommandSink(CommandSink sink) {
+        this.commands = sink;
+    }
+
+    /**
+     * Adds a rule to the network. Devices that already match are recorded
+     * but the action does not run until they change or the window opens.
+     *
+     * @param rule The rule to add
+     */
+    public synchronized void addRule(Rule rule) {
+        RuleNode node = new RuleNode(rule);
+        List<ConditionNode> created = new ArrayList<>();
+        for (DeviceCondition condition : rule.getConditions()) {
+            ConditionNode input = conditionNodes.get(condition.getKey());
+            if (input == null) {
+                input = new ConditionNode(condition);
+                conditionNodes.put(condition.getKey(), input);
+                if (condition.getRoom() != null) {
+                    roomNodes.computeIfAbsent(condition.getRoom(), r -> new ArrayList<>()).add(input);
+                }
+                created.add(input);
+            }
+            input.successors.add(node);
+            node.inputs.add(input);
+        }
+        // Bring the inputs up to date for the devices this rule can match.
+        // A shared node may not have been tested for them until now.
+        for (ConditionNode input : node.inputs) {
+            boolean typeTest = input.condition.getType() != null;
+            if (typeTest && !created.contains(input)) {
+                continue;
+            }
+            for (Map.Entry<SmartDevice, SmartDevice> fact : facts.entrySet()) {
+                if (!typeTest && !node.admits(fact.getKey().getClass())) {
+                    continue;
+                }
+                conditionTests++;
+                if (input.condition.test(fact.getValue())) {
+                    input.passing.add(fact.getKey());
+                } else {
+                    input.passing.remove(fact.getKey());
+                }
+            }
+        }
+        for (SmartDevice key : facts.keySet()) {
+            if (node.passesAll(key)) {
+                node.matched.add(key);
+            }
+        }
+        node.windowOpen = rule.isActiveAt(currentTime);
+        ruleNodes.add(node);
+        if (rule.isTimed()) {
+            timedRules.add(node);
+        }
+        insertNodesByType.clear();
+        stateNodesByType.clear();
+        System.out.println("[RULES] Rule added: " + rule.getName() +
+                         " (" + conditionNodes.size() + " shared conditions)");
+    }
+
+    /**
+     * Takes a rule out of the network. Condition nodes no other rule uses
+     * are dropped with it.
+     *
+     * @param rule The rule to remove
+     * @return true if the rule was in the network
+     */
+    public synchronized boolean removeRule(Rule rule) {
+        RuleNode node = null;
+        for (RuleNode candidate : ruleNodes) {
+            if (candidate.rule == rule) {
+                node = candidate;
+                break;
+            }
+        }
+        if (node == null) {
+            return false;
+        }
+        ruleNodes.remove(node);
+        timedRules.remove(node);
+        for (ConditionNode input : node.inputs) {
+            input.successors.remove(node);
+            if (input.successors.isEmpty()) {
+                conditionNodes.remove(input.condition.getKey());
+                Room room = input.condition.getRoom();
+                if (room != null) {
+                    List<ConditionNode> nodes = roomNodes.get(room);
+                    nodes.remove(input);
+                    if (nodes.isEmpty()) {
+                        roomNodes.remove(room);
+                    }
+                }
+                for (Set<ConditionNode> pending : dirty.values()) {
+                    pending.remove(input);
+                }
+            }
+        }
+        insertNodesByType.clear();
+        stateNodesByType.clear();
+        System.out.println("[RULES] Rule removed: " + rule.getName() +
+                         " (" + conditionNodes.size() + " shared conditions)");
+        return true;
+    }
+
+
+    /**
+     * Adds a device to the working memory and starts observing it.
+     *
+     * @param device The device (decorated or not)
+     */
+    public void insert(SmartDevice device) {
+        synchronized (this) {
+            SmartDevice key = DeviceDecorator.unwrap(device);
+            if (facts.putIfAbsent(key, device) != null) {
+                return;
+            }
+            device.addObserver(this);
+            markDirty(key, relevantNodes(key, true));
+        }
+        fireAll();
+    }
+
+    /**
+     * Checks whether a device is already in working memory.
+     *
+     * @param device The device (decorated or not)
+     * @return true if known
+     */
+    public synchronized boolean contains(SmartDevice device) {
+        return facts.containsKey(DeviceDecorator.unwrap(device));
+    }
+
+    /**
+     * Removes a device from the working memory. Its later changes are
+     * ignored.
+     *
+     * @param device The device (decorated or not)
+     */
+    public synchronized void retract(SmartDevice device) {
+        SmartDevice key = DeviceDecorator.unwrap(device);
+        if (facts.remove(key) != null) {
+            if (!watchedRooms.containsKey(device)) {
+                device.removeObserver(this);
+            }
+            for (ConditionNode node : conditionNodes.values()) {
+                node.passing.remove(key);
+            }
+            for (RuleNode node : ruleNodes) {
+                node.matched.remove(key);
+            }
+            dirty.remove(key);
+        }
+    }
+
+    /**
+     * Follows a room so devices moving in or out of it are re-matched
+     * against room conditions.
+     *
+     * @param room The room to watch
+     */
+    public synchronized void watchRoom(Room room) {
+        if (!watchedRooms.containsKey(room)) {
+            watchedRooms.put(room, members(room));
+            room.addObserver(this);
+        }
+    }
+
+    /**
+     * Re-matches a device after it changed. Actions this sets off run
+     * after the engine's lock is released.
+     *
+     * @param device The device that changed
+     */
+    @Override
+    public void update(SmartDevice device) {
+        synchronized (this) {
+            Set<SmartDevice> previousMembers = watchedRooms.get(device);
+            if (previousMembers != null) {
+                // Only devices that moved in or out, and only this room's conditions
+                Room room = (Room) device;
+                Set<SmartDevice> members = members(room);
+                List<ConditionNode> nodes = roomNodes.get(room);
+                if (nodes != null) {
+                    for (SmartDevice member : previousMembers) {
+                        if (!members.contains(member)) {
+                            markDirty(member, nodes);
+                        }
+                    }
+                    for (SmartDevice member : members) {
+                        if (!previousMembers.contains(member)) {
+                            markDirty(member, nodes);
+                        }
+                    }
+                }
+                watchedRooms.put(room, members);
+            }
+            SmartDevice key = DeviceDecorator.unwrap(device);
+            if (facts.containsKey(key)) {
+                markDirty(key, relevantNodes(key, false));
+            }
+        }
+        fireAll();
+    }
+
+    /**
+     * Advances the clock. Timed rules whose window just opened run their
+     * action on every device they already match.
+     *
+     * @param time The current time
+     */
+    public void tick(LocalTime time) {
+        synchronized (this) {
+            currentTime = time;
+            for (RuleNode node : timedRules) {
+                boolean open = node.rule.isActiveAt(time);
+                if (open && !node.windowOpen) {
+                    for (SmartDevice device : node.matched) {
+                        agenda.add(new Activation(node, device));
+                    }
+                }
+                node.windowOpen = open;
+            }
+        }
+        fireAll();
+    }
+
+    private Set<SmartDevice> members(Room room) {
+        Set<SmartDevice> members = new HashSet<>();
+        for (SmartDevice member : room.getDevices()) {
+            members.add(DeviceDecorator.unwrap(member));
+        }
+        return members;
+    }
+
+    /**
+     * Gets the conditions to test for a device of this type: those that
+     * feed at least one rule the type can match. On insert that includes
+     * type and room conditions; after a change, only conditions whose
+     * answer depends on device state.
+     */
+    private List<ConditionNode> relevantNodes(SmartDevice key, boolean onInsert) {
+        Class<?> deviceClass = key.getClass();
+        Map<Class<?>, List<ConditionNode>> cache = onInsert ? insertNodesByType : stateNodesByType;
+        List<ConditionNode> nodes = cache.get(deviceClass);
+        if (nodes == null) {
+            nodes = new ArrayList<>();
+            for (ConditionNode node : conditionNodes.values()) {
+                if (node.condition.getType() != null && onInsert) {
+                    nodes.add(node);
+                    continue;
+                }
+                if (!onInsert && !node.dependsOnState()) {
+                    continue;
+                }
+                for (RuleNode ruleNode : node.successors) {
+                    if (ruleNode.admits(deviceClass)) {
+                        nodes.add(node);
+                        break;
+                    }
+                }
+            }
+            cache.put(deviceClass, nodes);
+        }
+        return nodes;
+    }
+
+    private void markDirty(SmartDevice key, Collection<ConditionNode> nodes) {
+        if (facts.containsKey(key) && !nodes.isEmpty()) {
+            dirty.computeIfAbsent(key, k -> new LinkedHashSet<>()).addAll(nodes);
+        }
+    }
+
+    /**
+     * Propagates pending changes and runs queued actions until both are
+     * empty. Matching happens under the lock; each action runs after it
+     * is released, so an action never holds the engine while devices and
+     * their other observers react. If another call is already running
+     * the agenda, it picks up what this one queued.
+     */
+    private void fireAll() {
+        int fired = 0;
+        synchronized (this) {
+            if (firing) {
+                return; // An action caused this change, or another thread is firing
+            }
+            firing = true;
+        }
+        try {
+            while (true) {
+                Activation activation;
+                SmartDevice fact;
+                synchronized (this) {
+                    activation = null;
+                    fact = null;
+                    while (activation == null && (!dirty.isEmpty() || !agenda.isEmpty())) {
+                        while (!dirty.isEmpty()) {
+                            Iterator<Map.Entry<SmartDevice, Set<ConditionNode>>> oldest = dirty.entrySet().iterator();
+                            Map.Entry<SmartDevice, Set<ConditionNode>> entry = oldest.next();
+                            oldest.remove();
+                            propagate(entry.getKey(), entry.getValue());
+                        }
+                        Activation next = agenda.poll();
+                        // Re-check: an earlier action in this cycle may have changed things
+                        if (next != null && next.node.windowOpen && next.node.matched.contains(next.device)
+                                && next.node.rule.getAction() != null) {
+                            activation = next;
+                            fact = facts.get(next.device);
+                        }
+                    }
+                    if (activation == null) {
+                        firing = false;
+                        return;
+                    }
+                    if (++fired > MAX_FIRINGS_PER_CYCLE) {
+                        System.out.println("[RULES] Too many firings in one cycle, stopping (rules may conflict)");
+                        agenda.clear();
+                        dirty.clear();
+                        firing = false;
+                        return;
+                    }
+                    firings++;
+                }
+                System.out.println("[RULES] " + activation.node.rule.getName() + " → " + fact.getName());
+                activation.node.rule.getAction().apply(fact, commands);
+            }
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                firing = false;
+            }
+            throw e;
+        }
+    }
+
+    private void propagate(SmartDevice key, Set<ConditionNode> nodes) {
+        SmartDevice fact = facts.get(key);
+        for (ConditionNode node : nodes) {
+            conditionTests++;
+            boolean passes = node.condition.test(fact);
+            boolean changed = passes ? node.passing.add(key) : node.passing.remove(key);
+            if (!changed) {
+                continue;
+            }
+            for (RuleNode ruleNode : node.successors) {
+                if (passes && ruleNode.passesAll(key)) {
+                    if (ruleNode.matched.add(key) && ruleNode.windowOpen) {
+                        agenda.add(new Activation(ruleNode, key));
+                    }
+                } else if (!passes) {
+                    ruleNode.matched.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of rules in the network.
+     *
+     * @return Rule count
+     */
+    public synchronized int getRuleCount() {
+        return ruleNodes.size();
+    }
+
+    /**
+     * Gets the number of condition tests run so far.
+     * Useful to confirm work follows changes rather than devices &times; rules.
+     *
+     * @return Condition test count
+     */
+    public synchronized long getConditionTests() {
+        return conditionTests;
+    }
+
+    /**
+     * Gets the number of actions run so far.
+     *
+     * @return Firing count
+     */
+    public synchronized long getFirings() {
+        return firings;
+    }
+}
@@ -0,0 +1,445 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.DeviceTimers;
+import com.smarthome.devices.SmartDevice;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link ScheduleEntry}s when they come due.
+ *
+ * <p>Entries sit in a priority queue ordered by next fire time. The
+ * engine has no thread of its own: it sets one wake-up on the shared
+ * {@link DeviceTimers} thread for when the head entry is due, so an idle
+ * engine costs one wake-up per minute no matter how many entries it
+ * holds (the cap lets it notice wall-clock changes). Adding an entry
+ * that is due sooner than the current head moves the wake-up earlier.
+ * Due entries run on the executor bound to the thread that called
+ * {@link #start()} (a home's task queue), or on the timer thread if
+ * none was bound.</p>
+ *
+ * <p>Downtime and clock jumps are handled when the worker wakes:</p>
+ * <ul>
+ *   <li>Jump forward / downtime - late entries fire once (or are skipped
+ *       if they do not catch up), the missed runs are counted, and the
+ *       entry is rescheduled from the current time.</li>
+ *   <li>Jump backward - every entry is rescheduled from the new time so
+ *       nothing waits for the old clock to come back around.</li>
+ * </ul>
+ *
+ * <p>Cancelled entries are dropped lazily when they reach the head of
+ * the queue.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ScheduleEngine {
+    // Longest the worker sleeps before re-reading the clock
+    private static final long MAX_WAIT_MILLIS = 60_000;
+    // How late an entry may fire and still count as on time
+    private static final long LATE_TOLERANCE_MILLIS = 60_000;
+    // Upper bound when counting missed occurrences after long downtime
+    private static final int MAX_MISSED_COUNTED = 100_000;
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private final PriorityQueue<ScheduleEntry> queue;
+    private final Map<SmartDevice, List<ScheduleEntry>> byTarget;
+
+    private Executor executor;           // Where wake-ups run, bound at start()
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpMillis;
+    private volatile boolean running;
+    private volatile CommandSink commands;
+    private long nextId;
+    private long lastCheckMillis;
+    private long totalFirings;
+    private long totalMissed;
+    private long wakeUps;
+
+    /**
+     * Creates an engine on the system clock.
+     */
+    public ScheduleEngine() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates an engine on the given clock.
+     *
+     * @param clock The clock (a fixed or offset clock is handy for testing)
+     */
+    public ScheduleEngine(Clock clock) {
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.queue = new PriorityQueue<>(Comparator
+            .comparingLong((ScheduleEntry entry) -> entry.nextFireMillis)
+            .thenComparingLong(ScheduleEntry::getId));
+        this.byTarget = new IdentityHashMap<>();
+        this.lastCheckMillis = clock.millis();
+        this.commands = CommandSink.DIRECT;
+    }
+
+    /**
+     * Sets where device actions send their changes.
+     *
+     * @param sink The sink, e.g. the controller's schedule lane
+     */
+    public void setCommandSink(CommandSink sink) {
+        this.commands = sink;
+    }
+
+    /**
+     * Schedules a task that is not tied to a device.
+     *
+     * @param description Shown in logs and schedule listings
+     * @param recurrence When to run
+     * @param task The work to do
+     * @return The new entry
+     */
+    public ScheduleEntry schedule(String description, Recurrence recurrence, Runnable task) {
+        return add(new ScheduleEntry(nextId(), description, null, recurrence, task, true));
+    }
+
+    /**
+     * Schedules an action on a device or room.
+     * Use a {@link com.smarthome.structural.Room} as the target to act on
+     * a whole room.
+     *
+     * @param target The device or room
+     * @param recurrence When to run
+     * @param action The action to apply to the target
+     * @param description Shown in logs and schedule listings
+     * @return The new entry
+     */
+    public ScheduleEntry schedule(SmartDevice target, Recurrence recurrence,
+                                  DeviceAction action, String description) {
+        return schedule(target, recurrence, action, description, true);
+    }
+
+    /**
+     * Schedules an action on a device or room.
+     *
+     * @param target The device or room
+     * @param recurrence When to run
+     * @param action The action to apply to the target
+     * @param description Shown in logs and schedule listings
+     * @param catchUp Whether a late entry still fires once after downtime
+     * @return The new entry
+     */
+    public ScheduleEntry schedule(SmartDevice target, Recurrence recurrence,
+                                  DeviceAction action, String description, boolean catchUp) {
+        Runnable task = () -> action.apply(target, commands);
+        return add(new ScheduleEntry(nextId(), description, target, recurrence, task, catchUp));
+    }
+
+    private synchronized long nextId() {
+        return ++nextId;
+    }
+
+    private synchronized ScheduleEntry add(ScheduleEntry entry) {
+        setNextFire(entry, entry.getRecurrence().nextAfter(LocalDateTime.now(clock)));
+        ScheduleEntry head = queue.peek();
+        queue.add(entry);
+        if (entry.getTarget() != null) {
+            byTarget.computeIfAbsent(entry.getTarget(), key -> new ArrayList<>()).add(entry);
+        }
+        if (running && (head == null || entry.nextFireMillis < wakeUpMillis)) {
+            arm(entry.nextFireMillis - clock.millis()); // The current wake-up is too late
+        }
+        return entry;
+    }
+
+    /**
+     * Cancels an entry. It is removed from the queue when it next reaches
+     * the head.
+     *
+     * @param entry The entry to cancel
+     */
+    public synchronized void cancel(ScheduleEntry entry) {
+        entry.cancelled = true;
+        if (entry.getTarget() != null) {
+            List<ScheduleEntry> entries = byTarget.get(entry.getTarget());
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    byTarget.remove(entry.getTarget());
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels every entry for a device or room.
+     *
+     * @param target The device or room
+     * @return Number of entries cancelled
+     */
+    public synchronized int cancelAll(SmartDevice target) {
+        List<ScheduleEntry> entries = byTarget.remove(target);
+        if (entries == null) {
+            return 0;
+        }
+        for (ScheduleEntry entry : entries) {
+            entry.cancelled = true;
+        }
+        return entries.size();
+    }
+
+    /**
+     * Gets the live entries for a device or room.
+     *
+     * @param target The device or room
+     * @return Copy of the entries
+     */
+    public synchronized List<ScheduleEntry> getEntries(SmartDevice target) {
+        List<ScheduleEntry> entries = byTarget.get(target);
+        return entries == null ? new ArrayList<>() : new ArrayList<>(entries);
+    }
+
+    /**
+     * Gets all live entries, soonest first.
+     *
+     * @return Copy of the entries
+     */
+    public synchronized List<ScheduleEntry> getEntries() {
+        List<ScheduleEntry> entries = new ArrayList<>(queue.size());
+        for (ScheduleEntry entry : queue) {
+            if (!entry.cancelled) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(queue.comparator());
+        return entries;
+    }
+
+    /**
+     * Starts firing entries. Call it from the thread whose executor
+     * should run them, e.g. from one of a home's tasks.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastCheckMillis = clock.millis();
+        executor = DeviceTimers.currentExecutor();
+        arm(millisUntilNextDue());
+        System.out.println("[SCHEDULE] Engine started with " + queue.size() + " entries");
+    }
+
+    /**
+     * Stops firing entries. Entries are kept and can be resumed with
+     * {@link #start()}; anything that came due meanwhile is caught up.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+        System.out.println("[SCHEDULE] Engine stopped");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Replaces the pending wake-up with one after the given delay.
+     * Called with the lock held.
+     */
+    private void arm(long delayMillis) {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        long delay = Math.max(0, Math.min(delayMillis, MAX_WAIT_MILLIS));
+        wakeUpMillis = clock.millis() + delay;
+        Executor previous = DeviceTimers.bindExecutor(executor);
+        try {
+            wakeUp = DeviceTimers.schedule(this::wake, delay, TimeUnit.MILLISECONDS);
+        } finally {
+            DeviceTimers.bindExecutor(previous);
+        }
+    }
+
+    private void wake() {
+        try {
+            synchronized (this) {
+                if (!running) {
+                    return;
+                }
+                wakeUps++;
+                long delay = millisUntilNextDue();
+                if (delay > 0) {
+                    arm(delay);
+                    return;
+                }
+            }
+            runDue(LocalDateTime.now(clock));
+        } catch (RuntimeException e) {
+            System.out.println("[SCHEDULE] Error: " + e.getMessage());
+        }
+        synchronized (this) {
+            if (running) {
+                arm(millisUntilNextDue());
+            }
+        }
+    }
+
+    private long millisUntilNextDue() {
+        ScheduleEntry head = queue.peek();
+        while (head != null && head.cancelled) {
+            queue.poll();
+            head = queue.peek();
+        }
+        long now = clock.millis();
+        if (now < lastCheckMillis - LATE_TOLERANCE_MILLIS) {
+            rebase(LocalDateTime.now(clock));
+            head = queue.peek();
+        }
+        lastCheckMillis = now;
+        return head == null ? MAX_WAIT_MILLIS : head.nextFireMillis - now;
+    }
+
+    /**
+     * Fires every entry that is due at the given time. A started engine
+     * calls this on its own; call it directly to drive the engine by hand
+     * without starting it.
+     *
+     * @param now The current time
+     * @return Number of entries fired
+     */
+    public int runDue(LocalDateTime now) {
+        long nowMillis = toMillis(now);
+        List<ScheduleEntry> due = new ArrayList<>();
+        synchronized (this) {
+            if (nowMillis < lastCheckMillis - LATE_TOLERANCE_MILLIS) {
+                rebase(now);
+            }
+            lastCheckMillis = nowMillis;
+            while (!queue.isEmpty() && queue.peek().nextFireMillis <= nowMillis) {
+                ScheduleEntry entry = queue.poll();
+                if (!entry.cancelled) {
+                    due.add(entry);
+                }
+            }
+        }
+
+        int fired = 0;
+        for (ScheduleEntry entry : due) {
+            long missed = countMissed(entry, now);
+            boolean late = nowMillis - entry.nextFireMillis > LATE_TOLERANCE_MILLIS;
+            if (late) {
+                System.out.println("[SCHEDULE] Catching up: " + entry.getDescription() +
+                                 " (due " + entry.nextFire + ", " + missed + " missed)");
+            }
+            boolean ran = false;
+            if (!late || entry.isCatchUp()) {
+                try {
+                    entry.getTask().run();
+                    ran = true;
+                    fired++;
+                } catch (RuntimeException e) {
+                    System.out.println("[SCHEDULE] " + entry.getDescription() + " failed: " + e.getMessage());
+                }
+            } else {
+                missed++;
+            }
+            synchronized (this) {
+                if (ran) {
+                    entry.fireCount++;
+                }
+                entry.missedCount += missed;
+                totalMissed += missed;
+                if (!entry.cancelled) {
+                    setNextFire(entry, entry.getRecurrence().nextAfter(now));
+                    queue.add(entry);
+                }
+            }
+        }
+        synchronized (this) {
+            totalFirings += fired;
+        }
+        return fired;
+    }
+
+    /**
+     * Counts occurrences between an entry's due time and now, beyond the
+     * one that is about to fire.
+     */
+    private long countMissed(ScheduleEntry entry, LocalDateTime now) {
+        long missed = 0;
+        LocalDateTime next = entry.getRecurrence().nextAfter(entry.nextFire);
+        while (!next.isAfter(now) && missed < MAX_MISSED_COUNTED) {
+            missed++;
+            next = entry.getRecurrence().nextAfter(next);
+        }
+        return missed;
+    }
+
+    /**
+     * Reschedules every entry from the given time after the clock went back.
+     */
+    private void rebase(LocalDateTime now) {
+        System.out.println("[SCHEDULE] Clock moved back, rescheduling " + queue.size() + " entries");
+        List<ScheduleEntry> entries = new ArrayList<>(queue);
+        queue.clear();
+        for (ScheduleEntry entry : entries) {
+            if (!entry.cancelled) {
+                setNextFire(entry, entry.getRecurrence().nextAfter(now));
+                queue.add(entry);
+            }
+        }
+    }
+
+    private void setNextFire(ScheduleEntry entry, LocalDateTime time) {
+        entry.nextFire = time;
+        entry.nextFireMillis = toMillis(time);
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Gets the number of entries in the queue, including cancelled ones
+     * not yet dropped.
+     *
+     * @return Queue size
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized long getTotalFirings() {
+        return totalFirings;
+    }
+
+    public synchronized long getTotalMissed() {
+        return totalMissed;
+    }
+
+    /**
+     * Gets how many times the engine has woken up.
+     * With nothing due this grows by about one per minute.
+     *
+     * @return Wake-up count
+     */
+    public synchronized long getWakeUps() {
+        return wakeUps;
+    }
+}
@@ -0,0 +1,97 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+import java.time.LocalDateTime;
+
+/**
+ * One entry in a {@link ScheduleEngine}: a recurrence, the work to do
+ * when it comes due, and an optional target device or room.
+ *
+ * <p>Entries are created by the engine. Keep the returned entry to
+ * cancel it later.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class ScheduleEntry {
+    private final long id;
+    private final String description;
+    private final SmartDevice target;
+    private final Recurrence recurrence;
+    private final Runnable task;
+    private final boolean catchUp;
+
+    // Written under the engine's lock, volatile so getters can read them
+    volatile LocalDateTime nextFire;
+    long nextFireMillis;
+    volatile boolean cancelled;
+    volatile long fireCount;
+    volatile long missedCount;
+
+    ScheduleEntry(long id, String description, SmartDevice target, Recurrence recurrence,
+                  Runnable task, boolean catchUp) {
+        this.id = id;
+        this.description = description;
+        this.target = target;
+        this.recurrence = recurrence;
+        this.task = task;
+        this.catchUp = catchUp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Gets the device or room this entry acts on.
+     *
+     * @return The target, or null for entries not tied to a device
+     */
+    public SmartDevice getTarget() {
+        return target;
+    }
+
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    /**
+     * Checks whether a late entry still fires once when the engine
+     * catches up after downtime or a clock jump.
+     *
+     * @return true if missed runs are caught up
+     */
+    public boolean isCatchUp() {
+        return catchUp;
+    }
+
+    public LocalDateTime getNextFire() {
+        return nextFire;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getFireCount() {
+        return fireCount;
+    }
+
+    /**
+     * Gets the number of occurrences skipped while the engine was not
+     * running or the clock jumped past them.
+     *
+     * @return Missed occurrence count
+     */
+    public long getMissedCount() {
+        return missedCount;
+    }
+
+    Runnable getTask() {
+        return task;
+    }
+}
@@ -1,161 +1,282 @@
 package com.smarthome.behavioral;
 
 import com.smarthome.devices.SmartDevice;
-import com.smarthome.devices.Light;
-import com.smarthome.devices.Thermostat;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.structural.DeviceIndex;
+import java.time.Clock;
 import java.time.LocalTime;
-import java.util.HashMap;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Scheduled control strategy.
  * Controls devices based on time schedules.
  * Perfect for routines like morning wake-up, evening wind-down, etc.
  * 
+ * <p>Routines are entries in a {@link ScheduleEngine}, which fires each
+ * one when it comes due. Activating the strategy applies the routine for
+ * the current time of day once and starts the engine; after that no
+ * polling is needed. Entries for single devices or rooms can be added
+ * with {@link #scheduleDevice(SmartDevice, String, DeviceAction, String)}.</p>
+ * 
+ * <p>Routines pick their devices by room tag ("bedroom", "living room",
+ * "kitchen") through the {@link DeviceIndex}, not by device name.</p>
+ * 
  * @author dwayne headley
  * @version 1.0
  */
 public class ScheduledControl implements ControlStrategy {
-    private Map<String, String> schedule;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    
+    private final Clock clock;
+    private final ScheduleEngine engine;
+    private final DeviceIndex index;
+    private volatile List<SmartDevice> devices;
+    private volatile CommandSink commands;
+    private boolean started;
     
     /**
      * Creates a scheduled control strategy with default schedules.
      */
     public ScheduledControl() {
-        schedule = new HashMap<>();
+        this(Clock.systemDefaultZone());
+    }
+    
+    /**
+     * Creates a scheduled control strategy on the given clock.
+     * 
+     * @param clock The clock used for the schedule
+     */
+    public ScheduledControl(Clock clock) {
+        this.clock = clock;
+        this.engine = new ScheduleEngine(clock);
+        this.index = DeviceIndex.getInstance();
+        this.devices = new ArrayList<>();
+        this.commands = CommandSink.DIRECT;
         initializeDefaultSchedule();
     }
     
+    /**
+     * Sends the routines' device changes to the controller's schedule lane.
+     * 
+     * @param sink Queues commands on the controller
+     */
+    @Override
+    public void setCommandSink(CommandSink sink) {
+        this.commands = sink;
+        engine.setCommandSink(sink);
+    }
+    
     /**
      * Initializes default schedule.
      */
     private void initializeDefaultSchedule() {
-        schedule.put("06:00", "Morning routine - Turn on bedroom lights");
-        schedule.put("07:00", "Breakfast time - Turn on kitchen devices");
-        schedule.put("08:00", "Leave for work - Turn off unnecessary devices");
-        schedule.put("18:00", "Evening return - Turn on living room");
-        schedule.put("22:00", "Bedtime - Dim all lights");
-        schedule.put("23:00", "Sleep mode - Turn off all devices");
+        addRoutine("06:00", "Morning routine - Turn on bedroom lights", this::morningRoutine);
+        addRoutine("07:00", "Breakfast time - Turn on kitchen devices", this::breakfastRoutine);
+        addRoutine("08:00", "Leave for work - Turn off unnecessary devices", this::daytimeMode);
+        addRoutine("18:00", "Evening return - Turn on living room", this::eveningRoutine);
+        addRoutine("22:00", "Bedtime - Dim all lights", this::nightMode);
+        addRoutine("23:00", "Sleep mode - Turn off all devices", this::sleepMode);
+    }
+    
+    /**
+     * Adds a daily routine that runs over the current device list.
+     */
+    private void addRoutine(String time, String description, Runnable routine) {
+        engine.schedule(description, Recurrence.daily(LocalTime.parse(time)), () -> {
+            System.out.println("[SCHEDULED MODE] " + time + " - " + description);
+            routine.run();
+        });
     }
     
     /**
-     * Controls devices based on current time and schedule.
+     * Applies the routine for the current time of day, then leaves the
+     * schedule engine to run later routines when they come due.
+     * Further calls only refresh the device list, unless the strategy
+     * was deactivated in between, in which case it starts over.
      * 
      * @param devices List of devices to control
      */
     @Override
     public void controlDevices(List<SmartDevice> devices) {
-        LocalTime currentTime = LocalTime.now();
+        this.devices = new ArrayList<>(devices);
+        
+        if (started && engine.isRunning()) {
+            List<ScheduleEntry> upcoming = engine.getEntries();
+            System.out.println("[SCHEDULED MODE] Schedule running, " + upcoming.size() + " entries");
+            System.out.println("  → Controlling " + devices.size() + " devices");
+            if (!upcoming.isEmpty()) {
+                ScheduleEntry next = upcoming.get(0);
+                System.out.println("  → Next: " + next.getNextFire().format(TIME_FORMAT) +
+                                 " - " + next.getDescription());
+            }
+            return;
+        }
+        started = true;
+        
+        LocalTime currentTime = LocalTime.now(clock);
         int hour = currentTime.getHour();
         
         System.out.println("[SCHEDULED MODE] Checking schedule...");
-        System.out.println("  → Current time: " + currentTime.format(java.time.format.DateTimeFormatter.ofPattern("HH:mm")));
+        System.out.println("  → Current time: " + currentTime.format(TIME_FORMAT));
         System.out.println("  → Controlling " + devices.size() + " devices");
         System.out.println();
         
         // Morning routine (6 AM - 8 AM)
         if (hour >= 6 && hour < 8) {
             System.out.println("  📅 MORNING ROUTINE ACTIVE");
-            morningRoutine(devices);
+            morningRoutine();
         }
         // Daytime (8 AM - 6 PM)
         else if (hour >= 8 && hour < 18) {
             System.out.println("  📅 DAYTIME MODE");
-            daytimeMode(devices);
+            daytimeMode();
         }
         // Evening (6 PM - 10 PM)
         else if (hour >= 18 && hour < 22) {
             System.out.println("  📅 EVENING ROUTINE ACTIVE");
-            eveningRoutine(devices);
+            eveningRoutine();
         }
         // Night (10 PM - 6 AM)
         else {
             System.out.println("  📅 NIGHT MODE ACTIVE");
-            nightMode(devices);
+            nightMode();
         }
+        
+        engine.start();
+    }
+    
+    /**
+     * Starts a device query limited to the devices this strategy controls.
+     * The scope is worked out each time: index slots are reused once a
+     * device leaves, so bits saved earlier could name another device.
+     */
+    private DeviceIndex.Query inScope() {
+        return index.select().within(index.bitsOf(devices));
     }
     
     /**
      * Morning routine: Gradually turn on lights, adjust temperature.
      */
-    private void morningRoutine(List<SmartDevice> devices) {
+    private void morningRoutine() {
         System.out.println("  → Turning on bedroom lights gradually");
         System.out.println("  → Setting comfortable temperature (72°F)");
         
-        for (SmartDevice device : devices) {
-            if (device.getName().toLowerCase().contains("bedroom")) {
-                device.turnOn();
-                if (device instanceof Light) {
-                    ((Light) device).setBrightness(60);
-                }
-            }
+        for (SmartDevice device : inScope().inRoomsTagged("bedroom").devices()) {
+            commands.turnOn(device);
+        }
+        for (Dimmable light : inScope().inRoomsTagged("bedroom").as(Dimmable.class)) {
+            commands.setBrightness(light, 60);
         }
     }
     
     /**
      * Daytime mode: Turn off unnecessary devices to save energy.
      */
-    private void daytimeMode(List<SmartDevice> devices) {
+    private void daytimeMode() {
         System.out.println("  → Turning off bedroom devices (not home)");
         System.out.println("  → Minimal lighting, energy-saving mode");
         
-        for (SmartDevice device : devices) {
-            if (device.getName().toLowerCase().contains("bedroom") ||
-                device.getName().toLowerCase().contains("living room")) {
-                device.turnOff();
-            }
+        for (SmartDevice device : inScope().inRoomsTagged("bedroom", "living room").devices()) {
+            commands.turnOff(device);
+        }
+    }
+    
+    /**
+     * Breakfast routine: Turn on kitchen devices.
+     */
+    private void breakfastRoutine() {
+        System.out.println("  → Turning on kitchen devices");
+        
+        for (SmartDevice device : inScope().inRoomsTagged("kitchen").devices()) {
+            commands.turnOn(device);
         }
     }
     
     /**
      * Evening routine: Welcome home setup.
      */
-    private void eveningRoutine(List<SmartDevice> devices) {
+    private void eveningRoutine() {
         System.out.println("  → Turning on living room devices");
         System.out.println("  → Setting ambient lighting (70%)");
         System.out.println("  → Comfortable temperature (70°F)");
         
-        for (SmartDevice device : devices) {
-            if (device.getName().toLowerCase().contains("living room")) {
-                device.turnOn();
-                if (device instanceof Light) {
-                    ((Light) device).setBrightness(70);
-                }
-                if (device instanceof Thermostat) {
-                    ((Thermostat) device).setTargetTemp(70);
-                }
-            }
+        for (SmartDevice device : inScope().inRoomsTagged("living room").devices()) {
+            commands.turnOn(device);
+        }
+        for (Dimmable light : inScope().inRoomsTagged("living room").as(Dimmable.class)) {
+            commands.setBrightness(light, 70);
+        }
+        for (Thermostatic thermostat : inScope().inRoomsTagged("living room").as(Thermostatic.class)) {
+            commands.setTargetTemp(thermostat, 70);
         }
     }
     
     /**
      * Night mode: Prepare for sleep.
      */
-    private void nightMode(List<SmartDevice> devices) {
+    private void nightMode() {
         System.out.println("  → Dimming all lights");
         System.out.println("  → Setting sleep temperature (68°F)");
         System.out.println("  → Preparing sleep mode");
         
+        for (Dimmable light : inScope().as(Dimmable.class)) {
+            commands.setBrightness(light, 10);
+        }
+        for (Thermostatic thermostat : inScope().as(Thermostatic.class)) {
+            commands.setTargetTemp(thermostat, 68);
+        }
+    }
+    
+    /**
+     * Sleep mode: Turn everything off.
+     */
+    private void sleepMode() {
+        System.out.println("  → Turning off all devices");
+        
         for (SmartDevice device : devices) {
-            if (device instanceof Light) {
-                ((Light) device).setBrightness(10);
-            }
-            if (device instanceof Thermostat) {
-                ((Thermostat) device).setTargetTemp(68);
-            }
+            commands.turnOff(device);
         }
     }
     
     /**
-     * Adds a scheduled action.
+     * Adds a daily reminder that is logged when it comes due.
      * 
      * @param time Time in HH:mm format
      * @param action Action description
+     * @return The schedule entry, for cancelling
      */
-    public void addSchedule(String time, String action) {
-        schedule.put(time, action);
+    public ScheduleEntry addSchedule(String time, String action) {
+        ScheduleEntry entry = engine.schedule(action, Recurrence.daily(LocalTime.parse(time)),
+            () -> System.out.println("[SCHEDULED MODE] " + time + " - " + action));
         System.out.println("[SCHEDULED MODE] Added: " + time + " - " + action);
+        return entry;
+    }
+    
+    /**
+     * Schedules an action on one device or a whole room.
+     * 
+     * @param target The device or room
+     * @param cron Five-field cron expression (see {@link Recurrence})
+     * @param action The action to apply
+     * @param description Action description
+     * @return The schedule entry, for cancelling
+     */
+    public ScheduleEntry scheduleDevice(SmartDevice target, String cron, DeviceAction action, String description) {
+        ScheduleEntry entry = engine.schedule(target, Recurrence.parse(cron), action, description);
+        System.out.println("[SCHEDULED MODE] Added: " + target.getName() + " @ " + cron + " - " + description);
+        return entry;
+    }
+    
+    /**
+     * Gets the schedule engine.
+     * 
+     * @return The engine
+     */
+    public ScheduleEngine getEngine() {
+        return engine;
     }
     
     /**
@@ -165,12 +286,22 @@ public class ScheduledControl implements ControlStrategy {
         System.out.println("\n═══════════════════════════════════");
         System.out.println("     DAILY SCHEDULE");
         System.out.println("═══════════════════════════════════");
-        schedule.entrySet().stream()
-            .sorted(Map.Entry.comparingByKey())
-            .forEach(entry -> System.out.println(entry.getKey() + " - " + entry.getValue()));
+        for (ScheduleEntry entry : engine.getEntries()) {
+            System.out.println(entry.getNextFire().format(TIME_FORMAT) + " - " + entry.getDescription());
+        }
         System.out.println("═══════════════════════════════════\n");
     }
     
+    /**
+     * Stops the schedule engine. Activating the strategy again applies
+     * the current routine and restarts it.
+     */
+    @Override
+    public void deactivate() {
+        engine.stop();
+        started = false;
+    }
+    
     @Override
     public String getStrategyName() {
         return "Scheduled Control";
@@ -4,13 +4,17 @@ import com.smarthome.devices.SmartDevice;
 
 /**
  * Command to turn off a device.
- * The undo operation turns it back on.
+ * The undo operation puts back the state the device had when the
+ * command executed (see {@link DeviceMemento}).
  * 
  * @author dwayne headley
  * @version 1.0
  */
 public class TurnOffCommand implements Command {
     private SmartDevice device;
+    private long before; // Packed device state around the last execute
+    private long after;
+    private boolean executed;
     
     /**
      * Creates a command to turn off the specified device.
@@ -27,16 +31,33 @@ public class TurnOffCommand implements Command {
     @Override
     public void execute() {
         System.out.println("[COMMAND] Executing: Turn Off " + device.getName());
+        before = DeviceMemento.capture(device);
         device.turnOff();
+        after = DeviceMemento.capture(device);
+        executed = true;
     }
     
     /**
-     * Undoes the command - turns on the device.
+     * Undoes the command - restores the state from before it executed.
      */
     @Override
     public void undo() {
-        System.out.println("[COMMAND] Undoing: Turn Off " + device.getName() + " (turning on)");
-        device.turnOn();
+        System.out.println("[COMMAND] Undoing: Turn Off " + device.getName() +
+                         " (restoring " + DeviceMemento.describe(before) + ")");
+        if (executed) {
+            DeviceMemento.restore(device, before, after);
+        } else {
+            device.turnOn(); // Restored into history without running here; nothing was captured
+        }
+    }
+    
+    /**
+     * Gets the device this command controls.
+     * 
+     * @return The target device
+     */
+    public SmartDevice getDevice() {
+        return device;
     }
     
     /**
@@ -4,13 +4,17 @@ import com.smarthome.devices.SmartDevice;
 
 /**
  * Command to turn on a device.
- * The undo operation turns it back off.
+ * The undo operation puts back the state the device had when the
+ * command executed (see {@link DeviceMemento}).
  * 
  * @author dwayne headley
  * @version 1.0
  */
 public class TurnOnCommand implements Command {
     private SmartDevice device;
+    private long before; // Packed device state around the last execute
+    private long after;
+    private boolean executed;
     
     /**
      * Creates a command to turn on the specified device.
@@ -27,16 +31,33 @@ public class TurnOnCommand implements Command {
     @Override
     public void execute() {
         System.out.println("[COMMAND] Executing: Turn On " + device.getName());
+        before = DeviceMemento.capture(device);
         device.turnOn();
+        after = DeviceMemento.capture(device);
+        executed = true;
     }
     
     /**
-     * Undoes the command - turns off the device.
+     * Undoes the command - restores the state from before it executed.
      */
     @Override
     public void undo() {
-        System.out.println("[COMMAND] Undoing: Turn On " + device.getName() + " (turning off)");
-        device.turnOff();
+        System.out.println("[COMMAND] Undoing: Turn On " + device.getName() +
+                         " (restoring " + DeviceMemento.describe(before) + ")");
+        if (executed) {
+            DeviceMemento.restore(device, before, after);
+        } else {
+            device.turnOff(); // Restored into history without running here; nothing was captured
+        }
+    }
+    
+    /**
+     * Gets the device this command controls.
+     * 
+     * @return The target device
+     */
+    public SmartDevice getDevice() {
+        return device;
     }
     
     /**
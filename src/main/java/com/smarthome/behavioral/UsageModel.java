@@ -0,0 +1,305 @@
+package com.smarthome.behavioral;
+
+import com.smarthome.devices.SmartDevice;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Online model of when each device tends to be on, by hour of the week.
+ *
+ * <p>Every device has 168 buckets (7 days &times; 24 hours). A bucket
+ * holds the learned chance that the device is on at that hour, stored as
+ * one unsigned byte (0 = always off, 255 = always on) and nudged towards
+ * the observed state on each on/off change with an exponential moving
+ * average. A second byte counts samples so the model only speaks up once
+ * it has seen enough. Both live in flat arrays indexed by
+ * {@code deviceId * 168 + bucket}, so an update is O(1) and predicting
+ * every device for the current hour is a single pass over one stripe of
+ * each array.</p>
+ *
+ * <p>Before each update the model records whether it would have predicted
+ * the new state, which gives a running accuracy figure.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class UsageModel implements Observer {
+    public static final int BUCKETS_PER_WEEK = 7 * 24;
+
+    private static final int UNKNOWN = 128;          // Even odds
+    private static final int LEARNING_SHIFT = 3;     // Each sample moves 1/8 of the way
+    private static final int MIN_SAMPLES = 3;
+    private static final int MAX_SAMPLES = 255;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Predicted state: on. */
+    public static final byte PREDICT_ON = 1;
+    /** Predicted state: off. */
+    public static final byte PREDICT_OFF = 0;
+    /** Not enough samples to predict. */
+    public static final byte PREDICT_UNKNOWN = -1;
+
+    private final ZoneId zone;
+    private final Map<SmartDevice, Integer> ids;
+    private SmartDevice[] devices;
+    private byte[] onOdds;       // Unsigned, per device and bucket
+    private byte[] samples;      // Unsigned saturating count, per device and bucket
+    private boolean[] lastState; // Per device
+    private boolean[] ignoreNext; // Per device: next change is the model's own
+    private int deviceCount;
+
+    private boolean learning;
+    private long predictions;
+    private long correct;
+    private long updates;
+
+    /**
+     * Creates an empty model in the system time zone.
+     */
+    public UsageModel() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates an empty model.
+     *
+     * @param zone Time zone used to work out the hour of the week
+     */
+    public UsageModel(ZoneId zone) {
+        this.zone = zone;
+        this.ids = new IdentityHashMap<>();
+        this.devices = new SmartDevice[INITIAL_CAPACITY];
+        this.onOdds = new byte[INITIAL_CAPACITY * BUCKETS_PER_WEEK];
+        this.samples = new byte[INITIAL_CAPACITY * BUCKETS_PER_WEEK];
+        this.lastState = new boolean[INITIAL_CAPACITY];
+        this.ignoreNext = new boolean[INITIAL_CAPACITY];
+        this.learning = true;
+        Arrays.fill(onOdds, (byte) UNKNOWN);
+    }
+
+    /**
+     * Starts learning from a device's on/off changes.
+     *
+     * @param device The device (decorated or not)
+     * @return The device's id in this model
+     */
+    public synchronized int track(SmartDevice device) {
+        SmartDevice inner = DeviceCondition.unwrap(device);
+        Integer id = ids.get(inner);
+        if (id != null) {
+            return id;
+        }
+        int newId = addDevice(device.isOn());
+        devices[newId] = device;
+        ids.put(inner, newId);
+        device.addObserver(this);
+        return newId;
+    }
+
+    /**
+     * Adds a device slot without observing anything, for feeding the
+     * model directly with {@link #observe(int, boolean, long)}.
+     *
+     * @param initiallyOn The device's current state
+     * @return The new device id
+     */
+    public synchronized int addDevice(boolean initiallyOn) {
+        if (deviceCount == lastState.length) {
+            int capacity = lastState.length * 2;
+            devices = Arrays.copyOf(devices, capacity);
+            lastState = Arrays.copyOf(lastState, capacity);
+            ignoreNext = Arrays.copyOf(ignoreNext, capacity);
+            int oldCells = onOdds.length;
+            onOdds = Arrays.copyOf(onOdds, capacity * BUCKETS_PER_WEEK);
+            Arrays.fill(onOdds, oldCells, onOdds.length, (byte) UNKNOWN);
+            samples = Arrays.copyOf(samples, capacity * BUCKETS_PER_WEEK);
+        }
+        lastState[deviceCount] = initiallyOn;
+        return deviceCount++;
+    }
+
+    /**
+     * Learns from a tracked device that changed.
+     *
+     * @param device The device that changed
+     */
+    @Override
+    public synchronized void update(SmartDevice device) {
+        Integer id = ids.get(device);
+        if (id == null) {
+            id = ids.get(DeviceCondition.unwrap(device));
+        }
+        if (id == null) {
+            return;
+        }
+        boolean on = device.isOn();
+        if (on != lastState[id]) {
+            if (ignoreNext[id]) {
+                ignoreNext[id] = false;
+                lastState[id] = on;
+                return;
+            }
+            observe(id, on, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Skips learning from a tracked device's next on/off change, e.g. one
+     * the model's own prediction has queued. Unlike
+     * {@link #setLearning(boolean)} this still works when the change is
+     * applied later on another thread.
+     *
+     * @param device The device (decorated or not)
+     */
+    public synchronized void ignoreNextChange(SmartDevice device) {
+        Integer id = ids.get(DeviceCondition.unwrap(device));
+        if (id != null) {
+            ignoreNext[id] = true;
+        }
+    }
+
+    /**
+     * Records a device's new state at a given time. O(1).
+     *
+     * @param deviceId The device id
+     * @param on The new state
+     * @param epochMillis When it happened
+     */
+    public synchronized void observe(int deviceId, boolean on, long epochMillis) {
+        lastState[deviceId] = on;
+        if (!learning) {
+            return;
+        }
+        int cell = deviceId * BUCKETS_PER_WEEK + bucketOf(epochMillis);
+        int odds = onOdds[cell] & 0xFF;
+        int count = samples[cell] & 0xFF;
+
+        if (count >= MIN_SAMPLES && odds != UNKNOWN) {
+            predictions++;
+            if ((odds > UNKNOWN) == on) {
+                correct++;
+            }
+        }
+
+        int target = on ? 255 : 0;
+        odds += (target - odds) >> LEARNING_SHIFT;
+        onOdds[cell] = (byte) odds;
+        if (count < MAX_SAMPLES) {
+            samples[cell] = (byte) (count + 1);
+        }
+        updates++;
+    }
+
+    /**
+     * Predicts a device's state at a given time.
+     *
+     * @param deviceId The device id
+     * @param epochMillis The time
+     * @return {@link #PREDICT_ON}, {@link #PREDICT_OFF} or {@link #PREDICT_UNKNOWN}
+     */
+    public synchronized byte predict(int deviceId, long epochMillis) {
+        return predictCell(deviceId * BUCKETS_PER_WEEK + bucketOf(epochMillis));
+    }
+
+    /**
+     * Predicts every device's state at a given time.
+     *
+     * @param epochMillis The time
+     * @param out Receives one prediction per device id; must hold
+     *            at least {@link #getDeviceCount()} entries
+     * @return Number of devices predicted
+     */
+    public synchronized int predictAll(long epochMillis, byte[] out) {
+        int bucket = bucketOf(epochMillis);
+        for (int id = 0, cell = bucket; id < deviceCount; id++, cell += BUCKETS_PER_WEEK) {
+            out[id] = predictCell(cell);
+        }
+        return deviceCount;
+    }
+
+    private byte predictCell(int cell) {
+        int odds = onOdds[cell] & 0xFF;
+        if ((samples[cell] & 0xFF) < MIN_SAMPLES || odds == UNKNOWN) {
+            return PREDICT_UNKNOWN;
+        }
+        return odds > UNKNOWN ? PREDICT_ON : PREDICT_OFF;
+    }
+
+    /**
+     * Finds tracked devices whose current state disagrees with a
+     * confident prediction for the given time.
+     *
+     * @param epochMillis The time
+     * @param minConfidence How sure the model must be, from 0.0 (coin flip) to 1.0
+     * @return The devices likely to change next
+     */
+    public synchronized List<SmartDevice> predictChanges(long epochMillis, double minConfidence) {
+        List<SmartDevice> result = new ArrayList<>();
+        int bucket = bucketOf(epochMillis);
+        int margin = (int) Math.ceil(minConfidence * (255 - UNKNOWN));
+        for (int id = 0, cell = bucket; id < deviceCount; id++, cell += BUCKETS_PER_WEEK) {
+            if (devices[id] == null || (samples[cell] & 0xFF) < MIN_SAMPLES) {
+                continue;
+            }
+            int lean = (onOdds[cell] & 0xFF) - UNKNOWN;
+            if (Math.abs(lean) >= margin && lean != 0 && (lean > 0) != lastState[id]) {
+                result.add(devices[id]);
+            }
+        }
+        return result;
+    }
+
+    private int bucketOf(long epochMillis) {
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        long local = epochMillis / 1000 + zone.getRules().getOffset(instant).getTotalSeconds();
+        long hours = Math.floorDiv(local, 3600);
+        // 1970-01-01 was a Thursday; shift so bucket 0 is Monday 00:00
+        return Math.floorMod(hours + 3 * 24, BUCKETS_PER_WEEK);
+    }
+
+    /**
+     * Pauses or resumes learning. Pause it while applying the model's own
+     * predictions so it does not learn from itself.
+     *
+     * @param learning false to ignore changes (state is still tracked)
+     */
+    public synchronized void setLearning(boolean learning) {
+        this.learning = learning;
+    }
+
+    public synchronized int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public synchronized long getUpdateCount() {
+        return updates;
+    }
+
+    public synchronized long getPredictionCount() {
+        return predictions;
+    }
+
+    /**
+     * Gets the share of confident predictions that matched what happened.
+     *
+     * @return Accuracy from 0.0 to 1.0, or 0.0 before any predictions
+     */
+    public synchronized double getAccuracy() {
+        return predictions == 0 ? 0.0 : (double) correct / predictions;
+    }
+
+    /**
+     * Gets the memory used by the model's arrays.
+     *
+     * @return Approximate size in bytes
+     */
+    public synchronized long getFootprintBytes() {
+        return (long) onOdds.length + samples.length + lastState.length + ignoreNext.length +
+               (long) devices.length * 4;
+    }
+}
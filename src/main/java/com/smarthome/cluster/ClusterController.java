@@ -0,0 +1,586 @@
+package com.smarthome.cluster;
+
+import com.smarthome.codec.CommandCodec;
+import com.smarthome.creational.DeviceSpec;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Spreads a large campus over several shard nodes and routes commands
+ * to the node that owns each device.
+ *
+ * <p>Devices are placed on a {@link HashRing} by name, or by room name
+ * when they are provisioned into a room, so a whole room lives on one
+ * node. The router keeps no device state; it only knows the ring (and
+ * the room of room-placed devices). Commands are grouped per node and
+ * sent as one message each, so nodes work in parallel and throughput
+ * grows with the number of nodes.</p>
+ *
+ * <p>When a node joins, every existing node hands over the devices the
+ * new ring gives to someone else (about 1/N of them), with their state,
+ * and the new owners rebuild them. When a node leaves, its devices are
+ * handed to the remaining nodes. Commands wait while devices move. A
+ * move is committed only once every new owner has its devices; if one
+ * fails, the move is rolled back and the ring stays as it was.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * ClusterController cluster = new ClusterController(new LocalTransport());
+ * cluster.join("shard-0");
+ * cluster.join("shard-1");
+ * cluster.provision(new DeviceSpec("light", "Hall Light #").setCount(1000));
+ *
+ * ClusterController.Batch batch = cluster.batch();
+ * batch.turnOn("Hall Light 1").setBrightness("Hall Light 2", 40);
+ * batch.send().join();
+ *
+ * cluster.join("shard-2"); // about a third of the lights move to shard-2
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ClusterController {
+    private final ShardTransport transport;
+    private final Map<String, String> roomKeys; // device name -> room, for room-placed devices
+    private final ReadWriteLock routing;
+    private volatile HashRing ring;
+
+    /**
+     * A device being moved between nodes.
+     */
+    private static class DeviceRecord {
+        String key;
+        String specLine;
+        boolean on;
+        int level;
+        double target;
+    }
+
+    /**
+     * A command waiting in a batch.
+     */
+    private static class RoutedCommand {
+        final int kind;
+        final String deviceName;
+        final double argument;
+
+        RoutedCommand(int kind, String deviceName, double argument) {
+            this.kind = kind;
+            this.deviceName = deviceName;
+            this.argument = argument;
+        }
+    }
+
+    /**
+     * Creates a cluster with no nodes.
+     *
+     * @param transport How to reach the nodes
+     */
+    public ClusterController(ShardTransport transport) {
+        this.transport = transport;
+        this.roomKeys = new ConcurrentHashMap<>();
+        this.routing = new ReentrantReadWriteLock();
+        this.ring = new HashRing();
+    }
+
+    // ---------------------------------------------------------------
+    // Membership
+    // ---------------------------------------------------------------
+
+    /**
+     * Adds a node and moves to it the devices it now owns.
+     *
+     * @param nodeId The node (for {@link SocketTransport}, {@code host:port})
+     * @return Number of devices moved to the new node
+     * @throws IOException if the node cannot be reached
+     * @throws IllegalStateException if the move fails; the node is not added
+     */
+    public int join(String nodeId) throws IOException {
+        routing.writeLock().lock();
+        try {
+            if (ring.getNodes().contains(nodeId)) {
+                return 0;
+            }
+            transport.connect(nodeId);
+            int moved;
+            try {
+                moved = redistribute(ring.getNodes(), ring.withNode(nodeId));
+            } catch (RuntimeException e) {
+                transport.disconnect(nodeId);
+                throw e;
+            }
+            System.out.println("[CLUSTER] Node joined: " + nodeId + " (" + moved + " devices moved, " +
+                             ring.size() + " nodes)");
+            return moved;
+        } finally {
+            routing.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a node after handing its devices to the remaining nodes.
+     *
+     * @param nodeId The node
+     * @return Number of devices moved off the node
+     * @throws IllegalStateException if it is the last node and still has
+     *         devices, or if the move fails; the node then stays
+     */
+    public int leave(String nodeId) {
+        routing.writeLock().lock();
+        try {
+            if (!ring.getNodes().contains(nodeId)) {
+                return 0;
+            }
+            HashRing next = ring.withoutNode(nodeId);
+            if (next.size() == 0 && deviceCount(nodeId) > 0) {
+                throw new IllegalStateException("Cannot remove the last node while it has devices");
+            }
+            int moved = redistribute(List.of(nodeId), next);
+            transport.disconnect(nodeId);
+            System.out.println("[CLUSTER] Node left: " + nodeId + " (" + moved + " devices moved, " +
+                             ring.size() + " nodes)");
+            return moved;
+        } finally {
+            routing.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves devices to the owners a new ring gives them, in two phases:
+     * the source nodes list what leaves them and the new owners adopt it,
+     * while the sources keep their copies. Only when every adoption has
+     * succeeded is the ring switched and the sources told to release
+     * their copies. If anything fails before that, the adopters drop what
+     * they took, the ring stays as it was and the failure is thrown, so
+     * no device is lost or left on two nodes. Called with the write lock
+     * held.
+     */
+    private int redistribute(List<String> fromNodes, HashRing next) {
+        Map<String, List<DeviceRecord>> byOwner = new HashMap<>();
+        int moved = 0;
+        for (byte[] reply : sendToAll(fromNodes, ShardProtocol.OP_REBALANCE, next)) {
+            DataInputStream in = open(reply);
+            try {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    DeviceRecord record = new DeviceRecord();
+                    record.key = in.readUTF();
+                    record.specLine = in.readUTF();
+                    record.on = in.readBoolean();
+                    record.level = in.readInt();
+                    record.target = in.readDouble();
+                    byOwner.computeIfAbsent(next.ownerOf(record.key), k -> new ArrayList<>()).add(record);
+                    moved++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        Map<String, CompletableFuture<byte[]>> adopted = new LinkedHashMap<>();
+        for (Map.Entry<String, List<DeviceRecord>> entry : byOwner.entrySet()) {
+            List<DeviceRecord> records = entry.getValue();
+            byte[] request = ShardProtocol.message(ShardProtocol.OP_ADOPT, out -> {
+                out.writeInt(records.size());
+                for (DeviceRecord record : records) {
+                    out.writeUTF(record.key);
+                    out.writeUTF(record.specLine);
+                    out.writeBoolean(record.on);
+                    out.writeInt(record.level);
+                    out.writeDouble(record.target);
+                }
+            });
+            adopted.put(entry.getKey(), transport.send(entry.getKey(), request));
+        }
+        try {
+            for (CompletableFuture<byte[]> reply : adopted.values()) {
+                open(reply.join());
+            }
+        } catch (RuntimeException e) {
+            // Roll back: under the old ring the adopted copies belong elsewhere
+            try {
+                sendToAll(new ArrayList<>(adopted.keySet()), ShardProtocol.OP_RELEASE, ring);
+            } catch (RuntimeException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw new IllegalStateException("Moving devices failed, ring unchanged: " + e.getMessage(), e);
+        }
+
+        ring = next;
+        try {
+            sendToAll(fromNodes, ShardProtocol.OP_RELEASE, next);
+        } catch (RuntimeException e) {
+            // The new owners are live; a stale copy is only left behind
+            System.out.println("[CLUSTER] Could not release moved devices: " + e.getMessage());
+        }
+        return moved;
+    }
+
+    /**
+     * Sends a ring to several nodes (each also gets its own id) and waits
+     * for every reply. Fails with the first error after all have answered.
+     */
+    private List<byte[]> sendToAll(List<String> nodes, byte op, HashRing target) {
+        byte[] request = ShardProtocol.message(op, out -> {
+            out.writeInt(target.size());
+            for (String node : target.getNodes()) {
+                out.writeUTF(node);
+            }
+        });
+        List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+        for (String node : nodes) {
+            // The node id goes last so one request body serves every node
+            replies.add(transport.send(node, append(request, node)));
+        }
+        List<byte[]> bodies = new ArrayList<>();
+        RuntimeException failure = null;
+        for (CompletableFuture<byte[]> reply : replies) {
+            try {
+                byte[] body = reply.join();
+                open(body);
+                bodies.add(body);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return bodies;
+    }
+
+    private static byte[] append(byte[] request, String nodeId) {
+        byte[] tail = ShardProtocol.message((byte) 0, out -> out.writeUTF(nodeId));
+        byte[] combined = new byte[request.length + tail.length - 1];
+        System.arraycopy(request, 0, combined, 0, request.length);
+        System.arraycopy(tail, 1, combined, request.length, tail.length - 1);
+        return combined;
+    }
+
+    // ---------------------------------------------------------------
+    // Devices and commands
+    // ---------------------------------------------------------------
+
+    /**
+     * Creates devices on the nodes that own them. Devices with a room
+     * are placed by room, so the room stays on one node.
+     *
+     * @param spec What to build; {@code count} devices are made
+     * @return Number of devices created
+     * @throws IllegalStateException if a node rejects the spec
+     */
+    public int provision(DeviceSpec spec) {
+        Map<String, List<String[]>> byOwner = new HashMap<>();
+        routing.readLock().lock();
+        try {
+            int total = spec.getCount();
+            for (int i = 1; i <= total; i++) {
+                String name = spec.nameFor(i, total);
+                DeviceSpec single = new DeviceSpec(spec.getType(), name);
+                for (String decorator : spec.getDecorators()) {
+                    single.addDecorator(decorator);
+                }
+                for (Map.Entry<String, String> param : spec.getParams().entrySet()) {
+                    single.setParam(param.getKey(), param.getValue());
+                }
+                String key = name;
+                if (spec.getRoom() != null) {
+                    key = spec.getRoom();
+                    roomKeys.put(name, key);
+                }
+                byOwner.computeIfAbsent(ring.ownerOf(key), k -> new ArrayList<>())
+                       .add(new String[] {key, single.toManifestLine()});
+            }
+
+            List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+            for (Map.Entry<String, List<String[]>> entry : byOwner.entrySet()) {
+                List<String[]> devices = entry.getValue();
+                replies.add(transport.send(entry.getKey(), ShardProtocol.message(ShardProtocol.OP_PROVISION, out -> {
+                    out.writeInt(devices.size());
+                    for (String[] device : devices) {
+                        out.writeUTF(device[0]);
+                        out.writeUTF(device[1]);
+                    }
+                })));
+            }
+            int created = 0;
+            for (CompletableFuture<byte[]> reply : replies) {
+                created += readInt(reply.join());
+            }
+            System.out.println("[CLUSTER] Provisioned " + created + " x " + spec.getType() + " on " +
+                             byOwner.size() + " nodes");
+            return created;
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the node that owns a device.
+     *
+     * @param deviceName The device name
+     * @return The node id
+     */
+    public String ownerOf(String deviceName) {
+        return ring.ownerOf(roomKeys.getOrDefault(deviceName, deviceName));
+    }
+
+    /**
+     * Starts a batch of commands.
+     *
+     * @return An empty batch
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Turns a device on.
+     *
+     * @param deviceName The device
+     * @return Completes with the batch result
+     */
+    public CompletableFuture<Result> turnOn(String deviceName) {
+        return batch().turnOn(deviceName).send();
+    }
+
+    /**
+     * Turns a device off.
+     *
+     * @param deviceName The device
+     * @return Completes with the batch result
+     */
+    public CompletableFuture<Result> turnOff(String deviceName) {
+        return batch().turnOff(deviceName).send();
+    }
+
+    /**
+     * Gets a device's status from its node.
+     *
+     * @param deviceName The device
+     * @return The status line, or null if no node has the device
+     */
+    public String getStatus(String deviceName) {
+        CompletableFuture<byte[]> reply;
+        routing.readLock().lock();
+        try {
+            byte[] request = ShardProtocol.message(ShardProtocol.OP_QUERY, out -> out.writeUTF(deviceName));
+            reply = transport.send(ownerOf(deviceName), request);
+        } finally {
+            routing.readLock().unlock();
+        }
+        DataInputStream in = open(reply.join());
+        try {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            in.readBoolean();
+            return in.readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the number of devices on each node.
+     *
+     * @return Node id to device count, in ring order
+     */
+    public Map<String, Integer> getDeviceCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String node : ring.getNodes()) {
+            counts.put(node, deviceCount(node));
+        }
+        return counts;
+    }
+
+    private int deviceCount(String nodeId) {
+        return readInt(transport.send(nodeId, ShardProtocol.message(ShardProtocol.OP_STATS, out -> { })).join());
+    }
+
+    /**
+     * Gets the node ids in the ring.
+     *
+     * @return The nodes, sorted
+     */
+    public List<String> getNodes() {
+        return ring.getNodes();
+    }
+
+    /**
+     * Disconnects from (or stops) every node.
+     */
+    public void shutdown() {
+        transport.close();
+        System.out.println("[CLUSTER] Shut down");
+    }
+
+    /**
+     * Displays the nodes and how many devices each holds.
+     */
+    public void displayStatus() {
+        System.out.println("\n=== Controller Cluster ===");
+        Map<String, Integer> counts = getDeviceCounts();
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            System.out.printf("  %-22s %8d devices (%.1f%%)%n", entry.getKey(), entry.getValue(),
+                              total == 0 ? 0.0 : 100.0 * entry.getValue() / total);
+        }
+        System.out.println("Total: " + total + " devices on " + counts.size() + " nodes");
+    }
+
+    /**
+     * Checks a reply's status and opens its body.
+     */
+    private static DataInputStream open(byte[] reply) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(reply));
+        try {
+            if (in.readByte() != ShardProtocol.STATUS_OK) {
+                throw new IllegalStateException(in.readUTF());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return in;
+    }
+
+    private static int readInt(byte[] reply) {
+        try {
+            return open(reply).readInt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Outcome of a batch of commands.
+     */
+    public static class Result {
+        private final int applied;
+        private final int failed;
+        private final String firstError;
+
+        Result(int applied, int failed, String firstError) {
+            this.applied = applied;
+            this.failed = failed;
+            this.firstError = firstError;
+        }
+
+        public int getApplied() {
+            return applied;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Gets the first failure message.
+         *
+         * @return The message, or null if nothing failed
+         */
+        public String getFirstError() {
+            return firstError;
+        }
+    }
+
+    /**
+     * Commands collected per owning node and sent as one message per node.
+     */
+    public class Batch {
+        private final List<RoutedCommand> commands = new ArrayList<>();
+
+        private Batch add(int kind, String deviceName, double argument) {
+            commands.add(new RoutedCommand(kind, deviceName, argument));
+            return this;
+        }
+
+        public Batch turnOn(String deviceName) {
+            return add(CommandCodec.KIND_TURN_ON, deviceName, 0);
+        }
+
+        public Batch turnOff(String deviceName) {
+            return add(CommandCodec.KIND_TURN_OFF, deviceName, 0);
+        }
+
+        public Batch setBrightness(String deviceName, int brightness) {
+            return add(CommandCodec.KIND_ADJUST_BRIGHTNESS, deviceName, brightness);
+        }
+
+        public Batch setTargetTemp(String deviceName, double temperature) {
+            return add(CommandCodec.KIND_ADJUST_TEMPERATURE, deviceName, temperature);
+        }
+
+        public int size() {
+            return commands.size();
+        }
+
+        /**
+         * Sends the commands to their nodes. Commands for one node are
+         * applied in the order they were added.
+         *
+         * @return Completes when every node has answered
+         */
+        public CompletableFuture<Result> send() {
+            List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+            routing.readLock().lock();
+            try {
+                Map<String, List<RoutedCommand>> byOwner = new HashMap<>();
+                for (RoutedCommand command : commands) {
+                    byOwner.computeIfAbsent(ownerOf(command.deviceName), k -> new ArrayList<>()).add(command);
+                }
+                for (Map.Entry<String, List<RoutedCommand>> entry : byOwner.entrySet()) {
+                    List<RoutedCommand> mine = entry.getValue();
+                    replies.add(transport.send(entry.getKey(), ShardProtocol.message(ShardProtocol.OP_COMMANDS, out -> {
+                        out.writeInt(mine.size());
+                        for (RoutedCommand command : mine) {
+                            out.writeByte(command.kind);
+                            out.writeDouble(command.argument);
+                            out.writeUTF(command.deviceName);
+                        }
+                    })));
+                }
+            } finally {
+                routing.readLock().unlock();
+            }
+            return CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                int applied = 0;
+                int failed = 0;
+                String firstError = null;
+                for (CompletableFuture<byte[]> reply : replies) {
+                    DataInputStream in = open(reply.join());
+                    try {
+                        applied += in.readInt();
+                        int nodeFailed = in.readInt();
+                        if (nodeFailed > 0 && firstError == null) {
+                            firstError = in.readUTF();
+                        }
+                        failed += nodeFailed;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return new Result(applied, failed, firstError);
+            });
+        }
+    }
+}
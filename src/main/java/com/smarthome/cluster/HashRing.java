@@ -0,0 +1,150 @@
+package com.smarthome.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consistent hash ring that maps keys (device names or room names) to
+ * shard nodes.
+ *
+ * <p>Each node is placed on the ring at {@link #VIRTUAL_NODES} points; a
+ * key belongs to the first point at or after its own hash. When a node
+ * joins, it only takes keys from the points next to its own, so roughly
+ * 1/N of the keys move and the rest stay where they are.</p>
+ *
+ * <p>A ring is immutable: {@link #withNode(String)} and
+ * {@link #withoutNode(String)} return a new ring, so routers can read
+ * the current ring without locking. Lookups are a binary search over a
+ * sorted {@code long[]}.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class HashRing {
+    /** Points per node; more points spread keys more evenly. */
+    public static final int VIRTUAL_NODES = 160;
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * Creates an empty ring.
+     */
+    public HashRing() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Creates a ring holding the given nodes.
+     *
+     * @param nodes Node ids
+     */
+    public HashRing(Collection<String> nodes) {
+        List<String> sorted = new ArrayList<>(nodes);
+        Collections.sort(sorted);
+        this.nodes = Collections.unmodifiableList(sorted);
+
+        int size = sorted.size() * VIRTUAL_NODES;
+        long[] hashes = new long[size];
+        int i = 0;
+        for (int n = 0; n < sorted.size(); n++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                // Low bits carry the node number so equal hashes sort the same everywhere
+                hashes[i++] = (hash(sorted.get(n) + "#" + v) & ~0xFFFFL) | n;
+            }
+        }
+        Arrays.sort(hashes);
+        this.points = hashes;
+        this.owners = new String[size];
+        for (int p = 0; p < size; p++) {
+            owners[p] = sorted.get((int) (hashes[p] & 0xFFFF));
+        }
+    }
+
+    /**
+     * Gets a ring with one more node.
+     *
+     * @param node The node id
+     * @return The new ring (this ring if the node is already present)
+     */
+    public HashRing withNode(String node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+        List<String> next = new ArrayList<>(nodes);
+        next.add(node);
+        return new HashRing(next);
+    }
+
+    /**
+     * Gets a ring without a node.
+     *
+     * @param node The node id
+     * @return The new ring (this ring if the node is not present)
+     */
+    public HashRing withoutNode(String node) {
+        if (!nodes.contains(node)) {
+            return this;
+        }
+        List<String> next = new ArrayList<>(nodes);
+        next.remove(node);
+        return new HashRing(next);
+    }
+
+    /**
+     * Finds the node that owns a key.
+     *
+     * @param key Device or room name
+     * @return The owning node id
+     * @throws IllegalStateException if the ring is empty
+     */
+    public String ownerOf(String key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("No shard nodes in the ring");
+        }
+        long h = hash(key);
+        int index = Arrays.binarySearch(points, h);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Gets the node ids, sorted.
+     *
+     * @return The nodes
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, then the MurmurHash3 finalizer
+     * so similar names ("Light 1", "Light 2") land far apart.
+     *
+     * @param key The text to hash
+     * @return The hash
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
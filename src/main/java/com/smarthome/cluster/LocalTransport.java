@@ -0,0 +1,58 @@
+package com.smarthome.cluster;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs shard nodes inside this JVM, each on its own thread.
+ *
+ * <p>Requests go to the node without a socket, but as the same
+ * {@link ShardProtocol} bytes, so a cluster behaves the same as over
+ * {@link SocketTransport}. Connecting to an unknown node id starts a new
+ * {@link ShardNode}.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class LocalTransport implements ShardTransport {
+    private final Map<String, ShardNode> nodes;
+
+    /**
+     * Creates a transport with no nodes.
+     */
+    public LocalTransport() {
+        this.nodes = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(String nodeId, byte[] request) {
+        ShardNode node = nodes.get(nodeId);
+        if (node == null) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Unknown shard node: " + nodeId));
+            return failed;
+        }
+        return node.submit(request);
+    }
+
+    @Override
+    public void connect(String nodeId) {
+        nodes.computeIfAbsent(nodeId, ShardNode::new);
+    }
+
+    @Override
+    public void disconnect(String nodeId) {
+        ShardNode node = nodes.remove(nodeId);
+        if (node != null) {
+            node.shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (String nodeId : nodes.keySet()) {
+            disconnect(nodeId);
+        }
+    }
+}
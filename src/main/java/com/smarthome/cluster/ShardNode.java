@@ -0,0 +1,336 @@
+package com.smarthome.cluster;
+
+import com.smarthome.codec.CommandCodec;
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One shard of a controller cluster: owns the devices whose keys hash
+ * to it and applies the commands routed to it.
+ *
+ * <p>A node handles one request at a time on its own thread, in arrival
+ * order, so its device map needs no locking and several nodes in one
+ * JVM run in parallel. Requests and replies are {@link ShardProtocol}
+ * messages; {@link ShardServer} puts a node on a TCP port.</p>
+ *
+ * <p>Devices are created from {@link DeviceSpec} manifest lines so they
+ * can be rebuilt on another node (even in another JVM) when the ring
+ * changes. A moved device keeps its on/off state, level (brightness,
+ * volume or fan speed) and target temperature.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ShardNode {
+    private final String nodeId;
+    private final DeviceFactory factory;
+    private final Map<String, Placed> devices;
+    private final ExecutorService worker;
+    private long commandsApplied;
+
+    /**
+     * A device and what is needed to rebuild it elsewhere.
+     */
+    private static class Placed {
+        final String key;
+        final String specLine;
+        final SmartDevice device;
+
+        Placed(String key, String specLine, SmartDevice device) {
+            this.key = key;
+            this.specLine = specLine;
+            this.device = device;
+        }
+    }
+
+    /**
+     * Creates a node.
+     *
+     * @param nodeId The node id used in the hash ring
+     */
+    public ShardNode(String nodeId) {
+        this.nodeId = nodeId;
+        this.factory = new DeviceFactory();
+        this.devices = new HashMap<>();
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.out.println("[SHARD] Node started: " + nodeId);
+    }
+
+    /**
+     * Queues a request for this node's thread.
+     *
+     * @param request A {@link ShardProtocol} request
+     * @return The reply
+     */
+    public CompletableFuture<byte[]> submit(byte[] request) {
+        return CompletableFuture.supplyAsync(() -> handle(request), worker);
+    }
+
+    /**
+     * Stops the node's thread.
+     */
+    public void shutdown() {
+        worker.shutdown();
+        System.out.println("[SHARD] Node stopped: " + nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Handles one request. Runs on the node's thread.
+     */
+    private byte[] handle(byte[] request) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+        try {
+            byte op = in.readByte();
+            switch (op) {
+                case ShardProtocol.OP_PROVISION:
+                    return provision(in);
+                case ShardProtocol.OP_COMMANDS:
+                    return commands(in);
+                case ShardProtocol.OP_QUERY:
+                    return query(in.readUTF());
+                case ShardProtocol.OP_REBALANCE:
+                    return rebalance(in);
+                case ShardProtocol.OP_ADOPT:
+                    return adopt(in);
+                case ShardProtocol.OP_RELEASE:
+                    return release(in);
+                case ShardProtocol.OP_STATS:
+                    return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> {
+                        out.writeInt(devices.size());
+                        out.writeLong(commandsApplied);
+                    });
+                default:
+                    throw new IllegalArgumentException("Unknown operation: " + op);
+            }
+        } catch (IOException | RuntimeException e) {
+            String message = e.getMessage() == null ? e.toString() : e.getMessage();
+            return ShardProtocol.message(ShardProtocol.STATUS_ERROR, out -> out.writeUTF(message));
+        }
+    }
+
+    private byte[] provision(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        BulkProvisioning.begin();
+        try {
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                String specLine = in.readUTF();
+                place(key, specLine);
+            }
+        } finally {
+            BulkProvisioning.end();
+        }
+        return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> out.writeInt(count));
+    }
+
+    private SmartDevice place(String key, String specLine) {
+        DeviceSpec spec = DeviceSpec.parse(specLine);
+        SmartDevice device = factory.buildDevices(spec, 1).get(0);
+        devices.put(device.getName(), new Placed(key, specLine, device));
+        return device;
+    }
+
+    private byte[] commands(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        int applied = 0;
+        String firstError = null;
+        for (int i = 0; i < count; i++) {
+            int kind = in.readByte();
+            double argument = in.readDouble();
+            String name = in.readUTF();
+            try {
+                apply(kind, argument, name);
+                applied++;
+            } catch (RuntimeException e) {
+                if (firstError == null) {
+                    firstError = e.getMessage();
+                }
+            }
+        }
+        commandsApplied += applied;
+        int done = applied;
+        String error = firstError;
+        return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> {
+            out.writeInt(done);
+            out.writeInt(count - done);
+            if (error != null) {
+                out.writeUTF(error);
+            }
+        });
+    }
+
+    private void apply(int kind, double argument, String name) {
+        Placed placed = devices.get(name);
+        if (placed == null) {
+            throw new IllegalArgumentException("No device " + name + " on " + nodeId);
+        }
+        SmartDevice device = placed.device;
+        Capabilities capabilities = Capabilities.of(device);
+        switch (kind) {
+            case CommandCodec.KIND_TURN_ON:
+                device.turnOn();
+                return;
+            case CommandCodec.KIND_TURN_OFF:
+                device.turnOff();
+                return;
+            case CommandCodec.KIND_ADJUST_BRIGHTNESS:
+                if (capabilities.dimmable() != null) {
+                    capabilities.dimmable().setBrightness((int) argument);
+                    return;
+                }
+                break;
+            case CommandCodec.KIND_ADJUST_TEMPERATURE:
+                if (capabilities.thermostatic() != null) {
+                    capabilities.thermostatic().setTargetTemp(argument);
+                    return;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command kind: " + kind);
+        }
+        throw new IllegalArgumentException("Command kind " + kind + " does not apply to " + name);
+    }
+
+    private byte[] query(String name) {
+        Placed placed = devices.get(name);
+        return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> {
+            out.writeBoolean(placed != null);
+            if (placed != null) {
+                out.writeBoolean(placed.device.isOn());
+                out.writeUTF(placed.device.getStatus());
+            }
+        });
+    }
+
+    /**
+     * Lists every device whose key the new ring gives to another node.
+     * The devices stay here until {@link #release} confirms the move.
+     */
+    private byte[] rebalance(DataInputStream in) throws IOException {
+        List<Placed> leaving = leaving(in);
+        return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> {
+            out.writeInt(leaving.size());
+            for (Placed placed : leaving) {
+                writeDevice(out, placed);
+            }
+        });
+    }
+
+    /**
+     * Removes every device whose key the given ring gives to another node.
+     */
+    private byte[] release(DataInputStream in) throws IOException {
+        List<Placed> leaving = leaving(in);
+        for (Placed placed : leaving) {
+            devices.remove(placed.device.getName());
+        }
+        return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> out.writeInt(leaving.size()));
+    }
+
+    /**
+     * Reads a ring and this node's id, and finds the devices the ring
+     * places elsewhere.
+     */
+    private List<Placed> leaving(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(in.readUTF());
+        }
+        String self = in.readUTF();
+        HashRing ring = new HashRing(nodes);
+        List<Placed> leaving = new ArrayList<>();
+        for (Placed placed : devices.values()) {
+            if (ring.size() == 0 || !ring.ownerOf(placed.key).equals(self)) {
+                leaving.add(placed);
+            }
+        }
+        return leaving;
+    }
+
+    private byte[] adopt(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        BulkProvisioning.begin();
+        try {
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                String specLine = in.readUTF();
+                boolean on = in.readBoolean();
+                int level = in.readInt();
+                double target = in.readDouble();
+                restore(place(key, specLine), on, level, target);
+            }
+        } finally {
+            BulkProvisioning.end();
+        }
+        return ShardProtocol.message(ShardProtocol.STATUS_OK, out -> out.writeInt(count));
+    }
+
+    private static void writeDevice(DataOutputStream out, Placed placed) throws IOException {
+        Capabilities capabilities = Capabilities.of(placed.device);
+        int level = 0;
+        double target = 0;
+        if (capabilities.dimmable() != null) {
+            level = capabilities.dimmable().getBrightness();
+        } else if (capabilities.volume() != null) {
+            level = capabilities.volume().getVolume();
+        } else if (capabilities.speed() != null) {
+            level = capabilities.speed().getSpeed();
+        }
+        if (capabilities.thermostatic() != null) {
+            target = capabilities.thermostatic().getTargetTemp();
+        }
+        out.writeUTF(placed.key);
+        out.writeUTF(placed.specLine);
+        out.writeBoolean(placed.device.isOn());
+        out.writeInt(level);
+        out.writeDouble(target);
+    }
+
+    private static void restore(SmartDevice device, boolean on, int level, double target) {
+        Capabilities capabilities = Capabilities.of(device);
+        Dimmable dimmable = capabilities.dimmable();
+        VolumeAdjustable volume = capabilities.volume();
+        SpeedAdjustable speed = capabilities.speed();
+        Thermostatic thermostatic = capabilities.thermostatic();
+        if (on) {
+            device.turnOn();
+        }
+        if (dimmable != null && dimmable.getBrightness() != level) {
+            dimmable.setBrightness(level);
+        } else if (volume != null && volume.getVolume() != level) {
+            volume.setVolume(level);
+        } else if (speed != null && on && speed.getSpeed() != level && level > 0) {
+            speed.setSpeed(level);
+        }
+        if (thermostatic != null && thermostatic.getTargetTemp() != target) {
+            thermostatic.setTargetTemp(target);
+        }
+    }
+}
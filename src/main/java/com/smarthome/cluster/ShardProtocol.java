@@ -0,0 +1,80 @@
+package com.smarthome.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Messages exchanged between a {@link ClusterController} and its
+ * {@link ShardNode}s. The same bytes go over a socket or are handed to
+ * an in-process node directly, so both transports run the same code.
+ *
+ * <p>A request is one operation byte followed by its fields; a reply is
+ * a status byte followed by the result ({@code writeUTF} strings,
+ * big-endian numbers):</p>
+ * <pre>
+ * PROVISION  int n, n x (key, spec line)              -> int created
+ * COMMANDS   int n, n x (byte kind, double arg, name) -> int applied, int failed, [first error]
+ * QUERY      name                                     -> bool found, [bool on, status]
+ * REBALANCE  int n, n x node id, self id              -> int n, n x device
+ * ADOPT      int n, n x device                        -> int adopted
+ * STATS                                               -> int devices, long commands
+ * RELEASE    int n, n x node id, self id              -> int released
+ *
+ * device = key, spec line, bool on, int level, double target temperature
+ * </pre>
+ *
+ * <p>REBALANCE lists the devices the given ring places on other nodes
+ * but keeps them; RELEASE drops them. A move is only committed once the
+ * new owners have adopted everything, so a failure part way leaves each
+ * device on exactly one node.</p>
+ *
+ * <p>Command kinds are the {@code KIND_*} values of
+ * {@link com.smarthome.codec.CommandCodec}.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class ShardProtocol {
+    public static final byte OP_PROVISION = 1;
+    public static final byte OP_COMMANDS = 2;
+    public static final byte OP_QUERY = 3;
+    public static final byte OP_REBALANCE = 4;
+    public static final byte OP_ADOPT = 5;
+    public static final byte OP_STATS = 6;
+    public static final byte OP_RELEASE = 7;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Builds a message with a {@link DataOutputStream}.
+     */
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Encodes a message.
+     *
+     * @param first The operation or status byte
+     * @param body Writes the fields
+     * @return The message bytes
+     */
+    static byte[] message(byte first, Writer body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(first);
+            body.write(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by in-memory streams
+        }
+        return bytes.toByteArray();
+    }
+}
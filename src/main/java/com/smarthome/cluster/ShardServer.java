@@ -0,0 +1,147 @@
+package com.smarthome.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Serves one {@link ShardNode} over TCP so a cluster can span several
+ * JVMs (on one machine over loopback, or across machines).
+ *
+ * <p>Frames are a 4-byte length followed by a {@link ShardProtocol}
+ * message. Requests on a connection are answered in order.</p>
+ *
+ * <p>Start a node from the command line with
+ * {@code java com.smarthome.cluster.ShardServer <port> [bind address]}
+ * and connect to it with {@link SocketTransport} as
+ * {@code host:port}.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ShardServer {
+    private final ShardNode node;
+    private final ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * Creates a server on the loopback interface.
+     *
+     * @param port TCP port, or 0 to pick a free one
+     * @throws IOException if the port cannot be bound
+     */
+    public ShardServer(int port) throws IOException {
+        this(port, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Creates a server.
+     *
+     * @param port TCP port, or 0 to pick a free one
+     * @param bindAddress Interface to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public ShardServer(int port, InetAddress bindAddress) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, bindAddress);
+        this.node = new ShardNode(bindAddress.getHostAddress() + ":" + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start() {
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "shard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("[SHARD] Listening on " + getNodeId());
+    }
+
+    /**
+     * Gets the id clients use for this node.
+     *
+     * @return {@code host:port}
+     */
+    public String getNodeId() {
+        return node.getNodeId();
+    }
+
+    /**
+     * Stops the server and its node.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignore, shutting down
+        }
+        node.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> serve(socket), "shard-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (SocketException e) {
+                break; // Server socket closed
+            } catch (IOException e) {
+                System.out.println("[SHARD] Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+            while (true) {
+                int length = in.readInt();
+                byte[] request = new byte[length];
+                in.readFully(request);
+                // The node answers in order on its own thread, so replies are written in order too
+                node.submit(request).thenAccept(reply -> {
+                    synchronized (out) {
+                        try {
+                            out.writeInt(reply.length);
+                            out.write(reply);
+                            out.flush();
+                        } catch (IOException e) {
+                            // Client went away; the read loop will notice
+                        }
+                    }
+                });
+            }
+        } catch (EOFException | SocketException e) {
+            // Client disconnected
+        } catch (IOException e) {
+            System.out.println("[SHARD] Connection failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a shard node until the process is stopped.
+     *
+     * @param args Port, and optionally the address to bind
+     * @throws IOException if the port cannot be bound
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        InetAddress bind = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        ShardServer server = new ShardServer(port, bind);
+        server.start();
+        Thread.currentThread().join();
+    }
+}
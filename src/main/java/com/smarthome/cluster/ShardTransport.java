@@ -0,0 +1,47 @@
+package com.smarthome.cluster;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries {@link ShardProtocol} requests from a {@link ClusterController}
+ * to shard nodes.
+ *
+ * <p>Requests to one node are delivered and answered in the order they
+ * were sent; the cluster relies on this when it moves devices.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see LocalTransport
+ * @see SocketTransport
+ */
+public interface ShardTransport {
+    /**
+     * Sends a request to a node.
+     *
+     * @param nodeId The node
+     * @param request The request bytes
+     * @return The reply bytes
+     */
+    CompletableFuture<byte[]> send(String nodeId, byte[] request);
+
+    /**
+     * Makes a node reachable, e.g. starts it or opens a connection.
+     *
+     * @param nodeId The node
+     * @throws IOException if the node cannot be reached
+     */
+    void connect(String nodeId) throws IOException;
+
+    /**
+     * Forgets a node, closing anything opened for it.
+     *
+     * @param nodeId The node
+     */
+    void disconnect(String nodeId);
+
+    /**
+     * Closes every node connection.
+     */
+    void close();
+}
@@ -0,0 +1,153 @@
+package com.smarthome.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reaches shard nodes running in other JVMs through {@link ShardServer}.
+ *
+ * <p>Node ids are {@code host:port}. Each node gets one connection;
+ * requests are length-prefixed frames written back to back without
+ * waiting for replies, and a reader thread matches replies to requests
+ * in order (the server answers in order).</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class SocketTransport implements ShardTransport {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final Map<String, Connection> connections;
+
+    /**
+     * One socket to one node.
+     */
+    private static class Connection {
+        final String nodeId;
+        final Socket socket;
+        final DataOutputStream out;
+        final DataInputStream in;
+        final Queue<CompletableFuture<byte[]>> waiting;
+        volatile boolean open;
+
+        Connection(String nodeId, Socket socket) throws IOException {
+            this.nodeId = nodeId;
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.waiting = new ConcurrentLinkedQueue<>();
+            this.open = true;
+        }
+
+        synchronized CompletableFuture<byte[]> send(byte[] request) {
+            CompletableFuture<byte[]> reply = new CompletableFuture<>();
+            if (!open) {
+                reply.completeExceptionally(new IOException("Connection to " + nodeId + " is closed"));
+                return reply;
+            }
+            waiting.add(reply);
+            try {
+                out.writeInt(request.length);
+                out.write(request);
+                out.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+            return reply;
+        }
+
+        void readLoop() {
+            try {
+                while (open) {
+                    int length = in.readInt();
+                    byte[] reply = new byte[length];
+                    in.readFully(reply);
+                    CompletableFuture<byte[]> future = waiting.poll();
+                    if (future != null) {
+                        future.complete(reply);
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        void fail(IOException cause) {
+            open = false;
+            CompletableFuture<byte[]> future;
+            while ((future = waiting.poll()) != null) {
+                future.completeExceptionally(cause);
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore, already failing
+            }
+        }
+    }
+
+    /**
+     * Creates a transport with no connections.
+     */
+    public SocketTransport() {
+        this.connections = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(String nodeId, byte[] request) {
+        Connection connection = connections.get(nodeId);
+        if (connection == null) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Not connected to shard node: " + nodeId));
+            return failed;
+        }
+        return connection.send(request);
+    }
+
+    @Override
+    public void connect(String nodeId) throws IOException {
+        if (connections.containsKey(nodeId)) {
+            return;
+        }
+        int colon = nodeId.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Node id must be host:port, got " + nodeId);
+        }
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(nodeId.substring(0, colon),
+                                             Integer.parseInt(nodeId.substring(colon + 1))),
+                       CONNECT_TIMEOUT_MS);
+        socket.setTcpNoDelay(true);
+        Connection connection = new Connection(nodeId, socket);
+        connections.put(nodeId, connection);
+        Thread reader = new Thread(connection::readLoop, "shard-reply-" + nodeId);
+        reader.setDaemon(true);
+        reader.start();
+        System.out.println("[CLUSTER] Connected to " + nodeId);
+    }
+
+    @Override
+    public void disconnect(String nodeId) {
+        Connection connection = connections.remove(nodeId);
+        if (connection != null) {
+            connection.fail(new IOException("Disconnected from " + nodeId));
+        }
+    }
+
+    @Override
+    public void close() {
+        for (String nodeId : connections.keySet()) {
+            disconnect(nodeId);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.smarthome.codec;
+
+import com.smarthome.behavioral.AdjustBrightnessCommand;
+import com.smarthome.behavioral.AdjustSpeedCommand;
+import com.smarthome.behavioral.AdjustVolumeCommand;
+import com.smarthome.behavioral.AdjustTemperatureCommand;
+import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.TurnOffCommand;
+import com.smarthome.behavioral.TurnOnCommand;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.structural.DeviceDecorator;
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Encodes commands and turns decoded commands back into {@link Command} objects.
+ *
+ * <p>Layout after the common header (fixed {@value #LENGTH} bytes):</p>
+ * <pre>
+ * offset  size  field
+ *   8      1    kind        (KIND_*)
+ *   9      3    reserved
+ *  12      4    device id
+ *  16      8    argument    (double: brightness, temperature, ...)
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see CommandView
+ */
+public final class CommandCodec {
+    public static final int KIND_TURN_ON = 1;
+    public static final int KIND_TURN_OFF = 2;
+    public static final int KIND_ADJUST_BRIGHTNESS = 3;
+    public static final int KIND_ADJUST_TEMPERATURE = 4;
+    public static final int KIND_ADJUST_SPEED = 5;
+    public static final int KIND_ADJUST_VOLUME = 6;
+
+    static final int KIND_OFFSET = 8;
+    static final int DEVICE_ID_OFFSET = 12;
+    static final int ARGUMENT_OFFSET = 16;
+
+    /** Size of every command message. */
+    public static final int LENGTH = 24;
+
+    private CommandCodec() {
+    }
+
+    /**
+     * Encodes a command from raw values.
+     *
+     * @param buffer Target buffer
+     * @param offset Where the message starts
+     * @param kind Command kind (KIND_*)
+     * @param deviceId Target device id
+     * @param argument Command argument, 0 if unused
+     * @return Number of bytes written
+     */
+    public static int encode(ByteBuffer buffer, int offset, int kind, int deviceId, double argument) {
+        WireFormat.putHeader(buffer, offset, WireFormat.TYPE_COMMAND, LENGTH);
+        buffer.put(offset + KIND_OFFSET, (byte) kind);
+        buffer.put(offset + KIND_OFFSET + 1, (byte) 0);
+        buffer.putShort(offset + KIND_OFFSET + 2, (short) 0);
+        buffer.putInt(offset + DEVICE_ID_OFFSET, deviceId);
+        buffer.putDouble(offset + ARGUMENT_OFFSET, argument);
+        return LENGTH;
+    }
+
+    /**
+     * Encodes a command object.
+     *
+     * @param buffer Target buffer
+     * @param offset Where the message starts
+     * @param command The command to encode
+     * @param deviceIds Resolves the target device to its numeric id
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if the command type has no wire kind
+     */
+    public static int encode(ByteBuffer buffer, int offset, Command command, ToIntFunction<SmartDevice> deviceIds) {
+        if (command instanceof TurnOnCommand) {
+            SmartDevice device = ((TurnOnCommand) command).getDevice();
+            return encode(buffer, offset, KIND_TURN_ON, deviceIds.applyAsInt(device), 0);
+        }
+        if (command instanceof TurnOffCommand) {
+            SmartDevice device = ((TurnOffCommand) command).getDevice();
+            return encode(buffer, offset, KIND_TURN_OFF, deviceIds.applyAsInt(device), 0);
+        }
+        if (command instanceof AdjustBrightnessCommand) {
+            AdjustBrightnessCommand adjust = (AdjustBrightnessCommand) command;
+            return encode(buffer, offset, KIND_ADJUST_BRIGHTNESS,
+                          deviceIds.applyAsInt(adjust.getLight()), adjust.getNewBrightness());
+        }
+        if (command instanceof AdjustTemperatureCommand) {
+            AdjustTemperatureCommand adjust = (AdjustTemperatureCommand) command;
+            return encode(buffer, offset, KIND_ADJUST_TEMPERATURE,
+                          deviceIds.applyAsInt(adjust.getThermostat()), adjust.getNewTemp());
+        }
+        if (command instanceof AdjustSpeedCommand) {
+            AdjustSpeedCommand adjust = (AdjustSpeedCommand) command;
+            return encode(buffer, offset, KIND_ADJUST_SPEED,
+                          deviceIds.applyAsInt(adjust.getDevice()), adjust.getNewSpeed());
+        }
+        if (command instanceof AdjustVolumeCommand) {
+            AdjustVolumeCommand adjust = (AdjustVolumeCommand) command;
+            return encode(buffer, offset, KIND_ADJUST_VOLUME,
+                          deviceIds.applyAsInt(adjust.getDevice()), adjust.getNewVolume());
+        }
+        throw new IllegalArgumentException("No wire kind for command: " + command.getClass().getSimpleName());
+    }
+
+    /**
+     * Builds a command object from a decoded message.
+     *
+     * @param view View pointing at the command message
+     * @param devices Resolves device ids to devices
+     * @return A new command, not yet executed
+     * @throws IllegalArgumentException if the device is unknown or does not fit the kind
+     */
+    public static Command toCommand(CommandView view, IntFunction<SmartDevice> devices) {
+        SmartDevice device = devices.apply(view.deviceId());
+        if (device == null) {
+            throw new IllegalArgumentException("Unknown device id: " + view.deviceId());
+        }
+        SmartDevice target = DeviceDecorator.unwrap(device);
+
+        switch (view.kind()) {
+            case KIND_TURN_ON:
+                return new TurnOnCommand(device);
+            case KIND_TURN_OFF:
+                return new TurnOffCommand(device);
+            case KIND_ADJUST_BRIGHTNESS:
+                if (target instanceof Light) {
+                    return new AdjustBrightnessCommand((Light) target, (int) view.argument());
+                }
+                break;
+            case KIND_ADJUST_TEMPERATURE:
+                if (target instanceof Thermostat) {
+                    return new AdjustTemperatureCommand((Thermostat) target, view.argument());
+                }
+                break;
+            case KIND_ADJUST_SPEED:
+                if (Capabilities.of(device).speed() != null) {
+                    return new AdjustSpeedCommand(device, (int) view.argument());
+                }
+                break;
+            case KIND_ADJUST_VOLUME:
+                if (Capabilities.of(device).volume() != null) {
+                    return new AdjustVolumeCommand(device, (int) view.argument());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command kind: " + view.kind());
+        }
+        throw new IllegalArgumentException("Command kind " + view.kind() +
+                                           " does not apply to " + device.getName());
+    }
+}
@@ -0,0 +1,48 @@
+package com.smarthome.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight reader for command messages.
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see CommandCodec
+ */
+public final class CommandView {
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Points this view at a command message.
+     *
+     * @param buffer Buffer holding the message
+     * @param offset Where the message starts
+     * @return This view, for chaining
+     * @throws IllegalArgumentException if the message is not a command
+     */
+    public CommandView wrap(ByteBuffer buffer, int offset) {
+        if (WireFormat.messageType(buffer, offset) != WireFormat.TYPE_COMMAND) {
+            throw new IllegalArgumentException("Not a command message at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int length() {
+        return WireFormat.messageLength(buffer, offset);
+    }
+
+    public int kind() {
+        return buffer.get(offset + CommandCodec.KIND_OFFSET) & 0xFF;
+    }
+
+    public int deviceId() {
+        return buffer.getInt(offset + CommandCodec.DEVICE_ID_OFFSET);
+    }
+
+    public double argument() {
+        return buffer.getDouble(offset + CommandCodec.ARGUMENT_OFFSET);
+    }
+}
@@ -0,0 +1,216 @@
+package com.smarthome.codec;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Co2Sensor;
+import com.smarthome.devices.ContactSensor;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.MotionSensor;
+import com.smarthome.devices.OccupancySensor;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.EnergyMonitorDecorator;
+import com.smarthome.structural.Room;
+import com.smarthome.structural.VoiceControlDecorator;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes device state messages.
+ *
+ * <p>Layout after the common header:</p>
+ * <pre>
+ * offset  size  field
+ *   8      4    device id
+ *  12      1    device type      (WireFormat.DEVICE_*)
+ *  13      1    flags            (FLAG_ON | FLAG_ENERGY_MONITOR | FLAG_VOICE_CONTROL
+ *                                 | FLAG_ARMED | FLAG_OPEN)
+ *  14      2    level            (brightness, volume, fan speed, CO2 ppm,
+ *                                 sensor event count or room device count,
+ *                                 capped at 65535)
+ *  16      4    current temp     (float, thermostats)
+ *  20      4    target temp      (float, thermostats)
+ *  24      1    mode             (MODE_*)
+ *  25      1    reserved
+ *  26      2    text length      (UTF-8 bytes that follow)
+ *  28      n    text             (what a speaker is playing)
+ * </pre>
+ *
+ * <p>Sensors set {@code FLAG_ARMED} while they record readings, and a
+ * contact sensor sets {@code FLAG_OPEN} while its door or window is
+ * open. Text longer than {@link WireFormat#MAX_TEXT_BYTES} bytes is
+ * rejected rather than cut.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see DeviceStateView
+ */
+public final class DeviceStateCodec {
+    public static final int FLAG_ON = 1;
+    public static final int FLAG_ENERGY_MONITOR = 2;
+    public static final int FLAG_VOICE_CONTROL = 4;
+    public static final int FLAG_ARMED = 8;
+    public static final int FLAG_OPEN = 16;
+
+    public static final int MODE_OFF = 0;
+    public static final int MODE_HEATING = 1;
+    public static final int MODE_COOLING = 2;
+    public static final int MODE_MAINTAINING = 3;
+    public static final int MODE_OTHER = 255;
+
+    static final int DEVICE_ID_OFFSET = 8;
+    static final int DEVICE_TYPE_OFFSET = 12;
+    static final int FLAGS_OFFSET = 13;
+    static final int LEVEL_OFFSET = 14;
+    static final int CURRENT_TEMP_OFFSET = 16;
+    static final int TARGET_TEMP_OFFSET = 20;
+    static final int MODE_OFFSET = 24;
+    static final int TEXT_LENGTH_OFFSET = 26;
+    static final int TEXT_OFFSET = 28;
+
+    /** Size of a state message with no text. */
+    public static final int FIXED_LENGTH = TEXT_OFFSET;
+
+    private DeviceStateCodec() {
+    }
+
+    /**
+     * Encodes the current state of a device.
+     *
+     * @param buffer Target buffer
+     * @param offset Where the message starts
+     * @param deviceId Numeric id of the device
+     * @param device The device to encode; its type and values come from
+     *               its capabilities, looked up through any decorators
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if a speaker's text is too long to encode
+     */
+    public static int encode(ByteBuffer buffer, int offset, int deviceId, SmartDevice device) {
+        int flags = device.isOn() ? FLAG_ON : 0;
+        if (DeviceDecorator.findLayer(device, EnergyMonitorDecorator.class) != null) {
+            flags |= FLAG_ENERGY_MONITOR;
+        }
+        if (DeviceDecorator.findLayer(device, VoiceControlDecorator.class) != null) {
+            flags |= FLAG_VOICE_CONTROL;
+        }
+        Capabilities capabilities = Capabilities.of(device);
+
+        int type = WireFormat.DEVICE_UNKNOWN;
+        int level = 0;
+        float currentTemp = 0f;
+        float targetTemp = 0f;
+        int mode = MODE_OFF;
+        String text = null;
+        Dimmable dimmer = capabilities.dimmable();
+        Thermostatic thermostat = capabilities.thermostatic();
+        VolumeAdjustable speaker = capabilities.volume();
+        SpeedAdjustable fan = capabilities.speed();
+        OccupancySensor sensor = capabilities.get(OccupancySensor.class);
+        if (dimmer != null) {
+            type = WireFormat.DEVICE_LIGHT;
+            level = dimmer.getBrightness();
+        } else if (thermostat != null) {
+            type = WireFormat.DEVICE_THERMOSTAT;
+            currentTemp = (float) thermostat.getCurrentTemp();
+            targetTemp = (float) thermostat.getTargetTemp();
+            mode = modeCode(thermostat.getMode());
+        } else if (speaker != null) {
+            type = WireFormat.DEVICE_SPEAKER;
+            level = speaker.getVolume();
+            text = speaker.getCurrentlyPlaying();
+        } else if (fan != null) {
+            type = WireFormat.DEVICE_FAN;
+            level = fan.getSpeed();
+        } else if (sensor != null) {
+            if (sensor.isArmed()) {
+                flags |= FLAG_ARMED;
+            }
+            level = (int) Math.min(sensor.getEventCount(), 0xFFFF);
+            if (sensor instanceof Co2Sensor) {
+                type = WireFormat.DEVICE_CO2_SENSOR;
+                level = Math.min(((Co2Sensor) sensor).getPpm(), 0xFFFF);
+            } else if (sensor instanceof ContactSensor) {
+                type = WireFormat.DEVICE_CONTACT_SENSOR;
+                if (((ContactSensor) sensor).isOpen()) {
+                    flags |= FLAG_OPEN;
+                }
+            } else if (sensor instanceof MotionSensor) {
+                type = WireFormat.DEVICE_MOTION_SENSOR;
+            }
+        } else {
+            SmartDevice target = DeviceDecorator.unwrap(device);
+            if (target instanceof Room) {
+                type = WireFormat.DEVICE_ROOM;
+                level = Math.min(((Room) target).getDeviceCount(), 0xFFFF);
+            }
+        }
+        return encode(buffer, offset, deviceId, type, flags, level, currentTemp, targetTemp, mode, text);
+    }
+
+    /**
+     * Encodes a device state from raw values.
+     *
+     * @param buffer Target buffer
+     * @param offset Where the message starts
+     * @param deviceId Numeric id of the device
+     * @param type Device type (WireFormat.DEVICE_*)
+     * @param flags Flag bits (FLAG_*)
+     * @param level Brightness, volume or speed
+     * @param currentTemp Current temperature
+     * @param targetTemp Target temperature
+     * @param mode Thermostat mode (MODE_*)
+     * @param text Optional text, may be null
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if the text needs more than
+     *         {@link WireFormat#MAX_TEXT_BYTES} bytes
+     */
+    public static int encode(ByteBuffer buffer, int offset, int deviceId, int type, int flags, int level,
+                             float currentTemp, float targetTemp, int mode, CharSequence text) {
+        int textLength = text == null ? 0 : WireFormat.putUtf8(buffer, offset + TEXT_OFFSET, text);
+        int length = TEXT_OFFSET + textLength;
+        WireFormat.putHeader(buffer, offset, WireFormat.TYPE_DEVICE_STATE, length);
+        buffer.putInt(offset + DEVICE_ID_OFFSET, deviceId);
+        buffer.put(offset + DEVICE_TYPE_OFFSET, (byte) type);
+        buffer.put(offset + FLAGS_OFFSET, (byte) flags);
+        buffer.putShort(offset + LEVEL_OFFSET, (short) level);
+        buffer.putFloat(offset + CURRENT_TEMP_OFFSET, currentTemp);
+        buffer.putFloat(offset + TARGET_TEMP_OFFSET, targetTemp);
+        buffer.put(offset + MODE_OFFSET, (byte) mode);
+        buffer.put(offset + MODE_OFFSET + 1, (byte) 0);
+        buffer.putShort(offset + TEXT_LENGTH_OFFSET, (short) textLength);
+        return length;
+    }
+
+    /**
+     * Maps a thermostat mode name to its wire code.
+     *
+     * @param mode Mode name
+     * @return Mode code
+     */
+    public static int modeCode(String mode) {
+        switch (mode) {
+            case "off": return MODE_OFF;
+            case "heating": return MODE_HEATING;
+            case "cooling": return MODE_COOLING;
+            case "maintaining": return MODE_MAINTAINING;
+            default: return MODE_OTHER;
+        }
+    }
+
+    /**
+     * Maps a wire mode code back to the thermostat mode name.
+     *
+     * @param code Mode code
+     * @return Mode name
+     */
+    public static String modeName(int code) {
+        switch (code) {
+            case MODE_OFF: return "off";
+            case MODE_HEATING: return "heating";
+            case MODE_COOLING: return "cooling";
+            case MODE_MAINTAINING: return "maintaining";
+            default: return "unknown";
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.smarthome.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight reader for device state messages.
+ *
+ * <p>A view holds no copy of the data: it is pointed at a message with
+ * {@link #wrap(ByteBuffer, int)} and every getter reads straight from
+ * the buffer. One view can be reused for any number of messages.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * DeviceStateView view = new DeviceStateView();
+ * int offset = 0;
+ * while (offset < buffer.limit()) {
+ *     view.wrap(buffer, offset);
+ *     if (view.isOn()) { ... }
+ *     offset += view.length();
+ * }
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see DeviceStateCodec
+ */
+public final class DeviceStateView {
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Points this view at a message.
+     *
+     * @param buffer Buffer holding the message
+     * @param offset Where the message starts
+     * @return This view, for chaining
+     * @throws IllegalArgumentException if the message is not a device state
+     */
+    public DeviceStateView wrap(ByteBuffer buffer, int offset) {
+        if (WireFormat.messageType(buffer, offset) != WireFormat.TYPE_DEVICE_STATE) {
+            throw new IllegalArgumentException("Not a device state message at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int length() {
+        return WireFormat.messageLength(buffer, offset);
+    }
+
+    public int deviceId() {
+        return buffer.getInt(offset + DeviceStateCodec.DEVICE_ID_OFFSET);
+    }
+
+    public int deviceType() {
+        return buffer.get(offset + DeviceStateCodec.DEVICE_TYPE_OFFSET) & 0xFF;
+    }
+
+    public int flags() {
+        return buffer.get(offset + DeviceStateCodec.FLAGS_OFFSET) & 0xFF;
+    }
+
+    public boolean isOn() {
+        return (flags() & DeviceStateCodec.FLAG_ON) != 0;
+    }
+
+    public boolean isArmed() {
+        return (flags() & DeviceStateCodec.FLAG_ARMED) != 0;
+    }
+
+    public boolean isOpen() {
+        return (flags() & DeviceStateCodec.FLAG_OPEN) != 0;
+    }
+
+    public int level() {
+        return buffer.getShort(offset + DeviceStateCodec.LEVEL_OFFSET) & 0xFFFF;
+    }
+
+    public float currentTemp() {
+        return buffer.getFloat(offset + DeviceStateCodec.CURRENT_TEMP_OFFSET);
+    }
+
+    public float targetTemp() {
+        return buffer.getFloat(offset + DeviceStateCodec.TARGET_TEMP_OFFSET);
+    }
+
+    public int mode() {
+        return buffer.get(offset + DeviceStateCodec.MODE_OFFSET) & 0xFF;
+    }
+
+    public int textLength() {
+        return buffer.getShort(offset + DeviceStateCodec.TEXT_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Decodes the text field. Allocates, so only call it when needed.
+     *
+     * @return The text, empty if none
+     */
+    public String text() {
+        return WireFormat.getUtf8(buffer, offset + DeviceStateCodec.TEXT_OFFSET, textLength());
+    }
+}
@@ -0,0 +1,98 @@
+package com.smarthome.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes controller journal entries: the changes to a controller that
+ * are not device state or commands themselves (devices added, undo,
+ * strategy switches, ...).
+ *
+ * <p>A replication journal is a stream of these entries mixed with
+ * {@link CommandCodec} messages (commands executed) and
+ * {@link DeviceStateCodec} messages (device state). Inside a
+ * {@link #OP_SNAPSHOT_BEGIN}/{@link #OP_SNAPSHOT_END} pair, command
+ * messages are history to restore rather than commands to run: the undo
+ * history, then after {@link #OP_SNAPSHOT_REDO} the redo history.</p>
+ *
+ * <p>Layout after the common header:</p>
+ * <pre>
+ * offset  size  field
+ *   8      1    op          (OP_*)
+ *   9      3    reserved
+ *  12      4    device id   (-1 if unused)
+ *  16      2    text length (UTF-8 bytes that follow)
+ *  18      2    reserved
+ *  20      n    text        (spec line or strategy class)
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see JournalView
+ */
+public final class JournalCodec {
+    /** A device was added; text is its {@code DeviceSpec} manifest line. */
+    public static final int OP_ADD_DEVICE = 1;
+    /** A device was removed. */
+    public static final int OP_REMOVE_DEVICE = 2;
+    /** The last command was undone. */
+    public static final int OP_UNDO = 3;
+    /** The last undone command was executed again. */
+    public static final int OP_REDO = 4;
+    /** The command history was cleared. */
+    public static final int OP_CLEAR_HISTORY = 5;
+    /** The control strategy changed; text is the strategy's class name. */
+    public static final int OP_SET_STRATEGY = 6;
+    /** A full copy of the controller follows. */
+    public static final int OP_SNAPSHOT_BEGIN = 7;
+    /** End of the full copy. */
+    public static final int OP_SNAPSHOT_END = 8;
+    /** Snapshot commands that follow are the redo history, not the undo history. */
+    public static final int OP_SNAPSHOT_REDO = 9;
+
+    static final int OP_OFFSET = 8;
+    static final int DEVICE_ID_OFFSET = 12;
+    static final int TEXT_LENGTH_OFFSET = 16;
+    static final int TEXT_OFFSET = 20;
+
+    /** Size of an entry with no text. */
+    public static final int FIXED_LENGTH = TEXT_OFFSET;
+
+    private JournalCodec() {
+    }
+
+    /**
+     * Encodes a journal entry.
+     *
+     * @param buffer Target buffer
+     * @param offset Where the message starts
+     * @param op Operation (OP_*)
+     * @param deviceId Device id, or -1
+     * @param text Optional text, may be null
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if the text needs more than
+     *         {@link WireFormat#MAX_TEXT_BYTES} bytes
+     */
+    public static int encode(ByteBuffer buffer, int offset, int op, int deviceId, CharSequence text) {
+        int textLength = text == null ? 0 : WireFormat.putUtf8(buffer, offset + TEXT_OFFSET, text);
+        int length = TEXT_OFFSET + textLength;
+        WireFormat.putHeader(buffer, offset, WireFormat.TYPE_JOURNAL, length);
+        buffer.put(offset + OP_OFFSET, (byte) op);
+        buffer.put(offset + OP_OFFSET + 1, (byte) 0);
+        buffer.putShort(offset + OP_OFFSET + 2, (short) 0);
+        buffer.putInt(offset + DEVICE_ID_OFFSET, deviceId);
+        buffer.putShort(offset + TEXT_LENGTH_OFFSET, (short) textLength);
+        buffer.putShort(offset + TEXT_LENGTH_OFFSET + 2, (short) 0);
+        return length;
+    }
+
+    /**
+     * Gets the most bytes an entry with the given text can take, for
+     * sizing buffers before encoding.
+     *
+     * @param text The text, may be null
+     * @return Upper bound of the encoded length
+     */
+    public static int maxLength(CharSequence text) {
+        return TEXT_OFFSET + (text == null ? 0 : text.length() * 3);
+    }
+}
@@ -0,0 +1,57 @@
+package com.smarthome.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight reader for journal entries.
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see JournalCodec
+ */
+public final class JournalView {
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Points this view at a journal entry.
+     *
+     * @param buffer Buffer holding the message
+     * @param offset Where the message starts
+     * @return This view, for chaining
+     * @throws IllegalArgumentException if the message is not a journal entry
+     */
+    public JournalView wrap(ByteBuffer buffer, int offset) {
+        if (WireFormat.messageType(buffer, offset) != WireFormat.TYPE_JOURNAL) {
+            throw new IllegalArgumentException("Not a journal entry at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int length() {
+        return WireFormat.messageLength(buffer, offset);
+    }
+
+    public int op() {
+        return buffer.get(offset + JournalCodec.OP_OFFSET) & 0xFF;
+    }
+
+    public int deviceId() {
+        return buffer.getInt(offset + JournalCodec.DEVICE_ID_OFFSET);
+    }
+
+    public int textLength() {
+        return buffer.getShort(offset + JournalCodec.TEXT_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Decodes the text field. Allocates, so only call it when needed.
+     *
+     * @return The text, empty if none
+     */
+    public String text() {
+        return WireFormat.getUtf8(buffer, offset + JournalCodec.TEXT_OFFSET, textLength());
+    }
+}
@@ -0,0 +1,84 @@
+package com.smarthome.codec;
+
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.Room;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Encodes a {@link Room} and everything nested in it.
+ *
+ * <p>Layout after the common header:</p>
+ * <pre>
+ * offset  size  field
+ *   8      2    name length
+ *  10      2    child count
+ *  12      n    name (UTF-8)
+ *  ...          children, each one of:
+ *                 TAG_DEVICE (1 byte) + device id (4 bytes)
+ *                 TAG_ROOM   (1 byte) + a complete nested room message
+ * </pre>
+ *
+ * <p>The header length covers the whole subtree, so a reader can skip
+ * a room without walking into it. A room with more than
+ * {@link #MAX_CHILDREN} direct children cannot be encoded.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see RoomView
+ */
+public final class RoomTreeCodec {
+    public static final int TAG_DEVICE = 0;
+    public static final int TAG_ROOM = 1;
+
+    /** Most direct children a room can have; the count is an unsigned 16-bit value. */
+    public static final int MAX_CHILDREN = 0xFFFF;
+
+    static final int NAME_LENGTH_OFFSET = 8;
+    static final int CHILD_COUNT_OFFSET = 10;
+    static final int NAME_OFFSET = 12;
+
+    private RoomTreeCodec() {
+    }
+
+    /**
+     * Encodes a room tree.
+     *
+     * @param buffer Target buffer
+     * @param offset Where the message starts
+     * @param room The root room
+     * @param deviceIds Resolves leaf devices to their numeric ids
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if a room name needs more than
+     *         {@link WireFormat#MAX_TEXT_BYTES} bytes, or a room has more
+     *         than {@link #MAX_CHILDREN} children
+     */
+    public static int encode(ByteBuffer buffer, int offset, Room room, ToIntFunction<SmartDevice> deviceIds) {
+        List<SmartDevice> children = room.getDevices();
+        if (children.size() > MAX_CHILDREN) {
+            throw new IllegalArgumentException(room.getName() + " has " + children.size() +
+                                               " children, more than the " + MAX_CHILDREN +
+                                               " a room message can hold");
+        }
+        int nameLength = WireFormat.putUtf8(buffer, offset + NAME_OFFSET, room.getName());
+        buffer.putShort(offset + NAME_LENGTH_OFFSET, (short) nameLength);
+        buffer.putShort(offset + CHILD_COUNT_OFFSET, (short) children.size());
+
+        int pos = offset + NAME_OFFSET + nameLength;
+        for (SmartDevice child : children) {
+            if (child instanceof Room) {
+                buffer.put(pos++, (byte) TAG_ROOM);
+                pos += encode(buffer, pos, (Room) child, deviceIds);
+            } else {
+                buffer.put(pos++, (byte) TAG_DEVICE);
+                buffer.putInt(pos, deviceIds.applyAsInt(child));
+                pos += 4;
+            }
+        }
+
+        int length = pos - offset;
+        WireFormat.putHeader(buffer, offset, WireFormat.TYPE_ROOM, length);
+        return length;
+    }
+}
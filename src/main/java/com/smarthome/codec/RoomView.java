@@ -0,0 +1,116 @@
+package com.smarthome.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight reader for room tree messages.
+ *
+ * <p>Children are walked with an int cursor so no iterator or list is
+ * created:</p>
+ * <pre>
+ * {@code
+ * RoomView room = new RoomView().wrap(buffer, 0);
+ * RoomView nested = new RoomView();
+ * for (int c = room.firstChild(); c >= 0; c = room.nextChild(c)) {
+ *     if (room.isRoom(c)) {
+ *         room.nestedRoom(c, nested);
+ *     } else {
+ *         int id = room.deviceId(c);
+ *     }
+ * }
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see RoomTreeCodec
+ */
+public final class RoomView {
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Points this view at a room message.
+     *
+     * @param buffer Buffer holding the message
+     * @param offset Where the message starts
+     * @return This view, for chaining
+     * @throws IllegalArgumentException if the message is not a room
+     */
+    public RoomView wrap(ByteBuffer buffer, int offset) {
+        if (WireFormat.messageType(buffer, offset) != WireFormat.TYPE_ROOM) {
+            throw new IllegalArgumentException("Not a room message at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int length() {
+        return WireFormat.messageLength(buffer, offset);
+    }
+
+    public int childCount() {
+        return buffer.getShort(offset + RoomTreeCodec.CHILD_COUNT_OFFSET) & 0xFFFF;
+    }
+
+    private int nameLength() {
+        return buffer.getShort(offset + RoomTreeCodec.NAME_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Decodes the room name. Allocates, so only call it when needed.
+     *
+     * @return The room name
+     */
+    public String name() {
+        return WireFormat.getUtf8(buffer, offset + RoomTreeCodec.NAME_OFFSET, nameLength());
+    }
+
+    /**
+     * Gets a cursor to the first child.
+     *
+     * @return Cursor, or -1 if the room is empty
+     */
+    public int firstChild() {
+        return childCount() == 0 ? -1 : offset + RoomTreeCodec.NAME_OFFSET + nameLength();
+    }
+
+    /**
+     * Advances a cursor to the next child.
+     *
+     * @param cursor Current cursor
+     * @return Next cursor, or -1 after the last child
+     */
+    public int nextChild(int cursor) {
+        int next = isRoom(cursor)
+            ? cursor + 1 + WireFormat.messageLength(buffer, cursor + 1)
+            : cursor + 5;
+        return next < offset + length() ? next : -1;
+    }
+
+    public boolean isRoom(int cursor) {
+        return buffer.get(cursor) == RoomTreeCodec.TAG_ROOM;
+    }
+
+    /**
+     * Reads the id of a device child.
+     *
+     * @param cursor Cursor pointing at a device child
+     * @return The device id
+     */
+    public int deviceId(int cursor) {
+        return buffer.getInt(cursor + 1);
+    }
+
+    /**
+     * Points another view at a nested room child.
+     *
+     * @param cursor Cursor pointing at a room child
+     * @param into The view to reuse
+     * @return The wrapped view
+     */
+    public RoomView nestedRoom(int cursor, RoomView into) {
+        return into.wrap(buffer, cursor + 1);
+    }
+}
@@ -0,0 +1,198 @@
+package com.smarthome.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Schema of the binary wire format shared by the state stream,
+ * journals and snapshots.
+ *
+ * <p>Every message starts with the same 8-byte header:</p>
+ * <pre>
+ * offset  size  field
+ *   0      1    version        (currently {@value #VERSION})
+ *   1      1    message type   (DEVICE_STATE, ROOM, COMMAND, JOURNAL)
+ *   2      2    reserved       (0)
+ *   4      4    total message length in bytes, header included
+ * </pre>
+ *
+ * <p>All codecs read and write with absolute {@link ByteBuffer} indexes,
+ * so a buffer's position is never touched and many messages can be
+ * packed back to back. Multi-byte values use the buffer's byte order
+ * (big endian unless changed by the caller).</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class WireFormat {
+    /** Current format version. Decoders accept this and older versions. */
+    public static final int VERSION = 1;
+
+    /** Size of the common message header. */
+    public static final int HEADER_LENGTH = 8;
+
+    // Message types
+    public static final int TYPE_DEVICE_STATE = 1;
+    public static final int TYPE_ROOM = 2;
+    public static final int TYPE_COMMAND = 3;
+    public static final int TYPE_JOURNAL = 4;
+
+    // Device types
+    public static final int DEVICE_UNKNOWN = 0;
+    public static final int DEVICE_LIGHT = 1;
+    public static final int DEVICE_THERMOSTAT = 2;
+    public static final int DEVICE_SPEAKER = 3;
+    public static final int DEVICE_FAN = 4;
+    public static final int DEVICE_ROOM = 5;
+    public static final int DEVICE_MOTION_SENSOR = 6;
+    public static final int DEVICE_CONTACT_SENSOR = 7;
+    public static final int DEVICE_CO2_SENSOR = 8;
+
+    /** Most UTF-8 bytes a text field can hold; its length is an unsigned 16-bit value. */
+    public static final int MAX_TEXT_BYTES = 0xFFFF;
+
+    private static final int VERSION_OFFSET = 0;
+    private static final int TYPE_OFFSET = 1;
+    private static final int LENGTH_OFFSET = 4;
+
+    private WireFormat() {
+    }
+
+    /**
+     * Writes a message header.
+     *
+     * @param buffer Target buffer
+     * @param offset Start of the message
+     * @param type Message type
+     * @param length Total message length
+     */
+    static void putHeader(ByteBuffer buffer, int offset, int type, int length) {
+        buffer.put(offset + VERSION_OFFSET, (byte) VERSION);
+        buffer.put(offset + TYPE_OFFSET, (byte) type);
+        buffer.putShort(offset + 2, (short) 0);
+        buffer.putInt(offset + LENGTH_OFFSET, length);
+    }
+
+    /**
+     * Patches the length of a message whose size was not known up front.
+     *
+     * @param buffer Target buffer
+     * @param offset Start of the message
+     * @param length Total message length
+     */
+    static void putLength(ByteBuffer buffer, int offset, int length) {
+        buffer.putInt(offset + LENGTH_OFFSET, length);
+    }
+
+    /**
+     * Reads the message type, checking the version is supported.
+     *
+     * @param buffer Source buffer
+     * @param offset Start of the message
+     * @return The message type
+     * @throws IllegalArgumentException if the message was written by a newer version
+     */
+    public static int messageType(ByteBuffer buffer, int offset) {
+        int version = buffer.get(offset + VERSION_OFFSET) & 0xFF;
+        if (version == 0 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported wire format version: " + version);
+        }
+        return buffer.get(offset + TYPE_OFFSET) & 0xFF;
+    }
+
+    /**
+     * Reads the total length of the message at the given offset.
+     * Lets a reader skip messages of types it does not understand.
+     *
+     * @param buffer Source buffer
+     * @param offset Start of the message
+     * @return Total message length in bytes
+     */
+    public static int messageLength(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + LENGTH_OFFSET);
+    }
+
+    /**
+     * Encodes a string as UTF-8 straight into the buffer, without
+     * the intermediate byte array {@code String.getBytes} would allocate.
+     *
+     * @param buffer Target buffer
+     * @param offset Where to write
+     * @param text The text to write
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if the text needs more than
+     *         {@link #MAX_TEXT_BYTES} bytes; nothing is written then
+     */
+    static int putUtf8(ByteBuffer buffer, int offset, CharSequence text) {
+        // Three bytes per char is the most UTF-8 needs, so short text always fits
+        if (text.length() > MAX_TEXT_BYTES / 3) {
+            int needed = utf8Length(text);
+            if (needed > MAX_TEXT_BYTES) {
+                throw new IllegalArgumentException("Text needs " + needed + " UTF-8 bytes, more than the " +
+                                                   MAX_TEXT_BYTES + " a message can hold");
+            }
+        }
+        int pos = offset;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put(pos++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(pos++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put(pos++, (byte) (0xF0 | (codePoint >> 18)));
+                buffer.put(pos++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put(pos++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Counts the bytes {@link #putUtf8} would write for a string.
+     *
+     * @param text The text
+     * @return Encoded length in bytes
+     */
+    static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Decodes UTF-8 bytes into a string. Only called when a caller
+     * actually asks for text, so hot decode paths stay allocation free.
+     *
+     * @param buffer Source buffer
+     * @param offset Start of the bytes
+     * @param length Number of bytes
+     * @return The decoded string
+     */
+    static String getUtf8(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,20 +1,44 @@
 package com.smarthome.creational;
 
+import com.smarthome.devices.BulkProvisioning;
 import com.smarthome.devices.SmartDevice;
 import com.smarthome.behavioral.Observer;
+import com.smarthome.behavioral.AIControl;
+import com.smarthome.behavioral.ActuationLimiter;
 import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.CommandPipeline;
+import com.smarthome.behavioral.CommandRing;
 import com.smarthome.behavioral.ControlStrategy;  
+import com.smarthome.behavioral.ControllerListener;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.DeviceIndex;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * Central controller for the smart home system.
  * Implements Singleton Pattern - only ONE instance can exist.
  * 
- * This is the "brain" of the smart home that manages all devices.
+ * This is the "brain" of the smart home that manages all devices,
+ * with undo/redo capability, and strategy-based automation.
  * 
- *  * with undo/redo capability, and strategy-based automation.</p>
+ * <p>When many homes run in one process, each home gets its own
+ * controller from {@link #createForHome(String, DeviceIndex)}. While a
+ * home's work runs, {@link #getInstance()} returns that home's controller
+ * on the running thread (see {@link #bindCurrent(CentralController)}),
+ * so code written against the singleton works unchanged.</p>
+ * 
+ * <p>The device list and the device ids are read and written under the
+ * journal lock, so lookups by name or id are safe from any thread. Operations that switch every device
+ * work on a copy taken under the lock and touch the devices after
+ * releasing it.</p>
  * 
  * <h2>Design Patterns Used:</h2>
  * <ul>
@@ -42,7 +66,7 @@ import java.util.Stack;
  * 
  * @author dwayne headley
  * @version 1.0
- *  * @see SmartDevice
+ * @see SmartDevice
  * @see Command
  * @see Observer
  * 
@@ -56,20 +80,76 @@ public class CentralController implements Observer {
     // The single instance (static = shared across all uses)
     private static CentralController instance = null;
     
+    // Home whose work is running on this thread, if any
+    private static final ThreadLocal<CentralController> CURRENT = new ThreadLocal<>();
+    
+    // Home this controller belongs to (null for the shared instance)
+    private final String homeId;
+    
+    // Index this controller registers devices with (null = the shared one)
+    private final DeviceIndex index;
+    
+    // Runs the command scheduler and ring (a home's task queue, the GUI's
+    // device worker); null = each starts its own thread
+    private Executor executor;
+    
     // List of all devices in the system
     private List<SmartDevice> devices;
     
+    // Stable numeric ids used by the binary wire format (never reused),
+    // one per device instance, keyed by the undecorated device; both
+    // guarded by journalLock
+    private Map<SmartDevice, Integer> deviceIds;
+    private List<SmartDevice> devicesById;
+    
+    // Observers that receive every device change the controller sees
+    private List<Observer> stateListeners;
+    
+    // Listeners told about devices, commands and strategy switches
+    private List<ControllerListener> controllerListeners;
+    
+    // Priority lanes for submitted commands (created on first use)
+    private CommandScheduler commandScheduler;
+    
+    // Allocation-free path for slider and automation traffic (created on first use)
+    private CommandRing commandRing;
+    
+    // Per-device write limits for automation (created on first use)
+    private ActuationLimiter actuationLimiter;
+    
+    // Interceptors run around every executeCommand
+    private volatile CommandPipeline commandPipeline;
+    
+    // Held while devices, history or strategy change and listeners hear of it
+    private final Object journalLock = new Object();
+    
     /**
      * Private constructor prevents direct instantiation.
      * This is KEY to Singleton pattern!
      */
 
     private CentralController() {
+    this(null, null, null);
+    }
+    
+    private CentralController(String homeId, DeviceIndex index, Executor executor) {
+    this.homeId = homeId;
+    this.index = index;
+    this.executor = executor;
     devices = new ArrayList<>();
     commandHistory = new Stack<>();
     redoHistory = new Stack<>();
+    deviceIds = new IdentityHashMap<>();
+    devicesById = new ArrayList<>();
+    stateListeners = new CopyOnWriteArrayList<>();
+    controllerListeners = new CopyOnWriteArrayList<>();
     controlStrategy = null; // No strategy by default
-    System.out.println("[CONTROLLER] CentralController initialized");
+    commandPipeline = CommandPipeline.EMPTY;
+    if (homeId == null) {
+        System.out.println("[CONTROLLER] CentralController initialized");
+    } else if (!BulkProvisioning.isActive()) {
+        System.out.println("[CONTROLLER] CentralController initialized for home: " + homeId);
+    }
     }
     
     /**
@@ -79,12 +159,71 @@ public class CentralController implements Observer {
      * @return The one and only CentralController instance
      */
     public static CentralController getInstance() {
+        CentralController bound = CURRENT.get();
+        if (bound != null) {
+            return bound;
+        }
         if (instance == null) {
             instance = new CentralController();
         }
         return instance;
     }
     
+    /**
+     * Creates a separate controller for one home among many. It has its
+     * own devices, ids, command history and control strategy.
+     * 
+     * @param homeId The home's id
+     * @param index The home's device index
+     * @return A new controller
+     */
+    public static CentralController createForHome(String homeId, DeviceIndex index) {
+        return new CentralController(homeId, index, null);
+    }
+    
+    /**
+     * Creates a controller for one home whose submitted commands run as
+     * tasks on the home's own queue rather than on a scheduler thread.
+     * 
+     * @param homeId The home's id
+     * @param index The home's device index
+     * @param executor The home's task queue; runs one task at a time
+     * @return A new controller
+     */
+    public static CentralController createForHome(String homeId, DeviceIndex index, Executor executor) {
+        return new CentralController(homeId, index, executor);
+    }
+    
+    /**
+     * Makes {@link #getInstance()} return the given controller on this
+     * thread.
+     * 
+     * @param controller The controller, or null for the shared one
+     * @return The controller bound before, to restore afterwards
+     */
+    public static CentralController bindCurrent(CentralController controller) {
+        CentralController previous = CURRENT.get();
+        if (controller == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(controller);
+        }
+        return previous;
+    }
+    
+    /**
+     * Gets the home this controller belongs to.
+     * 
+     * @return The home id, or null for the shared controller
+     */
+    public String getHomeId() {
+        return homeId;
+    }
+    
+    private DeviceIndex index() {
+        return index != null ? index : DeviceIndex.getInstance();
+    }
+    
     /**
      * Adds a device to the system.
      * The controller will observe this device for state changes.
@@ -92,10 +231,45 @@ public class CentralController implements Observer {
      * @param device The device to add
      */
     public void addDevice(SmartDevice device) {
-        devices.add(device);
-        device.addObserver(this); // Controller observes all devices
+        int total;
+        synchronized (journalLock) {
+            devices.add(device);
+            total = devices.size();
+            int id = assignId(device);
+            device.addObserver(this); // Controller observes all devices
+            index().register(device);
+            for (ControllerListener listener : controllerListeners) {
+                listener.deviceAdded(device, id);
+            }
+        }
         System.out.println("[CONTROLLER] Device added: " + device.getName() + 
-                         " (Total devices: " + devices.size() + ")");
+                         " (Total devices: " + total + ")");
+    }
+    
+    /**
+     * Adds many devices to the system with a single log line.
+     * 
+     * @param newDevices The devices to add
+     */
+    public void addDevices(Collection<? extends SmartDevice> newDevices) {
+        DeviceIndex index = index();
+        int total;
+        synchronized (journalLock) {
+            for (SmartDevice device : newDevices) {
+                devices.add(device);
+                int id = assignId(device);
+                device.addObserver(this);
+                index.register(device);
+                for (ControllerListener listener : controllerListeners) {
+                    listener.deviceAdded(device, id);
+                }
+            }
+            total = devices.size();
+        }
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[CONTROLLER] " + newDevices.size() + " devices added" + 
+                             " (Total devices: " + total + ")");
+        }
     }
     
     /**
@@ -105,7 +279,23 @@ public class CentralController implements Observer {
      * @return true if removed, false if not found
      */
     public boolean removeDevice(SmartDevice device) {
-        boolean removed = devices.remove(device);
+        boolean removed;
+        synchronized (journalLock) {
+            removed = devices.remove(device);
+            if (removed) {
+                Integer id = deviceIds.get(DeviceDecorator.unwrap(device));
+                if (!devices.contains(device)) {
+                    if (id != null) {
+                        deviceIds.remove(DeviceDecorator.unwrap(device));
+                        devicesById.set(id, null); // Keep the id reserved; re-adding gets a new one
+                    }
+                    index().unregister(device);
+                }
+                for (ControllerListener listener : controllerListeners) {
+                    listener.deviceRemoved(device, id == null ? -1 : id);
+                }
+            }
+        }
         if (removed) {
             System.out.println("[CONTROLLER] Device removed: " + device.getName());
         }
@@ -119,21 +309,86 @@ public class CentralController implements Observer {
      * @return The device, or null if not found
      */
     public SmartDevice getDevice(String name) {
-        for (SmartDevice device : devices) {
-            if (device.getName().equalsIgnoreCase(name)) {
-                return device;
+        synchronized (journalLock) {
+            for (SmartDevice device : devices) {
+                if (device.getName().equalsIgnoreCase(name)) {
+                    return device;
+                }
             }
         }
         return null;
     }
     
+    /**
+     * Gets the numeric id assigned to a device when it was added.
+     * Ids are dense, start at 0 and are never reused: every device
+     * instance gets its own, even if it shares a name with another, and
+     * a device removed and added again gets a new one.
+     * 
+     * @param device The device (decorated or not)
+     * @return The device id, or -1 if the device is not in the controller
+     */
+    public int getDeviceId(SmartDevice device) {
+        SmartDevice key = DeviceDecorator.unwrap(device);
+        synchronized (journalLock) {
+            Integer id = deviceIds.get(key);
+            return id == null ? -1 : id;
+        }
+    }
+    
+    /**
+     * Gets the numeric id of the first device added with a name.
+     * 
+     * @param name The name of the device
+     * @return The device id, or -1 if no device has that name
+     * @see #getDeviceId(SmartDevice)
+     */
+    public int getDeviceId(String name) {
+        synchronized (journalLock) {
+            for (SmartDevice device : devices) {
+                if (device.getName().equals(name)) {
+                    return getDeviceId(device);
+                }
+            }
+        }
+        return -1;
+    }
+    
+    private int assignId(SmartDevice device) {
+        SmartDevice key = DeviceDecorator.unwrap(device);
+        Integer id = deviceIds.get(key);
+        if (id == null) {
+            id = devicesById.size();
+            deviceIds.put(key, id);
+            devicesById.add(device);
+        }
+        return id;
+    }
+    
+    /**
+     * Gets a device by its numeric id.
+     * 
+     * @param id The device id
+     * @return The device, or null if unknown or removed
+     */
+    public SmartDevice getDeviceById(int id) {
+        synchronized (journalLock) {
+            if (id < 0 || id >= devicesById.size()) {
+                return null;
+            }
+            return devicesById.get(id);
+        }
+    }
+    
     /**
      * Gets all devices in the system.
      * 
      * @return A copy of the device list
      */
     public List<SmartDevice> getAllDevices() {
-        return new ArrayList<>(devices); // Return a copy for safety
+        synchronized (journalLock) {
+            return new ArrayList<>(devices); // Return a copy for safety
+        }
     }
     
     /**
@@ -142,7 +397,9 @@ public class CentralController implements Observer {
      * @return Number of devices
      */
     public int getDeviceCount() {
-        return devices.size();
+        synchronized (journalLock) {
+            return devices.size();
+        }
     }
     
     /**
@@ -150,7 +407,7 @@ public class CentralController implements Observer {
      */
     public void turnOnAllDevices() {
         System.out.println("[CONTROLLER] Turning on all devices...");
-        for (SmartDevice device : devices) {
+        for (SmartDevice device : getAllDevices()) {
             device.turnOn();
         }
         System.out.println("[CONTROLLER] All devices turned on");
@@ -161,7 +418,7 @@ public class CentralController implements Observer {
      */
     public void turnOffAllDevices() {
         System.out.println("[CONTROLLER] Turning off all devices...");
-        for (SmartDevice device : devices) {
+        for (SmartDevice device : getAllDevices()) {
             device.turnOff();
         }
         System.out.println("[CONTROLLER] All devices turned off");
@@ -172,11 +429,12 @@ public class CentralController implements Observer {
      */
     public void displayAllDevices() {
         System.out.println("\n========== DEVICE STATUS ==========");
-        if (devices.isEmpty()) {
+        List<SmartDevice> snapshot = getAllDevices();
+        if (snapshot.isEmpty()) {
             System.out.println("No devices registered");
         } else {
-            for (int i = 0; i < devices.size(); i++) {
-                System.out.println((i + 1) + ". " + devices.get(i).getStatus());
+            for (int i = 0; i < snapshot.size(); i++) {
+                System.out.println((i + 1) + ". " + snapshot.get(i).getStatus());
             }
         }
         System.out.println("===================================\n");
@@ -190,20 +448,73 @@ public class CentralController implements Observer {
      */
 @Override
 public void update(SmartDevice device) {
-    System.out.println("┌─────────────────────────────────────────────┐");
-    System.out.println("│  🔔 OBSERVER NOTIFICATION RECEIVED          │");
-    System.out.println("├─────────────────────────────────────────────┤");
-    System.out.println("│  Device: " + device.getName());
-    System.out.println("│  Status: " + device.getStatus());
-    System.out.println("│  Time: " + java.time.LocalTime.now());
-    System.out.println("└─────────────────────────────────────────────┘");
-    
-    // In a real GUI application, this would:
-    // - Update the device's visual representation
-    // - Change button states (on/off)
-    // - Update status labels
-    // - Refresh energy displays
-    // - Log to activity feed
+    // Printed in one call: a parallel zone switch notifies from several threads
+    String newline = System.lineSeparator();
+    System.out.println("┌─────────────────────────────────────────────┐" + newline +
+                       "│  🔔 OBSERVER NOTIFICATION RECEIVED          │" + newline +
+                       "├─────────────────────────────────────────────┤" + newline +
+                       "│  Device: " + device.getName() + newline +
+                       "│  Status: " + device.getStatus() + newline +
+                       "│  Time: " + java.time.LocalTime.now() + newline +
+                       "└─────────────────────────────────────────────┘");
+    
+    // Forward to downstream listeners (GUI, remote streams, loggers)
+    for (Observer listener : stateListeners) {
+        listener.update(device);
+    }
+}
+
+/**
+ * Registers an observer that receives every device change seen by
+ * the controller, without having to attach it to each device.
+ * 
+ * @param listener The observer to register
+ */
+public void addStateListener(Observer listener) {
+    stateListeners.add(listener);
+}
+
+/**
+ * Unregisters a state listener.
+ * 
+ * @param listener The observer to remove
+ * @return true if removed, false if it was not registered
+ */
+public boolean removeStateListener(Observer listener) {
+    return stateListeners.remove(listener);
+}
+
+/**
+ * Registers a listener for device, command and strategy changes.
+ * 
+ * @param listener The listener to register
+ */
+public void addControllerListener(ControllerListener listener) {
+    controllerListeners.add(listener);
+}
+
+/**
+ * Unregisters a controller listener.
+ * 
+ * @param listener The listener to remove
+ * @return true if removed, false if it was not registered
+ */
+public boolean removeControllerListener(ControllerListener listener) {
+    return controllerListeners.remove(listener);
+}
+
+/**
+ * Gets the lock held while devices, the command histories or the
+ * strategy change and controller listeners are told about it. Holding
+ * it gives a view of the controller that matches exactly the callbacks
+ * listeners have received so far, e.g. for a replication snapshot.
+ * Do not touch devices while holding it: device observers may call
+ * back into the controller from other threads.
+ * 
+ * @return The journal lock
+ */
+public Object getJournalLock() {
+    return journalLock;
 }
     
     /**
@@ -216,52 +527,219 @@ public void update(SmartDevice device) {
     }
     
     /**
- * Executes a command and adds it to history.
+ * Executes a command and adds it to history, unless an interceptor in
+ * the command pipeline refuses it.
  * 
  * @param command The command to execute
+ * @return true if executed, false if refused
  */
-public void executeCommand(Command command) {
+public boolean executeCommand(Command command) {
+    CommandPipeline pipeline = commandPipeline;
+    int refusedBy = pipeline.before(command);
+    if (refusedBy != CommandPipeline.ACCEPTED) {
+        System.out.println("[CONTROLLER] Command refused by " + 
+                         pipeline.getInterceptor(refusedBy).getClass().getSimpleName() + 
+                         ": " + command.getDescription());
+        return false;
+    }
     System.out.println("[CONTROLLER] Executing command: " + command.getDescription());
     command.execute();
-    commandHistory.push(command);
-    redoHistory.clear(); // Clear redo history when new command executed
+    synchronized (journalLock) {
+        commandHistory.push(command);
+        redoHistory.clear(); // Clear redo history when new command executed
+        for (ControllerListener listener : controllerListeners) {
+            listener.commandExecuted(command);
+        }
+    }
     System.out.println("[CONTROLLER] Command history size: " + commandHistory.size());
+    return true;
+}
+
+/**
+ * Sets the interceptors checked before every {@link #executeCommand(Command)}.
+ * Undo and redo do not go through them.
+ * 
+ * @param pipeline The compiled interceptor chain, or null for none
+ */
+public void setCommandPipeline(CommandPipeline pipeline) {
+    this.commandPipeline = pipeline == null ? CommandPipeline.EMPTY : pipeline;
+    System.out.println("[CONTROLLER] Command pipeline set: " + commandPipeline.size() + " interceptors");
+}
+
+/**
+ * Gets the interceptors checked before every command.
+ * 
+ * @return The command pipeline (never null)
+ */
+public CommandPipeline getCommandPipeline() {
+    return commandPipeline;
+}
+
+/**
+ * Queues a command to run on this controller's command scheduler, ahead
+ * of or behind other queued commands depending on its lane. Once
+ * commands are submitted, send the controller's other commands through
+ * here too, so only the scheduler executes them.
+ * 
+ * @param command The command to execute
+ * @param lane Where the command comes from (safety, user, schedule, AI)
+ * @return true if queued, false if the lane is full
+ */
+public boolean submitCommand(Command command, CommandScheduler.Lane lane) {
+    return getCommandScheduler().submit(command, lane);
+}
+
+/**
+ * Queues an undo behind the commands already submitted, so it cannot
+ * run in the middle of one.
+ * 
+ * @param lane Where the request comes from
+ * @return Completes with true once something was undone, false if there
+ *         was nothing to undo
+ * @see CommandScheduler#submitUndo(CommandScheduler.Lane)
+ */
+public CompletableFuture<Boolean> submitUndo(CommandScheduler.Lane lane) {
+    return getCommandScheduler().submitUndo(lane);
+}
+
+/**
+ * Queues a redo behind the commands already submitted.
+ * 
+ * @param lane Where the request comes from
+ * @return Completes with true once something was redone, false if there
+ *         was nothing to redo
+ * @see CommandScheduler#submitRedo(CommandScheduler.Lane)
+ */
+public CompletableFuture<Boolean> submitRedo(CommandScheduler.Lane lane) {
+    return getCommandScheduler().submitRedo(lane);
+}
+
+/**
+ * Gets the scheduler behind {@link #submitCommand(Command, CommandScheduler.Lane)},
+ * starting it on first use. It dispatches on the command executor (a
+ * home's task queue) if there is one, otherwise on a thread of its own.
+ * 
+ * @return The command scheduler
+ */
+public synchronized CommandScheduler getCommandScheduler() {
+    if (commandScheduler == null) {
+        commandScheduler = new CommandScheduler(this, CommandScheduler.DEFAULT_LANE_CAPACITY, executor);
+        commandScheduler.start();
+    }
+    return commandScheduler;
+}
+
+/**
+ * Runs the command scheduler and the command ring as tasks on an
+ * executor instead of a thread each, so they change devices on the same
+ * thread as the rest of the caller's device work. The executor must run
+ * one task at a time.
+ * 
+ * @param executor The executor, e.g. the GUI's device worker
+ * @throws IllegalStateException if the scheduler or ring is already running
+ */
+public synchronized void setCommandExecutor(Executor executor) {
+    if (commandScheduler != null || commandRing != null) {
+        throw new IllegalStateException("Command scheduler or ring already started");
+    }
+    this.executor = executor;
+}
+
+/**
+ * Gets the ring for high-rate commands such as slider drags, starting
+ * its applier on first use. Commands sent there have their own undo
+ * history and are not reported to controller listeners.
+ * 
+ * @return The command ring
+ */
+public synchronized CommandRing getCommandRing() {
+    if (commandRing == null) {
+        commandRing = new CommandRing(CommandRing.DEFAULT_CAPACITY, CommandRing.DEFAULT_HISTORY_SIZE,
+                                      this::getDeviceById);
+        if (executor != null) {
+            commandRing.start(executor);
+        } else {
+            commandRing.start("command-ring" + (homeId == null ? "" : "-" + homeId));
+        }
+    }
+    return commandRing;
+}
+
+/**
+ * Gets the limiter that holds automation to a few writes per device per
+ * second. What it lets through is submitted in the AI lane, so it is in
+ * the history like any other command. A write that waited for a token
+ * is the last of the values merged into it, so it goes in with
+ * {@link CommandScheduler#submitFinal(Command, CommandScheduler.Lane)}
+ * and is not dropped when late.
+ * 
+ * @return The actuation limiter
+ */
+public synchronized ActuationLimiter getActuationLimiter() {
+    if (actuationLimiter == null) {
+        actuationLimiter = new ActuationLimiter(
+            command -> submitCommand(command, CommandScheduler.Lane.AI),
+            command -> getCommandScheduler().submitFinal(command, CommandScheduler.Lane.AI));
+    }
+    return actuationLimiter;
 }
 
 /**
- * Undoes the last command.
+ * Undoes the last command. The command moves to the redo history before
+ * its undo runs, so no one sees it in neither history.
  * 
  * @return true if undo successful, false if no commands to undo
  */
 public boolean undoLastCommand() {
-    if (commandHistory.isEmpty()) {
+    Command command;
+    synchronized (journalLock) {
+        if (commandHistory.isEmpty()) {
+            command = null;
+        } else {
+            command = commandHistory.pop();
+            redoHistory.push(command);
+            for (ControllerListener listener : controllerListeners) {
+                listener.commandUndone(command);
+            }
+        }
+    }
+    if (command == null) {
         System.out.println("[CONTROLLER] No commands to undo!");
         return false;
     }
     
-    Command command = commandHistory.pop();
     System.out.println("[CONTROLLER] Undoing command: " + command.getDescription());
     command.undo();
-    redoHistory.push(command);
     System.out.println("[CONTROLLER] Command history size: " + commandHistory.size());
     return true;
 }
 
 /**
- * Redoes the last undone command.
+ * Redoes the last undone command. Like undo, the command moves between
+ * the histories before it runs.
  * 
  * @return true if redo successful, false if no commands to redo
  */
 public boolean redoLastCommand() {
-    if (redoHistory.isEmpty()) {
+    Command command;
+    synchronized (journalLock) {
+        if (redoHistory.isEmpty()) {
+            command = null;
+        } else {
+            command = redoHistory.pop();
+            commandHistory.push(command);
+            for (ControllerListener listener : controllerListeners) {
+                listener.commandRedone(command);
+            }
+        }
+    }
+    if (command == null) {
         System.out.println("[CONTROLLER] No commands to redo!");
         return false;
     }
     
-    Command command = redoHistory.pop();
     System.out.println("[CONTROLLER] Redoing command: " + command.getDescription());
     command.execute();
-    commandHistory.push(command);
     return true;
 }
 
@@ -271,15 +749,70 @@ public boolean redoLastCommand() {
  * @return List of executed commands
  */
 public Stack<Command> getCommandHistory() {
-    return new Stack<>(); // Return copy
+    Stack<Command> copy = new Stack<>();
+    copy.addAll(commandHistory);
+    return copy; // Return copy
+}
+
+/**
+ * Gets the commands that can be redone.
+ * 
+ * @return Undone commands, the next one to redo last
+ */
+public Stack<Command> getRedoHistory() {
+    Stack<Command> copy = new Stack<>();
+    copy.addAll(redoHistory);
+    return copy;
+}
+
+/**
+ * Replaces the undo history without executing anything, e.g. when a
+ * standby takes over from another controller. The redo history is
+ * cleared.
+ * 
+ * @param commands Commands already applied, oldest first
+ */
+public void restoreHistory(List<Command> commands) {
+    restoreHistory(commands, new ArrayList<>());
+}
+
+/**
+ * Replaces the undo and redo histories without executing anything.
+ * 
+ * @param commands Commands already applied, oldest first
+ * @param undone Commands undone, the next one to redo last
+ */
+public void restoreHistory(List<Command> commands, List<Command> undone) {
+    synchronized (journalLock) {
+        commandHistory.clear();
+        commandHistory.addAll(commands);
+        redoHistory.clear();
+        redoHistory.addAll(undone);
+    }
+    System.out.println("[CONTROLLER] Command history restored: " + commands.size() + " commands, " +
+                       undone.size() + " to redo");
+}
+
+/**
+ * Gets the number of commands that can be undone.
+ * 
+ * @return Undo history size
+ */
+public int getHistorySize() {
+    return commandHistory.size();
 }
 
 /**
  * Clears the command history.
  */
 public void clearHistory() {
-    commandHistory.clear();
-    redoHistory.clear();
+    synchronized (journalLock) {
+        commandHistory.clear();
+        redoHistory.clear();
+        for (ControllerListener listener : controllerListeners) {
+            listener.historyCleared();
+        }
+    }
     System.out.println("[CONTROLLER] Command history cleared");
 }
 
@@ -303,12 +836,28 @@ public void displayCommandHistory() {
 }
 
 /**
- * Sets the control strategy.
+ * Sets the control strategy. The device changes it decides on are
+ * submitted to this controller's scheduler: through the actuation
+ * limiter into the AI lane for {@link AIControl}, straight to the
+ * schedule lane otherwise.
  * 
  * @param strategy The control strategy to use
  */
 public void setControlStrategy(ControlStrategy strategy) {
-    this.controlStrategy = strategy;
+    if (controlStrategy != null && controlStrategy != strategy) {
+        controlStrategy.deactivate();
+    }
+    if (strategy instanceof AIControl) {
+        strategy.setCommandSink(getActuationLimiter().asCommandSink());
+    } else {
+        strategy.setCommandSink(command -> submitCommand(command, CommandScheduler.Lane.SCHEDULE));
+    }
+    synchronized (journalLock) {
+        this.controlStrategy = strategy;
+        for (ControllerListener listener : controllerListeners) {
+            listener.strategyChanged(strategy);
+        }
+    }
     System.out.println("[CONTROLLER] Control strategy changed to: " + strategy.getStrategyName());
     System.out.println("[CONTROLLER] " + strategy.getDescription());
 }
@@ -334,7 +883,7 @@ public void activateControlStrategy() {
     }
     
     System.out.println("[CONTROLLER] Activating: " + controlStrategy.getStrategyName());
-    controlStrategy.controlDevices(devices);
+    controlStrategy.controlDevices(getAllDevices());
 }
 
 }
\ No newline at end of file
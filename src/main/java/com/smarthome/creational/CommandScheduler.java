@@ -0,0 +1,649 @@
+package com.smarthome.creational;
+
+import com.smarthome.behavioral.Command;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Orders the commands sent to a {@link CentralController} by where they
+ * come from, so a flood of automation cannot hold up a person at the
+ * wall switch.
+ *
+ * <p>Each {@link Lane} has a bounded queue. One dispatcher runs the
+ * commands, one at a time, through
+ * {@link CentralController#executeCommand(Command)}. On its own the
+ * scheduler starts a dispatcher thread; given an executor (a home's task
+ * queue) it runs each command as a task there instead, so a home's
+ * commands take turns with the rest of its work and no thread is
+ * started per controller. The next command is picked like this:</p>
+ * <ul>
+ *   <li>{@link Lane#SAFETY} always goes first.</li>
+ *   <li>If the most urgent lane with work has a command waiting past
+ *       the lane's deadline, that command goes next.</li>
+ *   <li>Otherwise the lanes take turns by weight (smooth weighted round
+ *       robin): with every lane busy, a user command gets 8 of every 11
+ *       turns, a scheduled one 2 and an AI one 1, so automation slows
+ *       down but never stops.</li>
+ * </ul>
+ *
+ * <p>Undo and redo are queued the same way
+ * ({@link #submitUndo(Lane)}, {@link #submitRedo(Lane)}), so they never
+ * run in the middle of another command.</p>
+ *
+ * <p>AI commands are decisions about the present, so one that is still
+ * queued at its deadline is dropped rather than run late; the next
+ * automation pass will decide again. The exception is a command queued
+ * with {@link #submitFinal(Command, Lane)}, such as the value an
+ * actuation limiter kept from a burst of writes: nothing is left to
+ * decide it again, so at its deadline it gets a fresh one instead.
+ * Commands in the other lanes always run. A full lane refuses new
+ * commands; the caller decides whether to retry or give up.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * CentralController controller = CentralController.getInstance();
+ * controller.submitCommand(new TurnOffCommand(light), CommandScheduler.Lane.USER);
+ * controller.getCommandScheduler().displayStats();
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see CentralController
+ */
+public class CommandScheduler {
+    /** Commands each lane holds when no capacity is given. */
+    public static final int DEFAULT_LANE_CAPACITY = 1024;
+
+    private static final int LATENCY_SAMPLES = 8192; // Per lane, most recent
+
+    /**
+     * Where a command comes from, most urgent first.
+     */
+    public enum Lane {
+        /** Alarms and demand-response shedding. */
+        SAFETY(0, 50),
+        /** People: GUI clicks, voice, wall switches. */
+        USER(8, 100),
+        /** Schedules and rules. */
+        SCHEDULE(2, 1_000),
+        /** AI automation; dropped when late. */
+        AI(1, 2_000);
+
+        private final int weight;
+        private final long deadlineNanos;
+
+        Lane(int weight, long deadlineMillis) {
+            this.weight = weight;
+            this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        }
+
+        /**
+         * Gets the lane's share of turns when lanes compete.
+         *
+         * @return The weight; 0 for the safety lane, which never waits its turn
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Gets how long a command may wait before it counts as late.
+         *
+         * @return The deadline in milliseconds
+         */
+        public long getDeadlineMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(deadlineNanos);
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    // What a queued entry does
+    private static final int EXECUTE = 0;
+    private static final int UNDO = 1;
+    private static final int REDO = 2;
+
+    private final CentralController controller;
+    private final int laneCapacity;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final List<ArrayDeque<Queued>> queues;
+    private final int[] credit;          // Smooth weighted round robin state
+    private final long[] submitted;
+    private final long[] executed;
+    private final long[] rejected;       // Lane full
+    private final long[] expired;        // AI commands dropped at their deadline
+    private final long[] renewed;        // Final AI commands given a fresh deadline
+    private final long[] late;           // Run after their deadline
+    private final long[][] latencies;    // Submit to done, nanoseconds
+    private final Executor executor;     // Runs dispatch steps; null = own thread
+    private final AtomicBoolean stepQueued;
+    private int queued;
+    private boolean stopped;             // Shut down; refuses new commands
+    private Thread dispatcher;
+    private volatile boolean running;
+    private volatile boolean busy;       // Dispatcher is running a command
+
+    /**
+     * Creates a scheduler. Call {@link #start()} to begin dispatching.
+     *
+     * @param controller The controller the commands run on
+     * @param laneCapacity Commands each lane can hold
+     */
+    public CommandScheduler(CentralController controller, int laneCapacity) {
+        this(controller, laneCapacity, null);
+    }
+
+    /**
+     * Creates a scheduler that runs its commands on an executor, one task
+     * per command, instead of on a thread of its own. The executor must
+     * run one task at a time, like a home's task queue. Call
+     * {@link #start()} to begin dispatching.
+     *
+     * @param controller The controller the commands run on
+     * @param laneCapacity Commands each lane can hold
+     * @param executor Runs the commands, or null for a dispatcher thread
+     */
+    public CommandScheduler(CentralController controller, int laneCapacity, Executor executor) {
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("Lane capacity must be at least 1");
+        }
+        this.controller = controller;
+        this.laneCapacity = laneCapacity;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.queues = new ArrayList<>(LANES.length);
+        for (int i = 0; i < LANES.length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        this.credit = new int[LANES.length];
+        this.submitted = new long[LANES.length];
+        this.executed = new long[LANES.length];
+        this.rejected = new long[LANES.length];
+        this.expired = new long[LANES.length];
+        this.renewed = new long[LANES.length];
+        this.late = new long[LANES.length];
+        this.latencies = new long[LANES.length][LATENCY_SAMPLES];
+        this.executor = executor;
+        this.stepQueued = new AtomicBoolean();
+    }
+
+    /**
+     * Starts dispatching: on the executor if one was given, otherwise on
+     * a new dispatcher thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lock.lock();
+        try {
+            stopped = false;
+        } finally {
+            lock.unlock();
+        }
+        if (executor != null) {
+            System.out.println("[SCHEDULER] Started on an executor (" + laneCapacity +
+                             " commands per lane)");
+            if (getQueuedCount() > 0) {
+                postStep();
+            }
+            return;
+        }
+        String home = controller.getHomeId();
+        dispatcher = new Thread(this::dispatchLoop, "command-scheduler" + (home == null ? "" : "-" + home));
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        System.out.println("[SCHEDULER] Started (" + laneCapacity + " commands per lane)");
+    }
+
+    /**
+     * Stops dispatching. Commands still queued are not run: undos and
+     * redos waiting in a lane fail with a
+     * {@link RejectedExecutionException}, and later submissions are
+     * refused until the scheduler is started again.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dispatcher = null;
+        }
+        List<Queued> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            stopped = true;
+            for (ArrayDeque<Queued> queue : queues) {
+                dropped.addAll(queue);
+                queue.clear();
+            }
+            queued = 0;
+        } finally {
+            lock.unlock();
+        }
+        RejectedExecutionException reason = new RejectedExecutionException("Command scheduler shut down");
+        for (Queued entry : dropped) {
+            entry.fail(reason);
+        }
+        System.out.println("[SCHEDULER] Stopped (" + dropped.size() + " queued commands dropped)");
+    }
+
+    /**
+     * Queues a command.
+     *
+     * @param command The command
+     * @param lane Where it comes from
+     * @return true if queued, false if the lane is full or the scheduler shut down
+     */
+    public boolean submit(Command command, Lane lane) {
+        return enqueue(EXECUTE, command, null, lane, false);
+    }
+
+    /**
+     * Queues a command that must not be dropped as late, because it is
+     * the last of several values that were merged into it. It waits its
+     * turn like the rest of its lane; in the AI lane, reaching its
+     * deadline gives it a fresh deadline rather than dropping it.
+     *
+     * @param command The command
+     * @param lane Where it comes from
+     * @return true if queued, false if the lane is full or the scheduler shut down
+     */
+    public boolean submitFinal(Command command, Lane lane) {
+        return enqueue(EXECUTE, command, null, lane, true);
+    }
+
+    /**
+     * Queues an undo of the controller's last command.
+     *
+     * @param lane Where it comes from
+     * @return Completes on the dispatcher with true if something was
+     *         undone; fails with {@link RejectedExecutionException} if the
+     *         lane is full or the scheduler shuts down first
+     */
+    public CompletableFuture<Boolean> submitUndo(Lane lane) {
+        return enqueueHistory(UNDO, lane);
+    }
+
+    /**
+     * Queues a redo of the controller's last undone command.
+     *
+     * @param lane Where it comes from
+     * @return Completes on the dispatcher with true if something was
+     *         redone; fails with {@link RejectedExecutionException} if the
+     *         lane is full or the scheduler shuts down first
+     */
+    public CompletableFuture<Boolean> submitRedo(Lane lane) {
+        return enqueueHistory(REDO, lane);
+    }
+
+    private CompletableFuture<Boolean> enqueueHistory(int action, Lane lane) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (!enqueue(action, null, result, lane, false)) {
+            result.completeExceptionally(new RejectedExecutionException(lane + " lane is full or shut down"));
+        }
+        return result;
+    }
+
+    private boolean enqueue(int action, Command command, CompletableFuture<Boolean> result, Lane lane,
+                            boolean renew) {
+        int i = lane.ordinal();
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            submitted[i]++;
+            if (stopped || queues.get(i).size() >= laneCapacity) {
+                rejected[i]++;
+                return false;
+            }
+            queues.get(i).addLast(new Queued(action, command, result, now, now + lane.deadlineNanos, renew));
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (executor != null && running) {
+            postStep();
+        }
+        return true;
+    }
+
+    /**
+     * Waits until every queued command has run.
+     *
+     * @param timeoutMillis Longest time to wait
+     * @return true if the lanes emptied in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (getQueuedCount() > 0 || busy) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Queued next;
+            int lane;
+            lock.lock();
+            try {
+                while (queued == 0) {
+                    notEmpty.await();
+                }
+                lane = pickLane(System.nanoTime());
+                next = queues.get(lane).pollFirst();
+                queued--;
+                busy = true;
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+            run(next, lane);
+            busy = false;
+        }
+    }
+
+    private void postStep() {
+        if (stepQueued.compareAndSet(false, true)) {
+            executor.execute(this::step);
+        }
+    }
+
+    /**
+     * Runs one command as a task on the executor, then queues the next
+     * step if more are waiting, so other tasks get a turn in between.
+     */
+    private void step() {
+        stepQueued.set(false);
+        if (!running) {
+            return;
+        }
+        Queued next;
+        int lane;
+        lock.lock();
+        try {
+            if (queued == 0) {
+                return;
+            }
+            lane = pickLane(System.nanoTime());
+            next = queues.get(lane).pollFirst();
+            queued--;
+            busy = true;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            run(next, lane);
+        } finally {
+            busy = false;
+        }
+        if (getQueuedCount() > 0) {
+            postStep();
+        }
+    }
+
+    /**
+     * Chooses the lane to serve next. Called with the lock held and at
+     * least one command queued; drops expired AI commands on the way.
+     */
+    private int pickLane(long now) {
+        if (!queues.get(Lane.SAFETY.ordinal()).isEmpty()) {
+            return Lane.SAFETY.ordinal();
+        }
+        ArrayDeque<Queued> ai = queues.get(Lane.AI.ordinal());
+        while (ai.size() > 1 && ai.peekFirst().deadline <= now) {
+            Queued head = ai.peekFirst();
+            if (head.renew) {
+                head.deadline = now + Lane.AI.deadlineNanos;
+                renewed[Lane.AI.ordinal()]++;
+                break;
+            }
+            ai.pollFirst().complete(false); // The last one is left for run() to drop, so there is still a pick
+            queued--;
+            expired[Lane.AI.ordinal()]++;
+        }
+
+        // The most urgent lane with work goes next if its oldest command is overdue
+        for (int i = 0; i < LANES.length; i++) {
+            Queued head = queues.get(i).peekFirst();
+            if (head != null) {
+                if (head.deadline <= now && LANES[i] != Lane.AI) {
+                    return i;
+                }
+                break;
+            }
+        }
+
+        // Smooth weighted round robin among the lanes with work
+        int total = 0;
+        int best = -1;
+        for (int i = 0; i < LANES.length; i++) {
+            if (queues.get(i).isEmpty()) {
+                continue;
+            }
+            credit[i] += LANES[i].weight;
+            total += LANES[i].weight;
+            if (best < 0 || credit[i] > credit[best]) {
+                best = i;
+            }
+        }
+        credit[best] -= total;
+        return best;
+    }
+
+    private void run(Queued entry, int lane) {
+        long started = System.nanoTime();
+        if (LANES[lane] == Lane.AI && entry.deadline <= started && !entry.renew) {
+            lock.lock();
+            try {
+                expired[lane]++;
+            } finally {
+                lock.unlock();
+            }
+            entry.complete(false);
+            return;
+        }
+        CentralController previous = CentralController.bindCurrent(controller);
+        try {
+            boolean done;
+            if (entry.action == UNDO) {
+                done = controller.undoLastCommand();
+            } else if (entry.action == REDO) {
+                done = controller.redoLastCommand();
+            } else {
+                done = controller.executeCommand(entry.command);
+            }
+            entry.complete(done);
+        } catch (RuntimeException | Error e) {
+            // One bad command must not take the dispatcher down with it
+            System.out.println("[SCHEDULER] Command failed: " + entry.describe() + " (" + e + ")");
+            entry.fail(e);
+        } finally {
+            CentralController.bindCurrent(previous);
+        }
+        long finished = System.nanoTime();
+        lock.lock();
+        try {
+            latencies[lane][(int) (executed[lane] % LATENCY_SAMPLES)] = finished - entry.submitted;
+            executed[lane]++;
+            if (started > entry.deadline) {
+                late[lane]++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a latency percentile for a lane, from submit until the
+     * command finished, over its most recent commands.
+     *
+     * @param lane The lane
+     * @param percentile e.g. 99 for p99
+     * @return Latency in microseconds, or 0 if nothing has run yet
+     */
+    public double getLatencyMicros(Lane lane, double percentile) {
+        long[] samples;
+        lock.lock();
+        try {
+            int i = lane.ordinal();
+            int count = (int) Math.min(executed[i], LATENCY_SAMPLES);
+            samples = Arrays.copyOf(latencies[i], count);
+        } finally {
+            lock.unlock();
+        }
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        int at = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, at))] / 1_000.0;
+    }
+
+    /**
+     * Gets the number of commands waiting in a lane.
+     *
+     * @param lane The lane
+     * @return Queued commands
+     */
+    public int getQueuedCount(Lane lane) {
+        lock.lock();
+        try {
+            return queues.get(lane.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of commands waiting in all lanes.
+     *
+     * @return Queued commands
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getExecutedCount(Lane lane) {
+        return counter(executed, lane);
+    }
+
+    public long getRejectedCount(Lane lane) {
+        return counter(rejected, lane);
+    }
+
+    public long getExpiredCount(Lane lane) {
+        return counter(expired, lane);
+    }
+
+    /**
+     * Gets the number of final commands that reached their deadline and
+     * were given a fresh one instead of being dropped.
+     *
+     * @param lane The lane
+     * @return Renewed deadlines
+     */
+    public long getRenewedCount(Lane lane) {
+        return counter(renewed, lane);
+    }
+
+    private long counter(long[] counters, Lane lane) {
+        lock.lock();
+        try {
+            return counters[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Displays per-lane counts and latencies.
+     */
+    public void displayStats() {
+        System.out.println("\n=== Command Scheduler ===");
+        System.out.printf("%-9s %9s %9s %9s %9s %9s %10s %10s%n",
+                          "Lane", "Submitted", "Run", "Late", "Refused", "Dropped", "p50 (ms)", "p99 (ms)");
+        for (Lane lane : LANES) {
+            int i = lane.ordinal();
+            long[] row;
+            lock.lock();
+            try {
+                row = new long[] {submitted[i], executed[i], late[i], rejected[i], expired[i]};
+            } finally {
+                lock.unlock();
+            }
+            System.out.printf("%-9s %9d %9d %9d %9d %9d %10.2f %10.2f%n", lane, row[0], row[1], row[2],
+                              row[3], row[4], getLatencyMicros(lane, 50) / 1_000,
+                              getLatencyMicros(lane, 99) / 1_000);
+        }
+    }
+
+    /**
+     * A command, undo or redo waiting in a lane.
+     */
+    private static final class Queued {
+        private final int action;
+        private final Command command;                 // EXECUTE only
+        private final CompletableFuture<Boolean> result; // UNDO and REDO only
+        private final long submitted;
+        private final boolean renew;   // Gets a fresh deadline rather than being dropped
+        private long deadline;         // Renewed with the lock held
+
+        Queued(int action, Command command, CompletableFuture<Boolean> result, long submitted, long deadline,
+               boolean renew) {
+            this.action = action;
+            this.command = command;
+            this.result = result;
+            this.submitted = submitted;
+            this.deadline = deadline;
+            this.renew = renew;
+        }
+
+        void complete(boolean done) {
+            if (result != null) {
+                result.complete(done);
+            }
+        }
+
+        void fail(Throwable cause) {
+            if (result != null) {
+                result.completeExceptionally(cause);
+            }
+        }
+
+        String describe() {
+            return action == UNDO ? "Undo" : action == REDO ? "Redo" : command.getDescription();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.smarthome.creational;
+
+import com.smarthome.devices.SmartDevice;
+import java.util.Map;
+
+/**
+ * Wraps devices in a decorator for the {@link DeviceFactory}.
+ * 
+ * <p>Like {@link DeviceProvider}, implementations are found with
+ * {@link java.util.ServiceLoader} through
+ * {@code META-INF/services/com.smarthome.creational.DecoratorProvider}.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface DecoratorProvider {
+    /**
+     * Gets the name used to ask for this decorator, e.g. "energy".
+     * 
+     * @return Decorator name (matched case-insensitively)
+     */
+    String getName();
+    
+    /**
+     * Wraps a device.
+     * 
+     * @param device The device to wrap
+     * @param params Extra settings from a spec (may be empty, never null)
+     * @return The decorated device
+     */
+    SmartDevice decorate(SmartDevice device, Map<String, String> params);
+}
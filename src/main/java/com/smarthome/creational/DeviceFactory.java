@@ -1,90 +1,252 @@
 package com.smarthome.creational;
 
 import com.smarthome.devices.*;
+import com.smarthome.structural.Room;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Factory class for creating smart devices.
  * <p>This factory simplifies device creation and makes it easy to
  * add new device types without modifying client code.</p>
- * 
+ *
+ * <p>Device types and decorators come from the
+ * {@link DeviceTypeRegistry}, which also picks up plugin
+ * {@link DeviceProvider}s through {@code ServiceLoader}. Besides
+ * one-at-a-time creation, the factory can provision whole batches from a
+ * {@link DeviceSpec} or a manifest file, including decorators and room
+ * membership, without logging every device.</p>
+ *
  * <h2>Supported Device Types:</h2>
  * <ul>
  *   <li><b>"light"</b> - Creates a {@link Light} instance</li>
  *   <li><b>"thermostat"</b> - Creates a {@link Thermostat} instance</li>
  *   <li><b>"speaker"</b> - Creates a {@link Speaker} instance</li>
+ *   <li><b>"motion"</b> - Creates a {@link MotionSensor} instance</li>
+ *   <li><b>"contact"</b> - Creates a {@link ContactSensor} instance</li>
+ *   <li><b>"co2"</b> - Creates a {@link Co2Sensor} instance</li>
+ *   <li><b>"fan"</b> - Creates an adapted legacy fan</li>
+ *   <li>Any type added by a plugin</li>
  * </ul>
- * 
+ *
  * <h2>Example Usage:</h2>
  * <pre>
  * {@code
  * DeviceFactory factory = new DeviceFactory();
- * 
+ *
  * // Create different device types
  * SmartDevice light = factory.createDevice("light", "Living Room Light");
  * SmartDevice thermostat = factory.createDevice("thermostat", "Main Thermostat");
  * SmartDevice speaker = factory.createDevice("speaker", "Kitchen Speaker");
+ *
+ * // Provision a batch
+ * DeviceSpec spec = new DeviceSpec("light", "Office Light #")
+ *     .setRoom("Office").addDecorator("energy");
+ * List<SmartDevice> lights = factory.createDevices(spec, 10000);
  * }
  * </pre>
- * 
+ *
  * @author dwayne headley
  * @version 1.0
  */
 public class DeviceFactory {
-    
+    private final DeviceTypeRegistry registry;
+    private final Map<String, Room> rooms;
+
+    /**
+     * Creates a factory backed by the shared registry.
+     */
+    public DeviceFactory() {
+        this(DeviceTypeRegistry.getInstance());
+    }
+
+    /**
+     * Creates a factory backed by the given registry.
+     *
+     * @param registry The device type registry
+     */
+    public DeviceFactory(DeviceTypeRegistry registry) {
+        this.registry = registry;
+        this.rooms = new LinkedHashMap<>();
+    }
+
     /**
      * Creates a smart device based on the type specified.
-     * 
-     * @param type The type of device ("light", "thermostat", "speaker")
+     *
+     * @param type The type of device ("light", "thermostat", "speaker",
+     *             "motion", "contact", "co2", "fan", or a plugin type)
      * @param name The name for the device
      * @return A SmartDevice instance
      * @throws IllegalArgumentException if type is unknown
      */
     public SmartDevice createDevice(String type, String name) {
-        // Convert to lowercase for case-insensitive comparison
-        type = type.toLowerCase();
-        
-        switch (type) {
-            case "light":
-                System.out.println("[FACTORY] Creating Light: " + name);
-                return new Light(name);
-                
-            case "thermostat":
-                System.out.println("[FACTORY] Creating Thermostat: " + name);
-                // Default current temperature is 70°F
-                return new Thermostat(name, 70.0);
-                
-            case "speaker":
-                System.out.println("[FACTORY] Creating Speaker: " + name);
-                return new Speaker(name);
-                
-            default:
-                throw new IllegalArgumentException(
-                    "Unknown device type: " + type + 
-                    ". Valid types: light, thermostat, speaker"
-                );
-        }
+        DeviceProvider provider = registry.getProvider(type);
+        System.out.println("[FACTORY] Creating " + provider.getDescription() + ": " + name);
+        return provider.create(name, Collections.emptyMap());
     }
-    
+
     /**
      * Creates a thermostat with a specific initial temperature.
-     * 
+     *
      * @param name The name for the thermostat
      * @param currentTemp The current room temperature
      * @return A Thermostat instance
      */
     public SmartDevice createThermostat(String name, double currentTemp) {
-        System.out.println("[FACTORY] Creating Thermostat: " + name + 
+        System.out.println("[FACTORY] Creating Thermostat: " + name +
                          " (Current temp: " + currentTemp + "°F)");
         return new Thermostat(name, currentTemp);
     }
-    
+
+    /**
+     * Creates a batch of devices from a spec in one pass: each device is
+     * built, wrapped in the spec's decorators, and the batch is added to
+     * the spec's room at once. Only a summary line is logged.
+     *
+     * @param spec What to build
+     * @param count How many devices to build
+     * @return The devices, decorated, in number order
+     * @throws IllegalArgumentException if the type or a decorator is unknown
+     */
+    public List<SmartDevice> createDevices(DeviceSpec spec, int count) {
+        List<SmartDevice> created = buildDevices(spec, count);
+        Room room = null;
+        if (spec.getRoom() != null) {
+            BulkProvisioning.begin();
+            try {
+                room = getRoom(spec.getRoom());
+            } finally {
+                BulkProvisioning.end();
+            }
+            room.addDevices(created);
+        }
+        System.out.println("[FACTORY] Provisioned " + count + " x " +
+                         registry.getProvider(spec.getType()).getDescription() +
+                         (spec.getDecorators().isEmpty() ? "" : " " + spec.getDecorators()) +
+                         (room == null ? "" : " in " + room.getName()));
+        return created;
+    }
+
+    /**
+     * Builds and decorates a batch of devices without logging and without
+     * touching any room. Safe to call from several threads at once.
+     *
+     * @param spec What to build (its room is ignored)
+     * @param count How many devices to build
+     * @return The devices, decorated, in number order
+     * @throws IllegalArgumentException if the type or a decorator is unknown
+     */
+    public List<SmartDevice> buildDevices(DeviceSpec spec, int count) {
+        DeviceProvider provider = registry.getProvider(spec.getType());
+        List<DecoratorProvider> decorators = new ArrayList<>();
+        for (String decorator : spec.getDecorators()) {
+            decorators.add(registry.getDecorator(decorator));
+        }
+        Map<String, String> params = spec.getParams();
+
+        List<SmartDevice> created = new ArrayList<>(count);
+        BulkProvisioning.begin();
+        try {
+            for (int i = 1; i <= count; i++) {
+                SmartDevice device = provider.create(spec.nameFor(i, count), params);
+                for (DecoratorProvider decorator : decorators) {
+                    device = decorator.decorate(device, params);
+                }
+                created.add(device);
+            }
+        } finally {
+            BulkProvisioning.end();
+        }
+        return created;
+    }
+
+    /**
+     * Checks that a spec's device type and decorators are all registered.
+     *
+     * @param spec The spec to check
+     * @throws IllegalArgumentException if the type or a decorator is unknown
+     */
+    public void validate(DeviceSpec spec) {
+        registry.getProvider(spec.getType());
+        for (String decorator : spec.getDecorators()) {
+            registry.getDecorator(decorator);
+        }
+    }
+
+    /**
+     * Provisions every device listed in a manifest file, one
+     * {@link DeviceSpec} per line. Blank lines and lines starting with
+     * {@code #} are skipped.
+     *
+     * @param manifest The manifest file
+     * @return All devices created, in file order
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is invalid (the message
+     *         gives the line number)
+     */
+    public List<SmartDevice> provision(Path manifest) throws IOException {
+        List<SmartDevice> all = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    DeviceSpec spec = DeviceSpec.parse(line);
+                    all.addAll(createDevices(spec, spec.getCount()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(manifest.getFileName() + " line " + lineNumber +
+                                                       ": " + e.getMessage(), e);
+                }
+            }
+        }
+        System.out.println("[FACTORY] Manifest " + manifest.getFileName() + ": " + all.size() +
+                         " devices in " + rooms.size() + " rooms");
+        return all;
+    }
+
+    /**
+     * Gets a room made by this factory, creating it if needed.
+     *
+     * @param name The room name
+     * @return The room
+     */
+    public Room getRoom(String name) {
+        return rooms.computeIfAbsent(name, Room::new);
+    }
+
+    /**
+     * Gets every room this factory has made, in creation order.
+     *
+     * @return Copy of the rooms
+     */
+    public List<Room> getRooms() {
+        return new ArrayList<>(rooms.values());
+    }
+
     /**
      * Displays all available device types.
      */
     public void displayAvailableDevices() {
         System.out.println("Available device types:");
-        System.out.println("  - light");
-        System.out.println("  - thermostat");
-        System.out.println("  - speaker");
+        for (DeviceProvider provider : registry.getProviders()) {
+            System.out.println("  - " + provider.getType());
+        }
+        System.out.println("Available decorators:");
+        for (String decorator : registry.getDecoratorNames()) {
+            System.out.println("  - " + decorator);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.smarthome.creational;
+
+import com.smarthome.devices.SmartDevice;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Builds one type of device for the {@link DeviceFactory}.
+ * 
+ * <p>Providers are found with {@link java.util.ServiceLoader}: a plugin
+ * jar lists its implementations in
+ * {@code META-INF/services/com.smarthome.creational.DeviceProvider}
+ * and they become available to {@code createDevice} and device manifests
+ * under their type name. Providers need a public no-argument
+ * constructor.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface DeviceProvider {
+    /**
+     * Gets the type name used to ask for this device, e.g. "light".
+     * 
+     * @return Type name (matched case-insensitively)
+     */
+    String getType();
+    
+    /**
+     * Gets a human-readable name for the device type, e.g. "Light".
+     * 
+     * @return Description used in logs and listings
+     */
+    String getDescription();
+    
+    /**
+     * Creates a device. Must not print anything; the factory does the
+     * logging.
+     * 
+     * @param name The device name
+     * @param params Extra settings from a spec (may be empty, never null)
+     * @return The new device
+     */
+    SmartDevice create(String name, Map<String, String> params);
+    
+    /**
+     * Checks whether a device is of the type this provider builds. Lets
+     * a device be traced back to its type name, e.g. to describe it to
+     * a standby controller. The default claims nothing, so providers
+     * that do not override it cannot be described.
+     * 
+     * @param device The device, without decorators
+     * @return true if this provider builds devices like it
+     */
+    default boolean isTypeOf(SmartDevice device) {
+        return false;
+    }
+    
+    /**
+     * Gets the params that would make {@link #create} build a device
+     * like the given one.
+     * 
+     * @param device A device this provider claims (see {@link #isTypeOf})
+     * @return Spec params (may be empty, never null)
+     */
+    default Map<String, String> describe(SmartDevice device) {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,210 @@
+package com.smarthome.creational;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declarative description of a batch of identical devices: what type they
+ * are, how they are named, which room they go in and which decorators wrap
+ * them.
+ *
+ * <p>The name pattern may contain {@code #}, which is replaced by the
+ * device's number (1, 2, ...). Without it, numbers are appended when
+ * more than one device is made.</p>
+ *
+ * <p>In a manifest file each spec is one line of {@code key=value} pairs
+ * separated by {@code ;}. Keys other than {@code type}, {@code name},
+ * {@code count}, {@code room} and {@code decorators} are passed to the
+ * device and decorator providers as parameters:</p>
+ * <pre>
+ * type=light; count=5000; name=Hall Light #; room=Hallway; decorators=energy; watts=40
+ * type=thermostat; name=Hall Thermostat; room=Hallway; temp=68
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DeviceSpec {
+    private final String type;
+    private final String namePattern;
+    private String roomName;
+    private int count;
+    private final List<String> decorators;
+    private final Map<String, String> params;
+
+    /**
+     * Creates a spec for one device type.
+     *
+     * @param type The device type, e.g. "light"
+     * @param namePattern Device name, with {@code #} for the device number
+     */
+    public DeviceSpec(String type, String namePattern) {
+        this.type = type;
+        this.namePattern = namePattern;
+        this.count = 1;
+        this.decorators = new ArrayList<>();
+        this.params = new LinkedHashMap<>();
+    }
+
+    /**
+     * Parses one manifest line.
+     *
+     * @param line The line, e.g. {@code type=light; count=10; name=Lamp #}
+     * @return The spec
+     * @throws IllegalArgumentException if the line has no type or a bad value
+     */
+    public static DeviceSpec parse(String line) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (String part : line.split(";")) {
+            String field = part.trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            int eq = field.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but found: " + field);
+            }
+            fields.put(field.substring(0, eq).trim().toLowerCase(), field.substring(eq + 1).trim());
+        }
+        String type = fields.remove("type");
+        if (type == null || type.isEmpty()) {
+            throw new IllegalArgumentException("Missing type in: " + line);
+        }
+        String name = fields.remove("name");
+        DeviceSpec spec = new DeviceSpec(type, name == null ? type + " #" : name);
+        String count = fields.remove("count");
+        if (count != null) {
+            try {
+                spec.setCount(Integer.parseInt(count));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad count: " + count);
+            }
+        }
+        spec.setRoom(fields.remove("room"));
+        String decorators = fields.remove("decorators");
+        if (decorators != null) {
+            for (String decorator : decorators.split(",")) {
+                if (!decorator.trim().isEmpty()) {
+                    spec.addDecorator(decorator.trim());
+                }
+            }
+        }
+        spec.params.putAll(fields);
+        return spec;
+    }
+
+    /**
+     * Writes this spec as a manifest line that {@link #parse(String)}
+     * reads back. Names and values must not contain {@code ;} or
+     * {@code =}.
+     *
+     * @return The manifest line
+     */
+    public String toManifestLine() {
+        StringBuilder line = new StringBuilder();
+        line.append("type=").append(type).append("; name=").append(namePattern);
+        if (count != 1) {
+            line.append("; count=").append(count);
+        }
+        if (roomName != null) {
+            line.append("; room=").append(roomName);
+        }
+        if (!decorators.isEmpty()) {
+            line.append("; decorators=").append(String.join(",", decorators));
+        }
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            line.append("; ").append(param.getKey()).append('=').append(param.getValue());
+        }
+        return line.toString();
+    }
+
+    /**
+     * Gets the name of the n-th device made from this spec.
+     *
+     * @param number Device number, starting at 1
+     * @param total How many devices are being made
+     * @return The device name
+     */
+    public String nameFor(int number, int total) {
+        if (namePattern.indexOf('#') >= 0) {
+            return namePattern.replace("#", Integer.toString(number));
+        }
+        return total > 1 ? namePattern + " " + number : namePattern;
+    }
+
+    /**
+     * Sets the room the devices join (created if it does not exist yet).
+     *
+     * @param roomName Room name, or null for no room
+     * @return This spec
+     */
+    public DeviceSpec setRoom(String roomName) {
+        this.roomName = roomName == null || roomName.isEmpty() ? null : roomName;
+        return this;
+    }
+
+    /**
+     * Adds a decorator, applied after the ones already added (so the last
+     * one added is the outermost).
+     *
+     * @param decorator Decorator name, e.g. "energy"
+     * @return This spec
+     */
+    public DeviceSpec addDecorator(String decorator) {
+        decorators.add(decorator);
+        return this;
+    }
+
+    /**
+     * Sets a parameter for the device and decorator providers.
+     *
+     * @param key Parameter name
+     * @param value Parameter value
+     * @return This spec
+     */
+    public DeviceSpec setParam(String key, String value) {
+        params.put(key, value);
+        return this;
+    }
+
+    /**
+     * Sets how many devices a manifest line asks for.
+     *
+     * @param count Number of devices (at least 1)
+     * @return This spec
+     */
+    public DeviceSpec setCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be at least 1");
+        }
+        this.count = count;
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getNamePattern() {
+        return namePattern;
+    }
+
+    public String getRoom() {
+        return roomName;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public List<String> getDecorators() {
+        return Collections.unmodifiableList(decorators);
+    }
+
+    public Map<String, String> getParams() {
+        return Collections.unmodifiableMap(params);
+    }
+}
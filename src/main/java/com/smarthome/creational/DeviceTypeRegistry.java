@@ -0,0 +1,312 @@
+package com.smarthome.creational;
+
+import com.smarthome.devices.Co2Sensor;
+import com.smarthome.devices.ContactSensor;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.MotionSensor;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Speaker;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.structural.EnergyMonitorDecorator;
+import com.smarthome.structural.FanAdapter;
+import com.smarthome.structural.OldFan;
+import com.smarthome.structural.VoiceControlDecorator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Registry of the device types and decorators the {@link DeviceFactory}
+ * can build.
+ * Implements Singleton Pattern - one registry is shared by every factory.
+ *
+ * <p>The built-in types are registered first; then any
+ * {@link DeviceProvider} and {@link DecoratorProvider} implementations on
+ * the class path are loaded with {@link ServiceLoader}. A plugin with the
+ * same name as a built-in replaces it. Names are stored lowercase, so
+ * lookups of already-lowercase names are a single map hit.</p>
+ *
+ * <h2>Built-in Types:</h2>
+ * <ul>
+ *   <li><b>light</b>, <b>speaker</b>, <b>motion</b>, <b>contact</b>, <b>co2</b></li>
+ *   <li><b>thermostat</b> - param {@code temp} (current °F, default 70)</li>
+ *   <li><b>fan</b> - a legacy {@link OldFan} behind a {@link FanAdapter}</li>
+ * </ul>
+ *
+ * <h2>Built-in Decorators:</h2>
+ * <ul>
+ *   <li><b>energy</b> - {@link EnergyMonitorDecorator}; params {@code rate} ($/kWh), {@code watts}</li>
+ *   <li><b>voice</b> - {@link VoiceControlDecorator}; param {@code assistant}</li>
+ * </ul>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DeviceTypeRegistry {
+    private static DeviceTypeRegistry instance;
+
+    private final Map<String, DeviceProvider> types;
+    private final Map<String, DecoratorProvider> decorators;
+
+    /**
+     * Device provider backed by a lambda, used for the built-in types.
+     */
+    private static class SimpleDeviceProvider implements DeviceProvider {
+        private final String type;
+        private final String description;
+        private final Class<? extends SmartDevice> deviceClass;
+        private final BiFunction<String, Map<String, String>, SmartDevice> creator;
+        private final Function<SmartDevice, Map<String, String>> describer;
+
+        SimpleDeviceProvider(String type, String description, Class<? extends SmartDevice> deviceClass,
+                             BiFunction<String, Map<String, String>, SmartDevice> creator) {
+            this(type, description, deviceClass, creator, device -> Collections.emptyMap());
+        }
+
+        SimpleDeviceProvider(String type, String description, Class<? extends SmartDevice> deviceClass,
+                             BiFunction<String, Map<String, String>, SmartDevice> creator,
+                             Function<SmartDevice, Map<String, String>> describer) {
+            this.type = type;
+            this.description = description;
+            this.deviceClass = deviceClass;
+            this.creator = creator;
+            this.describer = describer;
+        }
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public SmartDevice create(String name, Map<String, String> params) {
+            return creator.apply(name, params);
+        }
+
+        @Override
+        public boolean isTypeOf(SmartDevice device) {
+            return deviceClass.isInstance(device);
+        }
+
+        @Override
+        public Map<String, String> describe(SmartDevice device) {
+            return describer.apply(device);
+        }
+    }
+
+    /**
+     * Decorator provider backed by a lambda, used for the built-in decorators.
+     */
+    private static class SimpleDecoratorProvider implements DecoratorProvider {
+        private final String name;
+        private final BiFunction<SmartDevice, Map<String, String>, SmartDevice> decorator;
+
+        SimpleDecoratorProvider(String name, BiFunction<SmartDevice, Map<String, String>, SmartDevice> decorator) {
+            this.name = name;
+            this.decorator = decorator;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public SmartDevice decorate(SmartDevice device, Map<String, String> params) {
+            return decorator.apply(device, params);
+        }
+    }
+
+    private DeviceTypeRegistry() {
+        this.types = new LinkedHashMap<>();
+        this.decorators = new LinkedHashMap<>();
+        registerBuiltIns();
+        loadPlugins();
+    }
+
+    /**
+     * Gets the single registry, loading plugins on first use.
+     *
+     * @return The registry
+     */
+    public static synchronized DeviceTypeRegistry getInstance() {
+        if (instance == null) {
+            instance = new DeviceTypeRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Resets the singleton instance (mainly for testing, or to pick up
+     * plugins added to the class path).
+     */
+    public static synchronized void resetInstance() {
+        instance = null;
+    }
+
+    private void registerBuiltIns() {
+        register(new SimpleDeviceProvider("light", "Light", Light.class, (name, params) -> new Light(name)));
+        register(new SimpleDeviceProvider("thermostat", "Thermostat", Thermostat.class,
+            (name, params) -> new Thermostat(name, doubleParam(params, "temp", 70.0)),
+            device -> Collections.singletonMap("temp", Double.toString(((Thermostat) device).getCurrentTemp()))));
+        register(new SimpleDeviceProvider("speaker", "Speaker", Speaker.class, (name, params) -> new Speaker(name)));
+        register(new SimpleDeviceProvider("motion", "Motion Sensor", MotionSensor.class,
+            (name, params) -> new MotionSensor(name)));
+        register(new SimpleDeviceProvider("contact", "Contact Sensor", ContactSensor.class,
+            (name, params) -> new ContactSensor(name)));
+        register(new SimpleDeviceProvider("co2", "CO2 Sensor", Co2Sensor.class, (name, params) -> new Co2Sensor(name)));
+        register(new SimpleDeviceProvider("fan", "Fan", FanAdapter.class,
+            (name, params) -> new FanAdapter(new OldFan(name))));
+
+        register(new SimpleDecoratorProvider("energy", (device, params) -> {
+            double rate = doubleParam(params, "rate", 0.12);
+            String watts = params.get("watts");
+            return watts == null ? new EnergyMonitorDecorator(device, rate)
+                                 : new EnergyMonitorDecorator(device, rate, Double.parseDouble(watts) / 1000.0);
+        }));
+        register(new SimpleDecoratorProvider("voice",
+            (device, params) -> new VoiceControlDecorator(device, params.getOrDefault("assistant", "Alexa"))));
+    }
+
+    private void loadPlugins() {
+        for (DeviceProvider provider : loadServices(DeviceProvider.class)) {
+            register(provider);
+            System.out.println("[REGISTRY] Loaded device type: " + provider.getType());
+        }
+        for (DecoratorProvider provider : loadServices(DecoratorProvider.class)) {
+            register(provider);
+            System.out.println("[REGISTRY] Loaded decorator: " + provider.getName());
+        }
+    }
+
+    /**
+     * Instantiates every provider of a service, skipping the ones that
+     * fail so one broken plugin jar does not hide the others.
+     */
+    private static <T> List<T> loadServices(Class<T> service) {
+        List<T> providers = new ArrayList<>();
+        Iterator<T> iterator = ServiceLoader.load(service).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                providers.add(iterator.next());
+            } catch (ServiceConfigurationError e) {
+                System.out.println("[REGISTRY] Could not load plugin: " + e.getMessage());
+            }
+        }
+        return providers;
+    }
+
+    private static double doubleParam(Map<String, String> params, String key, double fallback) {
+        String value = params.get(key);
+        return value == null ? fallback : Double.parseDouble(value);
+    }
+
+    /**
+     * Registers (or replaces) a device type.
+     *
+     * @param provider The provider
+     */
+    public synchronized void register(DeviceProvider provider) {
+        types.put(provider.getType().toLowerCase(Locale.ROOT), provider);
+    }
+
+    /**
+     * Registers (or replaces) a decorator.
+     *
+     * @param provider The provider
+     */
+    public synchronized void register(DecoratorProvider provider) {
+        decorators.put(provider.getName().toLowerCase(Locale.ROOT), provider);
+    }
+
+    /**
+     * Looks up a device type.
+     *
+     * @param type The type name (any case)
+     * @return The provider
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public synchronized DeviceProvider getProvider(String type) {
+        DeviceProvider provider = types.get(type);
+        if (provider == null) {
+            provider = types.get(type.toLowerCase(Locale.ROOT));
+        }
+        if (provider == null) {
+            throw new IllegalArgumentException(
+                "Unknown device type: " + type + ". Valid types: " + String.join(", ", types.keySet()));
+        }
+        return provider;
+    }
+
+    /**
+     * Finds the type a device was built as, by asking each provider
+     * whether it claims the device. If several do, the one registered
+     * last wins, so a plugin type that extends a built-in one is found.
+     *
+     * @param device The device, without decorators
+     * @return The provider, or null if no registered type claims it
+     */
+    public synchronized DeviceProvider findProvider(SmartDevice device) {
+        DeviceProvider found = null;
+        for (DeviceProvider provider : types.values()) {
+            if (provider.isTypeOf(device)) {
+                found = provider;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Looks up a decorator.
+     *
+     * @param name The decorator name (any case)
+     * @return The provider
+     * @throws IllegalArgumentException if the decorator is unknown
+     */
+    public synchronized DecoratorProvider getDecorator(String name) {
+        DecoratorProvider provider = decorators.get(name);
+        if (provider == null) {
+            provider = decorators.get(name.toLowerCase(Locale.ROOT));
+        }
+        if (provider == null) {
+            throw new IllegalArgumentException(
+                "Unknown decorator: " + name + ". Valid decorators: " + String.join(", ", decorators.keySet()));
+        }
+        return provider;
+    }
+
+    /**
+     * Gets every registered device type.
+     *
+     * @return Providers in registration order
+     */
+    public synchronized Collection<DeviceProvider> getProviders() {
+        return new ArrayList<>(types.values());
+    }
+
+    /**
+     * Gets the names of every registered decorator.
+     *
+     * @return Decorator names in registration order
+     */
+    public synchronized List<String> getDecoratorNames() {
+        return new ArrayList<>(decorators.keySet());
+    }
+}
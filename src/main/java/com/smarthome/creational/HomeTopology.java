@@ -0,0 +1,133 @@
+package com.smarthome.creational;
+
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.Room;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A home (or campus) built from a topology file by the
+ * {@link TopologyLoader}.
+ *
+ * <p>Buildings and floors are {@link Room}s too (Composite Pattern): a
+ * floor contains its rooms and a building contains its floors, so turning
+ * a floor off turns off everything on it.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class HomeTopology {
+    private final List<Room> buildings;
+    private final List<Room> floors;
+    private final List<Room> rooms;
+    private final List<SmartDevice> devices;
+    private final Map<String, Room> roomsByName;
+    private long loadNanos;
+
+    HomeTopology() {
+        this.buildings = new ArrayList<>();
+        this.floors = new ArrayList<>();
+        this.rooms = new ArrayList<>();
+        this.devices = new ArrayList<>();
+        this.roomsByName = new LinkedHashMap<>();
+    }
+
+    void addBuilding(Room building) {
+        buildings.add(building);
+    }
+
+    void addFloor(Room floor) {
+        floors.add(floor);
+    }
+
+    void addRoom(Room room) {
+        rooms.add(room);
+        roomsByName.putIfAbsent(room.getName(), room);
+        devices.addAll(room.getDevices());
+    }
+
+    void setLoadNanos(long loadNanos) {
+        this.loadNanos = loadNanos;
+    }
+
+    /**
+     * Gets the buildings, in file order.
+     *
+     * @return The buildings
+     */
+    public List<Room> getBuildings() {
+        return Collections.unmodifiableList(buildings);
+    }
+
+    /**
+     * Gets every floor of every building, in file order.
+     *
+     * @return The floors
+     */
+    public List<Room> getFloors() {
+        return Collections.unmodifiableList(floors);
+    }
+
+    /**
+     * Gets the rooms that hold devices, in file order.
+     *
+     * @return The rooms
+     */
+    public List<Room> getRooms() {
+        return Collections.unmodifiableList(rooms);
+    }
+
+    /**
+     * Gets every device, in file order.
+     *
+     * @return The devices
+     */
+    public List<SmartDevice> getDevices() {
+        return Collections.unmodifiableList(devices);
+    }
+
+    /**
+     * Finds a room by its exact name (the first one, if names repeat).
+     *
+     * @param name The room name
+     * @return The room, or null
+     */
+    public Room getRoom(String name) {
+        return roomsByName.get(name);
+    }
+
+    /**
+     * Gets how long the load took, parsing included.
+     *
+     * @return Time in nanoseconds
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * Displays the building/floor/room outline with device counts.
+     */
+    public void displayOutline() {
+        System.out.println("\n=== Home Topology ===");
+        for (Room building : buildings) {
+            System.out.println("🏢 " + building.getName() + " (" + building.getOnCount() + "/" +
+                             building.getTotalDeviceCount() + " on)");
+            displayZones(building, "   ");
+        }
+        System.out.println("Total: " + buildings.size() + " buildings, " + floors.size() + " floors, " +
+                         rooms.size() + " rooms, " + devices.size() + " devices");
+    }
+
+    private void displayZones(Room zone, String indent) {
+        for (Room child : zone.getRooms()) {
+            String icon = floors.contains(child) ? "🪜 " : "📁 ";
+            System.out.println(indent + icon + child.getName() + " (" + child.getOnCount() + "/" +
+                             child.getTotalDeviceCount() + " on)");
+            displayZones(child, indent + "   ");
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.smarthome.creational;
+
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.DeviceIndex;
+import com.smarthome.structural.Room;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Builds a {@link HomeTopology} from a topology file.
+ *
+ * <p>Rooms do not share anything while their devices are being built, so
+ * each room is an independent job. As the {@link TopologyParser} streams
+ * through the file, every finished room is handed to the common
+ * fork/join pool straight away, which overlaps parsing with building and
+ * spreads device construction over all cores. Floors and buildings are
+ * assembled in file order once their rooms are done. Creation messages
+ * are suppressed ({@link BulkProvisioning}); one summary line is
+ * printed.</p>
+ *
+ * <p>Every room is registered in the {@link DeviceIndex} of the thread
+ * that called {@code load}, so a home loading its topology inside a
+ * {@code HomeRuntime} keeps its rooms in its own index even though they
+ * are built on pool threads.</p>
+ *
+ * <p>If the file turns out to be invalid partway through, rooms not yet
+ * started are cancelled and every room built so far is disposed, so a
+ * failed load leaves nothing behind in the index.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * TopologyLoader loader = new TopologyLoader();
+ * HomeTopology home = loader.load(Paths.get("campus.topology"));
+ * controller.addDevices(home.getDevices());
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class TopologyLoader {
+    /** Building used for floors and rooms listed before any building. */
+    public static final String DEFAULT_BUILDING = "Home";
+
+    private final DeviceFactory factory;
+    private final TopologyParser parser;
+
+    /**
+     * A room waiting to be built.
+     */
+    private static class RoomPlan {
+        final String name;
+        final List<String> tags;
+        final List<DeviceSpec> specs;
+
+        RoomPlan(String name, List<String> tags) {
+            this.name = name;
+            this.tags = tags;
+            this.specs = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A floor (or a building's floor-less rooms) and the rooms on it.
+     */
+    private static class FloorPlan {
+        final String name;        // null for rooms directly in the building
+        final List<CompletableFuture<Room>> rooms;
+
+        FloorPlan(String name) {
+            this.name = name;
+            this.rooms = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A building and its floors.
+     */
+    private static class BuildingPlan {
+        final String name;
+        final List<FloorPlan> floors;
+
+        BuildingPlan(String name) {
+            this.name = name;
+            this.floors = new ArrayList<>();
+        }
+    }
+
+    /**
+     * The rooms the pool has built so far, so that a failed load can
+     * throw them away. A room finished after the load gave up is
+     * refused and disposed by the thread that built it.
+     */
+    private static class BuiltRooms {
+        private final List<Room> rooms = new ArrayList<>();
+        private boolean abandoned;
+
+        synchronized boolean add(Room room) {
+            if (abandoned) {
+                return false;
+            }
+            rooms.add(room);
+            return true;
+        }
+
+        synchronized List<Room> abandon() {
+            abandoned = true;
+            return new ArrayList<>(rooms);
+        }
+    }
+
+    /**
+     * Creates a loader using a factory on the shared device type registry.
+     */
+    public TopologyLoader() {
+        this(new DeviceFactory());
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param factory Factory used to build devices
+     */
+    public TopologyLoader(DeviceFactory factory) {
+        this.factory = factory;
+        this.parser = new TopologyParser();
+    }
+
+    /**
+     * Loads a topology file.
+     *
+     * @param file The file (UTF-8)
+     * @return The built topology
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is invalid
+     */
+    public HomeTopology load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Loads a topology.
+     *
+     * @param input The topology text
+     * @return The built topology
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the topology is invalid
+     */
+    public HomeTopology load(Reader input) throws IOException {
+        long started = System.nanoTime();
+        List<BuildingPlan> buildings = new ArrayList<>();
+        DeviceIndex index = DeviceIndex.getInstance();
+        List<CompletableFuture<Room>> pending = new ArrayList<>();
+        BuiltRooms built = new BuiltRooms();
+        HomeTopology topology = new HomeTopology();
+        try {
+            parse(input, buildings, index, pending, built);
+            assemble(buildings, topology);
+        } catch (IOException | RuntimeException e) {
+            discard(pending, built, topology);
+            throw e;
+        }
+        topology.setLoadNanos(System.nanoTime() - started);
+        System.out.println("[TOPOLOGY] Loaded " + topology.getBuildings().size() + " buildings, " +
+                         topology.getFloors().size() + " floors, " + topology.getRooms().size() + " rooms, " +
+                         topology.getDevices().size() + " devices in " +
+                         String.format("%.1f ms", topology.getLoadNanos() / 1_000_000.0));
+        return topology;
+    }
+
+    /**
+     * Parses the topology, handing each finished room to the pool.
+     */
+    private void parse(Reader input, List<BuildingPlan> buildings, DeviceIndex index,
+                       List<CompletableFuture<Room>> pending, BuiltRooms built) throws IOException {
+        parser.parse(input, new TopologyParser.Handler() {
+            private BuildingPlan building;
+            private FloorPlan floor;
+            private RoomPlan room;
+
+            @Override
+            public void building(String name, int line) {
+                submitRoom();
+                building = new BuildingPlan(name);
+                buildings.add(building);
+                floor = null;
+            }
+
+            @Override
+            public void floor(String name, int line) {
+                submitRoom();
+                floor = new FloorPlan(name);
+                currentBuilding().floors.add(floor);
+            }
+
+            @Override
+            public void room(String name, List<String> tags, int line) {
+                submitRoom();
+                if (floor == null) {
+                    floor = new FloorPlan(null);
+                    currentBuilding().floors.add(floor);
+                }
+                room = new RoomPlan(name, tags);
+            }
+
+            @Override
+            public void device(DeviceSpec spec, int line) {
+                try {
+                    factory.validate(spec);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("line " + line + ": " + e.getMessage(), e);
+                }
+                room.specs.add(spec);
+            }
+
+            @Override
+            public void end() {
+                submitRoom();
+            }
+
+            private BuildingPlan currentBuilding() {
+                if (building == null) {
+                    building = new BuildingPlan(DEFAULT_BUILDING);
+                    buildings.add(building);
+                }
+                return building;
+            }
+
+            private void submitRoom() {
+                if (room != null) {
+                    RoomPlan plan = room;
+                    CompletableFuture<Room> future = CompletableFuture.supplyAsync(() -> buildRoom(plan, index, built));
+                    floor.rooms.add(future);
+                    pending.add(future);
+                    room = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the rooms and puts floors and buildings together in file order.
+     */
+    private void assemble(List<BuildingPlan> buildings, HomeTopology topology) {
+        BulkProvisioning.begin();
+        try {
+            for (BuildingPlan buildingPlan : buildings) {
+                Room building = new Room(buildingPlan.name);
+                building.addTag("building");
+                topology.addBuilding(building);
+                List<SmartDevice> children = new ArrayList<>();
+                for (FloorPlan floorPlan : buildingPlan.floors) {
+                    List<Room> rooms = new ArrayList<>();
+                    for (CompletableFuture<Room> future : floorPlan.rooms) {
+                        Room room = join(future);
+                        rooms.add(room);
+                        topology.addRoom(room);
+                    }
+                    if (floorPlan.name == null) {
+                        children.addAll(rooms);
+                    } else {
+                        Room floor = new Room(floorPlan.name);
+                        floor.addTag("floor");
+                        floor.addDevices(rooms);
+                        topology.addFloor(floor);
+                        children.add(floor);
+                    }
+                }
+                building.addDevices(children);
+            }
+        } finally {
+            BulkProvisioning.end();
+        }
+    }
+
+    /**
+     * Throws away a load that failed partway: rooms not started yet are
+     * never built, and every room built so far leaves the index.
+     */
+    private static void discard(List<CompletableFuture<Room>> pending, BuiltRooms built, HomeTopology topology) {
+        List<Room> rooms = built.abandon();
+        for (CompletableFuture<Room> future : pending) {
+            future.cancel(false);
+        }
+        for (Room building : topology.getBuildings()) {
+            building.dispose();
+        }
+        for (Room floor : topology.getFloors()) {
+            floor.dispose();
+        }
+        for (Room room : rooms) {
+            room.dispose();
+        }
+    }
+
+    /**
+     * Builds one room and its devices. Runs on a pool thread, with the
+     * loading thread's index bound while it does.
+     */
+    private Room buildRoom(RoomPlan plan, DeviceIndex index, BuiltRooms built) {
+        DeviceIndex previous = DeviceIndex.bindCurrent(index);
+        BulkProvisioning.begin();
+        try {
+            Room room = new Room(plan.name);
+            for (String tag : plan.tags) {
+                room.addTag(tag);
+            }
+            List<SmartDevice> devices = new ArrayList<>();
+            for (DeviceSpec spec : plan.specs) {
+                devices.addAll(factory.buildDevices(spec, spec.getCount()));
+            }
+            room.addDevices(devices);
+            if (!built.add(room)) {
+                room.dispose(); // The load already failed
+            }
+            return room;
+        } finally {
+            BulkProvisioning.end();
+            DeviceIndex.bindCurrent(previous);
+        }
+    }
+
+    private static Room join(CompletableFuture<Room> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.smarthome.creational;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streaming parser for home topology files.
+ *
+ * <p>A topology file describes buildings, their floors, the rooms on each
+ * floor and the devices in each room, one item per line. The keyword at
+ * the start of a line says what it is, so indentation is only for the
+ * reader:</p>
+ * <pre>
+ * # Comment lines start with #
+ * building "Main House"
+ *   floor "Ground Floor"
+ *     room "🏠 Living Room" tag="living room"
+ *       light "Living Room Light"
+ *       thermostat "Living Room Thermostat" temp=70
+ *       fan "Vintage Ceiling Fan"
+ *     room "🍳 Kitchen"
+ *       light "Kitchen Light" +energy
+ *       light "Cabinet Light #" x12 +energy +voice assistant=Google watts=8
+ * </pre>
+ *
+ * <p>A device line starts with a device type known to the
+ * {@link DeviceTypeRegistry}, then the name (quoted if it has spaces).
+ * {@code xN} makes N devices ({@code #} in the name becomes 1..N),
+ * {@code +name} adds a decorator (applied left to right, so the last one
+ * is outermost) and {@code key=value} passes a parameter. Rooms may have
+ * {@code tag=...} entries. A floor belongs to the last building, a room
+ * to the last floor (or building, if it has no floors), and a device to
+ * the last room.</p>
+ *
+ * <p>The parser reads one line at a time and hands each item to a
+ * {@link Handler} as soon as it is parsed, so nothing is held in memory
+ * beyond the current line.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class TopologyParser {
+
+    /**
+     * Receives topology items in file order.
+     */
+    public interface Handler {
+        /**
+         * A new building starts.
+         *
+         * @param name Building name
+         * @param line Line number
+         */
+        void building(String name, int line);
+
+        /**
+         * A new floor starts in the current building.
+         *
+         * @param name Floor name
+         * @param line Line number
+         */
+        void floor(String name, int line);
+
+        /**
+         * A new room starts on the current floor.
+         *
+         * @param name Room name
+         * @param tags Extra tags for the room (may be empty)
+         * @param line Line number
+         */
+        void room(String name, List<String> tags, int line);
+
+        /**
+         * Devices for the current room.
+         *
+         * @param spec The devices (type, name, count, decorators, params)
+         * @param line Line number
+         */
+        void device(DeviceSpec spec, int line);
+
+        /**
+         * The input is finished.
+         */
+        void end();
+    }
+
+    /**
+     * Parses a topology, calling the handler for each item.
+     *
+     * @param input The topology text
+     * @param handler Receives the items
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if a line is invalid (the message
+     *         gives the line number)
+     */
+    public void parse(Reader input, Handler handler) throws IOException {
+        BufferedReader reader = input instanceof BufferedReader
+            ? (BufferedReader) input : new BufferedReader(input);
+        String text;
+        int line = 0;
+        boolean inRoom = false;
+        List<String> tokens = new ArrayList<>();
+        while ((text = reader.readLine()) != null) {
+            line++;
+            String trimmed = text.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            tokens.clear();
+            tokenize(trimmed, line, tokens);
+            if (tokens.size() < 2) {
+                throw new IllegalArgumentException("line " + line + ": expected a keyword and a name");
+            }
+            String keyword = tokens.get(0).toLowerCase(Locale.ROOT);
+            String name = tokens.get(1);
+            switch (keyword) {
+                case "building":
+                    expectOnlyName(tokens, line);
+                    handler.building(name, line);
+                    inRoom = false;
+                    break;
+                case "floor":
+                    expectOnlyName(tokens, line);
+                    handler.floor(name, line);
+                    inRoom = false;
+                    break;
+                case "room":
+                    handler.room(name, roomTags(tokens, line), line);
+                    inRoom = true;
+                    break;
+                default:
+                    if (!inRoom) {
+                        throw new IllegalArgumentException("line " + line + ": device \"" + name +
+                                                           "\" is not inside a room");
+                    }
+                    handler.device(deviceSpec(keyword, tokens, line), line);
+                    break;
+            }
+        }
+        handler.end();
+    }
+
+    private static void expectOnlyName(List<String> tokens, int line) {
+        if (tokens.size() > 2) {
+            throw new IllegalArgumentException("line " + line + ": unexpected \"" + tokens.get(2) + "\"");
+        }
+    }
+
+    private static List<String> roomTags(List<String> tokens, int line) {
+        List<String> tags = new ArrayList<>();
+        for (int i = 2; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!token.startsWith("tag=")) {
+                throw new IllegalArgumentException("line " + line + ": rooms only take tag=..., found \"" +
+                                                   token + "\"");
+            }
+            tags.add(token.substring(4));
+        }
+        return tags;
+    }
+
+    private static DeviceSpec deviceSpec(String type, List<String> tokens, int line) {
+        DeviceSpec spec = new DeviceSpec(type, tokens.get(1));
+        for (int i = 2; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            int eq = token.indexOf('=');
+            if (token.startsWith("+") && token.length() > 1) {
+                spec.addDecorator(token.substring(1));
+            } else if (eq > 0) {
+                spec.setParam(token.substring(0, eq), token.substring(eq + 1));
+            } else if (token.length() > 1 && (token.charAt(0) == 'x' || token.charAt(0) == 'X')) {
+                try {
+                    spec.setCount(Integer.parseInt(token.substring(1)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("line " + line + ": bad count \"" + token + "\"");
+                }
+            } else {
+                throw new IllegalArgumentException("line " + line + ": unexpected \"" + token + "\"");
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * Splits a line on spaces. Double quotes group words, including in
+     * the value part of {@code key="some value"}.
+     */
+    private static void tokenize(String text, int line, List<String> tokens) {
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean hasToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                hasToken = true;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (hasToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                current.append(c);
+                hasToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("line " + line + ": missing closing quote");
+        }
+        if (hasToken) {
+            tokens.add(current.toString());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.smarthome.devices;
+
+/**
+ * Marks the current thread as provisioning devices in bulk.
+ * 
+ * <p>While it is active, device, decorator and room constructors skip
+ * their one-line creation messages, so building tens of thousands of
+ * devices does not flood the console. The bulk operation prints a single
+ * summary instead. Only construction is silenced; device actions still
+ * log as usual.</p>
+ * 
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * BulkProvisioning.begin();
+ * try {
+ *     // create devices
+ * } finally {
+ *     BulkProvisioning.end();
+ * }
+ * }
+ * </pre>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class BulkProvisioning {
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+    
+    private BulkProvisioning() {
+    }
+    
+    /**
+     * Starts a bulk section on this thread. Sections may nest.
+     */
+    public static void begin() {
+        DEPTH.get()[0]++;
+    }
+    
+    /**
+     * Ends the innermost bulk section on this thread.
+     */
+    public static void end() {
+        int[] depth = DEPTH.get();
+        if (depth[0] > 0) {
+            depth[0]--;
+        }
+    }
+    
+    /**
+     * Checks whether this thread is inside a bulk section.
+     * 
+     * @return true if creation messages should be skipped
+     */
+    public static boolean isActive() {
+        return DEPTH.get()[0] > 0;
+    }
+}
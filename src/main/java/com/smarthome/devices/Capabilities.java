@@ -0,0 +1,164 @@
+package com.smarthome.devices;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The capabilities a device offers ({@link Dimmable},
+ * {@link Thermostatic}, {@link VolumeAdjustable}, {@link SpeedAdjustable}),
+ * resolved through any decorators around it.
+ *
+ * <p>Resolution walks the {@link DeviceWrapper} chain from the outside in and takes
+ * the first layer that implements each capability, so a decorator can
+ * step in for a capability by implementing it itself. Callers do one
+ * lookup and then call the capability interface directly instead of
+ * re-checking {@code instanceof} on every use.</p>
+ *
+ * <p>Each device keeps its resolved capabilities itself through
+ * {@link CapabilityHolder}; a decorated device keeps them in its outermost
+ * decorator. The chain is walked once, a lookup after that is a field
+ * read with no allocation, and the result goes away with the device.
+ * There is no shared cache and no global lock.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * SmartDevice light = new EnergyMonitorDecorator(new Light("Desk"));
+ * Dimmable dimmer = Capabilities.of(light).dimmable();
+ * if (dimmer != null) {
+ *     dimmer.setBrightness(40);
+ * }
+ * for (Dimmable d : Capabilities.select(devices, Dimmable.class)) {
+ *     d.setBrightness(10);
+ * }
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class Capabilities {
+    private final SmartDevice device;
+    private final Dimmable dimmable;
+    private final Thermostatic thermostatic;
+    private final VolumeAdjustable volume;
+    private final SpeedAdjustable speed;
+
+    private Capabilities(SmartDevice device) {
+        this.device = device;
+        this.dimmable = resolve(device, Dimmable.class);
+        this.thermostatic = resolve(device, Thermostatic.class);
+        this.volume = resolve(device, VolumeAdjustable.class);
+        this.speed = resolve(device, SpeedAdjustable.class);
+    }
+
+    /**
+     * Gets the capabilities of a device, resolving them on first use.
+     *
+     * @param device The device (decorated or not)
+     * @return The device's capabilities
+     */
+    public static Capabilities of(SmartDevice device) {
+        if (!(device instanceof CapabilityHolder)) {
+            return new Capabilities(device);
+        }
+        CapabilityHolder holder = (CapabilityHolder) device;
+        Capabilities capabilities = holder.getCachedCapabilities();
+        if (capabilities == null) {
+            // Two threads may both resolve; the results are equal and immutable
+            capabilities = new Capabilities(device);
+            holder.cacheCapabilities(capabilities);
+        }
+        return capabilities;
+    }
+
+    /**
+     * Finds one capability of a device.
+     *
+     * @param device The device (decorated or not)
+     * @param capability The capability interface
+     * @return The capability, or null if the device does not have it
+     */
+    public static <T> T find(SmartDevice device, Class<T> capability) {
+        return of(device).get(capability);
+    }
+
+    /**
+     * Collects one capability from many devices, skipping devices
+     * without it.
+     *
+     * @param devices The devices (decorated or not)
+     * @param capability The capability interface
+     * @return The capabilities found, in device order
+     */
+    public static <T> List<T> select(Collection<? extends SmartDevice> devices, Class<T> capability) {
+        List<T> result = new ArrayList<>();
+        for (SmartDevice device : devices) {
+            T found = of(device).get(capability);
+            if (found != null) {
+                result.add(found);
+            }
+        }
+        return result;
+    }
+
+    private static <T> T resolve(SmartDevice device, Class<T> capability) {
+        SmartDevice layer = device;
+        while (true) {
+            if (capability.isInstance(layer)) {
+                return capability.cast(layer);
+            }
+            if (!(layer instanceof DeviceWrapper)) {
+                return null;
+            }
+            layer = ((DeviceWrapper) layer).getWrappedDevice();
+        }
+    }
+
+    /**
+     * Gets one capability of this device. The four built-in capabilities
+     * are resolved up front; any other interface is resolved on each call.
+     *
+     * @param capability The capability interface
+     * @return The capability, or null if the device does not have it
+     */
+    public <T> T get(Class<T> capability) {
+        if (capability == Dimmable.class) {
+            return capability.cast(dimmable);
+        } else if (capability == Thermostatic.class) {
+            return capability.cast(thermostatic);
+        } else if (capability == VolumeAdjustable.class) {
+            return capability.cast(volume);
+        } else if (capability == SpeedAdjustable.class) {
+            return capability.cast(speed);
+        }
+        return resolve(device, capability);
+    }
+
+    public Dimmable dimmable() {
+        return dimmable;
+    }
+
+    public Thermostatic thermostatic() {
+        return thermostatic;
+    }
+
+    public VolumeAdjustable volume() {
+        return volume;
+    }
+
+    public SpeedAdjustable speed() {
+        return speed;
+    }
+
+    /**
+     * Checks whether the device has none of the built-in capabilities
+     * beyond on/off.
+     *
+     * @return true if the device is plain on/off
+     */
+    public boolean isOnOffOnly() {
+        return dimmable == null && thermostatic == null && volume == null && speed == null;
+    }
+}
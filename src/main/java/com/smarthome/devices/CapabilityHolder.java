@@ -0,0 +1,28 @@
+package com.smarthome.devices;
+
+/**
+ * A device that keeps its own resolved {@link Capabilities}, so that
+ * {@link Capabilities#of(SmartDevice)} resolves it once and then only
+ * reads a field.
+ *
+ * <p>All devices in this project implement it. A device that does not
+ * is resolved again on every lookup.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface CapabilityHolder {
+    /**
+     * Gets the capabilities resolved for this device, if any.
+     *
+     * @return The cached capabilities, or null if not resolved yet
+     */
+    Capabilities getCachedCapabilities();
+
+    /**
+     * Keeps the capabilities resolved for this device.
+     *
+     * @param capabilities The resolved capabilities
+     */
+    void cacheCapabilities(Capabilities capabilities);
+}
@@ -0,0 +1,70 @@
+package com.smarthome.devices;
+
+/**
+ * Carbon dioxide sensor.
+ * People breathing raise CO2 above the outdoor baseline, so a high
+ * reading is weak but steady evidence that a room is occupied.
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class Co2Sensor extends OccupancySensor {
+    private static final int BASELINE_PPM = 450;   // Roughly outdoor air
+    private static final int OCCUPIED_PPM = 1050;  // Reading treated as full evidence
+    private static final double MAX_EVIDENCE = 0.3;
+    
+    private int ppm;
+    
+    /**
+     * Creates a new Co2Sensor with the given name.
+     * Sensor starts at the outdoor baseline.
+     * 
+     * @param name The name identifier for this sensor
+     */
+    public Co2Sensor(String name) {
+        super(name);
+        this.ppm = BASELINE_PPM;
+    }
+    
+    /**
+     * Reports a new CO2 reading.
+     * 
+     * @param ppm Concentration in parts per million
+     * @throws IllegalArgumentException if ppm is negative
+     */
+    public void setPpm(int ppm) {
+        if (ppm < 0) {
+            throw new IllegalArgumentException("CO2 reading cannot be negative");
+        }
+        if (!isArmed()) {
+            return;
+        }
+        this.ppm = ppm;
+        recordEvent();
+    }
+    
+    /**
+     * Gets the latest reading.
+     * 
+     * @return Concentration in parts per million
+     */
+    public int getPpm() {
+        return ppm;
+    }
+    
+    @Override
+    public double getPresenceEvidence() {
+        double level = (ppm - BASELINE_PPM) / (double) (OCCUPIED_PPM - BASELINE_PPM);
+        return MAX_EVIDENCE * Math.max(0.0, Math.min(1.0, level));
+    }
+    
+    @Override
+    public String getSensorType() {
+        return "co2";
+    }
+    
+    @Override
+    public String getStatus() {
+        return name + " is " + (isArmed() ? "ARMED" : "DISARMED") + ", CO2: " + ppm + " ppm";
+    }
+}
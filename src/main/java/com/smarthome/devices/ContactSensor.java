@@ -0,0 +1,64 @@
+package com.smarthome.devices;
+
+/**
+ * Door or window contact sensor.
+ * Opening or closing means someone probably passed through.
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ContactSensor extends OccupancySensor {
+    private static final double CHANGE_EVIDENCE = 0.4;
+    
+    private boolean open;
+    
+    /**
+     * Creates a new ContactSensor with the given name.
+     * Sensor starts closed.
+     * 
+     * @param name The name identifier for this sensor
+     */
+    public ContactSensor(String name) {
+        super(name);
+        this.open = false;
+    }
+    
+    /**
+     * Reports the contact opening or closing.
+     * 
+     * @param open true if the door or window is now open
+     */
+    public void setOpen(boolean open) {
+        if (this.open == open || !isArmed()) {
+            return;
+        }
+        this.open = open;
+        System.out.println(name + (open ? " opened" : " closed"));
+        recordEvent();
+    }
+    
+    /**
+     * Checks whether the door or window is open.
+     * 
+     * @return true if open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+    
+    @Override
+    public double getPresenceEvidence() {
+        return getEventCount() > 0 ? CHANGE_EVIDENCE : 0.0;
+    }
+    
+    @Override
+    public String getSensorType() {
+        return "contact";
+    }
+    
+    @Override
+    public String getStatus() {
+        return name + " is " + (isArmed() ? "ARMED" : "DISARMED") +
+               ", " + (open ? "OPEN" : "CLOSED");
+    }
+}
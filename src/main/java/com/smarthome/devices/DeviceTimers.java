@@ -0,0 +1,139 @@
+package com.smarthome.devices;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One shared timer thread for delayed device work, such as a thermostat
+ * reaching its new target a few seconds after it was set.
+ *
+ * <p>Devices used to start a {@code java.util.Timer} (and so a thread)
+ * each time. With thousands of homes in one process that is thousands
+ * of threads; here every delay waits on the same daemon thread.</p>
+ *
+ * <p>The timer thread only waits. When a delay ends, the task is handed
+ * to the executor that was bound on the thread that scheduled it (see
+ * {@link #bindExecutor(Executor)}), so a home's timers run on that
+ * home's own task queue. With nothing bound, the task runs on the timer
+ * thread itself.</p>
+ *
+ * <p>A daemon thread does not keep the JVM alive, so a delay still
+ * pending when {@code main} returns is dropped. Work that finishes
+ * something a device already started, such as a thermostat settling on
+ * its target, is scheduled with {@link #scheduleCompletion} instead. It
+ * waits on a second timer thread that is not a daemon and only exists
+ * while such work is pending, so the JVM waits for it as it did when
+ * each device had its own {@code java.util.Timer}.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class DeviceTimers {
+    private static final ScheduledExecutorService SCHEDULER =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-timers");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private static final ScheduledThreadPoolExecutor COMPLETIONS = completionTimer();
+
+    private static final ThreadLocal<Executor> CURRENT = new ThreadLocal<>();
+
+    private DeviceTimers() {
+    }
+
+    private static ScheduledThreadPoolExecutor completionTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "device-completions");
+            thread.setDaemon(false);
+            return thread;
+        });
+        // The thread ends once nothing is pending; cancelled work does not hold it
+        timer.setKeepAliveTime(1, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Runs a task after a delay.
+     *
+     * @param task The task
+     * @param delay How long to wait
+     * @param unit Unit of the delay
+     * @return Handle for cancelling the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        Executor target = CURRENT.get();
+        if (target == null) {
+            return SCHEDULER.schedule(task, delay, unit);
+        }
+        return SCHEDULER.schedule(() -> target.execute(task), delay, unit);
+    }
+
+    /**
+     * Runs a task after a delay, keeping the JVM alive until it has run
+     * or been cancelled. Like {@link #schedule}, the task is handed to
+     * the executor bound on this thread, if any.
+     *
+     * @param task The task
+     * @param delay How long to wait
+     * @param unit Unit of the delay
+     * @return Handle for cancelling the task
+     */
+    public static ScheduledFuture<?> scheduleCompletion(Runnable task, long delay, TimeUnit unit) {
+        Executor target = CURRENT.get();
+        if (target == null) {
+            return COMPLETIONS.schedule(task, delay, unit);
+        }
+        return COMPLETIONS.schedule(() -> target.execute(task), delay, unit);
+    }
+
+    /**
+     * Runs a task repeatedly.
+     *
+     * @param task The task
+     * @param initialDelay Delay before the first run
+     * @param period Time between runs
+     * @param unit Unit of the delays
+     * @return Handle for cancelling the task
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period,
+                                                         TimeUnit unit) {
+        Executor target = CURRENT.get();
+        if (target == null) {
+            return SCHEDULER.scheduleAtFixedRate(task, initialDelay, period, unit);
+        }
+        return SCHEDULER.scheduleAtFixedRate(() -> target.execute(task), initialDelay, period, unit);
+    }
+
+    /**
+     * Gets where timers scheduled from this thread will run.
+     *
+     * @return The bound executor, or null for the timer thread
+     */
+    public static Executor currentExecutor() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets where timers scheduled from this thread will run.
+     *
+     * @param executor The executor, or null to run on the timer thread
+     * @return The executor bound before, to restore afterwards
+     */
+    public static Executor bindExecutor(Executor executor) {
+        Executor previous = CURRENT.get();
+        if (executor == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(executor);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,20 @@
+package com.smarthome.devices;
+
+/**
+ * A device that stands in front of another device, such as a decorator.
+ *
+ * <p>{@link Capabilities} walks these layers to find a capability, so
+ * anything that wraps a device should implement this interface for the
+ * wrapped device's capabilities to be found through it.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface DeviceWrapper extends SmartDevice {
+    /**
+     * Gets the device this one wraps.
+     *
+     * @return The wrapped device
+     */
+    SmartDevice getWrappedDevice();
+}
@@ -0,0 +1,26 @@
+package com.smarthome.devices;
+
+/**
+ * Capability of devices whose light output can be dimmed.
+ * 
+ * <p>Look it up with {@link Capabilities#of(SmartDevice)} rather than a
+ * cast, so it is found behind decorators too.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface Dimmable {
+    /**
+     * Sets the brightness level. A level above 0 turns the device on.
+     * 
+     * @param brightness Value from 0-100
+     */
+    void setBrightness(int brightness);
+    
+    /**
+     * Gets the current brightness level.
+     * 
+     * @return Current brightness (0-100)
+     */
+    int getBrightness();
+}
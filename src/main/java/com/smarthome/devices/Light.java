@@ -11,11 +11,12 @@ import java.util.List;
  * @author dwayne headley
  * @version 1.0
  */
-public class Light implements SmartDevice {
+public class Light implements SmartDevice, Dimmable, CapabilityHolder {
     private String name;
     private boolean isOn;
     private int brightness; // 0-100
     private List<Observer> observers;
+    private Capabilities capabilities;
     
     /**
      * Creates a new Light with the given name.
@@ -63,6 +64,7 @@ public class Light implements SmartDevice {
      * @param brightness Value from 0-100
      * @throws IllegalArgumentException if brightness is out of range
      */
+    @Override
     public void setBrightness(int brightness) {
         if (brightness < 0 || brightness > 100) {
             throw new IllegalArgumentException("Brightness must be between 0 and 100");
@@ -78,19 +80,40 @@ public class Light implements SmartDevice {
      * 
      * @return Current brightness (0-100)
      */
+    @Override
     public int getBrightness() {
         return brightness;
     }
     
+    @Override
+    public boolean isOn() {
+        return isOn;
+    }
+    
     @Override
     public void addObserver(Observer observer) {
         observers.add(observer);
     }
     
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+    
     @Override
     public void notifyObservers() {
         for (Observer observer : observers) {
             observer.update(this);
         }
     }
-}
\ No newline at end of file
+    
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+}
@@ -0,0 +1,48 @@
+package com.smarthome.devices;
+
+/**
+ * Passive infrared motion sensor.
+ * Each detection is strong evidence that the room is occupied.
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class MotionSensor extends OccupancySensor {
+    private static final double MOTION_EVIDENCE = 0.7;
+    
+    /**
+     * Creates a new MotionSensor with the given name.
+     * 
+     * @param name The name identifier for this sensor
+     */
+    public MotionSensor(String name) {
+        super(name);
+    }
+    
+    /**
+     * Reports that motion was detected.
+     */
+    public void detectMotion() {
+        if (!isArmed()) {
+            return;
+        }
+        System.out.println(name + " detected motion");
+        recordEvent();
+    }
+    
+    @Override
+    public double getPresenceEvidence() {
+        return getEventCount() > 0 ? MOTION_EVIDENCE : 0.0;
+    }
+    
+    @Override
+    public String getSensorType() {
+        return "motion";
+    }
+    
+    @Override
+    public String getStatus() {
+        return name + " is " + (isArmed() ? "ARMED" : "DISARMED") +
+               ", Motion events: " + getEventCount();
+    }
+}
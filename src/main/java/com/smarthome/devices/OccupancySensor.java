@@ -0,0 +1,177 @@
+package com.smarthome.devices;
+
+import com.smarthome.behavioral.Observer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for sensors that hint whether someone is in a room.
+ * Readings taken while the sensor is disarmed are ignored.
+ * 
+ * <p>Arming is kept apart from the on/off state. Bulk sweeps such as
+ * {@code Room.turnOff()}, sleep mode or "turn off all devices" call
+ * {@link #turnOff()} on every device in reach; for a sensor that only
+ * switches off its reported state, so presence sensing carries on.
+ * Only {@link #disarm()} stops readings.</p>
+ * 
+ * <p>Every accepted reading notifies observers, so a presence estimator
+ * can react to each event as it arrives. Each sensor turns its latest
+ * reading into a piece of evidence between 0 (says nothing) and 1
+ * (someone is definitely there).</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public abstract class OccupancySensor implements SmartDevice, CapabilityHolder {
+    protected String name;
+    private boolean isOn;
+    private boolean armed;
+    private long lastEventMillis;
+    private long eventCount;
+    private List<Observer> observers;
+    private Capabilities capabilities;
+    
+    /**
+     * Creates an armed sensor that is switched on.
+     * 
+     * @param name The name identifier for this sensor
+     */
+    protected OccupancySensor(String name) {
+        this.name = name;
+        this.isOn = true;
+        this.armed = true;
+        this.observers = new ArrayList<>();
+    }
+    
+    /**
+     * Records a reading and notifies observers.
+     * 
+     * @return true if recorded, false if the sensor is disarmed
+     */
+    protected boolean recordEvent() {
+        if (!armed) {
+            return false;
+        }
+        lastEventMillis = System.currentTimeMillis();
+        eventCount++;
+        notifyObservers();
+        return true;
+    }
+    
+    /**
+     * Gets how strongly the latest reading suggests someone is present.
+     * 
+     * @return Evidence from 0.0 to 1.0
+     */
+    public abstract double getPresenceEvidence();
+    
+    /**
+     * Gets a short name for the kind of sensor.
+     * 
+     * @return Sensor type, e.g. "motion"
+     */
+    public abstract String getSensorType();
+    
+    /**
+     * Arms the sensor so readings are recorded again.
+     */
+    public void arm() {
+        armed = true;
+        System.out.println(name + " armed");
+        notifyObservers();
+    }
+    
+    /**
+     * Disarms the sensor. Readings are ignored until it is armed again.
+     */
+    public void disarm() {
+        armed = false;
+        System.out.println(name + " disarmed");
+        notifyObservers();
+    }
+    
+    /**
+     * Checks whether readings are being recorded.
+     * 
+     * @return true if armed
+     */
+    public boolean isArmed() {
+        return armed;
+    }
+    
+    /**
+     * Switches the sensor on. Does not change whether it is armed.
+     */
+    @Override
+    public void turnOn() {
+        isOn = true;
+        System.out.println(name + " turned ON");
+        notifyObservers();
+    }
+    
+    /**
+     * Switches the sensor off. The sensor stays armed, so a room swept
+     * off still notices someone walking in.
+     */
+    @Override
+    public void turnOff() {
+        isOn = false;
+        System.out.println(name + " turned OFF");
+        notifyObservers();
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public boolean isOn() {
+        return isOn;
+    }
+    
+    /**
+     * Gets when the last reading was recorded.
+     * 
+     * @return Epoch millis, or 0 if none yet
+     */
+    public long getLastEventMillis() {
+        return lastEventMillis;
+    }
+    
+    /**
+     * Gets the number of readings recorded.
+     * 
+     * @return Event count
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+    
+    @Override
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+    
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+    
+    @Override
+    public void notifyObservers() {
+        for (Observer observer : observers) {
+            observer.update(this);
+        }
+    }
+    
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+}
@@ -20,6 +20,10 @@ import com.smarthome.structural.Room; // For documentation link
  *   <li>{@link FanAdapter} - Adapted legacy fan</li>
  * </ul>
  * 
+ * <p>Device-specific controls ({@link Dimmable}, {@link Thermostatic},
+ * {@link VolumeAdjustable}, {@link SpeedAdjustable}) are separate
+ * capability interfaces, looked up through {@link Capabilities}.</p>
+ * 
  * @author dwayne headley
  * @version 1.0
  */
@@ -46,12 +50,24 @@ public interface SmartDevice {
      */
     String getName();
     
+    /**
+     * Checks whether the device is currently on.
+     * @return true if the device is on
+     */
+    boolean isOn();
+    
     /**
      * Adds an observer to be notified of state changes.
      * @param observer The observer to add
      */
     void addObserver(Observer observer);
     
+    /**
+     * Removes an observer added with {@link #addObserver(Observer)}.
+     * @param observer The observer to remove
+     */
+    void removeObserver(Observer observer);
+    
     /**
      * Notifies all observers of a state change.
      */
@@ -11,12 +11,16 @@ import java.util.List;
  * @author dwayne headley
  * @version 1.0
  */
-public class Speaker implements SmartDevice {
+public class Speaker implements SmartDevice, VolumeAdjustable, CapabilityHolder {
+    /** What {@link #getCurrentlyPlaying()} reports when nothing is playing. */
+    public static final String NOTHING_PLAYING = "Nothing";
+    
     private String name;
     private boolean isOn;
     private int volume; // 0-100
     private String currentlyPlaying;
     private List<Observer> observers;
+    private Capabilities capabilities;
     
     /**
      * Creates a new Speaker with the given name.
@@ -28,7 +32,7 @@ public class Speaker implements SmartDevice {
         this.name = name;
         this.isOn = false;
         this.volume = 0;
-        this.currentlyPlaying = "Nothing";
+        this.currentlyPlaying = NOTHING_PLAYING;
         this.observers = new ArrayList<>();
     }
     
@@ -44,7 +48,7 @@ public class Speaker implements SmartDevice {
     public void turnOff() {
         isOn = false;
         volume = 0;
-        currentlyPlaying = "Nothing";
+        currentlyPlaying = NOTHING_PLAYING;
         System.out.println(name + " turned OFF");
         notifyObservers();
     }
@@ -67,6 +71,7 @@ public class Speaker implements SmartDevice {
      * @param volume Value from 0-100
      * @throws IllegalArgumentException if volume is out of range
      */
+    @Override
     public void setVolume(int volume) {
         if (volume < 0 || volume > 100) {
             throw new IllegalArgumentException("Volume must be between 0 and 100");
@@ -84,6 +89,7 @@ public class Speaker implements SmartDevice {
      * 
      * @return Current volume (0-100)
      */
+    @Override
     public int getVolume() {
         return volume;
     }
@@ -106,7 +112,7 @@ public class Speaker implements SmartDevice {
      * Stops playback.
      */
     public void stop() {
-        currentlyPlaying = "Nothing";
+        currentlyPlaying = NOTHING_PLAYING;
         System.out.println(name + " playback stopped");
         notifyObservers();
     }
@@ -116,19 +122,40 @@ public class Speaker implements SmartDevice {
      * 
      * @return The current content
      */
+    @Override
     public String getCurrentlyPlaying() {
         return currentlyPlaying;
     }
     
+    @Override
+    public boolean isOn() {
+        return isOn;
+    }
+    
     @Override
     public void addObserver(Observer observer) {
         observers.add(observer);
     }
     
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+    
     @Override
     public void notifyObservers() {
         for (Observer observer : observers) {
             observer.update(this);
         }
     }
+    
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
 }
@@ -0,0 +1,33 @@
+package com.smarthome.devices;
+
+/**
+ * Capability of devices with stepped speed settings, such as fans.
+ * 
+ * <p>Look it up with {@link Capabilities#of(SmartDevice)} rather than a
+ * cast, so it is found behind decorators too.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface SpeedAdjustable {
+    /**
+     * Sets the speed. Speed 0 stops the device.
+     * 
+     * @param speed Speed level (0 to {@link #getMaxSpeed()})
+     */
+    void setSpeed(int speed);
+    
+    /**
+     * Gets the current speed.
+     * 
+     * @return Speed level
+     */
+    int getSpeed();
+    
+    /**
+     * Gets the highest speed setting.
+     * 
+     * @return Maximum speed level
+     */
+    int getMaxSpeed();
+}
@@ -3,8 +3,8 @@ package com.smarthome.devices;
 import com.smarthome.behavioral.Observer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a smart thermostat that controls temperature.
@@ -13,14 +13,16 @@ import java.util.TimerTask;
  * @author dwayne headley
  * @version 1.0
  */
-public class Thermostat implements SmartDevice {
+public class Thermostat implements SmartDevice, Thermostatic, CapabilityHolder {
     private String name;
     private boolean isOn;
-    private double currentTemp;
+    private volatile double currentTemp; // Also written by the settling timer
     private double targetTemp;
     private String mode; // "heating", "cooling", or "off"
     private List<Observer> observers;
-    private Timer temperatureAdjustmentTimer;
+    private ScheduledFuture<?> temperatureAdjustmentTimer;
+    private boolean modelDriven; // true when a thermal model supplies currentTemp
+    private Capabilities capabilities;
     
     /**
      * Creates a new Thermostat with the given name and current temperature.
@@ -74,6 +76,7 @@ public class Thermostat implements SmartDevice {
      * @param targetTemp The desired temperature (50-90°F)
      * @throws IllegalArgumentException if temperature is out of range
      */
+    @Override
     public void setTargetTemp(double targetTemp) {
         if (targetTemp < 50 || targetTemp > 90) {
             throw new IllegalArgumentException("Target temp must be between 50-90°F");
@@ -86,19 +89,22 @@ public class Thermostat implements SmartDevice {
         
         // Cancel any existing timer
         if (temperatureAdjustmentTimer != null) {
-            temperatureAdjustmentTimer.cancel();
+            temperatureAdjustmentTimer.cancel(false);
+            temperatureAdjustmentTimer = null;
+        }
+        
+        // A thermal model moves the temperature instead of the timer
+        if (modelDriven) {
+            notifyObservers();
+            return;
         }
         
         // Start a new timer to adjust current temperature after 5 seconds
-        temperatureAdjustmentTimer = new Timer();
-        temperatureAdjustmentTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                currentTemp = targetTemp;
-                System.out.println(name + " current temperature adjusted to " + currentTemp + "°F");
-                notifyObservers();
-            }
-        }, 5000); // 5 second delay
+        temperatureAdjustmentTimer = DeviceTimers.scheduleCompletion(() -> {
+            currentTemp = targetTemp;
+            System.out.println(name + " current temperature adjusted to " + currentTemp + "°F");
+            notifyObservers();
+        }, 5000, TimeUnit.MILLISECONDS); // 5 second delay
         
         notifyObservers();
     }
@@ -108,6 +114,7 @@ public class Thermostat implements SmartDevice {
      * 
      * @return The target temperature
      */
+    @Override
     public double getTargetTemp() {
         return targetTemp;
     }
@@ -117,10 +124,50 @@ public class Thermostat implements SmartDevice {
      * 
      * @return The current temperature
      */
+    @Override
     public double getCurrentTemp() {
         return currentTemp;
     }
     
+    /**
+     * Reports a new room temperature reading, e.g. from a thermal
+     * simulation. Not logged, since readings arrive continuously.
+     * 
+     * @param currentTemp The measured temperature
+     */
+    public void setCurrentTemp(double currentTemp) {
+        this.currentTemp = currentTemp;
+        if (isOn) {
+            updateMode();
+        }
+        notifyObservers();
+    }
+    
+    /**
+     * Hands the room temperature over to a thermal model. While set,
+     * changing the target no longer snaps the current temperature to it
+     * after 5 seconds; the model reports readings through
+     * {@link #setCurrentTemp(double)} instead.
+     * 
+     * @param modelDriven true if a model supplies the temperature
+     */
+    public void setModelDriven(boolean modelDriven) {
+        this.modelDriven = modelDriven;
+        if (modelDriven && temperatureAdjustmentTimer != null) {
+            temperatureAdjustmentTimer.cancel(false);
+            temperatureAdjustmentTimer = null;
+        }
+    }
+    
+    /**
+     * Checks whether a thermal model supplies the temperature.
+     * 
+     * @return true if model driven
+     */
+    public boolean isModelDriven() {
+        return modelDriven;
+    }
+    
     /**
      * Sets the current mode (heating/cooling/off).
      * 
@@ -137,6 +184,7 @@ public class Thermostat implements SmartDevice {
      * 
      * @return The current mode
      */
+    @Override
     public String getMode() {
         return mode;
     }
@@ -156,15 +204,35 @@ public class Thermostat implements SmartDevice {
         }
     }
     
+    @Override
+    public boolean isOn() {
+        return isOn;
+    }
+    
     @Override
     public void addObserver(Observer observer) {
         observers.add(observer);
     }
     
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+    
     @Override
     public void notifyObservers() {
         for (Observer observer : observers) {
             observer.update(this);
         }
     }
-}
\ No newline at end of file
+    
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+}
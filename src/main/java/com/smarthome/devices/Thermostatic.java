@@ -0,0 +1,40 @@
+package com.smarthome.devices;
+
+/**
+ * Capability of devices that hold a room at a target temperature.
+ * 
+ * <p>Look it up with {@link Capabilities#of(SmartDevice)} rather than a
+ * cast, so it is found behind decorators too.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface Thermostatic {
+    /**
+     * Sets the target temperature.
+     * 
+     * @param targetTemp Desired temperature in Fahrenheit
+     */
+    void setTargetTemp(double targetTemp);
+    
+    /**
+     * Gets the target temperature.
+     * 
+     * @return Target temperature in Fahrenheit
+     */
+    double getTargetTemp();
+    
+    /**
+     * Gets the current temperature reading.
+     * 
+     * @return Current temperature in Fahrenheit
+     */
+    double getCurrentTemp();
+    
+    /**
+     * Gets what the thermostat is doing.
+     * 
+     * @return "heating", "cooling", "maintaining" or "off"
+     */
+    String getMode();
+}
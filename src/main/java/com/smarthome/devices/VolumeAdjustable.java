@@ -0,0 +1,33 @@
+package com.smarthome.devices;
+
+/**
+ * Capability of devices with an adjustable volume.
+ * 
+ * <p>Look it up with {@link Capabilities#of(SmartDevice)} rather than a
+ * cast, so it is found behind decorators too.</p>
+ * 
+ * @author dwayne headley
+ * @version 1.0
+ */
+public interface VolumeAdjustable {
+    /**
+     * Sets the volume level.
+     * 
+     * @param volume Value from 0-100
+     */
+    void setVolume(int volume);
+    
+    /**
+     * Gets the current volume level.
+     * 
+     * @return Current volume (0-100)
+     */
+    int getVolume();
+    
+    /**
+     * Gets what is currently playing.
+     * 
+     * @return The current content, or "Nothing"
+     */
+    String getCurrentlyPlaying();
+}
@@ -0,0 +1,529 @@
+package com.smarthome.energy;
+
+import com.smarthome.behavioral.CommandSink;
+import com.smarthome.behavioral.Observer;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.EnergyMonitorDecorator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the site under a peak-demand cap by dimming, slowing or turning
+ * off the devices whose loss hurts least.
+ *
+ * <p>Every registered device has a priority tier (0 = shed first,
+ * {@link #PRIORITY_CRITICAL} = never shed) and a power draw taken from its
+ * {@link EnergyMonitorDecorator} when it has one, or a typical value for
+ * its type otherwise. A device can be shed in up to two steps: reduced
+ * (lights dimmed to 30%, fans slowed to low) and off. Each step saves some
+ * kW at a discomfort cost of (priority + 1) &times; share of service lost.
+ * The planner is a greedy covering knapsack: steps are taken from a
+ * priority queue by cost per useful kW (savings beyond what is still
+ * needed do not count) until the demand fits the budget, then any step
+ * that turned out not to be needed is handed back. Keys only grow as the
+ * shortfall shrinks, so they are refreshed lazily when a step reaches the
+ * head of the queue. A plan over thousands of devices takes a few
+ * milliseconds.</p>
+ *
+ * <p>The shedder remembers what each device was asked to do before it was
+ * shed and puts it back when the cap lifts or when the plan no longer
+ * needs it. If someone changes a device while a cap is active, that becomes
+ * the device's wanted state and the plan is redone.</p>
+ *
+ * <p>Changes go out as commands through a {@link CommandSink}; give it
+ * one that submits to the controller's safety lane so shedding goes
+ * ahead of everything else and shows up in the history. Without one,
+ * devices are changed on the calling thread.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * LoadShedder shedder = new LoadShedder();
+ * shedder.setCommandSink(command -> controller.submitCommand(command, CommandScheduler.Lane.SAFETY));
+ * shedder.register(fridgeLight, LoadShedder.PRIORITY_CRITICAL);
+ * shedder.register(porchLight, 1);
+ * shedder.register(ceilingFan, 3);
+ * shedder.setBudgetKw(5.0);   // Peak event starts
+ * shedder.liftBudget();       // Peak event over, everything restored
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class LoadShedder implements Observer {
+    /** Devices at this priority are never shed. */
+    public static final int PRIORITY_CRITICAL = 10;
+    /** Priority used when none is given. */
+    public static final int PRIORITY_DEFAULT = 5;
+
+    private static final int NORMAL = 0;
+    private static final int REDUCED = 1;
+    private static final int OFF = 2;
+
+    private static final int DIM_BRIGHTNESS = 30;
+    private static final int SLOW_SPEED = 1;
+    private static final double REDUCED_LOSS = 0.3; // Share of service lost when dimmed/slowed
+
+    /**
+     * One controllable load and what the shedder knows about it.
+     */
+    private static class Load {
+        final SmartDevice device;
+        final SmartDevice inner;
+        final EnergyMonitorDecorator meter;
+        final Dimmable dimmer;
+        final SpeedAdjustable fan;
+        final int priority;
+        int wanted;      // Brightness, fan speed, or 1/0 for on/off
+        int planned;
+        int applied;
+        final ArrayDeque<Integer> sent = new ArrayDeque<>(); // States commanded, not yet seen
+
+        Load(SmartDevice device, SmartDevice inner, EnergyMonitorDecorator meter, int priority) {
+            this.device = device;
+            this.inner = inner;
+            this.meter = meter;
+            this.priority = priority;
+            Capabilities capabilities = Capabilities.of(device);
+            this.dimmer = capabilities.dimmable();
+            this.fan = capabilities.speed();
+        }
+    }
+
+    /**
+     * One step down for one load, as seen by the greedy solver.
+     */
+    private static class Step {
+        final Load load;
+        final int level;
+        final double savedKw;
+        final double cost;
+        double key;      // Cost per useful kW when last looked at
+
+        Step(Load load, int level, double savedKw, double cost) {
+            this.load = load;
+            this.level = level;
+            this.savedKw = savedKw;
+            this.cost = cost;
+        }
+
+        double costPerKw(double needKw) {
+            return cost / Math.min(savedKw, needKw);
+        }
+    }
+
+    private final Map<SmartDevice, Load> loads;
+    private final List<Load> order;
+
+    private double budgetKw;
+    private boolean capped;
+    private double baseLoadKw;
+    private CommandSink commands;
+
+    private double shedKw;
+    private double deficitKw;
+    private long lastPlanNanos;
+    private long planCount;
+
+    /**
+     * Creates a shedder with no cap in force.
+     */
+    public LoadShedder() {
+        this.loads = new IdentityHashMap<>();
+        this.order = new ArrayList<>();
+        this.budgetKw = Double.POSITIVE_INFINITY;
+        this.commands = CommandSink.DIRECT;
+    }
+
+    /**
+     * Sets where shedding and restoring commands go.
+     *
+     * @param sink Queues commands, e.g. on the controller's safety lane
+     */
+    public synchronized void setCommandSink(CommandSink sink) {
+        this.commands = sink;
+    }
+
+    /**
+     * Registers a device at the default priority.
+     *
+     * @param device The device (decorated or not)
+     */
+    public void register(SmartDevice device) {
+        register(device, PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Registers a device. Its current state is taken as its wanted state.
+     *
+     * @param device The device (decorated or not)
+     * @param priority 0 (shed first) to {@link #PRIORITY_CRITICAL} (never shed)
+     */
+    public synchronized void register(SmartDevice device, int priority) {
+        SmartDevice inner = DeviceDecorator.unwrap(device);
+        EnergyMonitorDecorator meter = DeviceDecorator.findLayer(device, EnergyMonitorDecorator.class);
+        if (loads.containsKey(inner)) {
+            return;
+        }
+        Load load = new Load(device, inner, meter, Math.max(0, Math.min(PRIORITY_CRITICAL, priority)));
+        load.wanted = readState(load);
+        loads.put(inner, load);
+        order.add(load);
+        device.addObserver(this);
+        if (capped) {
+            replan();
+        }
+    }
+
+    /**
+     * Stops managing a device, restoring it first if it was shed.
+     *
+     * @param device The device (decorated or not)
+     */
+    public synchronized void unregister(SmartDevice device) {
+        Load load = loads.remove(DeviceDecorator.unwrap(device));
+        if (load == null) {
+            return;
+        }
+        order.remove(load);
+        load.device.removeObserver(this);
+        if (load.applied != NORMAL) {
+            load.planned = NORMAL;
+            applyLevel(load);
+        }
+        if (capped) {
+            replan();
+        }
+    }
+
+    /**
+     * Puts a cap on total demand and sheds load to meet it.
+     *
+     * @param budgetKw Maximum site draw in kW
+     */
+    public synchronized void setBudgetKw(double budgetKw) {
+        this.budgetKw = budgetKw;
+        this.capped = true;
+        System.out.println("[SHED] Power budget set to " + String.format("%.2f kW", budgetKw));
+        replan();
+    }
+
+    /**
+     * Lifts the cap and restores every shed device.
+     */
+    public synchronized void liftBudget() {
+        budgetKw = Double.POSITIVE_INFINITY;
+        capped = false;
+        System.out.println("[SHED] Power budget lifted");
+        replan();
+    }
+
+    /**
+     * Sets the draw of loads the shedder does not control (HVAC run by a
+     * {@link ThermalFleet}, appliances, ...), which also counts against
+     * the budget.
+     *
+     * @param baseLoadKw Uncontrolled draw in kW
+     */
+    public synchronized void setBaseLoadKw(double baseLoadKw) {
+        this.baseLoadKw = baseLoadKw;
+        if (capped) {
+            replan();
+        }
+    }
+
+    /**
+     * Takes a changed device's new state as what its user wants and
+     * redoes the plan. Changes the shedder makes itself are ignored.
+     *
+     * @param device The device that changed
+     */
+    @Override
+    public synchronized void update(SmartDevice device) {
+        Load load = loads.get(device);
+        if (load == null) {
+            return;
+        }
+        int state = readState(load);
+        if (sawOwnCommand(load, state) || state == shedState(load, load.applied)) {
+            return; // One of our commands ran, or nothing new
+        }
+        load.wanted = state;
+        load.applied = NORMAL;
+        load.planned = NORMAL;
+        if (capped) {
+            replan();
+        }
+    }
+
+    /**
+     * Works out which devices to shed for the current budget and demand,
+     * then changes only the devices whose level differs from before.
+     */
+    public synchronized void replan() {
+        long started = System.nanoTime();
+        for (Load load : order) {
+            load.planned = NORMAL;
+        }
+        double need = getDemandKw() - budgetKw;
+        double saved = 0;
+        List<Step> taken = new ArrayList<>();
+
+        if (need > 0) {
+            List<Step> first = new ArrayList<>();
+            for (Load load : order) {
+                Step step = nextStep(load, NORMAL);
+                if (step != null) {
+                    step.key = step.costPerKw(need);
+                    first.add(step);
+                }
+            }
+            PriorityQueue<Step> steps = new PriorityQueue<>(first.size() + 1,
+                (a, b) -> Double.compare(a.key, b.key));
+            steps.addAll(first);
+            while (saved < need && !steps.isEmpty()) {
+                Step step = steps.poll();
+                double key = step.costPerKw(need - saved);
+                if (key > step.key && !steps.isEmpty() && key > steps.peek().key) {
+                    step.key = key; // Worth less now that less is needed
+                    steps.add(step);
+                    continue;
+                }
+                step.load.planned = step.level;
+                saved += step.savedKw;
+                taken.add(step);
+                Step next = nextStep(step.load, step.level);
+                if (next != null) {
+                    next.key = next.costPerKw(need - saved);
+                    steps.add(next);
+                }
+            }
+            // Hand back the priciest steps the budget turned out not to need
+            for (int i = taken.size() - 1; i >= 0; i--) {
+                Step step = taken.get(i);
+                if (step.load.planned == step.level && saved - step.savedKw >= need) {
+                    step.load.planned = step.level == OFF && reducedSavingKw(step.load) > 0 ? REDUCED : NORMAL;
+                    saved -= step.savedKw;
+                }
+            }
+        }
+
+        shedKw = saved;
+        deficitKw = Math.max(0.0, need - saved);
+        lastPlanNanos = System.nanoTime() - started;
+        planCount++;
+
+        int changed = 0;
+        for (Load load : order) {
+            if (load.planned != load.applied) {
+                applyLevel(load);
+                changed++;
+            }
+        }
+        if (changed > 0 || deficitKw > 0) {
+            System.out.println("[SHED] Plan: " + String.format("%.2f kW", shedKw) + " shed, " +
+                             changed + " devices changed" +
+                             (deficitKw > 0 ? String.format(", still %.2f kW over budget", deficitKw) : ""));
+        }
+    }
+
+    private Step nextStep(Load load, int from) {
+        if (load.priority >= PRIORITY_CRITICAL) {
+            return null;
+        }
+        double weight = load.priority + 1;
+        double reduced = reducedSavingKw(load);
+        if (from == NORMAL && reduced > 0) {
+            return new Step(load, REDUCED, reduced, weight * REDUCED_LOSS);
+        }
+        if (from == OFF) {
+            return null;
+        }
+        double rest = wantedDrawKw(load) - (from == REDUCED ? reduced : 0.0);
+        if (rest <= 0) {
+            return null;
+        }
+        double loss = from == REDUCED ? 1.0 - REDUCED_LOSS : 1.0;
+        return new Step(load, OFF, rest, weight * loss);
+    }
+
+    private double ratedKw(Load load) {
+        return load.meter != null ? load.meter.getRatedPowerKw()
+                                  : EnergyMonitorDecorator.defaultRatedPowerKw(load.inner);
+    }
+
+    private double wantedDrawKw(Load load) {
+        if (load.dimmer != null) {
+            return ratedKw(load) * load.wanted / 100.0;
+        } else if (load.fan != null) {
+            return ratedKw(load) * load.wanted / load.fan.getMaxSpeed();
+        }
+        return load.wanted > 0 ? ratedKw(load) : 0.0;
+    }
+
+    private double reducedSavingKw(Load load) {
+        if (load.dimmer != null && load.wanted > DIM_BRIGHTNESS) {
+            return ratedKw(load) * (load.wanted - DIM_BRIGHTNESS) / 100.0;
+        } else if (load.fan != null && load.wanted > SLOW_SPEED) {
+            return ratedKw(load) * (load.wanted - SLOW_SPEED) / load.fan.getMaxSpeed();
+        }
+        return 0.0;
+    }
+
+    private static int readState(Load load) {
+        if (load.dimmer != null) {
+            return load.device.isOn() ? load.dimmer.getBrightness() : 0;
+        } else if (load.fan != null) {
+            return load.fan.getSpeed();
+        }
+        return load.device.isOn() ? 1 : 0;
+    }
+
+    private static int shedState(Load load, int level) {
+        if (level == OFF) {
+            return 0;
+        } else if (level == REDUCED) {
+            return load.dimmer != null ? DIM_BRIGHTNESS : SLOW_SPEED;
+        }
+        return load.wanted;
+    }
+
+    private void applyLevel(Load load) {
+        int target = shedState(load, load.planned);
+        load.sent.addLast(target);
+        boolean sent;
+        if (target == 0) {
+            sent = commands.turnOff(load.device);
+        } else if (load.dimmer != null) {
+            sent = commands.setBrightness(load.dimmer, target);
+        } else if (load.fan != null) {
+            sent = commands.setSpeed(load.device, target);
+        } else {
+            sent = commands.turnOn(load.device);
+        }
+        if (sent) {
+            load.applied = load.planned;
+        } else {
+            load.sent.removeLastOccurrence(target); // Refused; the next plan tries again
+        }
+    }
+
+    /**
+     * Checks whether a device's new state is one the shedder commanded.
+     * Commands for a device run in the order they were sent, so the
+     * states before it were passed through already and are forgotten.
+     */
+    private static boolean sawOwnCommand(Load load, int state) {
+        if (!load.sent.contains(state)) {
+            return false;
+        }
+        while (load.sent.pollFirst() != state) {
+            // Skip states overtaken by later commands
+        }
+        return true;
+    }
+
+    /**
+     * Gets what the site would draw with nothing shed.
+     *
+     * @return Demand in kW
+     */
+    public synchronized double getDemandKw() {
+        double total = baseLoadKw;
+        for (Load load : order) {
+            total += wantedDrawKw(load);
+        }
+        return total;
+    }
+
+    /**
+     * Gets what the site draws with the current plan in force.
+     *
+     * @return Draw in kW
+     */
+    public synchronized double getPlannedDrawKw() {
+        return getDemandKw() - shedKw;
+    }
+
+    public synchronized double getShedKw() {
+        return shedKw;
+    }
+
+    /**
+     * Gets how far over budget the site still is after shedding
+     * everything allowed.
+     *
+     * @return Shortfall in kW, 0 when the budget is met
+     */
+    public synchronized double getDeficitKw() {
+        return deficitKw;
+    }
+
+    public synchronized double getBudgetKw() {
+        return budgetKw;
+    }
+
+    public synchronized boolean isCapped() {
+        return capped;
+    }
+
+    /**
+     * Gets the devices currently dimmed, slowed or turned off.
+     *
+     * @return The shed devices
+     */
+    public synchronized List<SmartDevice> getShedDevices() {
+        List<SmartDevice> shed = new ArrayList<>();
+        for (Load load : order) {
+            if (load.applied != NORMAL) {
+                shed.add(load.device);
+            }
+        }
+        return shed;
+    }
+
+    /**
+     * Gets how long the last plan took to compute.
+     *
+     * @return Time in nanoseconds
+     */
+    public synchronized long getLastPlanNanos() {
+        return lastPlanNanos;
+    }
+
+    public synchronized long getPlanCount() {
+        return planCount;
+    }
+
+    public synchronized int size() {
+        return order.size();
+    }
+
+    /**
+     * Displays the current budget, demand and shed devices.
+     */
+    public synchronized void displayStatus() {
+        System.out.println("\n╔════════════════════════════════════════╗");
+        System.out.println("║         LOAD SHEDDING STATUS           ║");
+        System.out.println("╠════════════════════════════════════════╣");
+        System.out.println("║ Budget: " + (capped ? String.format("%.2f kW", budgetKw) : "none"));
+        System.out.println("║ Demand: " + String.format("%.2f kW", getDemandKw()));
+        System.out.println("║ Shed: " + String.format("%.2f kW", shedKw));
+        for (Load load : order) {
+            if (load.applied != NORMAL) {
+                System.out.println("║   " + (load.applied == OFF ? "OFF     " : "REDUCED ") +
+                                 load.device.getName() + " (priority " + load.priority + ")");
+            }
+        }
+        System.out.println("╚════════════════════════════════════════╝\n");
+    }
+}
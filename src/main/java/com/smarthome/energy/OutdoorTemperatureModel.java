@@ -0,0 +1,81 @@
+package com.smarthome.energy;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Simulated outdoor temperature: a daily sine wave that is coolest
+ * around 5 AM and warmest around 5 PM.
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class OutdoorTemperatureModel {
+    private static final double WARMEST_HOUR = 17.0;
+
+    private final double dailyMean;
+    private final double amplitude;
+    private final ZoneId zone;
+
+    /**
+     * Creates a model in the system time zone.
+     *
+     * @param dailyMean Average temperature over the day (°F)
+     * @param amplitude Half the day/night swing (°F)
+     */
+    public OutdoorTemperatureModel(double dailyMean, double amplitude) {
+        this(dailyMean, amplitude, ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates a model.
+     *
+     * @param dailyMean Average temperature over the day (°F)
+     * @param amplitude Half the day/night swing (°F)
+     * @param zone Time zone for the daily cycle
+     */
+    public OutdoorTemperatureModel(double dailyMean, double amplitude, ZoneId zone) {
+        this.dailyMean = dailyMean;
+        this.amplitude = amplitude;
+        this.zone = zone;
+    }
+
+    /**
+     * Gets the outdoor temperature at a moment.
+     *
+     * @param epochMillis The moment
+     * @return Temperature (°F)
+     */
+    public double temperatureAt(long epochMillis) {
+        long offsetSeconds = zone.getRules().getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds();
+        double localHours = (epochMillis / 1000.0 + offsetSeconds) / 3600.0;
+        double hourOfDay = localHours - Math.floor(localHours / 24.0) * 24.0;
+        return dailyMean + amplitude * Math.cos(2 * Math.PI * (hourOfDay - WARMEST_HOUR) / 24.0);
+    }
+
+    /**
+     * Gets the average temperature over a period, sampled every 15 minutes.
+     *
+     * @param startMillis Start of the period
+     * @param endMillis End of the period
+     * @return Average temperature (°F)
+     */
+    public double averageBetween(long startMillis, long endMillis) {
+        long step = 15 * 60 * 1000;
+        double sum = 0;
+        int samples = 0;
+        for (long t = startMillis; t <= endMillis; t += step) {
+            sum += temperatureAt(t);
+            samples++;
+        }
+        return samples == 0 ? temperatureAt(startMillis) : sum / samples;
+    }
+
+    public double getDailyMean() {
+        return dailyMean;
+    }
+
+    public double getAmplitude() {
+        return amplitude;
+    }
+}
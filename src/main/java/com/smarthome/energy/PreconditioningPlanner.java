@@ -0,0 +1,212 @@
+package com.smarthome.energy;
+
+/**
+ * Picks, for every zone in a {@link ThermalFleet}, when to start heating
+ * or cooling so the room reaches its setpoint by a ready time at the
+ * lowest electricity cost.
+ *
+ * <p>Starting early means holding the setpoint longer against heat
+ * loss; starting late means running at full power, possibly in a pricier
+ * hour. For each candidate start (every {@code stepMillis} up to the
+ * ready time) the planner uses the RC model in closed form: the room
+ * coasts until the start, runs at full power until it reaches the
+ * setpoint, then holds it. Costs are summed with a prefix sum over the
+ * sampled tariff, so each candidate costs O(1) per zone and the whole
+ * solve is a loop over candidates &times; zones on primitive arrays.</p>
+ *
+ * <p>The outdoor temperature is taken as its average over the planning
+ * window, which keeps the solve closed-form; the fleet simulation still
+ * uses the hour-by-hour curve.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * PreconditioningPlanner planner = new PreconditioningPlanner(15 * 60 * 1000);
+ * PreconditioningPlanner.Result plan = planner.plan(fleet, now, sevenAm);
+ * plan.apply(fleet);   // zones wait until their planned start
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class PreconditioningPlanner {
+    private final long stepMillis;
+
+    /**
+     * The outcome of one solve.
+     */
+    public static class Result {
+        private final long[] startMillis;
+        private final double[] plannedCost;
+        private final double[] immediateCost;
+        private final boolean[] feasible;
+        private long solveNanos;
+
+        Result(int zones) {
+            this.startMillis = new long[zones];
+            this.plannedCost = new double[zones];
+            this.immediateCost = new double[zones];
+            this.feasible = new boolean[zones];
+        }
+
+        /**
+         * Gives each zone its planned start time.
+         *
+         * @param fleet The fleet the plan was made for
+         */
+        public void apply(ThermalFleet fleet) {
+            for (int i = 0; i < startMillis.length; i++) {
+                fleet.setPlannedStart(i, startMillis[i]);
+            }
+        }
+
+        public long getStartMillis(int zone) {
+            return startMillis[zone];
+        }
+
+        /**
+         * Checks whether the zone can reach its setpoint by the ready time.
+         * Infeasible zones are told to start immediately.
+         *
+         * @param zone The zone index
+         * @return true if the setpoint is reachable in time
+         */
+        public boolean isFeasible(int zone) {
+            return feasible[zone];
+        }
+
+        /**
+         * Gets the estimated cost of the whole fleet following the plan.
+         *
+         * @return Cost in dollars
+         */
+        public double getPlannedCost() {
+            double total = 0;
+            for (double cost : plannedCost) {
+                total += cost;
+            }
+            return total;
+        }
+
+        /**
+         * Gets the estimated cost if every zone started right away.
+         *
+         * @return Cost in dollars
+         */
+        public double getImmediateCost() {
+            double total = 0;
+            for (double cost : immediateCost) {
+                total += cost;
+            }
+            return total;
+        }
+
+        /**
+         * Gets how long the solve took.
+         *
+         * @return Time in nanoseconds
+         */
+        public long getSolveNanos() {
+            return solveNanos;
+        }
+    }
+
+    /**
+     * Creates a planner.
+     *
+     * @param stepMillis Spacing of candidate start times (e.g. 15 minutes)
+     */
+    public PreconditioningPlanner(long stepMillis) {
+        this.stepMillis = stepMillis;
+    }
+
+    /**
+     * Plans start times for every zone.
+     *
+     * @param fleet The fleet (temperatures and setpoints are read as they are now)
+     * @param nowMillis The current time
+     * @param readyAtMillis When every zone should be at its setpoint
+     * @return The plan
+     */
+    public Result plan(ThermalFleet fleet, long nowMillis, long readyAtMillis) {
+        long started = System.nanoTime();
+        int zones = fleet.size();
+        int steps = (int) Math.max(0, (readyAtMillis - nowMillis) / stepMillis);
+        double hours = stepMillis / 3_600_000.0;
+        double outside = fleet.getOutdoor().averageBetween(nowMillis, readyAtMillis);
+
+        // Prefix sums of the tariff: cost of 1 kW from step a to b = dt * (p[b] - p[a])
+        double[] prices = fleet.getPrices().sample(nowMillis, stepMillis, steps);
+        double[] prefix = new double[steps + 1];
+        for (int k = 0; k < steps; k++) {
+            prefix[k + 1] = prefix[k] + prices[k];
+        }
+
+        double[] temp = fleet.temperatures();
+        double[] r = fleet.resistances();
+        double[] c = fleet.capacitances();
+        double[] cap = fleet.capacities();
+        double[] cop = fleet.efficiencies();
+        double[] sp = fleet.setpoints();
+
+        double[] coastDeviation = new double[zones];
+        double[] coastFactor = new double[zones];
+        double[] bestCost = new double[zones];
+        int[] bestStep = new int[zones];
+        double[] firstCost = new double[zones];
+        for (int i = 0; i < zones; i++) {
+            coastDeviation[i] = temp[i] - outside;
+            coastFactor[i] = Math.exp(-hours / (r[i] * c[i]));
+            bestCost[i] = Double.POSITIVE_INFINITY;
+            bestStep[i] = -1;
+            firstCost[i] = Double.POSITIVE_INFINITY;
+        }
+
+        for (int k = 0; k <= steps; k++) {
+            double runToEnd = prefix[steps];
+            for (int i = 0; i < zones; i++) {
+                double direction = sp[i] >= outside ? 1.0 : -1.0;
+                double tk = outside + coastDeviation[i];
+                double tau = r[i] * c[i];
+                double holdKw = Math.max(0.0, direction * (sp[i] - outside)) / r[i] / cop[i];
+                int reach;
+                if (direction * (sp[i] - tk) <= 0) {
+                    reach = k; // Coasting has not left the setpoint yet
+                } else {
+                    double settle = outside + direction * cap[i] * r[i];
+                    if (direction * (sp[i] - settle) >= 0) {
+                        coastDeviation[i] *= coastFactor[i];
+                        continue; // Not enough capacity to ever get there
+                    }
+                    double runHours = tau * Math.log((tk - settle) / (sp[i] - settle));
+                    reach = k + (int) Math.ceil(runHours / hours);
+                }
+                if (reach <= steps) {
+                    double runKw = cap[i] / cop[i];
+                    double cost = hours * (runKw * (prefix[reach] - prefix[k])
+                                           + holdKw * (runToEnd - prefix[reach]));
+                    if (k == 0) {
+                        firstCost[i] = cost;
+                    }
+                    if (cost <= bestCost[i]) { // Ties go to the later start
+                        bestCost[i] = cost;
+                        bestStep[i] = k;
+                    }
+                }
+                coastDeviation[i] *= coastFactor[i];
+            }
+        }
+
+        Result result = new Result(zones);
+        for (int i = 0; i < zones; i++) {
+            boolean ok = bestStep[i] >= 0;
+            result.feasible[i] = ok;
+            result.startMillis[i] = ok ? nowMillis + bestStep[i] * stepMillis : nowMillis;
+            result.plannedCost[i] = ok ? bestCost[i] : 0.0;
+            result.immediateCost[i] = ok ? firstCost[i] : 0.0;
+        }
+        result.solveNanos = System.nanoTime() - started;
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package com.smarthome.energy;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * Time-of-use electricity tariff: one price per hour of the day.
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * PriceCurve tariff = PriceCurve.typicalTimeOfUse();
+ * double peak = tariff.priceAtHour(18);   // $0.32/kWh
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class PriceCurve {
+    private final double[] hourlyPrices;
+    private final ZoneId zone;
+
+    /**
+     * Creates a tariff from 24 hourly prices in the system time zone.
+     *
+     * @param hourlyPrices Price in $/kWh for each hour, starting at midnight
+     * @throws IllegalArgumentException if there are not 24 prices
+     */
+    public PriceCurve(double[] hourlyPrices) {
+        this(hourlyPrices, ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates a tariff from 24 hourly prices.
+     *
+     * @param hourlyPrices Price in $/kWh for each hour, starting at midnight
+     * @param zone Time zone the hours refer to
+     * @throws IllegalArgumentException if there are not 24 prices
+     */
+    public PriceCurve(double[] hourlyPrices, ZoneId zone) {
+        if (hourlyPrices.length != 24) {
+            throw new IllegalArgumentException("Need 24 hourly prices, got " + hourlyPrices.length);
+        }
+        this.hourlyPrices = Arrays.copyOf(hourlyPrices, 24);
+        this.zone = zone;
+    }
+
+    /**
+     * Creates a common three-tier tariff: off-peak overnight, mid-peak
+     * during the day and on-peak 4 PM to 9 PM.
+     *
+     * @return The tariff
+     */
+    public static PriceCurve typicalTimeOfUse() {
+        double[] prices = new double[24];
+        for (int hour = 0; hour < 24; hour++) {
+            if (hour >= 16 && hour < 21) {
+                prices[hour] = 0.32;
+            } else if (hour >= 7 && hour < 16) {
+                prices[hour] = 0.16;
+            } else {
+                prices[hour] = 0.09;
+            }
+        }
+        return new PriceCurve(prices);
+    }
+
+    /**
+     * Creates a flat tariff.
+     *
+     * @param price Price in $/kWh at every hour
+     * @return The tariff
+     */
+    public static PriceCurve flat(double price) {
+        double[] prices = new double[24];
+        Arrays.fill(prices, price);
+        return new PriceCurve(prices);
+    }
+
+    public double priceAtHour(int hour) {
+        return hourlyPrices[hour];
+    }
+
+    /**
+     * Gets the price in effect at a moment.
+     *
+     * @param epochMillis The moment
+     * @return Price in $/kWh
+     */
+    public double priceAt(long epochMillis) {
+        return hourlyPrices[hourOfDay(epochMillis, zone)];
+    }
+
+    /**
+     * Samples the tariff at fixed steps, for planners that integrate cost.
+     *
+     * @param startMillis First sample time
+     * @param stepMillis Time between samples
+     * @param steps Number of samples
+     * @return Price at the start of each step
+     */
+    public double[] sample(long startMillis, long stepMillis, int steps) {
+        double[] prices = new double[steps];
+        for (int k = 0; k < steps; k++) {
+            prices[k] = priceAt(startMillis + k * stepMillis);
+        }
+        return prices;
+    }
+
+    static int hourOfDay(long epochMillis, ZoneId zone) {
+        long offsetSeconds = zone.getRules().getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds();
+        long localSeconds = Math.floorDiv(epochMillis, 1000) + offsetSeconds;
+        return Math.floorMod(Math.floorDiv(localSeconds, 3600), 24);
+    }
+}
@@ -0,0 +1,350 @@
+package com.smarthome.energy;
+
+import com.smarthome.devices.Thermostat;
+import java.util.Arrays;
+
+/**
+ * Thermal simulation of many zones at once, one zone per thermostat.
+ *
+ * <p>Each zone is a first-order RC circuit: heat leaks to the outdoors
+ * through resistance R (°F per kW) and is stored in capacitance C
+ * (kWh per °F). With HVAC output q (kW, positive heats, negative cools)
+ * and outdoor temperature T<sub>out</sub>, the room settles towards
+ * T<sub>out</sub> + qR with time constant RC. Each step uses the exact
+ * solution of that equation, so large steps stay stable.</p>
+ *
+ * <p>All per-zone state lives in parallel primitive arrays and a step is
+ * one tight loop over them, so a step over thousands of zones takes well
+ * under a millisecond. Thermostats are only touched by
+ * {@link #readThermostats()} and {@link #writeThermostats()}.</p>
+ *
+ * <p>Zones may carry a planned start time from a
+ * {@link PreconditioningPlanner}: until then the HVAC stays off and the
+ * room coasts; after it, the zone is held at its setpoint.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class ThermalFleet {
+    /** No plan: the zone follows its thermostat right away. */
+    public static final long NO_PLAN = Long.MIN_VALUE;
+
+    private static final double DEADBAND = 0.5; // °F either side of setpoint
+
+    private int size;
+    private Thermostat[] thermostats;
+    private double[] temperature;    // °F
+    private double[] resistance;     // °F per kW
+    private double[] capacitance;    // kWh per °F
+    private double[] capacityKw;     // HVAC thermal output
+    private double[] efficiency;     // Coefficient of performance (heat moved per kW drawn)
+    private double[] setpoint;       // °F
+    private boolean[] enabled;       // Thermostat on
+    private boolean[] running;       // HVAC currently running
+    private long[] plannedStart;     // Epoch millis, or NO_PLAN
+    private double[] energyKwh;      // Electricity used
+    private double[] costDollars;    // Cost of that electricity
+
+    private final OutdoorTemperatureModel outdoor;
+    private final PriceCurve prices;
+
+    /**
+     * Creates an empty fleet.
+     *
+     * @param outdoor Outdoor temperature model
+     * @param prices Electricity tariff used to cost the energy
+     */
+    public ThermalFleet(OutdoorTemperatureModel outdoor, PriceCurve prices) {
+        this.outdoor = outdoor;
+        this.prices = prices;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        thermostats = Arrays.copyOf(thermostats == null ? new Thermostat[0] : thermostats, capacity);
+        temperature = grow(temperature, capacity);
+        resistance = grow(resistance, capacity);
+        capacitance = grow(capacitance, capacity);
+        capacityKw = grow(capacityKw, capacity);
+        efficiency = grow(efficiency, capacity);
+        setpoint = grow(setpoint, capacity);
+        energyKwh = grow(energyKwh, capacity);
+        costDollars = grow(costDollars, capacity);
+        enabled = enabled == null ? new boolean[capacity] : Arrays.copyOf(enabled, capacity);
+        running = running == null ? new boolean[capacity] : Arrays.copyOf(running, capacity);
+        long[] plans = plannedStart == null ? new long[0] : plannedStart;
+        plannedStart = Arrays.copyOf(plans, capacity);
+        Arrays.fill(plannedStart, plans.length, capacity, NO_PLAN);
+    }
+
+    private static double[] grow(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * Adds a zone with typical single-family-home parameters
+     * (R = 3 °F/kW, C = 2 kWh/°F, 10 kW heat pump, COP 3).
+     *
+     * @param thermostat The zone's thermostat
+     * @return The zone index
+     */
+    public int addZone(Thermostat thermostat) {
+        return addZone(thermostat, 3.0, 2.0, 10.0, 3.0);
+    }
+
+    /**
+     * Adds a zone controlled by a thermostat. The thermostat's current
+     * temperature is taken over by the simulation.
+     *
+     * @param thermostat The zone's thermostat, or null for a simulated-only zone
+     * @param resistanceFPerKw Thermal resistance to outdoors (°F per kW)
+     * @param capacitanceKwhPerF Thermal mass (kWh per °F)
+     * @param hvacCapacityKw Heating/cooling output (kW thermal)
+     * @param cop Coefficient of performance
+     * @return The zone index
+     */
+    public int addZone(Thermostat thermostat, double resistanceFPerKw, double capacitanceKwhPerF,
+                       double hvacCapacityKw, double cop) {
+        if (size == temperature.length) {
+            allocate(size * 2);
+        }
+        int zone = size++;
+        thermostats[zone] = thermostat;
+        resistance[zone] = resistanceFPerKw;
+        capacitance[zone] = capacitanceKwhPerF;
+        capacityKw[zone] = hvacCapacityKw;
+        efficiency[zone] = cop;
+        if (thermostat != null) {
+            thermostat.setModelDriven(true);
+            temperature[zone] = thermostat.getCurrentTemp();
+            setpoint[zone] = thermostat.getTargetTemp();
+            enabled[zone] = thermostat.isOn();
+        } else {
+            temperature[zone] = 70.0;
+            setpoint[zone] = 70.0;
+        }
+        return zone;
+    }
+
+    /**
+     * Copies setpoints and on/off state from the thermostats.
+     */
+    public void readThermostats() {
+        for (int i = 0; i < size; i++) {
+            Thermostat thermostat = thermostats[i];
+            if (thermostat != null) {
+                setpoint[i] = thermostat.getTargetTemp();
+                enabled[i] = thermostat.isOn();
+            }
+        }
+    }
+
+    /**
+     * Reports the simulated temperatures back to the thermostats.
+     * Only readings that moved by at least 0.1 °F are sent.
+     */
+    public void writeThermostats() {
+        for (int i = 0; i < size; i++) {
+            Thermostat thermostat = thermostats[i];
+            if (thermostat != null && Math.abs(thermostat.getCurrentTemp() - temperature[i]) >= 0.1) {
+                thermostat.setCurrentTemp(Math.round(temperature[i] * 10) / 10.0);
+            }
+        }
+    }
+
+    /**
+     * Advances every zone by one time step.
+     *
+     * @param nowMillis Time at the start of the step
+     * @param stepMillis Length of the step
+     */
+    public void step(long nowMillis, long stepMillis) {
+        double hours = stepMillis / 3_600_000.0;
+        double outside = outdoor.temperatureAt(nowMillis);
+        double price = prices.priceAt(nowMillis);
+
+        for (int i = 0; i < size; i++) {
+            double t = temperature[i];
+            double sp = setpoint[i];
+            boolean active = enabled[i] && (plannedStart[i] == NO_PLAN || nowMillis >= plannedStart[i]);
+
+            // Bang-bang control with a deadband, heating or cooling towards the setpoint
+            double direction = sp >= outside ? 1.0 : -1.0;
+            boolean on = running[i];
+            double error = (sp - t) * direction;
+            if (!active || error < -DEADBAND) {
+                on = false;
+            } else if (error > DEADBAND) {
+                on = true;
+            }
+            running[i] = on;
+
+            double q = on ? direction * capacityKw[i] : 0.0;
+            double r = resistance[i];
+            double settle = outside + q * r;
+            temperature[i] = settle + (t - settle) * Math.exp(-hours / (r * capacitance[i]));
+
+            if (on) {
+                double kwh = capacityKw[i] / efficiency[i] * hours;
+                energyKwh[i] += kwh;
+                costDollars[i] += kwh * price;
+            }
+        }
+    }
+
+    /**
+     * Sets when a zone may start conditioning.
+     *
+     * @param zone The zone index
+     * @param startMillis Epoch millis, or {@link #NO_PLAN}
+     */
+    public void setPlannedStart(int zone, long startMillis) {
+        plannedStart[zone] = startMillis;
+    }
+
+    /**
+     * Clears every zone's planned start.
+     */
+    public void clearPlans() {
+        Arrays.fill(plannedStart, 0, size, NO_PLAN);
+    }
+
+    /**
+     * Gets the electricity the fleet draws right now.
+     *
+     * @return Total HVAC draw in kW
+     */
+    public double getCurrentDrawKw() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            if (running[i]) {
+                total += capacityKw[i] / efficiency[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the electricity one zone draws right now.
+     *
+     * @param zone The zone index
+     * @return HVAC draw in kW
+     */
+    public double getDrawKw(int zone) {
+        return running[zone] ? capacityKw[zone] / efficiency[zone] : 0.0;
+    }
+
+    /**
+     * Gets the total cost so far.
+     *
+     * @return Cost in dollars
+     */
+    public double getTotalCost() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += costDollars[i];
+        }
+        return total;
+    }
+
+    /**
+     * Gets the total electricity used so far.
+     *
+     * @return Energy in kWh
+     */
+    public double getTotalEnergyKwh() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += energyKwh[i];
+        }
+        return total;
+    }
+
+    /**
+     * Resets the energy and cost counters.
+     */
+    public void resetCounters() {
+        Arrays.fill(energyKwh, 0, size, 0.0);
+        Arrays.fill(costDollars, 0, size, 0.0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getTemperature(int zone) {
+        return temperature[zone];
+    }
+
+    /**
+     * Overrides a zone's temperature, e.g. to set up a scenario.
+     *
+     * @param zone The zone index
+     * @param temp Temperature (°F)
+     */
+    public void setTemperature(int zone, double temp) {
+        temperature[zone] = temp;
+    }
+
+    /**
+     * Sets a zone's setpoint and on/off state directly, for zones
+     * without a thermostat.
+     *
+     * @param zone The zone index
+     * @param target Setpoint (°F)
+     * @param on Whether conditioning is enabled
+     */
+    public void setSetpoint(int zone, double target, boolean on) {
+        setpoint[zone] = target;
+        enabled[zone] = on;
+    }
+
+    public double getSetpoint(int zone) {
+        return setpoint[zone];
+    }
+
+    public boolean isRunning(int zone) {
+        return running[zone];
+    }
+
+    public long getPlannedStart(int zone) {
+        return plannedStart[zone];
+    }
+
+    public Thermostat getThermostat(int zone) {
+        return thermostats[zone];
+    }
+
+    public OutdoorTemperatureModel getOutdoor() {
+        return outdoor;
+    }
+
+    public PriceCurve getPrices() {
+        return prices;
+    }
+
+    // Package-private views for the planner, which works on the same arrays
+    double[] temperatures() {
+        return temperature;
+    }
+
+    double[] resistances() {
+        return resistance;
+    }
+
+    double[] capacitances() {
+        return capacitance;
+    }
+
+    double[] capacities() {
+        return capacityKw;
+    }
+
+    double[] efficiencies() {
+        return efficiency;
+    }
+
+    double[] setpoints() {
+        return setpoint;
+    }
+}
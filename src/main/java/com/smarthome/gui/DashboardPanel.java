@@ -0,0 +1,418 @@
+package com.smarthome.gui;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.EnergyMonitorDecorator;
+
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Whole-home dashboard: every device as one tile of a heatmap.
+ *
+ * <p>Tiles are drawn into a back buffer image, straight into its pixel
+ * array. {@link #devicesChanged(Collection)} is handed the devices that
+ * changed in a frame (the {@link DeviceBridge} collects them from
+ * observer events), redraws only those tiles whose color actually
+ * changed, and asks Swing to repaint the rectangle around them. Painting
+ * copies that part of the back buffer to the screen, so a frame costs
+ * the same whether the home has 50 devices or 50,000, only the number of
+ * changed devices matters.</p>
+ *
+ * <p>Tiles can be colored by on/off state, brightness, target
+ * temperature or current power draw. Hovering over a tile shows the
+ * device's status. All methods must be called on the EDT.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * DashboardPanel dashboard = new DashboardPanel();
+ * dashboard.addDevices(controller.getAllDevices());
+ * DeviceBridge bridge = new DeviceBridge(controller, dashboard::devicesChanged);
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DashboardPanel extends JComponent {
+    /**
+     * What the tile colors show.
+     */
+    public enum ColorMode {
+        STATE("On / Off"),
+        BRIGHTNESS("Brightness"),
+        TEMPERATURE("Temperature"),
+        ENERGY("Power Draw");
+
+        private final String label;
+
+        ColorMode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final int MIN_PITCH = 2;
+    private static final int MAX_PITCH = 24;
+    private static final double COLD_TEMP = 60;
+    private static final double HOT_TEMP = 85;
+
+    private static final int BACKGROUND = 0x202028;
+    private static final int OFF = 0x3C3C46;
+    private static final int ON = 0x4CAF50;
+    private static final int NOT_APPLICABLE = 0x2C2C34;
+
+    private final List<Tile> tiles;
+    private final Map<SmartDevice, Tile> tileOf;
+    private ColorMode mode = ColorMode.STATE;
+    private double maxRatedKw;
+
+    // Back buffer and its layout
+    private BufferedImage buffer;
+    private int[] pixels;
+    private int columns;
+    private int pitch;
+    private int tileSize;
+
+    private long framesRendered;
+    private long tilesPainted;
+    private long maxRenderNanos;
+
+    /**
+     * Creates an empty dashboard.
+     */
+    public DashboardPanel() {
+        this.tiles = new ArrayList<>();
+        this.tileOf = new IdentityHashMap<>();
+        setOpaque(true);
+        setPreferredSize(new Dimension(600, 400));
+        ToolTipManager.sharedInstance().registerComponent(this);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                relayout();
+            }
+        });
+    }
+
+    /**
+     * Adds tiles for devices.
+     *
+     * @param devices The devices
+     */
+    public void addDevices(Collection<? extends SmartDevice> devices) {
+        int first = tiles.size();
+        for (SmartDevice device : devices) {
+            if (tileOf.containsKey(device)) {
+                continue;
+            }
+            Tile tile = new Tile(device, tiles.size());
+            tiles.add(tile);
+            tileOf.put(device, tile);
+            if (tile.energy != null) {
+                maxRatedKw = Math.max(maxRatedKw, tile.energy.getRatedPowerKw());
+            }
+        }
+        if (tilesFit()) {
+            paintTiles(tiles.subList(first, tiles.size()));
+        } else {
+            relayout();
+        }
+    }
+
+    /**
+     * Removes a device's tile; the last tile moves into its place.
+     *
+     * @param device The device
+     * @return true if the device had a tile
+     */
+    public boolean removeDevice(SmartDevice device) {
+        Tile tile = tileOf.remove(device);
+        if (tile == null) {
+            return false;
+        }
+        Tile last = tiles.remove(tiles.size() - 1);
+        List<Tile> changed = new ArrayList<>();
+        if (last != tile) {
+            last.index = tile.index;
+            tiles.set(tile.index, last);
+            last.color = -1;
+            changed.add(last);
+        }
+        if (buffer != null) {
+            fillTile(tiles.size(), BACKGROUND); // The slot the last tile left
+            repaint(tileBounds(tiles.size()));
+        }
+        paintTiles(changed);
+        return true;
+    }
+
+    /**
+     * Redraws the tiles of devices that changed. Meant to be called once
+     * per frame with everything that changed since the last one.
+     *
+     * @param changed The devices that changed
+     */
+    public void devicesChanged(Collection<SmartDevice> changed) {
+        List<Tile> dirty = new ArrayList<>(changed.size());
+        for (SmartDevice device : changed) {
+            Tile tile = tileOf.get(device);
+            if (tile != null) {
+                dirty.add(tile);
+            }
+        }
+        paintTiles(dirty);
+    }
+
+    /**
+     * Sets what the tile colors show, and redraws every tile.
+     *
+     * @param mode The color mode
+     */
+    public void setColorMode(ColorMode mode) {
+        if (this.mode != mode) {
+            this.mode = mode;
+            for (Tile tile : tiles) {
+                tile.color = -1;
+            }
+            paintTiles(tiles);
+        }
+    }
+
+    /**
+     * Gets what the tile colors show.
+     *
+     * @return The color mode
+     */
+    public ColorMode getColorMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the number of tiles.
+     *
+     * @return The tile count
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Gets the number of frames that redrew at least one tile.
+     *
+     * @return The frame count
+     */
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    /**
+     * Gets the number of tile redraws so far.
+     *
+     * @return The tile redraw count
+     */
+    public long getTilesPainted() {
+        return tilesPainted;
+    }
+
+    /**
+     * Gets the longest time one frame spent redrawing tiles.
+     *
+     * @return The longest render in milliseconds
+     */
+    public double getMaxRenderMillis() {
+        return maxRenderNanos / 1e6;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(new Color(BACKGROUND));
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (buffer != null) {
+            // Copies just the clipped part of the back buffer
+            g.drawImage(buffer, 0, 0, null);
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        if (pitch == 0 || event.getX() >= columns * pitch) {
+            return null;
+        }
+        int index = event.getY() / pitch * columns + event.getX() / pitch;
+        return index < tiles.size() ? tiles.get(index).device.getStatus() : null;
+    }
+
+    /**
+     * Redraws the given tiles whose color changed and schedules one
+     * repaint covering them.
+     */
+    private void paintTiles(List<Tile> dirty) {
+        if (buffer == null || dirty.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        int painted = 0;
+        for (Tile tile : dirty) {
+            int color = colorOf(tile);
+            if (color == tile.color) {
+                continue; // Changed, but not in a way this mode shows
+            }
+            tile.color = color;
+            fillTile(tile.index, color);
+            int x = tile.index % columns * pitch;
+            int y = tile.index / columns * pitch;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x + pitch);
+            maxY = Math.max(maxY, y + pitch);
+            painted++;
+        }
+        if (painted > 0) {
+            repaint(minX, minY, maxX - minX, maxY - minY);
+            framesRendered++;
+            tilesPainted += painted;
+            long elapsed = System.nanoTime() - started;
+            if (elapsed > maxRenderNanos) {
+                maxRenderNanos = elapsed;
+            }
+        }
+    }
+
+    private void fillTile(int index, int color) {
+        int width = buffer.getWidth();
+        int x = index % columns * pitch;
+        int y = index / columns * pitch;
+        for (int row = y; row < y + tileSize; row++) {
+            int offset = row * width + x;
+            for (int col = 0; col < tileSize; col++) {
+                pixels[offset + col] = color;
+            }
+        }
+    }
+
+    private Rectangle tileBounds(int index) {
+        return new Rectangle(index % columns * pitch, index / columns * pitch, pitch, pitch);
+    }
+
+    private boolean tilesFit() {
+        return buffer != null && (long) columns * (buffer.getHeight() / pitch) >= tiles.size();
+    }
+
+    /**
+     * Picks the largest tile size that fits every tile in the panel and
+     * redraws the back buffer from scratch.
+     */
+    private void relayout() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int count = Math.max(1, tiles.size());
+        pitch = (int) Math.sqrt((double) width * height / count);
+        while (pitch > MIN_PITCH && (long) (width / pitch) * (height / pitch) < count) {
+            pitch--;
+        }
+        pitch = Math.max(MIN_PITCH, Math.min(MAX_PITCH, pitch));
+        tileSize = pitch >= 4 ? pitch - 1 : pitch; // One pixel of grout when tiles are big enough
+        columns = Math.max(1, width / pitch);
+        // Fill the panel, so devices added later usually fit without a relayout
+        int rows = Math.max(height / pitch, (tiles.size() + columns - 1) / columns);
+
+        buffer = new BufferedImage(columns * pitch, Math.max(1, rows) * pitch, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, BACKGROUND);
+        for (Tile tile : tiles) {
+            tile.color = -1;
+        }
+        paintTiles(tiles);
+        repaint();
+    }
+
+    private int colorOf(Tile tile) {
+        SmartDevice device = tile.device;
+        switch (mode) {
+            case BRIGHTNESS:
+                if (tile.dimmable == null) {
+                    return device.isOn() ? ON : NOT_APPLICABLE;
+                }
+                return device.isOn() ? blend(0x5A5A32, 0xFFEB3B, tile.dimmable.getBrightness() / 100.0) : OFF;
+            case TEMPERATURE:
+                if (tile.thermostat == null) {
+                    return NOT_APPLICABLE;
+                }
+                double warmth = (tile.thermostat.getTargetTemp() - COLD_TEMP) / (HOT_TEMP - COLD_TEMP);
+                return blend(0x2196F3, 0xF44336, warmth);
+            case ENERGY:
+                if (tile.energy == null) {
+                    return NOT_APPLICABLE;
+                }
+                double draw = maxRatedKw > 0 ? tile.energy.getCurrentPowerKw() / maxRatedKw : 0;
+                return draw <= 0 ? OFF : blend(0x4A3000, 0xFF9800, Math.sqrt(draw)); // Small loads stay visible
+            default:
+                return device.isOn() ? ON : OFF;
+        }
+    }
+
+    private static int blend(int from, int to, double amount) {
+        double t = Math.max(0, Math.min(1, amount));
+        int r = (int) (((from >> 16) & 0xFF) + (((to >> 16) & 0xFF) - ((from >> 16) & 0xFF)) * t);
+        int g = (int) (((from >> 8) & 0xFF) + (((to >> 8) & 0xFF) - ((from >> 8) & 0xFF)) * t);
+        int b = (int) ((from & 0xFF) + ((to & 0xFF) - (from & 0xFF)) * t);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * One device's tile, with the capabilities its colors read looked up
+     * once.
+     */
+    private static final class Tile {
+        private final SmartDevice device;
+        private final Dimmable dimmable;
+        private final Thermostatic thermostat;
+        private final EnergyMonitorDecorator energy;
+        private int index;
+        private int color = -1;
+
+        Tile(SmartDevice device, int index) {
+            this.device = device;
+            this.index = index;
+            Capabilities capabilities = Capabilities.of(device);
+            this.dimmable = capabilities.dimmable();
+            this.thermostat = capabilities.thermostatic();
+            this.energy = DeviceDecorator.findLayer(device, EnergyMonitorDecorator.class);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.smarthome.gui;
+
+import com.smarthome.behavioral.Observer;
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.DeviceTimers;
+import com.smarthome.devices.SmartDevice;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Bridge between the Swing GUI and the device core.
+ *
+ * <p>Device work (commands, room actuation, strategy switches, building
+ * status text) runs on one worker thread, so a slow device or a long
+ * observer cascade never blocks the Event Dispatch Thread. The bridge
+ * is also the controller's command executor (see
+ * {@code CentralController.setCommandExecutor}), so submitted commands
+ * and command ring traffic run on the same worker, and device timers
+ * and schedules started there come back to it. Devices and their
+ * observer lists are therefore only ever changed by that one thread.
+ * Going the other way, nothing touches Swing directly: log lines,
+ * changed devices and UI updates are queued from any thread and applied
+ * by a single {@code invokeLater} flush, at most once per
+ * {@value #FRAME_MS} ms frame.</p>
+ *
+ * <p>A flush hands each {@link LogView} its queued lines as one batch,
+ * hands
+ * the GUI every device that changed since the last frame (each once, no
+ * matter how often it changed), then runs queued UI updates until
+ * {@value #FRAME_BUDGET_MS} ms have gone by. Whatever is left waits for
+ * the next frame, leaving the EDT time to paint.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * DeviceBridge bridge = new DeviceBridge(controller, changed -> refresh(changed));
+ * controller.setCommandExecutor(bridge);
+ * bridge.execute(() -> room.turnOn());
+ * bridge.execute(() -> room.getStatus(), text -> detailsArea.setText(text));
+ * bridge.append(statusLog, "Turned on " + light.getName());
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DeviceBridge implements Observer, Executor {
+    public static final int FRAME_MS = 16;
+    public static final int FRAME_BUDGET_MS = 8;
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(FRAME_MS);
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(FRAME_BUDGET_MS);
+
+    private final CentralController controller;
+    private final ExecutorService worker;
+    private final Consumer<Set<SmartDevice>> devicesChanged;
+    private final Map<Object, Runnable> latest;
+
+    // Written from any thread, drained by the flush on the EDT
+    private final ConcurrentLinkedQueue<Runnable> uiUpdates;
+    private final Map<SmartDevice, Boolean> dirty;
+    private final Map<LogView, PendingLines> pendingLines;
+    private final AtomicBoolean flushQueued;
+
+    // EDT only
+    private Timer frameTimer;
+    private long lastFlushNanos;
+
+    private volatile Consumer<Exception> errorHandler;
+    private volatile long flushCount;
+    private volatile long maxFlushNanos;
+
+    /**
+     * Creates a bridge and starts listening for device changes.
+     *
+     * @param controller The controller whose devices the GUI shows
+     * @param devicesChanged Called on the EDT with the devices that changed in a frame
+     */
+    public DeviceBridge(CentralController controller, Consumer<Set<SmartDevice>> devicesChanged) {
+        this.controller = controller;
+        this.devicesChanged = devicesChanged;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                DeviceTimers.bindExecutor(this); // Timers set from device work come back here
+                runnable.run();
+            }, "gui-device-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.latest = new ConcurrentHashMap<>();
+        this.uiUpdates = new ConcurrentLinkedQueue<>();
+        this.dirty = new ConcurrentHashMap<>();
+        this.pendingLines = new LinkedHashMap<>();
+        this.flushQueued = new AtomicBoolean();
+        this.errorHandler = e -> System.out.println("[GUI] Background task failed: " + e);
+        controller.addStateListener(this);
+    }
+
+    /**
+     * Sets what happens when worker code throws. Called on the EDT.
+     *
+     * @param handler The error handler
+     */
+    public void setErrorHandler(Consumer<Exception> handler) {
+        this.errorHandler = handler;
+    }
+
+    /**
+     * Runs device work on the worker thread.
+     *
+     * @param work The work
+     */
+    @Override
+    public void execute(Runnable work) {
+        worker.execute(() -> run(work));
+    }
+
+    /**
+     * Runs device work on the worker thread and hands its result to
+     * the EDT.
+     *
+     * @param work The work
+     * @param onEdt Receives the result on the EDT
+     */
+    public <T> void execute(Callable<T> work, Consumer<? super T> onEdt) {
+        execute(work, onEdt, null);
+    }
+
+    /**
+     * Runs device work on the worker thread and hands its result, or
+     * the exception it threw, to the EDT.
+     *
+     * @param work The work
+     * @param onEdt Receives the result on the EDT
+     * @param onError Receives the failure on the EDT, or null for the error handler
+     */
+    public <T> void execute(Callable<T> work, Consumer<? super T> onEdt, Consumer<? super Exception> onError) {
+        worker.execute(() -> {
+            try {
+                T result = work.call();
+                post(() -> onEdt.accept(result));
+            } catch (Exception e) {
+                post(() -> {
+                    if (onError != null) {
+                        onError.accept(e);
+                    } else {
+                        errorHandler.accept(e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs device work on the worker thread, replacing any work with the
+     * same key that has not started yet. Used for slider drags, where
+     * only the last value matters.
+     *
+     * @param key Identifies the kind of work
+     * @param work The work
+     */
+    public void executeLatest(Object key, Runnable work) {
+        if (latest.put(key, work) == null) {
+            worker.execute(() -> {
+                Runnable newest = latest.remove(key);
+                if (newest != null) {
+                    run(newest);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues a UI update for the next frame. Safe to call from any thread.
+     *
+     * @param update Code that touches Swing
+     */
+    public void post(Runnable update) {
+        uiUpdates.add(update);
+        requestFlush();
+    }
+
+    /**
+     * Queues log text for a log view; everything queued for a view in one
+     * frame is appended as one batch. Text with line breaks becomes
+     * several lines. Once more lines are queued than the view holds, the
+     * oldest queued ones are dropped, as the view would drop them anyway.
+     * Safe to call from any thread.
+     *
+     * @param view The log view
+     * @param text The text to append
+     */
+    public void append(LogView view, String text) {
+        String[] lines = text.split("\n");
+        synchronized (pendingLines) {
+            PendingLines pending = pendingLines.get(view);
+            if (pending == null) {
+                pending = new PendingLines(view.getCapacity());
+                pendingLines.put(view, pending);
+            }
+            for (String line : lines) {
+                pending.add(line);
+            }
+        }
+        requestFlush();
+    }
+
+    /**
+     * Observer pattern implementation: remembers the device so the GUI
+     * refreshes it in the next frame.
+     *
+     * @param device The device that changed
+     */
+    @Override
+    public void update(SmartDevice device) {
+        dirty.put(device, Boolean.TRUE);
+        requestFlush();
+    }
+
+    /**
+     * Stops listening to the controller and stops the worker after the
+     * work already queued.
+     */
+    public void shutdown() {
+        controller.removeStateListener(this);
+        worker.shutdown();
+    }
+
+    /**
+     * Waits for the worker to finish after {@link #shutdown()}.
+     *
+     * @param timeout How long to wait
+     * @param unit Unit of the timeout
+     * @return true if the worker finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return worker.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Gets the number of frames flushed so far.
+     *
+     * @return The flush count
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Gets the longest time a flush has held the EDT.
+     *
+     * @return The longest flush in milliseconds
+     */
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+
+    private void run(Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            post(() -> errorHandler.accept(e));
+        }
+    }
+
+    private void requestFlush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * Applies everything queued since the last frame. Runs on the EDT.
+     */
+    private void flush() {
+        long started = System.nanoTime();
+        long wait = lastFlushNanos + FRAME_NANOS - started;
+        if (flushCount > 0 && wait > 0) {
+            // Too soon after the last frame; come back when the frame is due
+            if (frameTimer == null) {
+                frameTimer = new Timer(FRAME_MS, e -> flush());
+                frameTimer.setRepeats(false);
+            }
+            frameTimer.setInitialDelay((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            frameTimer.restart();
+            return;
+        }
+        flushQueued.set(false); // Anything queued from here on asks for the next frame
+
+        Map<LogView, PendingLines> logs;
+        synchronized (pendingLines) {
+            logs = new IdentityHashMap<>(pendingLines);
+            pendingLines.clear();
+        }
+        for (Map.Entry<LogView, PendingLines> entry : logs.entrySet()) {
+            PendingLines pending = entry.getValue();
+            entry.getKey().appendLines(pending.lines(), pending.dropped);
+        }
+
+        if (!dirty.isEmpty()) {
+            Set<SmartDevice> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Iterator<SmartDevice> it = dirty.keySet().iterator(); it.hasNext();) {
+                changed.add(it.next());
+                it.remove();
+            }
+            devicesChanged.accept(changed);
+        }
+
+        Runnable update;
+        while ((update = uiUpdates.poll()) != null) {
+            update.run();
+            if (System.nanoTime() - started > FRAME_BUDGET_NANOS && !uiUpdates.isEmpty()) {
+                requestFlush(); // Out of budget; the rest waits for the next frame
+                break;
+            }
+        }
+
+        long finished = System.nanoTime();
+        lastFlushNanos = finished;
+        flushCount++;
+        if (finished - started > maxFlushNanos) {
+            maxFlushNanos = finished - started;
+        }
+    }
+
+    /**
+     * Lines queued for one log view, at most as many as it holds.
+     */
+    private static class PendingLines {
+        private final int capacity;
+        private final List<String> lines = new ArrayList<>();
+        private int start;   // Lines before this index were dropped
+        private long dropped;
+
+        PendingLines(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(String line) {
+            lines.add(line);
+            if (lines.size() - start > capacity) {
+                lines.set(start++, null);
+                dropped++;
+                if (start >= capacity) { // Compact now and then rather than on every drop
+                    lines.subList(0, start).clear();
+                    start = 0;
+                }
+            }
+        }
+
+        List<String> lines() {
+            return lines.subList(start, lines.size());
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.smarthome.gui;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.EnergyMonitorDecorator;
+import com.smarthome.structural.Room;
+
+import javax.swing.AbstractListModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import java.awt.Component;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * List model for the GUI's device list, and the GUI's registry of the
+ * devices it shows.
+ *
+ * <p>Rows are the devices themselves, not display strings, so selecting
+ * a row gives the device directly. Adding or removing devices fires one
+ * interval event for the rows that changed, which lets a list with
+ * 100,000 devices take a new device without being rebuilt.</p>
+ *
+ * <p>A search query narrows the rows to matching devices: names that
+ * start with the query first, then names with a word that starts with
+ * it, then names containing its letters in order ("lvrm" finds "Living
+ * Room Light"). Typing more letters only rechecks the previous matches.
+ * With grouping on, each room's devices follow a {@link RoomHeader} row;
+ * rooms without matching devices are left out.</p>
+ *
+ * <p>Not thread-safe; used on the EDT.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DeviceListModel extends AbstractListModel<Object> {
+    private static final int NAME_PREFIX = 0;
+    private static final int WORD_PREFIX = 1;
+    private static final int IN_ORDER = 2;
+    private static final int NO_MATCH = -1;
+
+    private final List<Entry> devices;                  // Registry order
+    private final Map<SmartDevice, Entry> entries;
+    private final Map<String, SmartDevice> byName;
+    private final Map<Room, RoomHeader> groups;         // First-seen order; null key for no room
+    private final List<Object> rows;
+
+    private String query = "";
+    private List<Entry> matches; // Devices passing the query, best first; null without a query
+    private boolean grouped;
+
+    /**
+     * Creates an empty model.
+     */
+    public DeviceListModel() {
+        this.devices = new ArrayList<>();
+        this.entries = new IdentityHashMap<>();
+        this.byName = new HashMap<>();
+        this.groups = new LinkedHashMap<>();
+        this.rows = new ArrayList<>();
+    }
+
+    /**
+     * Adds a device.
+     *
+     * @param device The device
+     * @param room The room it is in, or null
+     */
+    public void addDevice(SmartDevice device, Room room) {
+        addDevices(room, List.of(device));
+    }
+
+    /**
+     * Adds devices that are all in one room, with a single list event.
+     *
+     * @param room The room they are in, or null
+     * @param newDevices The devices
+     */
+    public void addDevices(Room room, Collection<? extends SmartDevice> newDevices) {
+        RoomHeader group = groups.get(room);
+        if (group == null) {
+            group = new RoomHeader(room);
+            groups.put(room, group);
+        }
+        List<Entry> shown = new ArrayList<>();
+        String wordStart = " " + query;
+        for (SmartDevice device : newDevices) {
+            Entry entry = new Entry(device, group);
+            if (entries.put(device, entry) != null) {
+                throw new IllegalArgumentException("Device already listed: " + device.getName());
+            }
+            devices.add(entry);
+            byName.put(device.getName(), device);
+            if (query.isEmpty() || score(entry.lowerName, query, wordStart) != NO_MATCH) {
+                shown.add(entry);
+            }
+        }
+        if (shown.isEmpty()) {
+            return;
+        }
+        if (matches != null) {
+            matches.addAll(shown); // New matches go last until the query changes
+        }
+
+        int at;
+        List<Object> added = new ArrayList<>(shown.size() + 1);
+        if (!grouped) {
+            at = rows.size();
+        } else {
+            at = groupEnd(group);
+            if (group.shown == 0) {
+                added.add(group);
+            }
+        }
+        for (Entry entry : shown) {
+            added.add(entry.device);
+        }
+        group.shown += shown.size();
+        rows.addAll(at, added);
+        fireIntervalAdded(this, at, at + added.size() - 1);
+    }
+
+    /**
+     * Removes a device.
+     *
+     * @param device The device
+     * @return true if it was listed
+     */
+    public boolean removeDevice(SmartDevice device) {
+        Entry entry = entries.remove(device);
+        if (entry == null) {
+            return false;
+        }
+        devices.remove(identityIndex(devices, entry));
+        if (byName.get(device.getName()) == device) {
+            byName.remove(device.getName());
+        }
+        if (matches != null) {
+            int match = identityIndex(matches, entry);
+            if (match >= 0) {
+                matches.remove(match);
+            }
+        }
+
+        int row = identityIndex(rows, device);
+        if (row < 0) {
+            return true; // Filtered out
+        }
+        RoomHeader group = entry.group;
+        group.shown--;
+        if (grouped && group.shown == 0) {
+            rows.subList(row - 1, row + 1).clear(); // The header sits right above its only device
+            fireIntervalRemoved(this, row - 1, row);
+        } else {
+            rows.remove(row);
+            fireIntervalRemoved(this, row, row);
+        }
+        return true;
+    }
+
+    /**
+     * Narrows the rows to devices matching a query. An empty query shows
+     * every device.
+     *
+     * @param text The query; case does not matter
+     */
+    public void setQuery(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(query)) {
+            return;
+        }
+        if (normalized.isEmpty()) {
+            matches = null;
+        } else {
+            // Anything matching a longer query matched the shorter one too
+            List<Entry> candidates = matches != null && normalized.startsWith(query) ? matches : devices;
+            List<List<Entry>> ranked = new ArrayList<>();
+            for (int i = NAME_PREFIX; i <= IN_ORDER; i++) {
+                ranked.add(new ArrayList<>());
+            }
+            String wordStart = " " + normalized;
+            for (Entry entry : candidates) {
+                int score = score(entry.lowerName, normalized, wordStart);
+                if (score != NO_MATCH) {
+                    ranked.get(score).add(entry);
+                }
+            }
+            List<Entry> found = new ArrayList<>();
+            for (List<Entry> rank : ranked) {
+                found.addAll(rank);
+            }
+            matches = found;
+        }
+        query = normalized;
+        rebuild();
+    }
+
+    /**
+     * Gets the current query.
+     *
+     * @return The query, lower case; empty when every device is shown
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Turns grouping by room on or off.
+     *
+     * @param grouped true to show devices under room headers
+     */
+    public void setGrouped(boolean grouped) {
+        if (this.grouped != grouped) {
+            this.grouped = grouped;
+            rebuild();
+        }
+    }
+
+    /**
+     * Checks whether devices are grouped by room.
+     *
+     * @return true if grouped
+     */
+    public boolean isGrouped() {
+        return grouped;
+    }
+
+    /**
+     * Gets a listed device by name.
+     *
+     * @param name The device name
+     * @return The device, or null if not listed
+     */
+    public SmartDevice getDevice(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Gets the room a listed device was added with.
+     *
+     * @param device The device
+     * @return The room, or null
+     */
+    public Room getRoom(SmartDevice device) {
+        Entry entry = entries.get(device);
+        return entry == null ? null : entry.group.room;
+    }
+
+    /**
+     * Gets the number of devices listed, whether shown or not.
+     *
+     * @return The device count
+     */
+    public int getDeviceCount() {
+        return devices.size();
+    }
+
+    /**
+     * Finds the row showing a device.
+     *
+     * @param device The device
+     * @return The row, or -1 if the device is not shown
+     */
+    public int indexOf(SmartDevice device) {
+        return device == null ? -1 : identityIndex(rows, device);
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        return rows.get(index);
+    }
+
+    private void rebuild() {
+        int oldSize = rows.size();
+        List<Entry> shown = matches != null ? matches : devices;
+        rows.clear();
+        for (RoomHeader group : groups.values()) {
+            group.shown = 0;
+        }
+        if (!grouped) {
+            for (Entry entry : shown) {
+                rows.add(entry.device);
+                entry.group.shown++;
+            }
+        } else {
+            Map<RoomHeader, List<SmartDevice>> byGroup = new IdentityHashMap<>();
+            for (Entry entry : shown) {
+                List<SmartDevice> members = byGroup.get(entry.group);
+                if (members == null) {
+                    members = new ArrayList<>();
+                    byGroup.put(entry.group, members);
+                }
+                members.add(entry.device);
+            }
+            for (RoomHeader group : groups.values()) {
+                List<SmartDevice> members = byGroup.get(group);
+                if (members != null) {
+                    group.shown = members.size();
+                    rows.add(group);
+                    rows.addAll(members);
+                }
+            }
+        }
+        fireContentsChanged(this, 0, Math.max(0, Math.max(oldSize, rows.size()) - 1));
+    }
+
+    /**
+     * Finds the row just past a group's last device; rooms are few, so
+     * this walks the groups rather than the rows.
+     */
+    private int groupEnd(RoomHeader target) {
+        int row = 0;
+        for (RoomHeader group : groups.values()) {
+            if (group.shown > 0) {
+                row += 1 + group.shown;
+            }
+            if (group == target) {
+                break;
+            }
+        }
+        return row;
+    }
+
+    private static int score(String name, String query, String wordStart) {
+        if (name.startsWith(query)) {
+            return NAME_PREFIX;
+        }
+        if (name.contains(wordStart)) {
+            return WORD_PREFIX;
+        }
+        int at = 0;
+        for (int i = 0; i < query.length() && at >= 0; i++) {
+            char c = query.charAt(i);
+            if (c != ' ') {
+                at = name.indexOf(c, at);
+                if (at >= 0) {
+                    at++;
+                }
+            }
+        }
+        return at >= 0 ? IN_ORDER : NO_MATCH;
+    }
+
+    private static int identityIndex(List<?> list, Object item) {
+        for (int i = list.size() - 1; i >= 0; i--) { // Recent devices are the likeliest to go
+            if (list.get(i) == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Header row for a room's group of devices.
+     */
+    public static final class RoomHeader {
+        private final Room room;
+        private int shown;
+
+        private RoomHeader(Room room) {
+            this.room = room;
+        }
+
+        /**
+         * Gets the room.
+         *
+         * @return The room, or null for devices without one
+         */
+        public Room getRoom() {
+            return room;
+        }
+
+        @Override
+        public String toString() {
+            return room == null ? "Unassigned" : room.getName();
+        }
+    }
+
+    /**
+     * What the model keeps per device.
+     */
+    private static final class Entry {
+        private final SmartDevice device;
+        private final RoomHeader group;
+        private final String lowerName;
+
+        Entry(SmartDevice device, RoomHeader group) {
+            this.device = device;
+            this.group = group;
+            this.lowerName = device.getName().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Renders devices with their badges (⚡ for energy-monitored devices,
+     * 🌀 for fans) and room headers in bold.
+     */
+    public static class Renderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            String text;
+            boolean header = value instanceof RoomHeader;
+            if (value instanceof SmartDevice) {
+                SmartDevice device = (SmartDevice) value;
+                text = (grouped(list) ? "    " : "") + device.getName() + badge(device);
+            } else {
+                text = String.valueOf(value);
+            }
+            JLabel label = (JLabel) super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            label.setFont(list.getFont().deriveFont(header ? Font.BOLD : Font.PLAIN));
+            return label;
+        }
+
+        private static boolean grouped(JList<?> list) {
+            return list.getModel() instanceof DeviceListModel && ((DeviceListModel) list.getModel()).isGrouped();
+        }
+
+        private static String badge(SmartDevice device) {
+            String badge = "";
+            if (DeviceDecorator.findLayer(device, EnergyMonitorDecorator.class) != null) {
+                badge += " ⚡";
+            }
+            if (Capabilities.of(device).speed() != null) {
+                badge += " 🌀";
+            }
+            return badge;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.smarthome.gui;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity ring of log lines.
+ *
+ * <p>Every line gets a sequence number, counting up from 0. Once the ring
+ * is full each new line overwrites the oldest one, so memory and the cost
+ * of an append stay the same no matter how long the log has been running.
+ * Lines are looked up by sequence number; {@link #getFirstSequence()} and
+ * {@link #getNextSequence()} bound the lines still held.</p>
+ *
+ * <p>Not thread-safe; the GUI only touches it on the EDT.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class LogBuffer {
+    private final String[] lines;
+    private long first; // Sequence of the oldest line held
+    private long next;  // Sequence the next line will get
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param capacity The most lines held at once
+     */
+    public LogBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.lines = new String[capacity];
+    }
+
+    /**
+     * Adds a line, dropping the oldest one if the buffer is full.
+     *
+     * @param line The line
+     * @return The line's sequence number
+     */
+    public long add(String line) {
+        long sequence = next++;
+        lines[index(sequence)] = line;
+        if (next - first > lines.length) {
+            first++;
+        }
+        return sequence;
+    }
+
+    /**
+     * Gets a line by sequence number.
+     *
+     * @param sequence The sequence number
+     * @return The line
+     * @throws IndexOutOfBoundsException if the line was dropped or not written yet
+     */
+    public String get(long sequence) {
+        if (sequence < first || sequence >= next) {
+            throw new IndexOutOfBoundsException("Line " + sequence + " not held (holding " + first +
+                                                ".." + (next - 1) + ")");
+        }
+        return lines[index(sequence)];
+    }
+
+    /**
+     * Drops every line. Sequence numbers keep counting.
+     */
+    public void clear() {
+        Arrays.fill(lines, null);
+        first = next;
+    }
+
+    /**
+     * Gets the sequence number of the oldest line held.
+     *
+     * @return The first sequence
+     */
+    public long getFirstSequence() {
+        return first;
+    }
+
+    /**
+     * Gets the sequence number the next line will get; also the number
+     * of lines ever added.
+     *
+     * @return The next sequence
+     */
+    public long getNextSequence() {
+        return next;
+    }
+
+    /**
+     * Gets the number of lines held.
+     *
+     * @return The size
+     */
+    public int size() {
+        return (int) (next - first);
+    }
+
+    /**
+     * Checks whether the next add drops a line.
+     *
+     * @return true if the buffer is full
+     */
+    public boolean isFull() {
+        return size() == lines.length;
+    }
+
+    /**
+     * Gets the most lines held at once.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % lines.length);
+    }
+}
@@ -0,0 +1,328 @@
+package com.smarthome.gui;
+
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Activity log view backed by a {@link LogBuffer}.
+ *
+ * <p>Unlike a {@code JTextArea}, whose document grows with every line,
+ * the view holds at most a fixed number of lines and shows them in a
+ * {@code JList} with fixed row sizes, so only the rows in the viewport
+ * are ever measured or painted. Lines arrive in batches (one per frame
+ * from the {@link DeviceBridge}); a batch costs one pass over its lines
+ * and one pair of list events, however full the log is.</p>
+ *
+ * <p>The filter field above the list narrows the view to lines that
+ * contain the typed text, ignoring case. The view follows new lines
+ * while it is scrolled to the bottom and stays put otherwise. All
+ * methods must be called on the EDT.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * LogView log = new LogView(5000);
+ * panel.add(log, BorderLayout.CENTER);
+ * bridge.append(log, "Turned on Living Room Light");
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class LogView extends JPanel {
+    public static final int DEFAULT_CAPACITY = 5_000;
+
+    // Longest line laid out without a horizontal scroll; rows are never measured one by one
+    private static final String PROTOTYPE_LINE = String.format("%160s", "");
+
+    private final LogBuffer buffer;
+    private final LineModel model;
+    private final JList<String> list;
+    private final JScrollPane scrollPane;
+    private final JTextField filterField;
+
+    // Sequences of the held lines that pass the filter, as a ring; unused while unfiltered
+    private final long[] matches;
+    private int matchStart;
+    private int matchCount;
+    private String filter = "";
+
+    private long skippedLines; // Appended but dropped before ever being stored
+
+    /**
+     * Creates an empty log view.
+     *
+     * @param capacity The most lines held at once
+     */
+    public LogView(int capacity) {
+        super(new BorderLayout());
+        this.buffer = new LogBuffer(capacity);
+        this.matches = new long[capacity];
+        this.model = new LineModel();
+
+        list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 11));
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        list.setPrototypeCellValue(PROTOTYPE_LINE); // Fixes the row height and width
+        list.setVisibleRowCount(12);
+
+        scrollPane = new JScrollPane(list);
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+
+        filterField = new JTextField();
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                setFilter(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                setFilter(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                setFilter(filterField.getText());
+            }
+        });
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 0));
+        filterPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        filterPanel.setOpaque(false);
+        filterPanel.add(new JLabel("Filter:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+
+        add(filterPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+    }
+
+    /**
+     * Sets the list's colors.
+     *
+     * @param background The background color
+     * @param foreground The text color
+     */
+    public void setColors(Color background, Color foreground) {
+        list.setBackground(background);
+        list.setForeground(foreground);
+        setBackground(background);
+    }
+
+    /**
+     * Appends a single line.
+     *
+     * @param line The line, without a line break
+     */
+    public void appendLine(String line) {
+        appendLines(List.of(line), 0);
+    }
+
+    /**
+     * Appends a batch of lines, dropping the oldest lines once the view
+     * is full.
+     *
+     * @param lines The lines, oldest first, without line breaks
+     * @param droppedBefore Lines that were skipped before this batch because
+     *                      they would have been dropped anyway
+     */
+    public void appendLines(List<String> lines, long droppedBefore) {
+        if (lines.isEmpty() && droppedBefore == 0) {
+            return;
+        }
+        boolean following = isAtBottom();
+        int oldRows = model.getSize();
+
+        // Lines that would be overwritten within this batch are never stored
+        int skip = Math.max(0, lines.size() - buffer.getCapacity());
+        skippedLines += droppedBefore + skip;
+
+        int removedRows = 0;
+        int addedRows = 0;
+        for (int i = skip; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (buffer.isFull()) {
+                if (!isFiltered()) {
+                    removedRows++;
+                } else if (matchCount > 0 && matches[matchStart] == buffer.getFirstSequence()) {
+                    matchStart = (matchStart + 1) % matches.length;
+                    matchCount--;
+                    removedRows++;
+                }
+            }
+            long sequence = buffer.add(line);
+            if (!isFiltered()) {
+                addedRows++;
+            } else if (passes(line)) {
+                matches[(matchStart + matchCount) % matches.length] = sequence;
+                matchCount++;
+                addedRows++;
+            }
+        }
+
+        // With at most a full buffer per batch, only rows from before the batch are dropped
+        if (removedRows > 0) {
+            model.rowsRemoved(removedRows);
+        }
+        if (addedRows > 0) {
+            model.rowsAdded(oldRows - removedRows, addedRows);
+        }
+        if (following && model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    /**
+     * Drops every line.
+     */
+    public void clear() {
+        buffer.clear();
+        matchCount = 0;
+        matchStart = 0;
+        list.clearSelection();
+        model.changed();
+    }
+
+    /**
+     * Shows only lines containing the given text, ignoring case. An
+     * empty filter shows every line.
+     *
+     * @param text The filter text
+     */
+    public void setFilter(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filter)) {
+            return;
+        }
+        filter = normalized;
+        if (!filterField.getText().trim().toLowerCase(Locale.ROOT).equals(normalized)) {
+            filterField.setText(text);
+        }
+        matchStart = 0;
+        matchCount = 0;
+        if (isFiltered()) {
+            for (long sequence = buffer.getFirstSequence(); sequence < buffer.getNextSequence(); sequence++) {
+                if (passes(buffer.get(sequence))) {
+                    matches[matchCount++] = sequence;
+                }
+            }
+        }
+        list.clearSelection();
+        model.changed();
+        if (model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    /**
+     * Gets the current filter text.
+     *
+     * @return The filter, lower case; empty when every line is shown
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * Gets the number of lines shown, after filtering.
+     *
+     * @return The row count
+     */
+    public int getRowCount() {
+        return model.getSize();
+    }
+
+    /**
+     * Gets a shown line.
+     *
+     * @param row The row, 0 being the oldest line shown
+     * @return The line
+     */
+    public String getRow(int row) {
+        return model.getElementAt(row);
+    }
+
+    /**
+     * Gets the number of lines held, before filtering.
+     *
+     * @return The line count
+     */
+    public int getLineCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Gets the number of lines ever appended, including dropped ones.
+     *
+     * @return The total line count
+     */
+    public long getTotalLines() {
+        return buffer.getNextSequence() + skippedLines;
+    }
+
+    /**
+     * Gets the most lines held at once. Safe to call from any thread.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return buffer.getCapacity();
+    }
+
+    private boolean isFiltered() {
+        return !filter.isEmpty();
+    }
+
+    private boolean passes(String line) {
+        return line.toLowerCase(Locale.ROOT).contains(filter);
+    }
+
+    private boolean isAtBottom() {
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+    }
+
+    /**
+     * List model over the buffer, or over the filter matches.
+     */
+    private class LineModel extends AbstractListModel<String> {
+        @Override
+        public int getSize() {
+            return isFiltered() ? matchCount : buffer.size();
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            if (isFiltered()) {
+                return buffer.get(matches[(matchStart + index) % matches.length]);
+            }
+            return buffer.get(buffer.getFirstSequence() + index);
+        }
+
+        void rowsRemoved(int count) {
+            fireIntervalRemoved(this, 0, count - 1);
+        }
+
+        void rowsAdded(int from, int count) {
+            fireIntervalAdded(this, from, from + count - 1);
+        }
+
+        void changed() {
+            fireContentsChanged(this, 0, Math.max(0, getSize() - 1));
+        }
+    }
+}
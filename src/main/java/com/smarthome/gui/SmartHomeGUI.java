@@ -1,22 +1,35 @@
 package com.smarthome.gui;
 
 import com.smarthome.creational.CentralController;
+import com.smarthome.creational.CommandScheduler;
 import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.HomeTopology;
+import com.smarthome.creational.TopologyLoader;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
 import com.smarthome.devices.SmartDevice;
-import com.smarthome.devices.Light;
-import com.smarthome.devices.Thermostat;
-import com.smarthome.devices.Speaker;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
 import com.smarthome.behavioral.*;
 import com.smarthome.structural.*;
 
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Main GUI for the Smart Home Automation System.
@@ -30,10 +43,18 @@ public class SmartHomeGUI extends JFrame {
     private CentralController controller;
     private DeviceFactory factory;
     
+    // Runs device work off the EDT and brings updates back in frames
+    private DeviceBridge bridge;
+    
     // GUI Components
-    private DefaultListModel<String> deviceListModel;
-    private JList<String> deviceList;
-    private JTextArea statusArea;
+    private DeviceListModel deviceListModel;
+    private JList<Object> deviceList;
+    private JTextField deviceSearchField;
+    private Timer deviceSearchTimer; // Runs the search once typing pauses
+    private JCheckBox groupByRoomBox;
+    private JLabel deviceCountLabel;
+    private DashboardPanel dashboard;
+    private LogView statusLog;
     private JComboBox<String> modeComboBox;
     private JButton turnOnButton;
     private JButton turnOffButton;
@@ -59,23 +80,33 @@ public class SmartHomeGUI extends JFrame {
     private JLabel fanSpeedLabel;
     
     private boolean isSliderUpdating = false; // Prevent recursion
+    private boolean isListUpdating = false; // Reselecting after a search is not a new selection
     
     // Room display
     private JList<String> roomList;
     private DefaultListModel<String> roomListModel;
     private JTextArea roomDetailsArea;
     
-    // Device tracking
-    private Map<String, SmartDevice> deviceMap;
-    private Map<String, Room> roomMap;
+    // Device tracking (the device list model doubles as the device registry)
+    private List<Room> roomEntries; // same order as the room list; names need not be unique
     private SmartDevice selectedDevice;
     private Room selectedRoom; // Track selected room
     
     // Legacy devices
     private List<FanAdapter> legacyFans;
     
-    // AI log area
-    private JTextArea aiLogArea;
+    // Home loaded at startup (bundled resource)
+    private static final String SAMPLE_TOPOLOGY = "/topology/sample-home.topology";
+    
+    // Lines kept by the activity logs; older lines are dropped
+    private static final int STATUS_LOG_CAPACITY = LogView.DEFAULT_CAPACITY;
+    private static final int AI_LOG_CAPACITY = 2_000;
+    
+    // Pause in typing before the device list is searched
+    private static final int SEARCH_DELAY_MS = 120;
+    
+    // AI log view
+    private LogView aiLog;
     
     /**
      * Creates the Smart Home GUI.
@@ -84,8 +115,10 @@ public class SmartHomeGUI extends JFrame {
         // Initialize
         controller = CentralController.getInstance();
         factory = new DeviceFactory();
-        deviceMap = new HashMap<>();
-        roomMap = new HashMap<>();
+        bridge = new DeviceBridge(controller, this::refreshChangedDevices);
+        controller.setCommandExecutor(bridge); // Every device change happens on the bridge's worker
+        bridge.setErrorHandler(e -> logStatus("Error: " + e.getMessage()));
+        roomEntries = new ArrayList<>();
         legacyFans = new ArrayList<>();
         
     // Setup window
@@ -165,11 +198,13 @@ public class SmartHomeGUI extends JFrame {
         panel.setPreferredSize(new Dimension(250, 0));
         
         // Device list
-        deviceListModel = new DefaultListModel<>();
+        deviceListModel = new DeviceListModel();
         deviceList = new JList<>(deviceListModel);
         deviceList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        deviceList.setCellRenderer(new DeviceListModel.Renderer());
+        deviceList.setPrototypeCellValue("Living Room Ceiling Light 000 ⚡ 🌀"); // Rows are never measured one by one
         deviceList.addListSelectionListener(e -> {
-            if (!e.getValueIsAdjusting()) {
+            if (!e.getValueIsAdjusting() && !isListUpdating) {
                 selectDevice();
             }
         });
@@ -177,8 +212,37 @@ public class SmartHomeGUI extends JFrame {
         JScrollPane scrollPane = new JScrollPane(deviceList);
         panel.add(scrollPane, BorderLayout.CENTER);
         
+        // Search and grouping
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 5));
+        deviceSearchTimer = new Timer(SEARCH_DELAY_MS, e -> updateDeviceView());
+        deviceSearchTimer.setRepeats(false);
+        deviceSearchField = new JTextField();
+        deviceSearchField.setToolTipText("Search by name, e.g. \"kit\" or \"lvrm\"");
+        deviceSearchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                deviceSearchTimer.restart();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                deviceSearchTimer.restart();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                deviceSearchTimer.restart();
+            }
+        });
+        groupByRoomBox = new JCheckBox("Group by room");
+        groupByRoomBox.addActionListener(e -> updateDeviceView());
+        searchPanel.add(new JLabel("Search:"), BorderLayout.WEST);
+        searchPanel.add(deviceSearchField, BorderLayout.CENTER);
+        searchPanel.add(groupByRoomBox, BorderLayout.SOUTH);
+        panel.add(searchPanel, BorderLayout.NORTH);
+        
         // Add device button
-        JPanel buttonPanel = new JPanel(new GridLayout(4, 1, 5, 5));
+        JPanel buttonPanel = new JPanel(new GridLayout(5, 1, 5, 5));
         
         JButton addLightButton = new JButton("+ Add Light");
         addLightButton.addActionListener(e -> addDevice("light"));
@@ -198,6 +262,10 @@ public class SmartHomeGUI extends JFrame {
         buttonPanel.add(addSpeakerButton);
         buttonPanel.add(removeDeviceButton);
         
+        JButton loadTopologyButton = new JButton("📂 Load Topology...");
+        loadTopologyButton.addActionListener(e -> loadTopologyFile());
+        buttonPanel.add(loadTopologyButton);
+        
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
         return panel;
@@ -353,18 +421,17 @@ public class SmartHomeGUI extends JFrame {
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.setBorder(new TitledBorder("Status & Activity Log"));
         
-        statusArea = new JTextArea();
-        statusArea.setEditable(false);
-        statusArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
-        statusArea.setText("System initialized.\nReady for commands.\n\n");
+        statusLog = new LogView(STATUS_LOG_CAPACITY);
+        statusLog.appendLine("System initialized.");
+        statusLog.appendLine("Ready for commands.");
         
-        JScrollPane scrollPane = new JScrollPane(statusArea);
-        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
-        
-        statusPanel.add(scrollPane, BorderLayout.CENTER);
+        statusPanel.add(statusLog, BorderLayout.CENTER);
         
         JButton clearButton = new JButton("Clear Log");
-        clearButton.addActionListener(e -> statusArea.setText("Log cleared.\n\n"));
+        clearButton.addActionListener(e -> {
+            statusLog.clear();
+            statusLog.appendLine("Log cleared.");
+        });
         statusPanel.add(clearButton, BorderLayout.SOUTH);
         
         // Rooms Tab
@@ -395,9 +462,27 @@ public class SmartHomeGUI extends JFrame {
         
         roomsPanel.add(roomSplitPane, BorderLayout.CENTER);
         
+        // Dashboard Tab
+        JPanel dashboardPanel = new JPanel(new BorderLayout(5, 5));
+        dashboardPanel.setBorder(new TitledBorder("Whole-Home Dashboard"));
+        
+        dashboard = new DashboardPanel();
+        JComboBox<DashboardPanel.ColorMode> colorModeBox = new JComboBox<>(DashboardPanel.ColorMode.values());
+        colorModeBox.addActionListener(e ->
+            dashboard.setColorMode((DashboardPanel.ColorMode) colorModeBox.getSelectedItem()));
+        
+        JPanel dashboardTopPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        dashboardTopPanel.add(new JLabel("Color by:"));
+        dashboardTopPanel.add(colorModeBox);
+        dashboardTopPanel.add(new JLabel("One tile per device; hover for status"));
+        
+        dashboardPanel.add(dashboardTopPanel, BorderLayout.NORTH);
+        dashboardPanel.add(dashboard, BorderLayout.CENTER);
+        
         // Add tabs - AI Control tab will be added dynamically when AI mode is selected
         tabbedPane.addTab("Status", statusPanel);
         tabbedPane.addTab("Rooms", roomsPanel);
+        tabbedPane.addTab("Dashboard", dashboardPanel);
         
     mainPanel.add(tabbedPane, BorderLayout.CENTER);
     // Increase right panel width so status/log is more readable
@@ -416,7 +501,7 @@ public class SmartHomeGUI extends JFrame {
         JLabel infoLabel = new JLabel("Smart Home System | Design Patterns: Factory, Singleton, Composite, Adapter, Observer, Command, Strategy, Decorator");
         infoLabel.setFont(new Font("Arial", Font.PLAIN, 10));
         
-        JLabel deviceCountLabel = new JLabel("Devices: 0");
+        deviceCountLabel = new JLabel("Devices: 0");
         deviceCountLabel.setHorizontalAlignment(SwingConstants.RIGHT);
         
         panel.add(infoLabel, BorderLayout.WEST);
@@ -426,97 +511,96 @@ public class SmartHomeGUI extends JFrame {
     }
     
     /**
-     * Adds sample devices and rooms to the system.
+     * Loads the sample home from the bundled topology file, or from the
+     * file named by the {@code smarthome.topology} system property.
      */
     private void addSampleDevicesAndRooms() {
-        // Create rooms
-        Room livingRoom = new Room("🏠 Living Room");
-        Room bedroom = new Room("🛏️ Bedroom");
-        Room kitchen = new Room("🍳 Kitchen");
-        Room bathroom = new Room("🚿 Bathroom");
-        
-        roomMap.put("Living Room", livingRoom);
-        roomMap.put("Bedroom", bedroom);
-        roomMap.put("Kitchen", kitchen);
-        roomMap.put("Bathroom", bathroom);
-        
-        // Add devices to living room
-        SmartDevice livingRoomLight = factory.createDevice("light", "Living Room Light");
-        SmartDevice livingRoomThermostat = factory.createDevice("thermostat", "Living Room Thermostat");
-        livingRoom.addDevice(livingRoomLight);
-        livingRoom.addDevice(livingRoomThermostat);
-        deviceMap.put(livingRoomLight.getName(), livingRoomLight);
-        deviceMap.put(livingRoomThermostat.getName(), livingRoomThermostat);
-        deviceListModel.addElement(livingRoomLight.getName());
-        deviceListModel.addElement(livingRoomThermostat.getName());
-        
-        // Add devices to bedroom
-        SmartDevice bedroomLight = factory.createDevice("light", "Bedroom Light");
-        bedroom.addDevice(bedroomLight);
-        deviceMap.put(bedroomLight.getName(), bedroomLight);
-        deviceListModel.addElement(bedroomLight.getName());
-        
-        // Add devices to kitchen
-        SmartDevice kitchenLight = factory.createDevice("light", "Kitchen Light");
-        SmartDevice kitchenSpeaker = factory.createDevice("speaker", "Kitchen Speaker");
-        kitchenLight = new EnergyMonitorDecorator(kitchenLight);
-        kitchen.addDevice(kitchenLight);
-        kitchen.addDevice(kitchenSpeaker);
-        deviceMap.put(kitchenLight.getName(), kitchenLight);
-        deviceMap.put(kitchenSpeaker.getName(), kitchenSpeaker);
-        deviceListModel.addElement(kitchenLight.getName() + " ⚡");
-        deviceListModel.addElement(kitchenSpeaker.getName());
-        
-        // Add devices to bathroom
-        SmartDevice bathroomLight = factory.createDevice("light", "Bathroom Light");
-        bathroom.addDevice(bathroomLight);
-        deviceMap.put(bathroomLight.getName(), bathroomLight);
-        deviceListModel.addElement(bathroomLight.getName());
-        
-        // Add legacy fans
-        OldFan oldFan1 = new OldFan("Vintage Ceiling Fan");
-        OldFan oldFan2 = new OldFan("Antique Pedestal Fan");
-        
-        FanAdapter fan1Adapter = new FanAdapter(oldFan1);
-        FanAdapter fan2Adapter = new FanAdapter(oldFan2);
-        
-        legacyFans.add(fan1Adapter);
-        legacyFans.add(fan2Adapter);
-        
-        // Add fans to rooms
-        livingRoom.addDevice(fan1Adapter);
-        bedroom.addDevice(fan2Adapter);
-        
-        deviceMap.put(fan1Adapter.getName(), fan1Adapter);
-        deviceMap.put(fan2Adapter.getName(), fan2Adapter);
-        deviceListModel.addElement(fan1Adapter.getName() + " 🌀");
-        deviceListModel.addElement(fan2Adapter.getName() + " 🌀");
-        
-        // Add rooms to room list
-        roomListModel.addElement("🏠 Living Room");
-        roomListModel.addElement("🛏️ Bedroom");
-        roomListModel.addElement("🍳 Kitchen");
-        roomListModel.addElement("🚿 Bathroom");
-        
-        // Add all devices to controller
-        controller.addDevice(livingRoomLight);
-        controller.addDevice(livingRoomThermostat);
-        controller.addDevice(bedroomLight);
-        controller.addDevice(kitchenLight);
-        controller.addDevice(kitchenSpeaker);
-        controller.addDevice(bathroomLight);
-        controller.addDevice(fan1Adapter);
-        controller.addDevice(fan2Adapter);
-        
-        logStatus("Sample devices and rooms initialized.");
-        logStatus("Added 4 rooms with 10 devices total.");
-        logStatus("Living Room: Light + Thermostat + Vintage Ceiling Fan");
-        logStatus("Bedroom: Light + Antique Pedestal Fan");
-        logStatus("Kitchen: Light (monitored) + Speaker");
-        logStatus("Bathroom: Light");
+        TopologyLoader loader = new TopologyLoader(factory);
+        String override = System.getProperty("smarthome.topology");
+        String source = override != null ? override : "sample home";
+        bridge.execute(() -> {
+            if (override != null) {
+                return loader.load(Paths.get(override));
+            }
+            InputStream sample = SmartHomeGUI.class.getResourceAsStream(SAMPLE_TOPOLOGY);
+            if (sample == null) {
+                throw new IOException("Sample topology not found: " + SAMPLE_TOPOLOGY);
+            }
+            try (Reader reader = new InputStreamReader(sample, StandardCharsets.UTF_8)) {
+                return loader.load(reader);
+            }
+        }, home -> showTopology(home, source),
+           e -> logStatus("Could not load topology: " + e.getMessage()));
+    }
+    
+    /**
+     * Lets the user pick a topology file and adds its rooms and devices.
+     */
+    private void loadTopologyFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Load Home Topology");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        TopologyLoader loader = new TopologyLoader(factory);
+        bridge.execute(() -> loader.load(file.toPath()), home -> showTopology(home, file.getName()),
+            e -> JOptionPane.showMessageDialog(this, e.getMessage(), "Could not load topology",
+                                               JOptionPane.ERROR_MESSAGE));
+    }
+    
+    /**
+     * Adds a loaded topology's rooms and devices to the lists and the controller.
+     */
+    private void showTopology(HomeTopology home, String source) {
+        for (Room building : home.getBuildings()) {
+            addZoneEntries(building, 0);
+        }
+        for (Room room : home.getRooms()) {
+            List<SmartDevice> devices = room.getDevices();
+            deviceListModel.addDevices(room, devices);
+            dashboard.addDevices(devices);
+            for (SmartDevice device : devices) {
+                if (device instanceof FanAdapter) {
+                    legacyFans.add((FanAdapter) device);
+                }
+            }
+        }
+        bridge.execute(() -> controller.addDevices(home.getDevices()));
+        
+        logStatus("Loaded " + source + ": " + home.getRooms().size() + " rooms with " +
+                  home.getDevices().size() + " devices total.");
+        if (home.getRooms().size() <= 20) {
+            for (Room room : home.getRooms()) {
+                StringBuilder contents = new StringBuilder();
+                for (SmartDevice device : room.getDevices()) {
+                    if (contents.length() > 0) {
+                        contents.append(", ");
+                    }
+                    contents.append(device.getName());
+                }
+                logStatus(room.getName() + ": " + contents);
+            }
+        }
         updateDeviceCount();
     }
     
+    /**
+     * Lists a zone and the rooms nested in it, indented by depth, so a
+     * whole floor or building can be selected and switched.
+     */
+    private void addZoneEntries(Room zone, int depth) {
+        StringBuilder indent = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            indent.append("    ");
+        }
+        roomEntries.add(zone);
+        roomListModel.addElement(indent + zone.getName());
+        for (Room child : zone.getRooms()) {
+            addZoneEntries(child, depth + 1);
+        }
+    }
+    
     /**
      * Adds a device to the system.
      */
@@ -525,22 +609,28 @@ public class SmartHomeGUI extends JFrame {
         
         if (name != null && !name.trim().isEmpty()) {
             // Show room selection dialog
-            String[] roomNames = {"Living Room", "Bedroom", "Kitchen", "Bathroom"};
-            String selectedRoomName = (String) JOptionPane.showInputDialog(
+            if (roomEntries.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Load a topology with at least one room first.",
+                                              "No Rooms", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            // Rooms are listed by full path and picked by position, so two
+            // rooms with the same name in different places stay distinct
+            String[] roomPaths = new String[roomEntries.size()];
+            for (int i = 0; i < roomPaths.length; i++) {
+                roomPaths[i] = roomEntries.get(i).getPath();
+            }
+            JComboBox<String> roomChoice = new JComboBox<>(roomPaths);
+            int choice = JOptionPane.showConfirmDialog(
                 this,
-                "Select a room to add this device to:",
+                new Object[] {"Select a room to add this device to:", roomChoice},
                 "Choose Room",
-                JOptionPane.QUESTION_MESSAGE,
-                null,
-                roomNames,
-                roomNames[0]
+                JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.QUESTION_MESSAGE
             );
             
-            if (selectedRoomName != null) {
-                Room selectedRoom = roomMap.get(selectedRoomName);
-                if (selectedRoom != null) {
-                    addDeviceToSystemInRoom(type, name, selectedRoom);
-                }
+            if (choice == JOptionPane.OK_OPTION && roomChoice.getSelectedIndex() >= 0) {
+                addDeviceToSystemInRoom(type, name, roomEntries.get(roomChoice.getSelectedIndex()));
             }
         }
     }
@@ -552,13 +642,15 @@ public class SmartHomeGUI extends JFrame {
         SmartDevice device = factory.createDevice(type, name);
         String deviceKey = device.getName();
         
-        // Add to room
-        room.addDevice(device);
+        // Add to room and controller on the device worker
+        bridge.execute(() -> {
+            room.addDevice(device);
+            controller.addDevice(device);
+        });
         
-        // Add to maps and lists
-        deviceMap.put(deviceKey, device);
-        controller.addDevice(device);
-        deviceListModel.addElement(deviceKey);
+        // Add to the device list
+        deviceListModel.addDevice(device, room);
+        dashboard.addDevices(List.of(device));
         
         logStatus("Added: " + deviceKey);
         logStatus("Location: " + room.getName());
@@ -572,12 +664,9 @@ public class SmartHomeGUI extends JFrame {
      * Selects a device from the list.
      */
     private void selectDevice() {
-        String selected = deviceList.getSelectedValue();
-        if (selected != null) {
-            // Remove emoji if present
-            selected = selected.replace(" ⚡", "").replace(" 🌀", "");
-            
-            selectedDevice = deviceMap.get(selected);
+        Object selected = deviceList.getSelectedValue();
+        if (selected instanceof SmartDevice) {
+            selectedDevice = (SmartDevice) selected;
             selectedRoom = null; // Clear room selection when device is selected
             roomList.clearSelection(); // Clear room list selection
             
@@ -585,93 +674,7 @@ public class SmartHomeGUI extends JFrame {
                 selectedDeviceLabel.setText("Selected: " + selectedDevice.getName());
                 turnOnButton.setEnabled(true);
                 turnOffButton.setEnabled(true);
-                
-                // Update sliders based on device type
-                isSliderUpdating = true;
-                if (selectedDevice instanceof Light) {
-                    Light light = (Light) selectedDevice;
-                    brightnessSlider.setValue(light.getBrightness());
-                    brightnessLabel.setText("Brightness: " + light.getBrightness() + "%");
-                    brightnessSlider.setEnabled(true);
-                    brightnessLabel.setVisible(true);
-                    temperatureSlider.setEnabled(false);
-                    temperatureLabel.setVisible(false);
-                    volumeSlider.setEnabled(false);
-                    volumeLabel.setVisible(false);
-                    fanSpeedSlider.setEnabled(false);
-                    fanSpeedLabel.setVisible(false);
-                } else if (selectedDevice instanceof EnergyMonitorDecorator) {
-                    EnergyMonitorDecorator decorator = (EnergyMonitorDecorator) selectedDevice;
-                    SmartDevice wrapped = decorator.getWrappedDevice();
-                    if (wrapped instanceof Light) {
-                        Light light = (Light) wrapped;
-                        brightnessSlider.setValue(light.getBrightness());
-                        brightnessLabel.setText("Brightness: " + light.getBrightness() + "%");
-                        brightnessSlider.setEnabled(true);
-                        brightnessLabel.setVisible(true);
-                        temperatureSlider.setEnabled(false);
-                        temperatureLabel.setVisible(false);
-                        volumeSlider.setEnabled(false);
-                        volumeLabel.setVisible(false);
-                        fanSpeedSlider.setEnabled(false);
-                        fanSpeedLabel.setVisible(false);
-                    } else {
-                        brightnessSlider.setEnabled(false);
-                        brightnessLabel.setVisible(false);
-                        temperatureSlider.setEnabled(false);
-                        temperatureLabel.setVisible(false);
-                        volumeSlider.setEnabled(false);
-                        volumeLabel.setVisible(false);
-                        fanSpeedSlider.setEnabled(false);
-                        fanSpeedLabel.setVisible(false);
-                    }
-                } else if (selectedDevice instanceof Thermostat) {
-                    Thermostat thermostat = (Thermostat) selectedDevice;
-                    temperatureSlider.setValue((int) thermostat.getTargetTemp());
-                    temperatureLabel.setText("Temperature: " + (int) thermostat.getTargetTemp() + "°F");
-                    temperatureSlider.setEnabled(true);
-                    temperatureLabel.setVisible(true);
-                    brightnessSlider.setEnabled(false);
-                    brightnessLabel.setVisible(false);
-                    volumeSlider.setEnabled(false);
-                    volumeLabel.setVisible(false);
-                    fanSpeedSlider.setEnabled(false);
-                    fanSpeedLabel.setVisible(false);
-                } else if (selectedDevice instanceof Speaker) {
-                    Speaker speaker = (Speaker) selectedDevice;
-                    volumeSlider.setValue(speaker.getVolume());
-                    volumeLabel.setText("Volume: " + speaker.getVolume() + "%");
-                    volumeSlider.setEnabled(true);
-                    volumeLabel.setVisible(true);
-                    brightnessSlider.setEnabled(false);
-                    brightnessLabel.setVisible(false);
-                    temperatureSlider.setEnabled(false);
-                    temperatureLabel.setVisible(false);
-                    fanSpeedSlider.setEnabled(false);
-                    fanSpeedLabel.setVisible(false);
-                } else if (selectedDevice instanceof FanAdapter) {
-                    FanAdapter fan = (FanAdapter) selectedDevice;
-                    fanSpeedSlider.setValue(fan.getSpeed());
-                    fanSpeedLabel.setText("Fan Speed: " + fan.getSpeed() + "/3");
-                    fanSpeedSlider.setEnabled(true);
-                    fanSpeedLabel.setVisible(true);
-                    brightnessSlider.setEnabled(false);
-                    brightnessLabel.setVisible(false);
-                    temperatureSlider.setEnabled(false);
-                    temperatureLabel.setVisible(false);
-                    volumeSlider.setEnabled(false);
-                    volumeLabel.setVisible(false);
-                } else {
-                    brightnessSlider.setEnabled(false);
-                    brightnessLabel.setVisible(false);
-                    temperatureSlider.setEnabled(false);
-                    temperatureLabel.setVisible(false);
-                    volumeSlider.setEnabled(false);
-                    volumeLabel.setVisible(false);
-                    fanSpeedSlider.setEnabled(false);
-                    fanSpeedLabel.setVisible(false);
-                }
-                isSliderUpdating = false;
+                showDeviceControls(selectedDevice);
                 
                 logStatus("Selected: " + selectedDevice.getName());
                 logStatus("Status: " + selectedDevice.getStatus());
@@ -679,6 +682,59 @@ public class SmartHomeGUI extends JFrame {
         }
     }
     
+    /**
+     * Shows the sliders for what a device can do, set to its current
+     * values.
+     */
+    private void showDeviceControls(SmartDevice device) {
+        isSliderUpdating = true;
+        Capabilities capabilities = Capabilities.of(device);
+        Dimmable light = capabilities.dimmable();
+        Thermostatic thermostat = capabilities.thermostatic();
+        VolumeAdjustable speaker = capabilities.volume();
+        SpeedAdjustable fan = capabilities.speed();
+        // A slider the user is dragging keeps the user's value
+        if (light != null && !brightnessSlider.getValueIsAdjusting()) {
+            brightnessSlider.setValue(light.getBrightness());
+            brightnessLabel.setText("Brightness: " + light.getBrightness() + "%");
+        }
+        if (thermostat != null && !temperatureSlider.getValueIsAdjusting()) {
+            temperatureSlider.setValue((int) thermostat.getTargetTemp());
+            temperatureLabel.setText("Temperature: " + (int) thermostat.getTargetTemp() + "°F");
+        }
+        if (speaker != null && !volumeSlider.getValueIsAdjusting()) {
+            volumeSlider.setValue(speaker.getVolume());
+            volumeLabel.setText("Volume: " + speaker.getVolume() + "%");
+        }
+        if (fan != null && !fanSpeedSlider.getValueIsAdjusting()) {
+            fanSpeedSlider.setValue(fan.getSpeed());
+            fanSpeedLabel.setText("Fan Speed: " + fan.getSpeed() + "/" + fan.getMaxSpeed());
+        }
+        brightnessSlider.setEnabled(light != null);
+        brightnessLabel.setVisible(light != null);
+        temperatureSlider.setEnabled(thermostat != null);
+        temperatureLabel.setVisible(thermostat != null);
+        volumeSlider.setEnabled(speaker != null);
+        volumeLabel.setVisible(speaker != null);
+        fanSpeedSlider.setEnabled(fan != null);
+        fanSpeedLabel.setVisible(fan != null);
+        isSliderUpdating = false;
+    }
+    
+    /**
+     * Refreshes what is on screen for devices that changed in the last
+     * frame. Called on the EDT by the bridge.
+     */
+    private void refreshChangedDevices(Set<SmartDevice> changed) {
+        dashboard.devicesChanged(changed);
+        if (selectedDevice != null && changed.contains(selectedDevice)) {
+            showDeviceControls(selectedDevice);
+        }
+        if (selectedRoom != null) {
+            showRoomDetails(selectedRoom);
+        }
+    }
+    
     /**
      * Updates the state of control buttons based on the current selection or context.
      * Enables device-level buttons when a device is selected (Status tab),
@@ -704,16 +760,14 @@ public class SmartHomeGUI extends JFrame {
         // Check if a room is selected in the Rooms tab
         if (selectedRoom != null && roomList.getSelectedValue() != null) {
             // Turn on all devices in the room
-            selectedRoom.turnOn();
-            logStatus("Turned ON all devices in: " + selectedRoom.getName());
-            displayRoomDetails();
+            Room room = selectedRoom;
+            bridge.execute(() -> {
+                room.turnOn();
+                logStatus("Turned ON all devices in: " + room.getName());
+            });
         } else if (selectedDevice != null) {
-            // Turn on the selected device
-            Command command = new TurnOnCommand(selectedDevice);
-            controller.executeCommand(command);
-            logStatus("Executed: " + command.getDescription());
-            logStatus("Status: " + selectedDevice.getStatus());
-            displayRoomDetails();
+            // Turn on the selected device, in the user lane ahead of automation
+            submit(new TurnOnCommand(selectedDevice));
         }
     }
     
@@ -724,16 +778,25 @@ public class SmartHomeGUI extends JFrame {
         // Check if a room is selected in the Rooms tab
         if (selectedRoom != null && roomList.getSelectedValue() != null) {
             // Turn off all devices in the room
-            selectedRoom.turnOff();
-            logStatus("Turned OFF all devices in: " + selectedRoom.getName());
-            displayRoomDetails();
+            Room room = selectedRoom;
+            bridge.execute(() -> {
+                room.turnOff();
+                logStatus("Turned OFF all devices in: " + room.getName());
+            });
         } else if (selectedDevice != null) {
             // Turn off the selected device
-            Command command = new TurnOffCommand(selectedDevice);
-            controller.executeCommand(command);
-            logStatus("Executed: " + command.getDescription());
-            logStatus("Status: " + selectedDevice.getStatus());
-            displayRoomDetails();
+            submit(new TurnOffCommand(selectedDevice));
+        }
+    }
+    
+    /**
+     * Queues a command from the user on the controller's scheduler.
+     */
+    private void submit(Command command) {
+        if (controller.submitCommand(command, CommandScheduler.Lane.USER)) {
+            logStatus("Queued: " + command.getDescription());
+        } else {
+            logStatus("Busy, command dropped: " + command.getDescription());
         }
     }
     
@@ -741,30 +804,39 @@ public class SmartHomeGUI extends JFrame {
      * Undoes the last command.
      */
     private void undoCommand() {
-        boolean success = controller.undoLastCommand();
-        if (success) {
-            logStatus("Command undone.");
-            if (selectedDevice != null) {
-                logStatus("Status: " + selectedDevice.getStatus());
+        SmartDevice device = selectedDevice;
+        // Queued behind the commands already submitted; completes on the device worker
+        controller.submitUndo(CommandScheduler.Lane.USER).whenComplete((success, error) -> {
+            if (error != null) {
+                logStatus("Busy, undo dropped.");
+            } else if (success) {
+                logStatus("Command undone.");
+                if (device != null) {
+                    logStatus("Status: " + device.getStatus());
+                }
+            } else {
+                logStatus("Nothing to undo.");
             }
-        } else {
-            logStatus("Nothing to undo.");
-        }
+        });
     }
     
     /**
      * Redoes the last undone command.
      */
     private void redoCommand() {
-        boolean success = controller.redoLastCommand();
-        if (success) {
-            logStatus("Command redone.");
-            if (selectedDevice != null) {
-                logStatus("Status: " + selectedDevice.getStatus());
+        SmartDevice device = selectedDevice;
+        controller.submitRedo(CommandScheduler.Lane.USER).whenComplete((success, error) -> {
+            if (error != null) {
+                logStatus("Busy, redo dropped.");
+            } else if (success) {
+                logStatus("Command redone.");
+                if (device != null) {
+                    logStatus("Status: " + device.getStatus());
+                }
+            } else {
+                logStatus("Nothing to redo.");
             }
-        } else {
-            logStatus("Nothing to redo.");
-        }
+        });
     }
     
     /**
@@ -806,7 +878,8 @@ public class SmartHomeGUI extends JFrame {
                 }
         }
         
-        controller.setControlStrategy(strategy);
+        // Switching away from AI mode waits for its thread, so not on the EDT
+        bridge.execute(() -> controller.setControlStrategy(strategy));
         logStatus("Control mode changed to: " + mode);
         logStatus(strategy.getDescription());
     }
@@ -845,49 +918,61 @@ public class SmartHomeGUI extends JFrame {
         aiStatusLabel.setForeground(new Color(255, 193, 7));
         
         startAIButton.addActionListener(e -> {
-            AIControl aiControl = (AIControl) controller.getControlStrategy();
-            if (aiControl != null) {
-                // Set up callback for device state changes
+            startAIButton.setEnabled(false);
+            bridge.execute(() -> {
+                ControlStrategy strategy = controller.getControlStrategy();
+                if (!(strategy instanceof AIControl)) {
+                    return false;
+                }
+                AIControl aiControl = (AIControl) strategy;
+                // Called on whichever thread switched the device; logAIStatus only queues the line
                 aiControl.setAutomationCallback((deviceName, isOn) -> {
                     String action = isOn ? "🟢 turned ON" : "🔴 turned OFF";
                     logAIStatus(deviceName + " " + action);
                 });
-                
                 aiControl.startRandomAutomation(controller.getAllDevices());
-                startAIButton.setEnabled(false);
-                stopAIButton.setEnabled(true);
-                aiStatusLabel.setText("🟢 AI Automation: RUNNING");
-                aiStatusLabel.setForeground(new Color(100, 200, 255));
-                logAIStatus("AI Automation started");
-            }
+                return true;
+            }, started -> {
+                if (started) {
+                    stopAIButton.setEnabled(true);
+                    aiStatusLabel.setText("🟢 AI Automation: RUNNING");
+                    aiStatusLabel.setForeground(new Color(100, 200, 255));
+                    logAIStatus("AI Automation started");
+                } else {
+                    startAIButton.setEnabled(true);
+                }
+            });
         });
         
         stopAIButton.addActionListener(e -> {
-            AIControl aiControl = (AIControl) controller.getControlStrategy();
-            if (aiControl != null) {
-                aiControl.stopRandomAutomation();
+            stopAIButton.setEnabled(false);
+            bridge.execute(() -> {
+                ControlStrategy strategy = controller.getControlStrategy();
+                if (strategy instanceof AIControl) {
+                    ((AIControl) strategy).stopRandomAutomation(); // Waits for the AI thread
+                }
+                return strategy instanceof AIControl;
+            }, stopped -> {
                 startAIButton.setEnabled(true);
-                stopAIButton.setEnabled(false);
-                aiStatusLabel.setText("🛑 AI Automation: STOPPED");
-                aiStatusLabel.setForeground(new Color(255, 193, 7));
-                logAIStatus("AI Automation stopped");
-            }
+                if (stopped) {
+                    aiStatusLabel.setText("🛑 AI Automation: STOPPED");
+                    aiStatusLabel.setForeground(new Color(255, 193, 7));
+                    logAIStatus("AI Automation stopped");
+                } else {
+                    stopAIButton.setEnabled(true);
+                }
+            });
         });
         
         aiButtonPanel.add(startAIButton);
         aiButtonPanel.add(stopAIButton);
         
         // AI Log area
-        aiLogArea = new JTextArea();
-        aiLogArea.setEditable(false);
-        aiLogArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
-        aiLogArea.setText("AI Automation Log:\nWaiting for automation to start...\n\n");
-        aiLogArea.setBackground(new Color(32, 32, 40));
-        aiLogArea.setForeground(new Color(100, 200, 255));
-        
-        JScrollPane aiLogScrollPane = new JScrollPane(aiLogArea);
-        aiLogScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
-        aiLogScrollPane.setBorder(new TitledBorder("Automation Log"));
+        aiLog = new LogView(AI_LOG_CAPACITY);
+        aiLog.setColors(new Color(32, 32, 40), new Color(100, 200, 255));
+        aiLog.appendLine("AI Automation Log:");
+        aiLog.appendLine("Waiting for automation to start...");
+        aiLog.setBorder(new TitledBorder("Automation Log"));
         
         // AI info panel
         JPanel aiInfoPanel = new JPanel(new BorderLayout());
@@ -914,7 +999,7 @@ public class SmartHomeGUI extends JFrame {
         aiTopPanel.add(Box.createVerticalStrut(10));
         aiTopPanel.add(aiButtonPanel);
         
-        JSplitPane aiSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, aiInfoPanel, aiLogScrollPane);
+        JSplitPane aiSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, aiInfoPanel, aiLog);
         aiSplitPane.setDividerLocation(0.3);
         
         aiPanel.add(aiTopPanel, BorderLayout.NORTH);
@@ -926,23 +1011,24 @@ public class SmartHomeGUI extends JFrame {
     }
     
     /**
-     * Logs a status message.
+     * Logs a status message. Safe to call from any thread; the line
+     * shows up in the next frame.
      */
     private void logStatus(String message) {
-        statusArea.append("[" + getCurrentTime() + "] " + message + "\n");
-        statusArea.setCaretPosition(statusArea.getDocument().getLength());
+        bridge.append(statusLog, "[" + getCurrentTime() + "] " + message);
     }
     
     /**
      * Logs an AI status message to both AI log and main status area.
+     * Safe to call from any thread.
      */
     private void logAIStatus(String message) {
         String timestamp = "[" + getCurrentTime() + "] ";
-        aiLogArea.append(timestamp + message + "\n");
-        aiLogArea.setCaretPosition(aiLogArea.getDocument().getLength());
+        if (aiLog != null) {
+            bridge.append(aiLog, timestamp + message);
+        }
         // Also log to main status area
-        statusArea.append(timestamp + "🤖 " + message + "\n");
-        statusArea.setCaretPosition(statusArea.getDocument().getLength());
+        bridge.append(statusLog, timestamp + "🤖 " + message);
     }
     
     /**
@@ -958,19 +1044,26 @@ public class SmartHomeGUI extends JFrame {
      * Updates the device count label.
      */
     private void updateDeviceCount() {
-        Component[] components = ((JPanel)getContentPane()).getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JPanel) {
-                JPanel panel = (JPanel) comp;
-                for (Component subComp : panel.getComponents()) {
-                    if (subComp instanceof JLabel) {
-                        JLabel label = (JLabel) subComp;
-                        if (label.getText().startsWith("Devices:")) {
-                            label.setText("Devices: " + deviceMap.size());
-                        }
-                    }
-                }
+        deviceCountLabel.setText("Devices: " + deviceListModel.getDeviceCount());
+    }
+    
+    /**
+     * Applies the search text and grouping to the device list, keeping
+     * the selected device selected if it is still shown.
+     */
+    private void updateDeviceView() {
+        isListUpdating = true;
+        try {
+            deviceListModel.setQuery(deviceSearchField.getText());
+            deviceListModel.setGrouped(groupByRoomBox.isSelected());
+            deviceList.clearSelection();
+            int row = deviceListModel.indexOf(selectedDevice);
+            if (row >= 0) {
+                deviceList.setSelectedIndex(row);
+                deviceList.ensureIndexIsVisible(row);
             }
+        } finally {
+            isListUpdating = false;
         }
     }
     
@@ -993,19 +1086,22 @@ public class SmartHomeGUI extends JFrame {
         if (confirm == JOptionPane.YES_OPTION) {
             String deviceName = selectedDevice.getName();
             
-            // Remove from all rooms
-            for (Room room : roomMap.values()) {
-                room.removeDevice(selectedDevice);
-            }
-            
-            // Remove from maps and lists
-            deviceMap.remove(deviceName);
-            deviceListModel.removeElement(deviceName);
-            deviceListModel.removeElement(deviceName + " ⚡");
-            deviceListModel.removeElement(deviceName + " 🌀");
+            // Remove from all rooms and the controller
+            SmartDevice device = selectedDevice;
+            List<Room> rooms = new ArrayList<>(roomEntries);
+            bridge.execute(() -> {
+                for (Room room : rooms) {
+                    room.removeDevice(device);
+                }
+                controller.removeDevice(device);
+            });
             
-            // Remove from controller
-            // Note: CentralController may not have a removeDevice method, but we clear the selection
+            // Remove from the device list
+            deviceListModel.removeDevice(device);
+            dashboard.removeDevice(device);
+            if (device instanceof FanAdapter) {
+                legacyFans.remove(device);
+            }
             
             selectedDevice = null;
             selectedRoom = null;
@@ -1027,23 +1123,13 @@ public class SmartHomeGUI extends JFrame {
             int brightnessValue = brightnessSlider.getValue();
             brightnessLabel.setText("Brightness: " + brightnessValue + "%");
             
-            // Check if selected device is a Light
-            if (selectedDevice instanceof Light) {
-                Light light = (Light) selectedDevice;
-                light.setBrightness(brightnessValue);
-                logStatus("Adjusted " + light.getName() + " brightness to " + brightnessValue + "%");
-                logStatus("Status: " + light.getStatus());
-            }
-            // Check if it's a decorator wrapping a Light
-            else if (selectedDevice instanceof EnergyMonitorDecorator) {
-                EnergyMonitorDecorator decorator = (EnergyMonitorDecorator) selectedDevice;
-                SmartDevice wrapped = decorator.getWrappedDevice();
-                if (wrapped instanceof Light) {
-                    Light light = (Light) wrapped;
-                    light.setBrightness(brightnessValue);
-                    logStatus("Adjusted " + light.getName() + " brightness to " + brightnessValue + "%");
-                    logStatus("Status: " + light.getStatus());
-                }
+            // Drags send many values in a row; the command ring takes them without allocating
+            SmartDevice device = selectedDevice;
+            if (Capabilities.of(device).dimmable() != null &&
+                controller.getCommandRing().offer(CommandRing.ADJUST_BRIGHTNESS, controller.getDeviceId(device),
+                                                  brightnessValue) &&
+                !brightnessSlider.getValueIsAdjusting()) { // Log once, when the drag ends
+                logStatus("Adjusted " + device.getName() + " brightness to " + brightnessValue + "%");
             }
         }
     }
@@ -1056,12 +1142,12 @@ public class SmartHomeGUI extends JFrame {
             int temperatureValue = temperatureSlider.getValue();
             temperatureLabel.setText("Temperature: " + temperatureValue + "°F");
             
-            // Check if selected device is a Thermostat
-            if (selectedDevice instanceof Thermostat) {
-                Thermostat thermostat = (Thermostat) selectedDevice;
-                thermostat.setTargetTemp(temperatureValue);
-                logStatus("Adjusted " + thermostat.getName() + " temperature to " + temperatureValue + "°F");
-                logStatus("Status: " + thermostat.getStatus());
+            SmartDevice device = selectedDevice;
+            if (Capabilities.of(device).thermostatic() != null &&
+                controller.getCommandRing().offer(CommandRing.ADJUST_TEMPERATURE, controller.getDeviceId(device),
+                                                  temperatureValue) &&
+                !temperatureSlider.getValueIsAdjusting()) {
+                logStatus("Adjusted " + device.getName() + " temperature to " + temperatureValue + "°F");
             }
         }
     }
@@ -1074,13 +1160,15 @@ public class SmartHomeGUI extends JFrame {
             int volumeValue = volumeSlider.getValue();
             volumeLabel.setText("Volume: " + volumeValue + "%");
             
-            // Check if selected device is a Speaker
-            if (selectedDevice instanceof Speaker) {
-                Speaker speaker = (Speaker) selectedDevice;
-                speaker.setVolume(volumeValue);
-                logStatus("Adjusted " + speaker.getName() + " volume to " + volumeValue + "%");
-                logStatus("Status: " + speaker.getStatus());
-            }
+            SmartDevice device = selectedDevice;
+            bridge.executeLatest(volumeSlider, () -> {
+                VolumeAdjustable speaker = Capabilities.of(device).volume();
+                if (speaker != null) {
+                    speaker.setVolume(volumeValue);
+                    logStatus("Adjusted " + device.getName() + " volume to " + volumeValue + "%");
+                    logStatus("Status: " + device.getStatus());
+                }
+            });
         }
     }
     
@@ -1092,13 +1180,15 @@ public class SmartHomeGUI extends JFrame {
             int speedValue = fanSpeedSlider.getValue();
             fanSpeedLabel.setText("Fan Speed: " + speedValue + "/3");
             
-            // Check if selected device is a FanAdapter
-            if (selectedDevice instanceof FanAdapter) {
-                FanAdapter fan = (FanAdapter) selectedDevice;
-                fan.setSpeed(speedValue);
-                logStatus("Adjusted " + fan.getName() + " speed to " + speedValue + "/3");
-                logStatus("Status: " + fan.getStatus());
-            }
+            SmartDevice device = selectedDevice;
+            bridge.executeLatest(fanSpeedSlider, () -> {
+                SpeedAdjustable fan = Capabilities.of(device).speed();
+                if (fan != null) {
+                    fan.setSpeed(Math.min(speedValue, fan.getMaxSpeed()));
+                    logStatus("Adjusted " + device.getName() + " speed to " + speedValue + "/" + fan.getMaxSpeed());
+                    logStatus("Status: " + device.getStatus());
+                }
+            });
         }
     }
     
@@ -1106,43 +1196,71 @@ public class SmartHomeGUI extends JFrame {
      * Displays room details when a room is selected.
      */
     private void displayRoomDetails() {
-        String selectedRoomStr = roomList.getSelectedValue();
-        if (selectedRoomStr != null) {
-            // Remove emoji and extra spaces for lookup
-            String roomName = selectedRoomStr.replaceAll("[^a-zA-Z ]", "").trim();
-            selectedRoom = roomMap.get(roomName);
-            
-            if (selectedRoom != null) {
-                StringBuilder details = new StringBuilder();
-                details.append("Room: ").append(selectedRoom.getName()).append("\n");
-                details.append("======================================\n");
-                details.append("Devices in this room:\n");
-                
-                List<SmartDevice> devices = selectedRoom.getDevices();
-                if (devices.isEmpty()) {
-                    details.append("  (No devices)\n");
-                } else {
-                    for (SmartDevice device : devices) {
-                        details.append("  • ").append(device.getName()).append("\n");
-                        details.append("    └─ ").append(device.getStatus()).append("\n");
-                    }
-                }
-                
-                details.append("\nRoom Controls:\n");
-                details.append("  • Click 'Turn ON' to turn on all devices\n");
-                details.append("  • Click 'Turn OFF' to turn off all devices\n");
-                
-                roomDetailsArea.setText(details.toString());
-                logStatus("Viewing room: " + selectedRoom.getName());
-            } else {
-                roomDetailsArea.setText("Room not found: " + roomName);
-                selectedRoom = null;
-            }
+        int selectedIndex = roomList.getSelectedIndex();
+        if (selectedIndex >= 0 && selectedIndex < roomEntries.size()) {
+            // The list shows indented names; the entry at the same position is the room
+            selectedRoom = roomEntries.get(selectedIndex);
+            showRoomDetails(selectedRoom);
+            logStatus("Viewing room: " + selectedRoom.getPath());
         } else {
             selectedRoom = null;
         }
     }
     
+    /**
+     * Builds a room's details on the device worker and shows them if the
+     * room is still selected. Requests made while one is waiting are
+     * folded into it.
+     */
+    private void showRoomDetails(Room room) {
+        bridge.executeLatest(roomDetailsArea, () -> {
+            String details = buildRoomDetails(room);
+            bridge.post(() -> {
+                if (selectedRoom == room) {
+                    roomDetailsArea.setText(details);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Describes a room and its devices. Reads device state, so it runs on
+     * the device worker.
+     */
+    private static String buildRoomDetails(Room room) {
+        StringBuilder details = new StringBuilder();
+        details.append("Room: ").append(room.getName()).append("\n");
+        if (room.getParent() != null) {
+            details.append("Zone: ").append(room.getPath()).append("\n");
+        }
+        details.append("======================================\n");
+        details.append("Devices ON: ").append(room.getOnCount()).append(" of ")
+               .append(room.getTotalDeviceCount()).append("\n");
+        details.append("Devices in this room:\n");
+        
+        List<SmartDevice> devices = room.getDevices();
+        if (devices.isEmpty()) {
+            details.append("  (No devices)\n");
+        } else {
+            for (SmartDevice device : devices) {
+                if (device instanceof Room) {
+                    Room zone = (Room) device;
+                    details.append("  📁 ").append(zone.getName()).append("\n");
+                    details.append("    └─ ").append(zone.getOnCount()).append(" of ")
+                           .append(zone.getTotalDeviceCount()).append(" devices ON\n");
+                    continue;
+                }
+                details.append("  • ").append(device.getName()).append("\n");
+                details.append("    └─ ").append(device.getStatus()).append("\n");
+            }
+        }
+        
+        details.append("\nRoom Controls:\n");
+        details.append("  • Click 'Turn ON' to turn on all devices\n");
+        details.append("  • Click 'Turn OFF' to turn off all devices\n");
+        return details.toString();
+    }
+    
     /**
      * Main method to launch the GUI.
      */
@@ -0,0 +1,76 @@
+package com.smarthome.network;
+
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the state of a device into named fields.
+ *
+ * <p>{@code getStatus()} is meant for people; remote clients need
+ * the individual values so that only the fields that changed have
+ * to be sent.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class DeviceStateReader {
+
+    private DeviceStateReader() {
+    }
+
+    /**
+     * Reads the current state of a device.
+     * Values come from the device's capabilities, found through any decorators.
+     *
+     * @param device The device to read
+     * @return Field name to value, in a stable order
+     */
+    public static Map<String, String> read(SmartDevice device) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("on", device.isOn() ? "1" : "0");
+
+        Capabilities capabilities = Capabilities.of(device);
+        Thermostatic thermostat = capabilities.thermostatic();
+        VolumeAdjustable speaker = capabilities.volume();
+        SpeedAdjustable fan = capabilities.speed();
+
+        if (capabilities.dimmable() != null) {
+            fields.put("brightness", String.valueOf(capabilities.dimmable().getBrightness()));
+        } else if (thermostat != null) {
+            fields.put("current", String.valueOf(thermostat.getCurrentTemp()));
+            fields.put("target", String.valueOf(thermostat.getTargetTemp()));
+            fields.put("mode", thermostat.getMode());
+        } else if (speaker != null) {
+            fields.put("volume", String.valueOf(speaker.getVolume()));
+            fields.put("playing", speaker.getCurrentlyPlaying());
+        } else if (fan != null) {
+            fields.put("speed", String.valueOf(fan.getSpeed()));
+        }
+        return fields;
+    }
+
+    /**
+     * Computes the fields that differ between two states.
+     *
+     * @param previous The last known state, or null if none
+     * @param current The new state
+     * @return Only the fields whose value changed (all fields if previous is null)
+     */
+    public static Map<String, String> diff(Map<String, String> previous, Map<String, String> current) {
+        if (previous == null) {
+            return new LinkedHashMap<>(current);
+        }
+        Map<String, String> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                delta.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return delta;
+    }
+}
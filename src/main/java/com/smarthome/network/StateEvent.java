@@ -0,0 +1,129 @@
+package com.smarthome.network;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single sequenced state change for one device.
+ *
+ * <p>A delta event carries only the fields that changed since the
+ * previous event for the same device. A snapshot event carries every
+ * field and is sent when a client cannot resume from its sequence, or
+ * when a device is added. A removal event carries no fields and tells
+ * the client to forget the device.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public final class StateEvent {
+    private final long sequence;
+    private final int deviceId;
+    private final String deviceName;
+    private final Map<String, String> fields;
+    private final boolean snapshot;
+    private final boolean removal;
+
+    /**
+     * Creates a state event.
+     *
+     * @param sequence Global sequence number of the change
+     * @param deviceId Controller id of the device that changed
+     * @param deviceName Name of the device that changed
+     * @param fields Changed fields (or all fields for a snapshot)
+     * @param snapshot true if the event holds the full device state
+     */
+    public StateEvent(long sequence, int deviceId, String deviceName, Map<String, String> fields,
+                      boolean snapshot) {
+        this(sequence, deviceId, deviceName, fields, snapshot, false);
+    }
+
+    private StateEvent(long sequence, int deviceId, String deviceName, Map<String, String> fields,
+                       boolean snapshot, boolean removal) {
+        this.sequence = sequence;
+        this.deviceId = deviceId;
+        this.deviceName = deviceName;
+        this.fields = fields;
+        this.snapshot = snapshot;
+        this.removal = removal;
+    }
+
+    /**
+     * Creates an event saying a device was removed.
+     *
+     * @param sequence Global sequence number of the removal
+     * @param deviceId Controller id of the removed device
+     * @param deviceName Name of the removed device
+     * @return The removal event
+     */
+    public static StateEvent removal(long sequence, int deviceId, String deviceName) {
+        return new StateEvent(sequence, deviceId, deviceName, Collections.emptyMap(), false, true);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isRemoval() {
+        return removal;
+    }
+
+    /**
+     * Folds a later event for the same device into this one.
+     * Used when a slow client has not yet received this event.
+     *
+     * <p>The result keeps this event's sequence. A client that resumes
+     * after reading it asks for everything since its first change, so
+     * the later changes folded into it are replayed rather than lost.</p>
+     *
+     * @param later The newer event
+     * @return An event holding the combined fields at this event's sequence
+     */
+    StateEvent mergedWith(StateEvent later) {
+        if (later.removal) {
+            return new StateEvent(sequence, deviceId, deviceName, later.fields, false, true);
+        }
+        if (later.snapshot) {
+            return new StateEvent(sequence, deviceId, deviceName, later.fields, true);
+        }
+        Map<String, String> merged = new LinkedHashMap<>(fields);
+        merged.putAll(later.fields);
+        return new StateEvent(sequence, deviceId, deviceName, merged, snapshot);
+    }
+
+    /**
+     * Encodes this event as one tab-separated protocol line.
+     * Format: {@code D|S|R <tab> sequence <tab> device <tab> key=value ...}
+     *
+     * @return The protocol line without a trailing newline
+     */
+    public String toLine() {
+        StringBuilder line = new StringBuilder(64);
+        line.append(removal ? 'R' : snapshot ? 'S' : 'D').append('\t').append(sequence)
+            .append('\t').append(clean(deviceName));
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            line.append('\t').append(field.getKey()).append('=').append(clean(field.getValue()));
+        }
+        return line.toString();
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
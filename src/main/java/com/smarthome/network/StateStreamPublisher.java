@@ -0,0 +1,299 @@
+package com.smarthome.network;
+
+import com.smarthome.behavioral.ControllerListener;
+import com.smarthome.behavioral.Observer;
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.DeviceTimers;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.Room;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns observer notifications into a sequenced stream of state deltas.
+ *
+ * <p>Every change gets the next sequence number and is kept in a
+ * fixed-size history ring. A reconnecting client that is still inside
+ * the ring resumes from its last sequence; anyone older gets a fresh
+ * snapshot. Each client is written to by its own thread, so device
+ * threads never wait on the network and a stalled dashboard cannot hold
+ * up the others. A few times a second the publisher drops clients that
+ * have fallen too far behind (see {@link StateSubscription}).</p>
+ *
+ * <p>Devices are tracked by their controller id rather than their name,
+ * so two devices that share a name still get separate state and
+ * separate events. The publisher also listens to the controller: a
+ * device added later is sent to followers as a full-state event and
+ * appears in later snapshots, and a removed device is sent as a removal
+ * event, to every client whatever its filter, and left out of later
+ * snapshots.</p>
+ *
+ * <p>Lock order is the controller's journal lock, then this publisher.
+ * Device changes are matched to ids through the publisher's own map, so
+ * nothing here waits for the journal lock while holding the
+ * publisher.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class StateStreamPublisher implements Observer, ControllerListener {
+    /** Default number of events kept for resuming clients. */
+    public static final int DEFAULT_HISTORY_SIZE = 65536;
+
+    private static final long LAG_CHECK_MILLIS = 250;
+
+    private final StateEvent[] history;
+    private long lastSequence;
+    private CentralController controller;
+    private final Map<SmartDevice, Integer> ids; // Keyed by the undecorated device
+    private final Map<Integer, Map<String, String>> lastState;
+    private final Map<Integer, SmartDevice> devices;
+    private final Map<String, Room> rooms;
+    private final List<StateSubscription> subscriptions;
+    private final ScheduledFuture<?> lagCheck;
+
+    /**
+     * Creates a publisher with the default history size.
+     */
+    public StateStreamPublisher() {
+        this(DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * Creates a publisher.
+     *
+     * @param historySize Number of events kept for resume
+     */
+    public StateStreamPublisher(int historySize) {
+        this.history = new StateEvent[historySize];
+        this.lastSequence = 0;
+        this.ids = new IdentityHashMap<>();
+        this.lastState = new HashMap<>();
+        this.devices = new HashMap<>();
+        this.rooms = new ConcurrentHashMap<>();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.lagCheck = DeviceTimers.scheduleAtFixedRate(this::dropLaggingClients, LAG_CHECK_MILLIS,
+                                                         LAG_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts following every device known to the controller.
+     *
+     * @param controller The controller whose devices to publish
+     */
+    public void attach(CentralController controller) {
+        int count;
+        // Under the journal lock, so no device is added or removed between
+        // the copy and the listener taking over
+        synchronized (controller.getJournalLock()) {
+            synchronized (this) {
+                this.controller = controller;
+                for (SmartDevice device : controller.getAllDevices()) {
+                    track(device, controller.getDeviceId(device));
+                }
+                count = devices.size();
+            }
+            controller.addControllerListener(this);
+        }
+        controller.addStateListener(this);
+        System.out.println("[STREAM] Publishing " + count + " devices");
+    }
+
+    private void track(SmartDevice device, int id) {
+        ids.put(DeviceDecorator.unwrap(device), id);
+        lastState.put(id, DeviceStateReader.read(device));
+        devices.put(id, device);
+    }
+
+    /**
+     * Starts publishing a device added to the controller, sending its
+     * full state to the followers it matches.
+     *
+     * @param device The device
+     * @param deviceId The id the controller gave it
+     */
+    @Override
+    public synchronized void deviceAdded(SmartDevice device, int deviceId) {
+        if (ids.containsKey(DeviceDecorator.unwrap(device))) {
+            return;
+        }
+        track(device, deviceId);
+        publish(new StateEvent(++lastSequence, deviceId, device.getName(),
+                               new LinkedHashMap<>(lastState.get(deviceId)), true), device);
+    }
+
+    /**
+     * Stops publishing a device removed from the controller and tells the
+     * followers it matches to drop it.
+     *
+     * @param device The device
+     * @param deviceId Its id
+     */
+    @Override
+    public synchronized void deviceRemoved(SmartDevice device, int deviceId) {
+        if (ids.remove(DeviceDecorator.unwrap(device)) == null) {
+            return;
+        }
+        lastState.remove(deviceId);
+        devices.remove(deviceId);
+        publish(StateEvent.removal(++lastSequence, deviceId, device.getName()), device);
+    }
+
+    private void publish(StateEvent event, SmartDevice device) {
+        history[(int) (event.getSequence() % history.length)] = event;
+        for (StateSubscription subscription : subscriptions) {
+            if (event.isRemoval() || subscription.matches(event.getDeviceName(), device)) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    /**
+     * Makes a room available as a subscription filter.
+     *
+     * @param room The room to register
+     */
+    public void registerRoom(Room room) {
+        rooms.put(room.getName(), room);
+    }
+
+    /**
+     * Looks up a registered room by name.
+     *
+     * @param name The room name
+     * @return The room, or null if not registered
+     */
+    public Room getRoom(String name) {
+        return rooms.get(name);
+    }
+
+    /**
+     * Publishes the fields of the device that changed since its last event.
+     *
+     * @param device The device that changed
+     */
+    @Override
+    public void update(SmartDevice device) {
+        synchronized (this) {
+            Integer id = ids.get(DeviceDecorator.unwrap(device));
+            if (id == null) {
+                return; // Not in the controller, or removed from it
+            }
+            // Read under the lock: with callbacks on several threads, a state
+            // read earlier could otherwise be published after a newer one
+            Map<String, String> current = DeviceStateReader.read(device);
+            Map<String, String> delta = DeviceStateReader.diff(lastState.get(id), current);
+            if (delta.isEmpty()) {
+                return;
+            }
+            lastState.put(id, current);
+            publish(new StateEvent(++lastSequence, id, device.getName(), delta, false), device);
+        }
+    }
+
+    /**
+     * Registers a client. If {@code fromSequence} is still in the history
+     * ring, the missed deltas are replayed; otherwise the client receives a
+     * snapshot of every device it follows. Live events follow without gaps.
+     * Replayed removals go to every client: the device is gone, so room
+     * filters can no longer be checked, and a client drops a device it
+     * does not know without harm.
+     *
+     * @param subscription The client
+     * @param fromSequence Last sequence the client saw, or -1 for a new client
+     * @return true if the client resumed, false if it was sent a snapshot
+     */
+    public synchronized boolean subscribe(StateSubscription subscription, long fromSequence) {
+        boolean resume = canResume(fromSequence);
+        subscription.offerHeader("OK\t" + lastSequence + "\t" + (resume ? "RESUME" : "SNAPSHOT"));
+        if (resume) {
+            for (long seq = fromSequence + 1; seq <= lastSequence; seq++) {
+                StateEvent event = history[(int) (seq % history.length)];
+                if (event.isRemoval() ||
+                    subscription.matches(event.getDeviceName(), devices.get(event.getDeviceId()))) {
+                    subscription.offer(event);
+                }
+            }
+        } else {
+            for (Map.Entry<Integer, Map<String, String>> entry : lastState.entrySet()) {
+                SmartDevice device = devices.get(entry.getKey());
+                if (subscription.matches(device.getName(), device)) {
+                    subscription.offer(new StateEvent(lastSequence, entry.getKey(), device.getName(),
+                                                      new LinkedHashMap<>(entry.getValue()), true));
+                }
+            }
+        }
+        subscriptions.add(subscription);
+        subscription.start();
+        return resume;
+    }
+
+    private boolean canResume(long fromSequence) {
+        if (fromSequence < 0 || fromSequence > lastSequence) {
+            return false;
+        }
+        long oldestKept = Math.max(1, lastSequence - history.length + 1);
+        return fromSequence + 1 >= oldestKept;
+    }
+
+    /**
+     * Removes a client.
+     *
+     * @param subscription The client to remove
+     */
+    public void unsubscribe(StateSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Gets the sequence number of the most recent event.
+     *
+     * @return Last sequence, 0 if nothing has been published
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the number of connected clients.
+     *
+     * @return Subscription count
+     */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    private void dropLaggingClients() {
+        long now = System.nanoTime();
+        for (StateSubscription subscription : subscriptions) {
+            subscription.dropIfLagging(now);
+        }
+    }
+
+    /**
+     * Stops listening to the controller, disconnects every client and
+     * stops checking for lagging ones.
+     */
+    public void shutdown() {
+        lagCheck.cancel(false);
+        CentralController attached;
+        synchronized (this) {
+            attached = controller;
+        }
+        if (attached != null) {
+            attached.removeStateListener(this);
+            attached.removeControllerListener(this);
+        }
+        for (StateSubscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+}
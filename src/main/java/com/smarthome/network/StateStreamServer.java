@@ -0,0 +1,206 @@
+package com.smarthome.network;
+
+import com.smarthome.structural.Room;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TCP endpoint that lets remote dashboards follow device state.
+ *
+ * <p>Protocol (UTF-8 lines, tab separated):</p>
+ * <pre>
+ * client: SUBSCRIBE [from=&lt;seq&gt;] [devices=a,b] [rooms=Kitchen,Bedroom]
+ * server: OK &lt;lastSeq&gt; RESUME|SNAPSHOT    (or ERR &lt;reason&gt;, then close)
+ * server: S &lt;seq&gt; &lt;device&gt; on=1 brightness=60 ...   (full state)
+ * server: D &lt;seq&gt; &lt;device&gt; brightness=30           (changed fields only)
+ * server: R &lt;seq&gt; &lt;device&gt;                         (device removed)
+ * </pre>
+ *
+ * <p>Subscribing to a room the publisher does not know is an error
+ * rather than an empty filter, which would follow every device.
+ * Handshakes run on their own small pool, so clients that connect and
+ * say nothing cannot hold up delivery to everyone else.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * StateStreamPublisher publisher = new StateStreamPublisher();
+ * publisher.attach(CentralController.getInstance());
+ * publisher.registerRoom(kitchen);
+ *
+ * StateStreamServer server = new StateStreamServer(publisher, 7070);
+ * server.start();
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class StateStreamServer {
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private static final int HANDSHAKE_THREADS = 2;
+    /** Default time a change may wait undelivered before its client is dropped. */
+    public static final long DEFAULT_MAX_LAG_MILLIS = 2000;
+
+    private final StateStreamPublisher publisher;
+    private final int port;
+    private final long maxLagMillis;
+    private final ExecutorService handshakes;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean running;
+
+    /**
+     * Creates a server. Use port 0 to pick a free port.
+     *
+     * @param publisher The publisher to serve
+     * @param port TCP port to listen on
+     */
+    public StateStreamServer(StateStreamPublisher publisher, int port) {
+        this(publisher, port, DEFAULT_MAX_LAG_MILLIS);
+    }
+
+    /**
+     * Creates a server with a custom slow-client limit.
+     *
+     * @param publisher The publisher to serve
+     * @param port TCP port to listen on
+     * @param maxLagMillis How long delivery to a client may go without
+     *                     getting a line out before the client is dropped
+     */
+    public StateStreamServer(StateStreamPublisher publisher, int port, long maxLagMillis) {
+        this.publisher = publisher;
+        this.port = port;
+        this.maxLagMillis = maxLagMillis;
+        this.handshakes = Executors.newFixedThreadPool(HANDSHAKE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "State-Stream-Handshake");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts accepting clients on a background thread.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "State-Stream-Acceptor");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        System.out.println("[STREAM] Listening on port " + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Gets the port the server is bound to.
+     *
+     * @return The local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting clients. Existing subscriptions stay open until
+     * the publisher is shut down.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignore, shutting down
+        }
+        handshakes.shutdownNow();
+        System.out.println("[STREAM] Server stopped");
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                handshakes.execute(() -> handshake(socket));
+            } catch (SocketException e) {
+                break; // Server socket closed
+            } catch (IOException e) {
+                System.out.println("[STREAM] Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handshake(Socket socket) {
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String request = in.readLine();
+            if (request == null || !request.startsWith("SUBSCRIBE")) {
+                socket.close();
+                return;
+            }
+
+            BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            long from = -1;
+            Set<String> deviceNames = new HashSet<>();
+            List<Room> rooms = new ArrayList<>();
+            for (String token : request.split("\t")) {
+                if (token.startsWith("from=")) {
+                    from = Long.parseLong(token.substring(5));
+                } else if (token.startsWith("devices=")) {
+                    for (String name : token.substring(8).split(",")) {
+                        if (!name.isEmpty()) {
+                            deviceNames.add(name);
+                        }
+                    }
+                } else if (token.startsWith("rooms=")) {
+                    for (String name : token.substring(6).split(",")) {
+                        if (name.isEmpty()) {
+                            continue;
+                        }
+                        Room room = publisher.getRoom(name);
+                        if (room == null) {
+                            reject(socket, out, "unknown room: " + name);
+                            return;
+                        }
+                        rooms.add(room);
+                    }
+                }
+            }
+
+            socket.setSoTimeout(0);
+            StateSubscription subscription = new StateSubscription(
+                publisher, deviceNames, rooms, out, socket, maxLagMillis);
+            publisher.subscribe(subscription, from);
+        } catch (IOException | NumberFormatException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    private void reject(Socket socket, BufferedWriter out, String reason) throws IOException {
+        System.out.println("[STREAM] Subscription refused: " + reason);
+        out.write("ERR\t" + reason.replace('\t', ' ') + "\n");
+        out.flush();
+        socket.close();
+    }
+}
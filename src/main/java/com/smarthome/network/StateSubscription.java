@@ -0,0 +1,253 @@
+package com.smarthome.network;
+
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.Room;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One remote client following device state.
+ *
+ * <p>Events are not queued one by one. Pending changes are kept per
+ * device and merged, so a slow client only ever receives the latest
+ * value of each field and its backlog is bounded by the number of
+ * devices it follows, not by the rate of changes.</p>
+ *
+ * <p>Each batch is written in sequence order, so the sequence numbers a
+ * client sees only go up and it can resume from the last one it read.
+ * A merged event carries the sequence of its first change, so resuming
+ * after it replays the later changes folded into it instead of skipping
+ * them.</p>
+ *
+ * <p>Every client has its own writer thread, so a dashboard that stops
+ * reading only blocks its own socket write and never delays the others.
+ * The publisher checks every subscription regularly and drops any whose
+ * delivery has taken no line for longer than its lag limit. Progress is
+ * counted per line, so a slow reader working through a large batch
+ * keeps its connection. Closing the socket releases the blocked writer,
+ * and the client can reconnect and resume.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class StateSubscription {
+    private final StateStreamPublisher publisher;
+    private final Set<String> deviceNames;
+    private final List<Room> rooms;
+    private final Writer out;
+    private final Closeable connection;
+    private final long maxLagNanos;
+
+    private final Map<Integer, StateEvent> pending;
+    private String header;
+    private Thread writer;
+    private volatile boolean closed;
+    private volatile long lastProgress; // When delivery started or last got a line out, 0 if not delivering
+    private long deliveredCount;
+    private long coalescedCount;
+
+    /**
+     * Creates a subscription. Empty device and room filters follow every device.
+     *
+     * @param publisher The publisher feeding this subscription
+     * @param deviceNames Device names to follow
+     * @param rooms Rooms whose devices to follow
+     * @param out Where protocol lines are written
+     * @param connection Closed when the subscription ends
+     * @param maxLagMillis How long delivery may go without getting a line out before the client is dropped
+     */
+    public StateSubscription(StateStreamPublisher publisher, Set<String> deviceNames, List<Room> rooms,
+                             Writer out, Closeable connection, long maxLagMillis) {
+        this.publisher = publisher;
+        this.deviceNames = deviceNames;
+        this.rooms = rooms;
+        this.out = out;
+        this.connection = connection;
+        this.maxLagNanos = maxLagMillis * 1_000_000L;
+        this.pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Checks whether a device passes this subscription's filters. Room
+     * membership is read from the room's {@code DeviceIndex}.
+     *
+     * @param deviceName The device name
+     * @param device The device, or null if it is no longer known
+     * @return true if the client follows this device
+     */
+    public boolean matches(String deviceName, SmartDevice device) {
+        if (deviceNames.isEmpty() && rooms.isEmpty()) {
+            return true;
+        }
+        if (deviceNames.contains(deviceName)) {
+            return true;
+        }
+        if (device != null) {
+            for (Room room : rooms) {
+                if (room.containsDevice(device)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues an event for delivery, merging it with any undelivered
+     * event for the same device. Never blocks the caller.
+     *
+     * @param event The event to deliver
+     */
+    void offer(StateEvent event) {
+        if (closed) {
+            return;
+        }
+        synchronized (pending) {
+            StateEvent existing = pending.get(event.getDeviceId());
+            if (existing != null) {
+                pending.put(event.getDeviceId(), existing.mergedWith(event));
+                coalescedCount++;
+            } else {
+                pending.put(event.getDeviceId(), event);
+            }
+            pending.notify();
+        }
+    }
+
+    /**
+     * Queues a line to be written ahead of any events.
+     * Used for the handshake reply.
+     *
+     * @param line The line to write
+     */
+    void offerHeader(String line) {
+        synchronized (pending) {
+            header = line;
+            pending.notify();
+        }
+    }
+
+    /**
+     * Starts this client's writer thread.
+     */
+    void start() {
+        synchronized (pending) {
+            if (writer != null) {
+                return;
+            }
+            writer = new Thread(this::writeLoop, "State-Stream-Writer");
+            writer.setDaemon(true);
+        }
+        writer.start();
+    }
+
+    /**
+     * Sends pending events as they arrive until the subscription closes.
+     */
+    private void writeLoop() {
+        while (!closed) {
+            String line;
+            List<StateEvent> batch;
+            synchronized (pending) {
+                while (header == null && pending.isEmpty()) {
+                    lastProgress = 0;
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                line = header;
+                header = null;
+                // Insertion order is first-sequence order, and merged events keep their first sequence
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            lastProgress = System.nanoTime();
+            try {
+                if (line != null) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                for (StateEvent event : batch) {
+                    out.write(event.toLine());
+                    out.write('\n');
+                    lastProgress = System.nanoTime(); // Returned, so the client is taking data
+                }
+                out.flush();
+                deliveredCount += batch.size();
+            } catch (IOException e) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Drops the client if its delivery has got no line out for longer
+     * than the lag limit.
+     *
+     * @param now Current {@link System#nanoTime()}
+     * @return true if the client was dropped
+     */
+    boolean dropIfLagging(long now) {
+        long progress = lastProgress;
+        boolean lagging = progress != 0 && now - progress > maxLagNanos;
+        if (lagging && !closed) {
+            System.out.println("[STREAM] Dropping a client more than " + maxLagNanos / 1_000_000 +
+                               " ms behind");
+            close();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ends the subscription and closes the connection.
+     */
+    public void close() {
+        closed = true;
+        synchronized (pending) {
+            pending.notify();
+        }
+        publisher.unsubscribe(this);
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets the number of events written to the client.
+     *
+     * @return Delivered event count
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Gets the number of events merged into an undelivered event
+     * because the client had not caught up yet.
+     *
+     * @return Coalesced event count
+     */
+    public long getCoalescedCount() {
+        synchronized (pending) {
+            return coalescedCount;
+        }
+    }
+}
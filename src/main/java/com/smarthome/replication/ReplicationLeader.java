@@ -0,0 +1,571 @@
+package com.smarthome.replication;
+
+import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.ControlStrategy;
+import com.smarthome.behavioral.ControllerListener;
+import com.smarthome.behavioral.Observer;
+import com.smarthome.codec.CommandCodec;
+import com.smarthome.codec.DeviceStateCodec;
+import com.smarthome.codec.JournalCodec;
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.DeviceProvider;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.creational.DeviceTypeRegistry;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.structural.DeviceDecorator;
+import com.smarthome.structural.EnergyMonitorDecorator;
+import com.smarthome.structural.VoiceControlDecorator;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+/**
+ * Leader side of hot-standby replication: streams a controller's journal
+ * to {@link StandbyController}s over TCP.
+ *
+ * <p>The leader listens to its controller as a {@link ControllerListener}
+ * and a state listener. Those callbacks only queue a reference (commands,
+ * devices added, undo, ...) or mark a device dirty, so
+ * {@code executeCommand} pays for one queue insert. A shipper thread
+ * wakes every few milliseconds, encodes everything queued with the
+ * binary codecs and sends it to every standby as one frame. Dirty
+ * devices are sent once per frame however often they changed.</p>
+ *
+ * <p>A standby that connects first receives a snapshot: every device
+ * with its state, the undo and redo histories and the control strategy.
+ * The snapshot is read under the controller's journal lock together
+ * with the sequence number of the last entry queued, so entries up to
+ * that fence go only to the standbys already following and the new one
+ * never gets a change twice. When there
+ * is nothing to send, an empty frame goes out every
+ * {@value #HEARTBEAT_MS} ms so standbys can tell a quiet leader from a
+ * dead one.</p>
+ *
+ * <p>Frames are a 4-byte payload length, an 8-byte sequence number (the
+ * number of entries sent so far) and the payload messages.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * ReplicationLeader leader = new ReplicationLeader(CentralController.getInstance(), 7071);
+ * leader.start();
+ * // elsewhere: new StandbyController("127.0.0.1", 7071).start();
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see StandbyController
+ */
+public class ReplicationLeader implements ControllerListener, Observer {
+    public static final int DEFAULT_BATCH_INTERVAL_MS = 5;
+    public static final int HEARTBEAT_MS = 100;
+
+    private static final int INITIAL_BUFFER_BYTES = 256 * 1024;
+    private static final int FRAME_HEADER_BYTES = 12;
+    private static final int MAX_STATE_BYTES = DeviceStateCodec.FIXED_LENGTH + 0xFFFF;
+    private static final int OP_EXECUTE = 0;
+
+    private final CentralController controller;
+    private final ServerSocket serverSocket;
+    private final long batchIntervalNanos;
+
+    // Filled by controller callbacks, drained by the shipper thread
+    private final ConcurrentLinkedQueue<Entry> pending;
+    private final AtomicLong queued; // Sequence of the last entry queued
+    private final Map<Integer, SmartDevice> dirty;
+    private final Map<SmartDevice, Integer> deviceIds; // Keyed by the undecorated device
+    private final ConcurrentLinkedQueue<Socket> joining;
+
+    // Shipper thread only
+    private final List<Follower> followers;
+    private ByteBuffer buffer;
+    private int length;
+    private int entries;
+
+    private volatile long sequence;
+    private volatile long unreplicated;
+    private volatile int followerCount;
+    private volatile boolean running;
+    private Thread shipper;
+
+    /**
+     * One queued journal entry.
+     */
+    private static final class Entry {
+        final long seq;
+        final int op;
+        final int deviceId;
+        final Command command;
+        final String text;
+
+        Entry(long seq, int op, int deviceId, Command command, String text) {
+            this.seq = seq;
+            this.op = op;
+            this.deviceId = deviceId;
+            this.command = command;
+            this.text = text;
+        }
+    }
+
+    /**
+     * What a joining standby is sent, read in one go under the
+     * controller's journal lock.
+     */
+    private static final class Snapshot {
+        final long fence;
+        final List<SmartDevice> devices;
+        final Map<SmartDevice, Integer> ids; // Keyed by the undecorated device
+        final List<Command> history;
+        final List<Command> redo;
+        final ControlStrategy strategy;
+
+        Snapshot(long fence, List<SmartDevice> devices, Map<SmartDevice, Integer> ids, List<Command> history,
+                 List<Command> redo, ControlStrategy strategy) {
+            this.fence = fence;
+            this.devices = devices;
+            this.ids = ids;
+            this.history = history;
+            this.redo = redo;
+            this.strategy = strategy;
+        }
+
+        int idOf(SmartDevice device) {
+            Integer id = ids.get(DeviceDecorator.unwrap(device));
+            if (id == null) {
+                throw new IllegalArgumentException("Device not in controller: " + device.getName());
+            }
+            return id;
+        }
+    }
+
+    /**
+     * A connected standby.
+     */
+    private static final class Follower {
+        final Socket socket;
+        final DataOutputStream out;
+
+        Follower(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        }
+    }
+
+    /**
+     * Creates a leader listening on the loopback interface.
+     *
+     * @param controller The controller to replicate
+     * @param port TCP port, or 0 to pick a free one
+     * @throws IOException if the port cannot be bound
+     */
+    public ReplicationLeader(CentralController controller, int port) throws IOException {
+        this(controller, port, DEFAULT_BATCH_INTERVAL_MS);
+    }
+
+    /**
+     * Creates a leader listening on the loopback interface.
+     *
+     * @param controller The controller to replicate
+     * @param port TCP port, or 0 to pick a free one
+     * @param batchIntervalMs How long entries are collected before a frame is sent
+     * @throws IOException if the port cannot be bound
+     */
+    public ReplicationLeader(CentralController controller, int port, int batchIntervalMs) throws IOException {
+        this.controller = controller;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.batchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, batchIntervalMs));
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicLong();
+        this.dirty = new ConcurrentHashMap<>();
+        this.deviceIds = Collections.synchronizedMap(new IdentityHashMap<>());
+        this.joining = new ConcurrentLinkedQueue<>();
+        this.followers = new ArrayList<>();
+        this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    }
+
+    /**
+     * Starts listening to the controller and accepting standbys.
+     */
+    public void start() {
+        for (SmartDevice device : controller.getAllDevices()) {
+            deviceIds.put(DeviceDecorator.unwrap(device), controller.getDeviceId(device));
+        }
+        controller.addControllerListener(this);
+        controller.addStateListener(this);
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "journal-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        shipper = new Thread(this::shipLoop, "journal-shipper");
+        shipper.setDaemon(true);
+        shipper.start();
+        System.out.println("[REPLICATION] Leader listening on 127.0.0.1:" + getPort());
+    }
+
+    /**
+     * Stops replicating and disconnects every standby. Standbys take
+     * over once they notice.
+     */
+    public void stop() {
+        running = false;
+        controller.removeControllerListener(this);
+        controller.removeStateListener(this);
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        if (shipper != null) {
+            try {
+                shipper.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println("[REPLICATION] Leader stopped");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followerCount;
+    }
+
+    /**
+     * Gets the number of journal entries sent so far.
+     *
+     * @return The sequence number of the last frame sent
+     */
+    public long getShippedSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets how many entries are waiting for the next frame.
+     *
+     * @return Queued entries plus dirty devices
+     */
+    public int getPendingCount() {
+        return pending.size() + dirty.size();
+    }
+
+    /**
+     * Gets the number of commands that could not be replicated because
+     * the wire format has no kind for them.
+     *
+     * @return Skipped commands
+     */
+    public long getUnreplicatedCount() {
+        return unreplicated;
+    }
+
+    // ---- Controller callbacks: queue only, never block ----
+
+    @Override
+    public void deviceAdded(SmartDevice device, int deviceId) {
+        deviceIds.put(DeviceDecorator.unwrap(device), deviceId);
+        queue(JournalCodec.OP_ADD_DEVICE, deviceId, null, describe(device));
+    }
+
+    @Override
+    public void deviceRemoved(SmartDevice device, int deviceId) {
+        deviceIds.remove(DeviceDecorator.unwrap(device));
+        queue(JournalCodec.OP_REMOVE_DEVICE, deviceId, null, null);
+    }
+
+    @Override
+    public void commandExecuted(Command command) {
+        queue(OP_EXECUTE, -1, command, null);
+    }
+
+    @Override
+    public void commandUndone(Command command) {
+        queue(JournalCodec.OP_UNDO, -1, null, null);
+    }
+
+    @Override
+    public void commandRedone(Command command) {
+        queue(JournalCodec.OP_REDO, -1, null, null);
+    }
+
+    @Override
+    public void historyCleared() {
+        queue(JournalCodec.OP_CLEAR_HISTORY, -1, null, null);
+    }
+
+    @Override
+    public void strategyChanged(ControlStrategy strategy) {
+        queue(JournalCodec.OP_SET_STRATEGY, -1, null, strategy.getClass().getName());
+    }
+
+    /**
+     * Queues an entry. Callbacks run under the controller's journal
+     * lock, so entries are queued in sequence order.
+     */
+    private void queue(int op, int deviceId, Command command, String text) {
+        pending.add(new Entry(queued.incrementAndGet(), op, deviceId, command, text));
+    }
+
+    @Override
+    public void update(SmartDevice device) {
+        Integer id = deviceIds.get(DeviceDecorator.unwrap(device));
+        if (id != null) {
+            dirty.put(id, device);
+        }
+    }
+
+    // ---- Shipper thread ----
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                joining.add(socket);
+            } catch (SocketException e) {
+                break; // Server socket closed by stop()
+            } catch (IOException e) {
+                System.out.println("[REPLICATION] Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void shipLoop() {
+        long lastFrame = System.nanoTime();
+        while (running) {
+            LockSupport.parkNanos(batchIntervalNanos);
+            Snapshot snapshot = joining.isEmpty() ? null : takeSnapshot();
+            encodeBatch(snapshot == null ? Long.MAX_VALUE : snapshot.fence);
+            long now = System.nanoTime();
+            if (entries > 0 || now - lastFrame >= TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MS)) {
+                sequence += entries;
+                for (Iterator<Follower> it = followers.iterator(); it.hasNext();) {
+                    Follower follower = it.next();
+                    if (!send(follower)) {
+                        it.remove();
+                    }
+                }
+                lastFrame = now;
+            }
+
+            if (snapshot != null) {
+                Socket socket;
+                while ((socket = joining.poll()) != null) {
+                    addFollower(socket, snapshot);
+                }
+            }
+            followerCount = followers.size();
+        }
+        for (Follower follower : followers) {
+            close(follower);
+        }
+        followers.clear();
+        followerCount = 0;
+    }
+
+    /**
+     * Encodes the entries queued since the last frame, up to a sequence
+     * number, into the buffer, and the dirty devices if every queued
+     * entry was taken.
+     */
+    private void encodeBatch(long fence) {
+        length = 0;
+        entries = 0;
+        Entry entry;
+        while ((entry = pending.peek()) != null && entry.seq <= fence) {
+            pending.poll();
+            if (entry.op == OP_EXECUTE) {
+                encodeCommand(entry.command, this::idOf);
+            } else {
+                encodeJournal(entry.op, entry.deviceId, entry.text);
+            }
+        }
+        if (entry != null) {
+            return; // Dirty devices may not be added on the standbys yet; next frame
+        }
+        for (Iterator<Map.Entry<Integer, SmartDevice>> it = dirty.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, SmartDevice> state = it.next();
+            it.remove();
+            ensure(MAX_STATE_BYTES);
+            length += DeviceStateCodec.encode(buffer, length, state.getKey(), state.getValue());
+            entries++;
+        }
+    }
+
+    private void encodeCommand(Command command, ToIntFunction<SmartDevice> ids) {
+        ensure(CommandCodec.LENGTH);
+        try {
+            length += CommandCodec.encode(buffer, length, command, ids);
+            entries++;
+        } catch (IllegalArgumentException e) {
+            // The state change still reaches the standby through the dirty devices
+            unreplicated++;
+        }
+    }
+
+    private void encodeJournal(int op, int deviceId, String text) {
+        ensure(JournalCodec.maxLength(text));
+        length += JournalCodec.encode(buffer, length, op, deviceId, text);
+        entries++;
+    }
+
+    private int idOf(SmartDevice device) {
+        Integer id = deviceIds.get(DeviceDecorator.unwrap(device));
+        if (id == null) {
+            throw new IllegalArgumentException("Device not in controller: " + device.getName());
+        }
+        return id;
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, length + bytes));
+            larger.put(buffer.array(), 0, length);
+            buffer = larger;
+        }
+    }
+
+    private boolean send(Follower follower) {
+        try {
+            follower.out.writeInt(length);
+            follower.out.writeLong(sequence);
+            follower.out.write(buffer.array(), 0, length);
+            follower.out.flush();
+            return true;
+        } catch (IOException e) {
+            System.out.println("[REPLICATION] Standby " + follower.socket.getRemoteSocketAddress() +
+                               " disconnected: " + e.getMessage());
+            close(follower);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the controller's devices, histories and strategy together
+     * with the last queued sequence number. Device state is read later,
+     * when encoded; changes after the fence are sent again as dirty
+     * devices, and applying a state twice does no harm.
+     */
+    private Snapshot takeSnapshot() {
+        synchronized (controller.getJournalLock()) {
+            List<SmartDevice> devices = controller.getAllDevices();
+            Map<SmartDevice, Integer> ids = new IdentityHashMap<>();
+            for (SmartDevice device : devices) {
+                ids.put(DeviceDecorator.unwrap(device), controller.getDeviceId(device));
+            }
+            return new Snapshot(queued.get(), devices, ids, controller.getCommandHistory(),
+                                controller.getRedoHistory(), controller.getControlStrategy());
+        }
+    }
+
+    /**
+     * Sends a new standby the snapshot, then adds it to the followers.
+     */
+    private void addFollower(Socket socket, Snapshot snapshot) {
+        Follower follower;
+        try {
+            follower = new Follower(socket);
+        } catch (IOException e) {
+            return;
+        }
+        length = 0;
+        entries = 0;
+        encodeJournal(JournalCodec.OP_SNAPSHOT_BEGIN, -1, null);
+        for (SmartDevice device : snapshot.devices) {
+            int id = snapshot.idOf(device);
+            encodeJournal(JournalCodec.OP_ADD_DEVICE, id, describe(device));
+            ensure(MAX_STATE_BYTES);
+            length += DeviceStateCodec.encode(buffer, length, id, device);
+            entries++;
+        }
+        for (Command command : snapshot.history) {
+            encodeCommand(command, snapshot::idOf);
+        }
+        if (!snapshot.redo.isEmpty()) {
+            encodeJournal(JournalCodec.OP_SNAPSHOT_REDO, -1, null);
+            for (Command command : snapshot.redo) {
+                encodeCommand(command, snapshot::idOf);
+            }
+        }
+        if (snapshot.strategy != null) {
+            encodeJournal(JournalCodec.OP_SET_STRATEGY, -1, snapshot.strategy.getClass().getName());
+        }
+        encodeJournal(JournalCodec.OP_SNAPSHOT_END, -1, null);
+
+        if (send(follower)) {
+            followers.add(follower);
+            System.out.println("[REPLICATION] Standby joined from " + socket.getRemoteSocketAddress() +
+                               " (snapshot of " + snapshot.devices.size() + " devices, " +
+                               buffer.capacity() / 1024 + " KB buffer)");
+        }
+    }
+
+    private static void close(Follower follower) {
+        try {
+            follower.socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Describes a device as a {@link DeviceSpec} manifest line a standby
+     * can build it from. The type name and its params come from the
+     * {@link DeviceTypeRegistry} provider that claims the device, so
+     * plugin types are described too. Rooms and devices no provider
+     * claims get no line; their commands are still shipped but cannot
+     * be applied.
+     */
+    static String describe(SmartDevice device) {
+        List<String> decorators = new ArrayList<>();
+        List<String[]> params = new ArrayList<>();
+        for (DeviceDecorator layer : DeviceDecorator.layers(device)) {
+            if (layer instanceof EnergyMonitorDecorator) {
+                EnergyMonitorDecorator energy = (EnergyMonitorDecorator) layer;
+                decorators.add(0, "energy");
+                params.add(new String[] {"rate", Double.toString(energy.getCostPerKWh())});
+                params.add(new String[] {"watts", Double.toString(energy.getRatedPowerKw() * 1000.0)});
+            } else if (layer instanceof VoiceControlDecorator) {
+                decorators.add(0, "voice");
+                params.add(new String[] {"assistant", ((VoiceControlDecorator) layer).getVoiceAssistant()});
+            }
+        }
+        SmartDevice target = DeviceDecorator.unwrap(device);
+        DeviceProvider provider = DeviceTypeRegistry.getInstance().findProvider(target);
+        if (provider == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> param : provider.describe(target).entrySet()) {
+            params.add(new String[] {param.getKey(), param.getValue()});
+        }
+        DeviceSpec spec = new DeviceSpec(provider.getType(), device.getName());
+        for (String decorator : decorators) {
+            spec.addDecorator(decorator);
+        }
+        for (String[] param : params) {
+            spec.setParam(param[0], param[1]);
+        }
+        return spec.toManifestLine();
+    }
+}
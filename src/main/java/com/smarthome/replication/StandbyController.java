@@ -0,0 +1,418 @@
+package com.smarthome.replication;
+
+import com.smarthome.behavioral.Command;
+import com.smarthome.behavioral.ControlStrategy;
+import com.smarthome.codec.CommandCodec;
+import com.smarthome.codec.CommandView;
+import com.smarthome.codec.DeviceStateView;
+import com.smarthome.codec.JournalCodec;
+import com.smarthome.codec.JournalView;
+import com.smarthome.codec.WireFormat;
+import com.smarthome.creational.CentralController;
+import com.smarthome.creational.DeviceFactory;
+import com.smarthome.creational.DeviceSpec;
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Dimmable;
+import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Speaker;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.devices.Thermostatic;
+import com.smarthome.devices.VolumeAdjustable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Standby side of hot-standby replication: follows a
+ * {@link ReplicationLeader}'s journal and keeps a controller in step
+ * with the leader's, ready to take over.
+ *
+ * <p>The standby applies each frame as it arrives: devices are built
+ * from their spec lines, commands are executed through the controller
+ * (so its undo history matches the leader's), undo/redo/clear are
+ * repeated and device state is copied. Until it takes over, nothing
+ * else should drive the standby's controller.</p>
+ *
+ * <p>If the connection drops, or no frame (not even a heartbeat) arrives
+ * within the takeover timeout, the standby is promoted: it stops
+ * following, activates the replicated control strategy and calls the
+ * takeover listener. The default timeout of
+ * {@value #DEFAULT_TAKEOVER_TIMEOUT_MS} ms keeps takeover well under a
+ * second.</p>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ * @see ReplicationLeader
+ */
+public class StandbyController {
+    public static final int DEFAULT_TAKEOVER_TIMEOUT_MS = 500;
+
+    private final CentralController controller;
+    private final String host;
+    private final int port;
+    private final int takeoverTimeoutMs;
+    private final DeviceFactory factory;
+    private final CountDownLatch promoted;
+
+    // Reader thread only
+    private final List<SmartDevice> devicesByLeaderId;
+    private final JournalView journalView;
+    private final CommandView commandView;
+    private final DeviceStateView stateView;
+    private final List<Command> snapshotHistory;
+    private final List<Command> snapshotRedo;
+    private final List<SmartDevice> snapshotDevices;
+    private boolean inSnapshot;
+    private boolean inSnapshotRedo;
+    private ByteBuffer buffer;
+
+    private volatile long appliedSequence;
+    private volatile long lastFrameNanos;
+    private volatile long failedEntries;
+    private volatile Consumer<CentralController> takeoverListener;
+    private Socket socket;
+
+    /**
+     * Creates a standby that follows a leader into this process's
+     * controller.
+     *
+     * @param host Leader host
+     * @param port Leader port
+     */
+    public StandbyController(String host, int port) {
+        this(CentralController.getInstance(), host, port, DEFAULT_TAKEOVER_TIMEOUT_MS);
+    }
+
+    /**
+     * Creates a standby.
+     *
+     * @param controller The controller to keep in step with the leader
+     * @param host Leader host
+     * @param port Leader port
+     * @param takeoverTimeoutMs Silence after which the leader counts as dead
+     */
+    public StandbyController(CentralController controller, String host, int port, int takeoverTimeoutMs) {
+        if (takeoverTimeoutMs <= ReplicationLeader.HEARTBEAT_MS) {
+            throw new IllegalArgumentException("Takeover timeout must be longer than the " +
+                                               ReplicationLeader.HEARTBEAT_MS + " ms heartbeat");
+        }
+        this.controller = controller;
+        this.host = host;
+        this.port = port;
+        this.takeoverTimeoutMs = takeoverTimeoutMs;
+        this.factory = new DeviceFactory();
+        this.promoted = new CountDownLatch(1);
+        this.devicesByLeaderId = new ArrayList<>();
+        this.journalView = new JournalView();
+        this.commandView = new CommandView();
+        this.stateView = new DeviceStateView();
+        this.snapshotHistory = new ArrayList<>();
+        this.snapshotRedo = new ArrayList<>();
+        this.snapshotDevices = new ArrayList<>();
+        this.buffer = ByteBuffer.allocate(64 * 1024);
+        this.appliedSequence = -1;
+    }
+
+    /**
+     * Sets what runs when this standby takes over. Called on the
+     * standby's reader thread with the now-active controller.
+     *
+     * @param listener The takeover listener
+     */
+    public void setTakeoverListener(Consumer<CentralController> listener) {
+        this.takeoverListener = listener;
+    }
+
+    /**
+     * Connects to the leader and starts following it.
+     *
+     * @throws IOException if the leader cannot be reached
+     */
+    public void start() throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), takeoverTimeoutMs);
+        socket.setSoTimeout(takeoverTimeoutMs);
+        lastFrameNanos = System.nanoTime();
+        Thread reader = new Thread(this::followLoop, "journal-standby");
+        reader.setDaemon(true);
+        reader.start();
+        System.out.println("[REPLICATION] Standby following " + host + ":" + port);
+    }
+
+    /**
+     * Waits until this standby has taken over.
+     *
+     * @param timeout How long to wait
+     * @param unit Unit of the timeout
+     * @return true if it took over, false if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTakeover(long timeout, TimeUnit unit) throws InterruptedException {
+        return promoted.await(timeout, unit);
+    }
+
+    public boolean isPromoted() {
+        return promoted.getCount() == 0;
+    }
+
+    public CentralController getController() {
+        return controller;
+    }
+
+    /**
+     * Gets the sequence number of the last frame applied. Matches the
+     * leader's {@link ReplicationLeader#getShippedSequence()} once the
+     * standby has caught up.
+     *
+     * @return Entries applied so far, or -1 before the first frame
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Gets the number of entries that could not be applied (unknown
+     * devices or commands that do not fit the device).
+     *
+     * @return Failed entries
+     */
+    public long getFailedEntries() {
+        return failedEntries;
+    }
+
+    private void followLoop() {
+        String reason;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024))) {
+            while (true) {
+                int length = in.readInt();
+                long sequence = in.readLong();
+                if (length > buffer.capacity()) {
+                    buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+                }
+                in.readFully(buffer.array(), 0, length);
+                apply(length);
+                appliedSequence = sequence;
+                lastFrameNanos = System.nanoTime();
+            }
+        } catch (SocketTimeoutException e) {
+            reason = "no heartbeat for " + takeoverTimeoutMs + " ms";
+        } catch (IOException e) {
+            reason = "connection lost";
+        }
+        promote(reason);
+    }
+
+    /**
+     * Applies every message in a frame.
+     */
+    private void apply(int length) {
+        int offset = 0;
+        while (offset < length) {
+            int type = WireFormat.messageType(buffer, offset);
+            try {
+                switch (type) {
+                    case WireFormat.TYPE_JOURNAL:
+                        applyJournal(journalView.wrap(buffer, offset));
+                        break;
+                    case WireFormat.TYPE_COMMAND:
+                        applyCommand(commandView.wrap(buffer, offset));
+                        break;
+                    case WireFormat.TYPE_DEVICE_STATE:
+                        applyState(stateView.wrap(buffer, offset));
+                        break;
+                    default:
+                        failedEntries++; // Newer message type; skip it
+                        break;
+                }
+            } catch (RuntimeException e) {
+                failedEntries++;
+            }
+            offset += WireFormat.messageLength(buffer, offset);
+        }
+    }
+
+    private void applyJournal(JournalView entry) {
+        switch (entry.op()) {
+            case JournalCodec.OP_SNAPSHOT_BEGIN:
+                inSnapshot = true;
+                snapshotDevices.clear();
+                snapshotHistory.clear();
+                snapshotRedo.clear();
+                BulkProvisioning.begin();
+                break;
+            case JournalCodec.OP_SNAPSHOT_REDO:
+                inSnapshotRedo = true;
+                break;
+            case JournalCodec.OP_SNAPSHOT_END:
+                BulkProvisioning.end();
+                inSnapshot = false;
+                inSnapshotRedo = false;
+                controller.addDevices(snapshotDevices);
+                controller.restoreHistory(snapshotHistory, snapshotRedo);
+                System.out.println("[REPLICATION] Snapshot applied: " + snapshotDevices.size() + " devices, " +
+                                   snapshotHistory.size() + " commands of history, " +
+                                   snapshotRedo.size() + " to redo");
+                snapshotDevices.clear();
+                snapshotHistory.clear();
+                snapshotRedo.clear();
+                break;
+            case JournalCodec.OP_ADD_DEVICE:
+                addDevice(entry.deviceId(), entry.text());
+                break;
+            case JournalCodec.OP_REMOVE_DEVICE:
+                SmartDevice removed = deviceAt(entry.deviceId());
+                if (removed != null) {
+                    controller.removeDevice(removed);
+                }
+                break;
+            case JournalCodec.OP_UNDO:
+                controller.undoLastCommand();
+                break;
+            case JournalCodec.OP_REDO:
+                controller.redoLastCommand();
+                break;
+            case JournalCodec.OP_CLEAR_HISTORY:
+                controller.clearHistory();
+                break;
+            case JournalCodec.OP_SET_STRATEGY:
+                setStrategy(entry.text());
+                break;
+            default:
+                failedEntries++;
+                break;
+        }
+    }
+
+    private void addDevice(int leaderId, String specLine) {
+        while (devicesByLeaderId.size() <= leaderId) {
+            devicesByLeaderId.add(null);
+        }
+        if (specLine.isEmpty()) {
+            failedEntries++; // The leader could not describe it (e.g. a room)
+            return;
+        }
+        DeviceSpec spec = DeviceSpec.parse(specLine);
+        SmartDevice existing = controller.getDevice(spec.getNamePattern());
+        if (existing != null) {
+            devicesByLeaderId.set(leaderId, existing); // Configured here already, or a reconnect
+            return;
+        }
+        SmartDevice device = factory.buildDevices(spec, 1).get(0);
+        devicesByLeaderId.set(leaderId, device);
+        if (inSnapshot) {
+            snapshotDevices.add(device);
+        } else {
+            controller.addDevice(device);
+        }
+    }
+
+    private SmartDevice deviceAt(int leaderId) {
+        return leaderId >= 0 && leaderId < devicesByLeaderId.size() ? devicesByLeaderId.get(leaderId) : null;
+    }
+
+    private void applyCommand(CommandView view) {
+        Command command = CommandCodec.toCommand(view, this::deviceAt);
+        if (inSnapshotRedo) {
+            snapshotRedo.add(command);
+        } else if (inSnapshot) {
+            snapshotHistory.add(command);
+        } else {
+            controller.executeCommand(command);
+        }
+    }
+
+    private void applyState(DeviceStateView view) {
+        SmartDevice device = deviceAt(view.deviceId());
+        if (device == null) {
+            return;
+        }
+        Capabilities capabilities = Capabilities.of(device);
+        Dimmable dimmable = capabilities.dimmable();
+        VolumeAdjustable volume = capabilities.volume();
+        SpeedAdjustable speed = capabilities.speed();
+        Thermostatic thermostatic = capabilities.thermostatic();
+        if (view.isOn() && !device.isOn()) {
+            device.turnOn();
+        }
+        if (dimmable != null && dimmable.getBrightness() != view.level()) {
+            dimmable.setBrightness(view.level());
+        } else if (volume != null && volume.getVolume() != view.level()) {
+            volume.setVolume(view.level());
+        } else if (speed != null && view.isOn() && view.level() > 0 && speed.getSpeed() != view.level()) {
+            speed.setSpeed(view.level());
+        }
+        if (thermostatic != null && (float) thermostatic.getTargetTemp() != view.targetTemp()) {
+            thermostatic.setTargetTemp(view.targetTemp());
+        }
+        // After the target, so the leader's reading wins over anything the target change did
+        Thermostat thermostat = capabilities.get(Thermostat.class);
+        if (thermostat != null && (float) thermostat.getCurrentTemp() != view.currentTemp()) {
+            thermostat.setCurrentTemp(view.currentTemp());
+        }
+        Speaker speaker = capabilities.get(Speaker.class);
+        if (speaker != null && view.isOn()) {
+            String playing = view.text();
+            if (!playing.equals(speaker.getCurrentlyPlaying())) {
+                if (playing.equals(Speaker.NOTHING_PLAYING)) {
+                    speaker.stop();
+                } else {
+                    speaker.play(playing);
+                }
+            }
+        }
+        if (!view.isOn() && device.isOn()) {
+            device.turnOff();
+        }
+    }
+
+    private void setStrategy(String className) {
+        try {
+            Class<?> type = Class.forName(className);
+            if (!ControlStrategy.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException(className + " is not a ControlStrategy");
+            }
+            controller.setControlStrategy((ControlStrategy) type.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            failedEntries++;
+            System.out.println("[REPLICATION] Cannot recreate strategy " + className + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes over from the leader.
+     */
+    private void promote(String reason) {
+        if (inSnapshot) {
+            BulkProvisioning.end(); // Leader died mid-snapshot
+            inSnapshot = false;
+            inSnapshotRedo = false;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        long silentMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastFrameNanos);
+        System.out.println("[REPLICATION] Leader lost (" + reason + "), taking over " + silentMs +
+                           " ms after its last frame at sequence " + appliedSequence);
+        if (controller.getControlStrategy() != null) {
+            controller.activateControlStrategy();
+        }
+        promoted.countDown();
+        Consumer<CentralController> listener = takeoverListener;
+        if (listener != null) {
+            listener.accept(controller);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.smarthome.runtime;
+
+import com.smarthome.creational.CentralController;
+import com.smarthome.devices.DeviceTimers;
+import com.smarthome.structural.DeviceIndex;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One home (tenant) inside a {@link HomeRuntime}.
+ *
+ * <p>A home has its own {@link CentralController} (devices, ids, command
+ * history, control strategy) and its own {@link DeviceIndex}. Work for
+ * the home is queued here and run by the runtime's shared dispatcher
+ * threads, one task at a time, so a home's objects never need locking.
+ * While a task runs, {@code CentralController.getInstance()} and
+ * {@code DeviceIndex.getInstance()} return this home's instances, and
+ * device timers (e.g. a thermostat settling), the controller's command
+ * lanes and schedule engines started from a task all come back to this
+ * queue, so a home needs no threads of its own.</p>
+ *
+ * <p>Each home is charged for the CPU time and the bytes allocated by
+ * its tasks, measured on the dispatcher thread, and reports an estimate
+ * of the memory it holds.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * Home home = runtime.createHome("home-42");
+ * home.submit(() -> {
+ *     CentralController controller = CentralController.getInstance(); // home-42's
+ *     controller.addDevice(new Light("Porch Light"));
+ * });
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class Home implements Executor {
+    // Rough retained sizes (64-bit JVM, compressed pointers) for the estimate
+    static final long BASE_BYTES = 2_048;       // controller, index, queue
+    static final long DEVICE_BYTES = 192;       // device, name, observer list
+    static final long INDEX_SLOT_BYTES = 48;    // slot map entry and bits
+    static final long COMMAND_BYTES = 64;       // command in the undo history
+    static final long TASK_BYTES = 48;          // queued task
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS =
+        THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+            ? (com.sun.management.ThreadMXBean) THREADS : null;
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final String id;
+    private final HomeRuntime runtime;
+    private final DeviceIndex index;
+    private final CentralController controller;
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+    private final AtomicInteger pending;
+    private final AtomicBoolean queued;
+    private volatile boolean closed;
+
+    // Written only by the dispatcher running this home's slice
+    private volatile long tasksRun;
+    private volatile long failedTasks;
+    private volatile long cpuNanos;
+    private volatile long allocatedBytes;
+
+    Home(String id, HomeRuntime runtime) {
+        this.id = id;
+        this.runtime = runtime;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger();
+        this.queued = new AtomicBoolean();
+        this.index = DeviceIndex.newInstance();
+        this.controller = CentralController.createForHome(id, index, this);
+    }
+
+    /**
+     * Queues a task for this home.
+     *
+     * @param task The task
+     * @throws IllegalStateException if the home was removed
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (closed) {
+            throw new IllegalStateException("Home " + id + " has been removed");
+        }
+        tasks.add(task);
+        pending.incrementAndGet();
+        markReady();
+    }
+
+    /**
+     * Queues a task and returns a future that completes when it has run.
+     *
+     * @param task The task
+     * @return Completes when the task is done, or exceptionally if it fails
+     */
+    public CompletableFuture<Void> submit(Runnable task) {
+        return CompletableFuture.runAsync(task, this);
+    }
+
+    /**
+     * Queues a task that produces a value.
+     *
+     * @param task The task
+     * @return The task's result
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, this);
+    }
+
+    /**
+     * Runs a task on this home after a delay. The wait happens on the
+     * shared timer thread; the task itself runs on this home's queue.
+     *
+     * @param task The task
+     * @param delay How long to wait
+     * @param unit Unit of the delay
+     * @return Handle for cancelling the task
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        Executor previous = DeviceTimers.bindExecutor(this);
+        try {
+            return DeviceTimers.schedule(task, delay, unit);
+        } finally {
+            DeviceTimers.bindExecutor(previous);
+        }
+    }
+
+    /**
+     * Runs a task on this home repeatedly.
+     *
+     * @param task The task
+     * @param initialDelay Delay before the first run
+     * @param period Time between runs
+     * @param unit Unit of the delays
+     * @return Handle for cancelling the task
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period,
+                                                  TimeUnit unit) {
+        Executor previous = DeviceTimers.bindExecutor(this);
+        try {
+            return DeviceTimers.scheduleAtFixedRate(task, initialDelay, period, unit);
+        } finally {
+            DeviceTimers.bindExecutor(previous);
+        }
+    }
+
+    private void markReady() {
+        if (queued.compareAndSet(false, true)) {
+            runtime.ready(this);
+        }
+    }
+
+    /**
+     * Runs up to {@code quantum} queued tasks with this home bound to the
+     * current thread. Called by one dispatcher at a time.
+     */
+    void runSlice(int quantum) {
+        CentralController previousController = CentralController.bindCurrent(controller);
+        DeviceIndex previousIndex = DeviceIndex.bindCurrent(index);
+        Executor previousTimers = DeviceTimers.bindExecutor(this);
+        long cpuBefore = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+        long allocatedBefore = ALLOCATIONS != null ? ALLOCATIONS.getCurrentThreadAllocatedBytes() : 0;
+        int ran = 0;
+        int failed = 0;
+        try {
+            for (; ran < quantum; ran++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                pending.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failed++;
+                    System.out.println("[RUNTIME] Task failed in home " + id + ": " + e);
+                }
+            }
+        } finally {
+            if (CPU_TIME) {
+                cpuNanos += THREADS.getCurrentThreadCpuTime() - cpuBefore;
+            }
+            if (ALLOCATIONS != null) {
+                allocatedBytes += ALLOCATIONS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            }
+            tasksRun += ran;
+            failedTasks += failed;
+            DeviceTimers.bindExecutor(previousTimers);
+            DeviceIndex.bindCurrent(previousIndex);
+            CentralController.bindCurrent(previousController);
+        }
+        queued.set(false);
+        if (!tasks.isEmpty()) {
+            markReady();
+        }
+    }
+
+    /**
+     * Stops accepting work and drops anything still queued.
+     */
+    void close() {
+        closed = true;
+        tasks.clear();
+        pending.set(0);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets this home's controller. Call its methods from this home's
+     * tasks, not from other threads.
+     *
+     * @return The controller
+     */
+    public CentralController getController() {
+        return controller;
+    }
+
+    /**
+     * Gets this home's device index.
+     *
+     * @return The index
+     */
+    public DeviceIndex getDeviceIndex() {
+        return index;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getPendingTasks() {
+        return pending.get();
+    }
+
+    public long getTasksRun() {
+        return tasksRun;
+    }
+
+    public long getFailedTasks() {
+        return failedTasks;
+    }
+
+    /**
+     * Gets the CPU time spent running this home's tasks.
+     *
+     * @return CPU time in nanoseconds (0 if the JVM cannot measure it)
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * Gets the bytes allocated while running this home's tasks. This
+     * counts garbage too, so it shows how hard a home works the heap.
+     *
+     * @return Allocated bytes (0 if the JVM cannot measure it)
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Estimates how much memory this home holds, from its device,
+     * index, history and queue sizes.
+     *
+     * @return Estimated retained bytes
+     */
+    public long getEstimatedBytes() {
+        return BASE_BYTES
+            + controller.getDeviceCount() * DEVICE_BYTES
+            + index.size() * INDEX_SLOT_BYTES
+            + controller.getHistorySize() * COMMAND_BYTES
+            + pending.get() * TASK_BYTES;
+    }
+}
@@ -0,0 +1,232 @@
+package com.smarthome.runtime;
+
+import com.smarthome.devices.BulkProvisioning;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs many homes in one process.
+ *
+ * <p>{@code CentralController.getInstance()} allows one home per JVM.
+ * The runtime instead gives every {@link Home} its own controller,
+ * device index, command history and strategy, while all homes share one
+ * small set of dispatcher threads and the shared device timer thread.</p>
+ *
+ * <p>Scheduling is fair per home: a home with work waits in a single
+ * ready queue, and a dispatcher runs at most {@link #QUANTUM} of its
+ * tasks before putting it at the back of the queue. A home flooding
+ * its queue therefore only slows itself down; every other home still
+ * gets a turn each round. A home is never run by two dispatchers at
+ * once.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * HomeRuntime runtime = new HomeRuntime(4);
+ * Home home = runtime.createHome("home-42");
+ * home.submit(() -> CentralController.getInstance().turnOnAllDevices());
+ * runtime.displayStatus();
+ * runtime.shutdown();
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class HomeRuntime {
+    /** Most tasks a home runs before the next home gets a turn. */
+    public static final int QUANTUM = 16;
+
+    private final Map<String, Home> homes;
+    private final LinkedBlockingQueue<Home> readyHomes;
+    private final List<Thread> dispatchers;
+    private volatile boolean running;
+
+    /**
+     * Creates a runtime with one dispatcher per CPU core.
+     */
+    public HomeRuntime() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a runtime.
+     *
+     * @param dispatcherThreads Number of threads shared by all homes
+     */
+    public HomeRuntime(int dispatcherThreads) {
+        if (dispatcherThreads < 1) {
+            throw new IllegalArgumentException("Need at least one dispatcher thread");
+        }
+        this.homes = new ConcurrentHashMap<>();
+        this.readyHomes = new LinkedBlockingQueue<>();
+        this.dispatchers = new ArrayList<>();
+        this.running = true;
+        for (int i = 0; i < dispatcherThreads; i++) {
+            Thread thread = new Thread(this::dispatchLoop, "home-dispatcher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            dispatchers.add(thread);
+        }
+        System.out.println("[RUNTIME] Started with " + dispatcherThreads + " dispatcher threads");
+    }
+
+    /**
+     * Creates a new, empty home.
+     *
+     * @param homeId Unique id for the home
+     * @return The home
+     * @throws IllegalArgumentException if the id is already in use
+     */
+    public Home createHome(String homeId) {
+        if (!running) {
+            throw new IllegalStateException("Runtime has been shut down");
+        }
+        Home home = new Home(homeId, this);
+        if (homes.putIfAbsent(homeId, home) != null) {
+            throw new IllegalArgumentException("Home already exists: " + homeId);
+        }
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[RUNTIME] Home created: " + homeId + " (Total homes: " + homes.size() + ")");
+        }
+        return home;
+    }
+
+    /**
+     * Gets a home by id.
+     *
+     * @param homeId The home id
+     * @return The home, or null
+     */
+    public Home getHome(String homeId) {
+        return homes.get(homeId);
+    }
+
+    /**
+     * Removes a home. Work still queued for it is dropped.
+     *
+     * @param homeId The home id
+     * @return true if the home existed
+     */
+    public boolean removeHome(String homeId) {
+        Home home = homes.remove(homeId);
+        if (home == null) {
+            return false;
+        }
+        home.close();
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[RUNTIME] Home removed: " + homeId);
+        }
+        return true;
+    }
+
+    /**
+     * Gets every home.
+     *
+     * @return Unmodifiable view of the homes
+     */
+    public Collection<Home> getHomes() {
+        return Collections.unmodifiableCollection(homes.values());
+    }
+
+    public int getHomeCount() {
+        return homes.size();
+    }
+
+    public int getDispatcherThreads() {
+        return dispatchers.size();
+    }
+
+    /**
+     * Gets how many homes are waiting for a dispatcher.
+     *
+     * @return Ready queue length
+     */
+    public int getReadyHomes() {
+        return readyHomes.size();
+    }
+
+    /**
+     * Stops the dispatcher threads. Queued work is not run.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread thread : dispatchers) {
+            thread.interrupt();
+        }
+        for (Home home : homes.values()) {
+            home.close();
+        }
+        System.out.println("[RUNTIME] Shut down (" + homes.size() + " homes)");
+    }
+
+    /**
+     * Called by a home that has work and is not queued yet.
+     */
+    void ready(Home home) {
+        readyHomes.add(home);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Home home;
+            try {
+                home = readyHomes.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (!home.isClosed()) {
+                home.runSlice(QUANTUM);
+            }
+        }
+    }
+
+    /**
+     * Displays totals and the homes holding the most memory.
+     */
+    public void displayStatus() {
+        List<Home> all = new ArrayList<>(homes.values());
+        long tasks = 0;
+        long estimated = 0;
+        long allocated = 0;
+        long cpu = 0;
+        int pending = 0;
+        int devices = 0;
+        for (Home home : all) {
+            tasks += home.getTasksRun();
+            estimated += home.getEstimatedBytes();
+            allocated += home.getAllocatedBytes();
+            cpu += home.getCpuNanos();
+            pending += home.getPendingTasks();
+            devices += home.getController().getDeviceCount();
+        }
+        System.out.println("\n=== Home Runtime ===");
+        System.out.println("Homes: " + all.size() + ", devices: " + devices +
+                         ", dispatcher threads: " + dispatchers.size());
+        System.out.println("Tasks run: " + tasks + ", queued: " + pending +
+                         ", homes waiting: " + readyHomes.size());
+        System.out.printf("Memory: ~%.1f MB held (estimate), %.1f MB allocated, CPU %.1f ms%n",
+                          estimated / 1048576.0, allocated / 1048576.0, cpu / 1e6);
+        // Sizes change while homes run, so sort on a snapshot
+        Map<Home, Long> held = new HashMap<>();
+        for (Home home : all) {
+            held.put(home, home.getEstimatedBytes());
+        }
+        all.sort(Comparator.comparing((Home home) -> held.get(home)).reversed());
+        System.out.println("Largest homes:");
+        for (int i = 0; i < Math.min(5, all.size()); i++) {
+            Home home = all.get(i);
+            System.out.printf("  %-12s %8.1f KB held, %8.1f KB allocated, %7d tasks, %6.2f ms CPU%n",
+                              home.getId(), held.get(home) / 1024.0,
+                              home.getAllocatedBytes() / 1024.0, home.getTasksRun(),
+                              home.getCpuNanos() / 1e6);
+        }
+    }
+}
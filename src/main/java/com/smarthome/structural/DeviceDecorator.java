@@ -1,7 +1,12 @@
 package com.smarthome.structural;
 
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.CapabilityHolder;
+import com.smarthome.devices.DeviceWrapper;
 import com.smarthome.devices.SmartDevice;
 import com.smarthome.behavioral.Observer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Abstract base class for device decorators.
@@ -13,8 +18,9 @@ import com.smarthome.behavioral.Observer;
  * @author dwayne headley
  * @version 1.0
  */
-public abstract class DeviceDecorator implements SmartDevice {
+public abstract class DeviceDecorator implements DeviceWrapper, CapabilityHolder {
     protected SmartDevice wrappedDevice;
+    private Capabilities capabilities;
     
     /**
      * Creates a decorator wrapping the given device.
@@ -57,6 +63,14 @@ public abstract class DeviceDecorator implements SmartDevice {
         return wrappedDevice.getName();
     }
     
+    /**
+     * Default implementation delegates to wrapped device.
+     */
+    @Override
+    public boolean isOn() {
+        return wrappedDevice.isOn();
+    }
+    
     /**
      * Default implementation delegates to wrapped device.
      */
@@ -65,6 +79,14 @@ public abstract class DeviceDecorator implements SmartDevice {
         wrappedDevice.addObserver(observer);
     }
     
+    /**
+     * Default implementation delegates to wrapped device.
+     */
+    @Override
+    public void removeObserver(Observer observer) {
+        wrappedDevice.removeObserver(observer);
+    }
+    
     /**
      * Default implementation delegates to wrapped device.
      */
@@ -79,7 +101,76 @@ public abstract class DeviceDecorator implements SmartDevice {
      * 
      * @return The wrapped device
      */
+    @Override
     public SmartDevice getWrappedDevice() {
         return wrappedDevice;
     }
+    
+    /**
+     * Gets the capabilities resolved for this decorator's chain, if any.
+     * Used by {@link Capabilities#of(SmartDevice)}.
+     * 
+     * @return The cached capabilities, or null if not resolved yet
+     */
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    /**
+     * Keeps the capabilities resolved for this decorator's chain.
+     * 
+     * @param capabilities The resolved capabilities
+     */
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+    
+    /**
+     * Gets the device at the bottom of a stack of decorators. Observers
+     * are told about changes by this device, not by its decorators.
+     * 
+     * @param device A device, decorated or not
+     * @return The innermost device (the device itself if undecorated)
+     */
+    public static SmartDevice unwrap(SmartDevice device) {
+        while (device instanceof DeviceDecorator) {
+            device = ((DeviceDecorator) device).getWrappedDevice();
+        }
+        return device;
+    }
+    
+    /**
+     * Finds the outermost decorator of a given kind around a device.
+     * 
+     * @param device A device, decorated or not
+     * @param type The decorator class (e.g. EnergyMonitorDecorator.class)
+     * @return The decorator, or null if the device has none of that kind
+     */
+    public static <T extends DeviceDecorator> T findLayer(SmartDevice device, Class<T> type) {
+        while (device instanceof DeviceDecorator) {
+            if (type.isInstance(device)) {
+                return type.cast(device);
+            }
+            device = ((DeviceDecorator) device).getWrappedDevice();
+        }
+        return null;
+    }
+    
+    /**
+     * Lists the decorators around a device.
+     * 
+     * @param device A device, decorated or not
+     * @return The decorators, outermost first (empty if undecorated)
+     */
+    public static List<DeviceDecorator> layers(SmartDevice device) {
+        List<DeviceDecorator> layers = new ArrayList<>();
+        while (device instanceof DeviceDecorator) {
+            DeviceDecorator layer = (DeviceDecorator) device;
+            layers.add(layer);
+            device = layer.getWrappedDevice();
+        }
+        return layers;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,776 @@
+package com.smarthome.structural;
+
+import com.smarthome.behavioral.Observer;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.SmartDevice;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Membership index over devices, rooms, device types and tags.
+ *
+ * <p>Every known device gets a small integer slot. Each room, tag and
+ * device type keeps a {@link BitSet} of the slots it contains, so a
+ * question like "all lights in bedrooms" is a couple of bitset
+ * intersections, and reading the answer costs O(result) rather than a
+ * scan over every device name.</p>
+ *
+ * <p>The index is kept up to date by {@link Room#addDevice(SmartDevice)},
+ * {@link Room#removeDevice(SmartDevice)} and the central controller.
+ * Decorated devices share a slot with the device they wrap.</p>
+ *
+ * <p>Rooms can be nested (building, floor, zone, room). Each room also
+ * keeps the set of devices anywhere underneath it. Adding a device sets
+ * one bit per room on the path to the top, O(depth). Removing one walks
+ * up only as far as the device is no longer under a room, with one bit
+ * test against the room's own members and each of its sub-rooms per
+ * level. Taking a sub-room out does the same for its whole below-set
+ * with bitset operations. The index
+ * tracks which devices are on by observing every device it holds a slot
+ * for, whether or not it is in a room. "All devices on under floor 3" is
+ * then {@code select().under(floor3).on()}: one intersection, no
+ * traversal.</p>
+ *
+ * <p>There is one shared index, except on threads running a home's work
+ * in a multi-home runtime: there {@link #getInstance()} returns that
+ * home's own index (see {@link #bindCurrent(DeviceIndex)}). Rooms keep
+ * the index they were created under.</p>
+ *
+ * <p>Rooms are tagged with their name in lower case, letters, digits and
+ * spaces only (e.g. "🛏️ Bedroom" becomes "bedroom"). Add more tags with
+ * {@link #tagRoom(Room, String)} so that, say, a "Master Suite" counts as
+ * a bedroom.</p>
+ *
+ * <h2>Example Usage:</h2>
+ * <pre>
+ * {@code
+ * DeviceIndex index = DeviceIndex.getInstance();
+ * for (SmartDevice light : index.select()
+ *                               .ofType(Light.class)
+ *                               .inRoomsTagged("bedroom")
+ *                               .devices()) {
+ *     light.turnOff();
+ * }
+ * }
+ * </pre>
+ *
+ * @author dwayne headley
+ * @version 1.0
+ */
+public class DeviceIndex {
+    private static DeviceIndex instance = null;
+    private static final ThreadLocal<DeviceIndex> CURRENT = new ThreadLocal<>();
+
+    // Slot assignment, keyed by the innermost (undecorated) device
+    private final Map<SmartDevice, Integer> slots;
+    private final List<SmartDevice> devicesBySlot;
+    private final ArrayDeque<Integer> freeSlots;
+
+    private final BitSet managed;
+    private final Map<Room, BitSet> roomMembers;
+    private final Map<Room, BitSet> subtreeMembers; // devices (not rooms) at any depth
+    private final Map<Room, List<Room>> childRooms;
+    private final BitSet onDevices;
+    private final Map<Room, List<String>> roomTagNames;
+    private final Map<String, List<Room>> roomsByTag;
+    private final Map<String, BitSet> tags;
+    private final Map<Class<?>, BitSet> types;
+    private final Observer onWatcher; // on every indexed device except rooms
+
+    private int[] membershipCounts;
+
+    private DeviceIndex() {
+        this.slots = new IdentityHashMap<>();
+        this.devicesBySlot = new ArrayList<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.managed = new BitSet();
+        this.roomMembers = new IdentityHashMap<>();
+        this.subtreeMembers = new IdentityHashMap<>();
+        this.childRooms = new IdentityHashMap<>();
+        this.onDevices = new BitSet();
+        this.roomTagNames = new IdentityHashMap<>();
+        this.roomsByTag = new HashMap<>();
+        this.tags = new HashMap<>();
+        this.types = new HashMap<>();
+        this.onWatcher = device -> setOn(device, device.isOn());
+        this.membershipCounts = new int[64];
+    }
+
+    /**
+     * Gets the shared index, or the index bound to this thread.
+     *
+     * @return The index
+     */
+    public static DeviceIndex getInstance() {
+        DeviceIndex bound = CURRENT.get();
+        if (bound != null) {
+            return bound;
+        }
+        synchronized (DeviceIndex.class) {
+            if (instance == null) {
+                instance = new DeviceIndex();
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Creates a separate index, e.g. for one home among many.
+     *
+     * @return A new, empty index
+     */
+    public static DeviceIndex newInstance() {
+        return new DeviceIndex();
+    }
+
+    /**
+     * Makes {@link #getInstance()} return the given index on this thread.
+     *
+     * @param index The index, or null for the shared one
+     * @return The index bound before, to restore afterwards
+     */
+    public static DeviceIndex bindCurrent(DeviceIndex index) {
+        DeviceIndex previous = CURRENT.get();
+        if (index == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(index);
+        }
+        return previous;
+    }
+
+    /**
+     * Checks whether an index is bound to this thread, i.e. whether the
+     * thread is running work for one home of a multi-home runtime.
+     *
+     * @return true if {@link #bindCurrent(DeviceIndex)} is in effect
+     */
+    public static boolean isBound() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Discards the shared index (useful for testing).
+     */
+    public static synchronized void resetInstance() {
+        instance = null;
+    }
+
+    // ---------------------------------------------------------------
+    // Maintenance (called by Room and CentralController)
+    // ---------------------------------------------------------------
+
+    /**
+     * Records a device managed by the central controller.
+     *
+     * @param device The device
+     */
+    public synchronized void register(SmartDevice device) {
+        int slot = slotFor(device);
+        devicesBySlot.set(slot, device); // Prefer the controller's (outermost) view
+        if (!managed.get(slot)) {
+            managed.set(slot);
+            membershipCounts[slot]++;
+        }
+    }
+
+    /**
+     * Forgets a device removed from the central controller. Its room
+     * memberships are kept until it is also removed from its rooms.
+     *
+     * @param device The device
+     */
+    public synchronized void unregister(SmartDevice device) {
+        Integer slot = slots.get(DeviceDecorator.unwrap(device));
+        if (slot != null && managed.get(slot)) {
+            managed.clear(slot);
+            release(slot);
+        }
+    }
+
+    /**
+     * Records a new room and tags it with its normalized name.
+     *
+     * @param room The room
+     */
+    public synchronized void registerRoom(Room room) {
+        if (!roomMembers.containsKey(room)) {
+            roomMembers.put(room, new BitSet());
+            subtreeMembers.put(room, new BitSet());
+            childRooms.put(room, new ArrayList<>());
+            roomTagNames.put(room, new ArrayList<>());
+            tagRoom(room, room.getName());
+        }
+    }
+
+    /**
+     * Forgets a room that is being thrown away: its memberships, its
+     * below-set and its tags. Called by {@link Room#dispose()} once the
+     * room is out of its parent.
+     *
+     * @param room The room
+     */
+    public synchronized void unregisterRoom(Room room) {
+        BitSet members = roomMembers.remove(room);
+        if (members == null) {
+            return;
+        }
+        for (int slot = members.nextSetBit(0); slot >= 0; slot = members.nextSetBit(slot + 1)) {
+            release(slot);
+        }
+        subtreeMembers.remove(room);
+        childRooms.remove(room);
+        for (String key : roomTagNames.remove(room)) {
+            List<Room> rooms = roomsByTag.get(key);
+            rooms.remove(room);
+            if (rooms.isEmpty()) {
+                roomsByTag.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Moves a room's name tag after it was renamed.
+     *
+     * @param room The room
+     * @param oldName The previous name
+     */
+    public synchronized void renameRoom(Room room, String oldName) {
+        untagRoom(room, oldName);
+        tagRoom(room, room.getName());
+    }
+
+    /**
+     * Records that a device was added to a room.
+     *
+     * @param room The room
+     * @param device The device
+     */
+    public synchronized void addToRoom(Room room, SmartDevice device) {
+        registerRoom(room);
+        int slot = slotFor(device);
+        BitSet members = roomMembers.get(room);
+        if (!members.get(slot)) {
+            members.set(slot);
+            membershipCounts[slot]++;
+        }
+        if (!(device instanceof Room)) {
+            for (Room r = room; r != null; r = r.getParent()) {
+                registerRoom(r);
+                subtreeMembers.get(r).set(slot);
+            }
+        }
+    }
+
+    /**
+     * Records that many devices were added to a room, under one lock.
+     *
+     * @param room The room
+     * @param devices The devices
+     */
+    public synchronized void addAllToRoom(Room room, Collection<? extends SmartDevice> devices) {
+        for (SmartDevice device : devices) {
+            addToRoom(room, device);
+        }
+    }
+
+    /**
+     * Records that a device is no longer in a room.
+     *
+     * @param room The room
+     * @param device The device
+     */
+    public synchronized void removeFromRoom(Room room, SmartDevice device) {
+        BitSet members = roomMembers.get(room);
+        Integer slot = slots.get(DeviceDecorator.unwrap(device));
+        if (members != null && slot != null && members.get(slot)) {
+            members.clear(slot);
+            release(slot);
+            if (!(DeviceDecorator.unwrap(device) instanceof Room)) {
+                clearUpward(room, slot); // A sub-room's devices are handled by detachRoom
+            }
+        }
+    }
+
+    /**
+     * Records that a room was put inside another room: everything under
+     * the child is now also under the parent and its ancestors.
+     *
+     * @param parent The containing room
+     * @param child The nested room
+     */
+    public synchronized void attachRoom(Room parent, Room child) {
+        registerRoom(parent);
+        registerRoom(child);
+        List<Room> children = childRooms.get(parent);
+        if (!children.contains(child)) {
+            children.add(child);
+        }
+        BitSet below = subtreeMembers.get(child);
+        for (Room r = parent; r != null; r = r.getParent()) {
+            registerRoom(r);
+            subtreeMembers.get(r).or(below);
+        }
+    }
+
+    /**
+     * Records that a room was taken out of another room.
+     *
+     * @param parent The room it was in
+     * @param child The room removed
+     */
+    public synchronized void detachRoom(Room parent, Room child) {
+        List<Room> children = childRooms.get(parent);
+        if (children == null) {
+            return;
+        }
+        children.remove(child);
+        BitSet gone = (BitSet) subtreeMembers.get(child).clone();
+        for (Room r = parent; r != null && !gone.isEmpty(); r = r.getParent()) {
+            gone.andNot(roomMembers.get(r));
+            for (Room other : childRooms.get(r)) {
+                gone.andNot(subtreeMembers.get(other));
+            }
+            subtreeMembers.get(r).andNot(gone);
+        }
+    }
+
+    /**
+     * Records whether a device is on. The index's own observer calls
+     * this as devices switch.
+     */
+    private synchronized void setOn(SmartDevice device, boolean on) {
+        Integer slot = slots.get(DeviceDecorator.unwrap(device));
+        if (slot != null) {
+            onDevices.set(slot, on);
+        }
+    }
+
+    /**
+     * Clears a removed device from the below-sets of a room and the
+     * rooms above it. Stops at the first room the device is still under
+     * some other way, since every room above that one keeps it too.
+     */
+    private void clearUpward(Room room, int slot) {
+        for (Room r = room; r != null; r = r.getParent()) {
+            if (roomMembers.get(r).get(slot)) {
+                return;
+            }
+            for (Room child : childRooms.get(r)) {
+                if (subtreeMembers.get(child).get(slot)) {
+                    return;
+                }
+            }
+            subtreeMembers.get(r).clear(slot);
+        }
+    }
+
+    /**
+     * Adds a tag to a room. Devices in the room match
+     * {@link Query#inRoomsTagged(String...)} for that tag.
+     *
+     * @param room The room
+     * @param tag The tag (case and symbols are ignored)
+     */
+    public synchronized void tagRoom(Room room, String tag) {
+        registerRoom(room);
+        String key = normalize(tag);
+        if (!key.isEmpty() && !roomTagNames.get(room).contains(key)) {
+            roomTagNames.get(room).add(key);
+            roomsByTag.computeIfAbsent(key, k -> new ArrayList<>()).add(room);
+        }
+    }
+
+    /**
+     * Removes a tag from a room.
+     *
+     * @param room The room
+     * @param tag The tag
+     */
+    public synchronized void untagRoom(Room room, String tag) {
+        String key = normalize(tag);
+        List<String> names = roomTagNames.get(room);
+        if (names != null && names.remove(key)) {
+            List<Room> rooms = roomsByTag.get(key);
+            rooms.remove(room);
+            if (rooms.isEmpty()) {
+                roomsByTag.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Adds a tag to a device.
+     *
+     * @param device The device
+     * @param tag The tag (case and symbols are ignored)
+     */
+    public synchronized void tag(SmartDevice device, String tag) {
+        int slot = slotFor(device);
+        BitSet tagged = tags.computeIfAbsent(normalize(tag), k -> new BitSet());
+        if (!tagged.get(slot)) {
+            tagged.set(slot);
+            membershipCounts[slot]++;
+        }
+    }
+
+    /**
+     * Removes a tag from a device.
+     *
+     * @param device The device
+     * @param tag The tag
+     */
+    public synchronized void untag(SmartDevice device, String tag) {
+        BitSet tagged = tags.get(normalize(tag));
+        Integer slot = slots.get(DeviceDecorator.unwrap(device));
+        if (tagged != null && slot != null && tagged.get(slot)) {
+            tagged.clear(slot);
+            release(slot);
+        }
+    }
+
+    private int slotFor(SmartDevice device) {
+        SmartDevice inner = DeviceDecorator.unwrap(device);
+        Integer slot = slots.get(inner);
+        if (slot != null) {
+            return slot;
+        }
+        int newSlot;
+        if (freeSlots.isEmpty()) {
+            newSlot = devicesBySlot.size();
+            devicesBySlot.add(device);
+            if (newSlot >= membershipCounts.length) {
+                membershipCounts = Arrays.copyOf(membershipCounts, membershipCounts.length * 2);
+            }
+        } else {
+            newSlot = freeSlots.poll();
+            devicesBySlot.set(newSlot, device);
+        }
+        slots.put(inner, newSlot);
+        types.computeIfAbsent(inner.getClass(), k -> new BitSet()).set(newSlot);
+        if (!(inner instanceof Room)) {
+            inner.addObserver(onWatcher);
+            onDevices.set(newSlot, inner.isOn());
+        }
+        return newSlot;
+    }
+
+    /**
+     * Drops one membership; frees the slot once nothing refers to it.
+     */
+    private void release(int slot) {
+        if (--membershipCounts[slot] > 0) {
+            return;
+        }
+        SmartDevice device = devicesBySlot.get(slot);
+        SmartDevice inner = DeviceDecorator.unwrap(device);
+        slots.remove(inner);
+        if (!(inner instanceof Room)) {
+            inner.removeObserver(onWatcher);
+        }
+        BitSet typed = types.get(inner.getClass());
+        if (typed != null) {
+            typed.clear(slot);
+        }
+        devicesBySlot.set(slot, null);
+        onDevices.clear(slot);
+        freeSlots.add(slot);
+    }
+
+    // ---------------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------------
+
+    /**
+     * Starts a query over every indexed device.
+     *
+     * @return A new query
+     */
+    public Query select() {
+        return new Query(this);
+    }
+
+    /**
+     * Checks whether a device belongs directly to a room.
+     *
+     * @param room The room
+     * @param device The device (decorated or not)
+     * @return true if it is a member
+     */
+    public synchronized boolean isInRoom(Room room, SmartDevice device) {
+        BitSet members = roomMembers.get(room);
+        Integer slot = slots.get(DeviceDecorator.unwrap(device));
+        return members != null && slot != null && members.get(slot);
+    }
+
+    /**
+     * Builds the bitset for a list of devices, for use with
+     * {@link Query#within(BitSet)}. Unknown devices are skipped.
+     *
+     * @param devices The devices
+     * @return Bitset of their slots
+     */
+    public synchronized BitSet bitsOf(Collection<SmartDevice> devices) {
+        BitSet bits = new BitSet();
+        for (SmartDevice device : devices) {
+            Integer slot = slots.get(DeviceDecorator.unwrap(device));
+            if (slot != null) {
+                bits.set(slot);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Gets the devices whose slots are set, in slot order.
+     *
+     * @param bits The slots to resolve
+     * @return The devices
+     */
+    public synchronized List<SmartDevice> resolve(BitSet bits) {
+        List<SmartDevice> result = new ArrayList<>(bits.cardinality());
+        for (int slot = bits.nextSetBit(0); slot >= 0; slot = bits.nextSetBit(slot + 1)) {
+            SmartDevice device = slot < devicesBySlot.size() ? devicesBySlot.get(slot) : null;
+            if (device != null) {
+                result.add(device);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of devices with a slot.
+     *
+     * @return Indexed device count
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    private synchronized BitSet all() {
+        BitSet bits = new BitSet();
+        for (int slot : slots.values()) {
+            bits.set(slot);
+        }
+        return bits;
+    }
+
+    private synchronized BitSet managedBits() {
+        return (BitSet) managed.clone();
+    }
+
+    private synchronized BitSet roomBits(Room room) {
+        BitSet members = roomMembers.get(room);
+        return members == null ? new BitSet() : (BitSet) members.clone();
+    }
+
+    private synchronized BitSet subtreeBits(Room room) {
+        BitSet below = subtreeMembers.get(room);
+        return below == null ? new BitSet() : (BitSet) below.clone();
+    }
+
+    private synchronized BitSet onBits() {
+        return (BitSet) onDevices.clone();
+    }
+
+    private synchronized BitSet roomTagBits(String... tags) {
+        BitSet bits = new BitSet();
+        for (String tag : tags) {
+            List<Room> rooms = roomsByTag.get(normalize(tag));
+            if (rooms != null) {
+                for (Room room : rooms) {
+                    bits.or(roomMembers.get(room));
+                }
+            }
+        }
+        return bits;
+    }
+
+    private synchronized BitSet tagBits(String tag) {
+        BitSet tagged = tags.get(normalize(tag));
+        return tagged == null ? new BitSet() : (BitSet) tagged.clone();
+    }
+
+    private synchronized BitSet typeBits(Class<?> type) {
+        BitSet bits = new BitSet();
+        for (Map.Entry<Class<?>, BitSet> entry : types.entrySet()) {
+            if (type.isAssignableFrom(entry.getKey())) {
+                bits.or(entry.getValue());
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Normalizes a room name or tag: lower case, letters, digits and
+     * single spaces only.
+     *
+     * @param text The raw text
+     * @return The tag key
+     */
+    static String normalize(String text) {
+        StringBuilder key = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(Character.toLowerCase(c));
+                space = false;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * A selection built by intersecting index sets.
+     * Each call narrows the result; nothing is scanned until
+     * {@link #devices()} reads the matching slots.
+     */
+    public static class Query {
+        private final DeviceIndex index;
+        private BitSet bits;
+
+        private Query(DeviceIndex index) {
+            this.index = index;
+        }
+
+        private Query and(BitSet other) {
+            if (bits == null) {
+                bits = other;
+            } else {
+                bits.and(other);
+            }
+            return this;
+        }
+
+        /**
+         * Keeps devices managed by the central controller.
+         *
+         * @return This query
+         */
+        public Query managed() {
+            return and(index.managedBits());
+        }
+
+        /**
+         * Keeps devices directly in a room.
+         *
+         * @param room The room
+         * @return This query
+         */
+        public Query inRoom(Room room) {
+            return and(index.roomBits(room));
+        }
+
+        /**
+         * Keeps devices anywhere under a room, floor or building,
+         * however deeply nested (rooms themselves are not included).
+         *
+         * @param zone The room, floor or building
+         * @return This query
+         */
+        public Query under(Room zone) {
+            return and(index.subtreeBits(zone));
+        }
+
+        /**
+         * Keeps devices that are on. Every indexed device is tracked,
+         * whether or not it is in a room (rooms themselves are not).
+         *
+         * @return This query
+         */
+        public Query on() {
+            return and(index.onBits());
+        }
+
+        /**
+         * Keeps devices in any room with any of the given tags.
+         *
+         * @param tags Room tags, e.g. "bedroom"
+         * @return This query
+         */
+        public Query inRoomsTagged(String... tags) {
+            return and(index.roomTagBits(tags));
+        }
+
+        /**
+         * Keeps devices with the given tag.
+         *
+         * @param tag The device tag
+         * @return This query
+         */
+        public Query tagged(String tag) {
+            return and(index.tagBits(tag));
+        }
+
+        /**
+         * Keeps devices of a type, looking through decorators.
+         *
+         * @param type The device class (e.g. Light.class)
+         * @return This query
+         */
+        public Query ofType(Class<? extends SmartDevice> type) {
+            return and(index.typeBits(type));
+        }
+
+        /**
+         * Keeps devices in the given set.
+         *
+         * @param scope Bitset from {@link DeviceIndex#bitsOf(Collection)}
+         * @return This query
+         */
+        public Query within(BitSet scope) {
+            return and((BitSet) scope.clone());
+        }
+
+        /**
+         * Gets the matching slots.
+         *
+         * @return Copy of the result bitset
+         */
+        public BitSet bits() {
+            return bits == null ? index.all() : (BitSet) bits.clone();
+        }
+
+        /**
+         * Gets the number of matches.
+         *
+         * @return Match count
+         */
+        public int count() {
+            return bits == null ? index.size() : bits.cardinality();
+        }
+
+        /**
+         * Gets the matching devices.
+         *
+         * @return The devices, in slot order
+         */
+        public List<SmartDevice> devices() {
+            return index.resolve(bits());
+        }
+
+        /**
+         * Gets one capability of every matching device that has it,
+         * e.g. {@code as(Dimmable.class)} for all dimmable matches.
+         *
+         * @param capability The capability interface
+         * @return The capabilities, in slot order
+         */
+        public <T> List<T> as(Class<T> capability) {
+            return Capabilities.select(devices(), capability);
+        }
+    }
+}
@@ -1,6 +1,13 @@
 package com.smarthome.structural;
 
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.OccupancySensor;
 import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.Speaker;
+import com.smarthome.devices.SpeedAdjustable;
+import com.smarthome.devices.Thermostat;
 
 /**
  * Decorator that adds energy monitoring to any device.
@@ -18,10 +25,12 @@ public class EnergyMonitorDecorator extends DeviceDecorator {
     private long onTimeStart;          // when device was turned on
     private long totalOnTime;          // total time device was on (milliseconds)
     private boolean isCurrentlyOn;
+    private double ratedPowerKw;       // draw at full output
     
     /**
      * Creates an energy monitoring decorator for the given device.
-     * Default cost is $0.12 per kWh (average US rate).
+     * Default cost is $0.12 per kWh (average US rate) and the rated
+     * power is a typical value for the device type.
      * 
      * @param device The device to monitor
      */
@@ -31,7 +40,10 @@ public class EnergyMonitorDecorator extends DeviceDecorator {
         this.costPerKWh = 0.12;  // Average US electricity cost
         this.totalOnTime = 0;
         this.isCurrentlyOn = false;
-        System.out.println("[DECORATOR] Energy monitoring added to: " + device.getName());
+        this.ratedPowerKw = defaultRatedPowerKw(device);
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[DECORATOR] Energy monitoring added to: " + device.getName());
+        }
     }
     
     /**
@@ -41,13 +53,77 @@ public class EnergyMonitorDecorator extends DeviceDecorator {
      * @param costPerKWh Cost per kilowatt-hour
      */
     public EnergyMonitorDecorator(SmartDevice device, double costPerKWh) {
+        this(device, costPerKWh, defaultRatedPowerKw(device));
+    }
+    
+    /**
+     * Creates an energy monitoring decorator with custom cost rate and
+     * rated power.
+     * 
+     * @param device The device to monitor
+     * @param costPerKWh Cost per kilowatt-hour
+     * @param ratedPowerKw Power the device draws at full output (kW)
+     */
+    public EnergyMonitorDecorator(SmartDevice device, double costPerKWh, double ratedPowerKw) {
         super(device);
         this.energyUsage = 0.0;
         this.costPerKWh = costPerKWh;
         this.totalOnTime = 0;
         this.isCurrentlyOn = false;
-        System.out.println("[DECORATOR] Energy monitoring added to: " + device.getName() + 
-                         " (Rate: $" + costPerKWh + "/kWh)");
+        this.ratedPowerKw = ratedPowerKw;
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[DECORATOR] Energy monitoring added to: " + device.getName() + 
+                             " (Rate: $" + costPerKWh + "/kWh)");
+        }
+    }
+    
+    /**
+     * Gets a typical rated power for a device type.
+     * 
+     * @param device The device (decorated or not)
+     * @return Rated power in kW
+     */
+    public static double defaultRatedPowerKw(SmartDevice device) {
+        device = unwrap(device);
+        if (device instanceof Light) {
+            return 0.06;
+        } else if (device instanceof Thermostat) {
+            return 3.5;
+        } else if (device instanceof Speaker) {
+            return 0.03;
+        } else if (device instanceof FanAdapter) {
+            return 0.075;
+        } else if (device instanceof OccupancySensor) {
+            return 0.002;
+        } else if (device instanceof Room) {
+            double total = 0;
+            for (SmartDevice member : ((Room) device).getDevices()) {
+                total += defaultRatedPowerKw(member);
+            }
+            return total;
+        }
+        return 0.06;
+    }
+    
+    /**
+     * Estimates what share of its rated power a device draws right now:
+     * brightness for lights, speed for fans, on/off for everything else.
+     * 
+     * @param device The device (decorated or not)
+     * @return Load fraction from 0.0 to 1.0
+     */
+    public static double loadFraction(SmartDevice device) {
+        if (!device.isOn()) {
+            return 0.0;
+        }
+        Capabilities capabilities = Capabilities.of(device);
+        if (capabilities.dimmable() != null) {
+            return capabilities.dimmable().getBrightness() / 100.0;
+        } else if (capabilities.speed() != null) {
+            SpeedAdjustable fan = capabilities.speed();
+            return (double) fan.getSpeed() / fan.getMaxSpeed();
+        }
+        return 1.0;
     }
     
     /**
@@ -75,10 +151,9 @@ public class EnergyMonitorDecorator extends DeviceDecorator {
             long onDuration = System.currentTimeMillis() - onTimeStart;
             totalOnTime += onDuration;
             
-            // Calculate energy used during this session
-            // Assuming average device power of 60W (0.06 kW)
+            // Calculate energy used during this session at rated power
             double hoursOn = onDuration / 3600000.0; // Convert ms to hours
-            double sessionEnergy = 0.06 * hoursOn;   // kWh
+            double sessionEnergy = ratedPowerKw * hoursOn;   // kWh
             energyUsage += sessionEnergy;
             
             isCurrentlyOn = false;
@@ -109,6 +184,33 @@ public class EnergyMonitorDecorator extends DeviceDecorator {
         return energyUsage;
     }
     
+    /**
+     * Gets the power the device draws at full output.
+     * 
+     * @return Rated power in kW
+     */
+    public double getRatedPowerKw() {
+        return ratedPowerKw;
+    }
+    
+    /**
+     * Sets the power the device draws at full output.
+     * 
+     * @param ratedPowerKw Rated power in kW
+     */
+    public void setRatedPowerKw(double ratedPowerKw) {
+        this.ratedPowerKw = ratedPowerKw;
+    }
+    
+    /**
+     * Gets the power the device draws right now.
+     * 
+     * @return Current draw in kW
+     */
+    public double getCurrentPowerKw() {
+        return ratedPowerKw * loadFraction(wrappedDevice);
+    }
+    
     /**
      * Gets the total cost of energy used.
      * 
@@ -176,6 +278,7 @@ public class EnergyMonitorDecorator extends DeviceDecorator {
         System.out.println("║ Total Cost: $" + String.format("%.2f", getCost()));
         System.out.println("║ Total Runtime: " + String.format("%.2f hours", getTotalOnTimeHours()));
         System.out.println("║ Rate: $" + costPerKWh + " per kWh");
+        System.out.println("║ Rated Power: " + String.format("%.3f kW", ratedPowerKw));
         System.out.println("║ Status: " + (isCurrentlyOn ? "Currently ON" : "Currently OFF"));
         System.out.println("╚════════════════════════════════════════╝\n");
     }
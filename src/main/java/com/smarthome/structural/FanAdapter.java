@@ -1,6 +1,10 @@
 package com.smarthome.structural;
 
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.CapabilityHolder;
 import com.smarthome.devices.SmartDevice;
+import com.smarthome.devices.SpeedAdjustable;
 import com.smarthome.behavioral.Observer;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,9 +23,10 @@ import java.util.List;
  * @author dwayne headley
  * @version 1.0
  */
-public class FanAdapter implements SmartDevice {
+public class FanAdapter implements SmartDevice, SpeedAdjustable, CapabilityHolder {
     private OldFan oldFan;  // The legacy fan we're adapting
     private List<Observer> observers;
+    private Capabilities capabilities;
     
     /**
      * Creates an adapter for the given legacy fan.
@@ -31,7 +36,9 @@ public class FanAdapter implements SmartDevice {
     public FanAdapter(OldFan oldFan) {
         this.oldFan = oldFan;
         this.observers = new ArrayList<>();
-        System.out.println("[ADAPTER] Created adapter for: " + oldFan.getFanName());
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[ADAPTER] Created adapter for: " + oldFan.getFanName());
+        }
     }
     
     /**
@@ -77,12 +84,24 @@ public class FanAdapter implements SmartDevice {
         return oldFan.getFanName();
     }
     
+    /**
+     * Checks if the fan is running.
+     * Translates to oldFan.isRunning()
+     * 
+     * @return true if running
+     */
+    @Override
+    public boolean isOn() {
+        return oldFan.isRunning();
+    }
+    
     /**
      * Sets the fan speed (additional functionality).
      * This method is specific to fans.
      * 
      * @param speed Speed level (0-3)
      */
+    @Override
     public void setSpeed(int speed) {
         System.out.println("[ADAPTER] Setting speed through adapter");
         oldFan.setSpeed(speed);
@@ -94,10 +113,21 @@ public class FanAdapter implements SmartDevice {
      * 
      * @return Speed level (0-3)
      */
+    @Override
     public int getSpeed() {
         return oldFan.getSpeed();
     }
     
+    /**
+     * Gets the highest speed the legacy fan supports.
+     * 
+     * @return 3 (high)
+     */
+    @Override
+    public int getMaxSpeed() {
+        return 3;
+    }
+    
     /**
      * Gets the wrapped legacy fan (if direct access needed).
      * 
@@ -112,10 +142,25 @@ public class FanAdapter implements SmartDevice {
         observers.add(observer);
     }
     
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+    
     @Override
     public void notifyObservers() {
         for (Observer observer : observers) {
             observer.update(this);
         }
     }
-}
\ No newline at end of file
+    
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+}
@@ -1,5 +1,7 @@
 package com.smarthome.structural;
 
+import com.smarthome.devices.BulkProvisioning;
+
 /**
  * Represents a legacy fan device with its own interface.
  * This fan was manufactured before smart home standards existed.
@@ -24,7 +26,9 @@ public class OldFan {
         this.fanName = fanName;
         this.isRunning = false;
         this.speed = 0;
-        System.out.println("[OLD FAN] Legacy fan initialized: " + fanName);
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[OLD FAN] Legacy fan initialized: " + fanName);
+        }
     }
     
     /**
@@ -1,9 +1,18 @@
 package com.smarthome.structural;
 
+import com.smarthome.devices.BulkProvisioning;
+import com.smarthome.devices.Capabilities;
+import com.smarthome.devices.CapabilityHolder;
+import com.smarthome.devices.DeviceTimers;
 import com.smarthome.devices.SmartDevice;
 import com.smarthome.behavioral.Observer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a room that contains multiple smart devices.
@@ -12,14 +21,67 @@ import java.util.List;
  * This allows you to control multiple devices as a single unit.
  * For example: "Turn on Living Room" turns on all devices in that room.
  * 
+ * Rooms nest into zones (building → floor → zone → room). A room added to
+ * another room gets a parent pointer, and every room keeps running totals
+ * of the devices under it and how many are on. When a device switches,
+ * only the rooms on its path to the top are updated, so {@link #isOn()}
+ * and {@link #getOnCount()} cost O(1) and a change costs O(depth).
+ * Turning a large zone on or off fans out to its sub-rooms in parallel;
+ * the devices directly in any one room are switched by a single thread.
+ * "Which devices under this floor are on?" is answered by
+ * {@link DeviceIndex.Query#under(Room)} and {@link DeviceIndex.Query#on()}.
+ * 
  * @author dwayne headley
  * @version 1.0
  */
-public class Room implements SmartDevice {
+public class Room implements SmartDevice, CapabilityHolder {
+    /** Zones with at least this many devices are switched in parallel. */
+    public static final int PARALLEL_THRESHOLD = 256;
+    
     private String roomName;
     private List<SmartDevice> devices;
     private List<Observer> observers;
-    private boolean isOn; // true if ANY device is on
+    private final DeviceIndex index;
+    private volatile Room parent;
+    private final Map<SmartDevice, LeafWatcher> watchers;
+    private final AtomicInteger leafCount; // devices in this room and all sub-rooms
+    private final AtomicInteger onCount;   // how many of them are on
+    private Capabilities capabilities;
+    
+    /**
+     * Tracks one device in this room and pushes its on/off changes up
+     * the zone tree.
+     */
+    private class LeafWatcher implements Observer {
+        private final SmartDevice device;
+        private boolean lastOn;
+        private boolean attached;
+        
+        LeafWatcher(SmartDevice device) {
+            this.device = device;
+            this.lastOn = device.isOn();
+            this.attached = true;
+        }
+        
+        @Override
+        public void update(SmartDevice changed) {
+            int delta;
+            synchronized (this) {
+                boolean on = device.isOn();
+                if (!attached || on == lastOn) {
+                    return;
+                }
+                lastOn = on;
+                delta = on ? 1 : -1;
+            }
+            propagate(0, delta, true);
+        }
+        
+        synchronized boolean detach() {
+            attached = false;
+            return lastOn;
+        }
+    }
     
     /**
      * Creates a new Room with the given name.
@@ -28,10 +90,16 @@ public class Room implements SmartDevice {
      */
     public Room(String roomName) {
         this.roomName = roomName;
+        this.index = DeviceIndex.getInstance();
         this.devices = new ArrayList<>();
         this.observers = new ArrayList<>();
-        this.isOn = false;
-        System.out.println("[ROOM] Room created: " + roomName);
+        this.watchers = new IdentityHashMap<>();
+        this.leafCount = new AtomicInteger();
+        this.onCount = new AtomicInteger();
+        index.registerRoom(this);
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[ROOM] Room created: " + roomName);
+        }
     }
     
     /**
@@ -40,12 +108,43 @@ public class Room implements SmartDevice {
      * @param device The device to add
      */
     public void addDevice(SmartDevice device) {
+        checkCanAdd(device);
         devices.add(device);
+        index.addToRoom(this, device);
+        attach(device);
         System.out.println("[ROOM] Device added to " + roomName + ": " + device.getName() + 
                          " (Total devices: " + devices.size() + ")");
         notifyObservers();
     }
     
+    /**
+     * Adds many devices to this room at once, with one log line (none
+     * during {@link BulkProvisioning}) and one notification instead of one
+     * per device.
+     * 
+     * @param newDevices The devices to add
+     */
+    public void addDevices(Collection<? extends SmartDevice> newDevices) {
+        for (SmartDevice device : newDevices) {
+            checkCanAdd(device);
+        }
+        devices.addAll(newDevices);
+        index.addAllToRoom(this, newDevices);
+        int leaves = 0;
+        int on = 0;
+        for (SmartDevice device : newDevices) {
+            int[] counts = track(device);
+            leaves += counts[0];
+            on += counts[1];
+        }
+        propagate(leaves, on, false);
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[ROOM] " + newDevices.size() + " devices added to " + roomName + 
+                             " (Total devices: " + devices.size() + ")");
+        }
+        notifyObservers();
+    }
+    
     /**
      * Removes a device from this room.
      * 
@@ -55,12 +154,38 @@ public class Room implements SmartDevice {
     public boolean removeDevice(SmartDevice device) {
         boolean removed = devices.remove(device);
         if (removed) {
+            if (!devices.contains(device)) {
+                index.removeFromRoom(this, device);
+                detach(device);
+            }
             System.out.println("[ROOM] Device removed from " + roomName + ": " + device.getName());
             notifyObservers();
         }
         return removed;
     }
     
+    /**
+     * Throws this room away: takes it out of its parent, disposes the
+     * rooms nested in it, stops watching its devices and removes it from
+     * the {@link DeviceIndex}. The devices themselves are left alone.
+     * The room must not be used afterwards.
+     */
+    public void dispose() {
+        Room above = parent;
+        if (above != null) {
+            above.removeDevice(this);
+        }
+        for (Room child : getRooms()) {
+            child.dispose();
+        }
+        List<SmartDevice> leaves = new ArrayList<>(devices);
+        devices.clear();
+        for (SmartDevice device : leaves) {
+            detach(device);
+        }
+        index.unregisterRoom(this);
+    }
+    
     /**
      * Gets all devices in this room.
      * 
@@ -79,16 +204,193 @@ public class Room implements SmartDevice {
         return devices.size();
     }
     
+    /**
+     * Gets the number of devices in this room and all its sub-rooms
+     * (rooms themselves are not counted).
+     * 
+     * @return Device count for the whole zone
+     */
+    public int getTotalDeviceCount() {
+        return leafCount.get();
+    }
+    
+    /**
+     * Gets how many devices in this room and all its sub-rooms are on.
+     * 
+     * @return Number of devices on
+     */
+    public int getOnCount() {
+        return onCount.get();
+    }
+    
+    /**
+     * Gets the room (floor, zone, building) this room belongs to.
+     * 
+     * @return The parent, or null for a top-level room
+     */
+    public Room getParent() {
+        return parent;
+    }
+    
+    /**
+     * Gets how deep this room is nested (0 for a top-level room).
+     * 
+     * @return The depth
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (Room r = parent; r != null; r = r.parent) {
+            depth++;
+        }
+        return depth;
+    }
+    
+    /**
+     * Gets the names from the top-level zone down to this room,
+     * e.g. "Home / Ground Floor / Kitchen".
+     * 
+     * @return The path
+     */
+    public String getPath() {
+        return parent == null ? roomName : parent.getPath() + " / " + roomName;
+    }
+    
+    /**
+     * Checks if this room is, or contains (at any depth), another room.
+     * 
+     * @param room The room to look for
+     * @return true if room is this room or nested inside it
+     */
+    public boolean contains(Room room) {
+        for (Room r = room; r != null; r = r.parent) {
+            if (r == this) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the rooms directly inside this room.
+     * 
+     * @return The sub-rooms
+     */
+    public List<Room> getRooms() {
+        List<Room> rooms = new ArrayList<>();
+        for (SmartDevice device : devices) {
+            if (device instanceof Room) {
+                rooms.add((Room) device);
+            }
+        }
+        return rooms;
+    }
+    
+    private void checkCanAdd(SmartDevice device) {
+        if (device instanceof Room) {
+            Room child = (Room) device;
+            if (child.contains(this)) {
+                throw new IllegalArgumentException("Cannot add " + child.getName() + " to " + roomName +
+                                                   ": it would contain itself");
+            }
+            if (child.parent != null && child.parent != this) {
+                throw new IllegalArgumentException(child.getName() + " is already in " +
+                                                   child.parent.getName());
+            }
+        }
+    }
+    
+    /**
+     * Starts tracking a newly added device and updates the totals.
+     */
+    private void attach(SmartDevice device) {
+        int[] counts = track(device);
+        propagate(counts[0], counts[1], false);
+    }
+    
+    /**
+     * Links a sub-room or watches a device.
+     * 
+     * @return {devices added to the totals, of which on}
+     */
+    private int[] track(SmartDevice device) {
+        if (device instanceof Room) {
+            Room child = (Room) device;
+            if (child.parent == this) {
+                return new int[] {0, 0}; // Listed twice; already counted
+            }
+            child.parent = this;
+            index.attachRoom(this, child);
+            return new int[] {child.leafCount.get(), child.onCount.get()};
+        }
+        LeafWatcher watcher;
+        synchronized (watchers) {
+            if (watchers.containsKey(device)) {
+                return new int[] {0, 0};
+            }
+            watcher = new LeafWatcher(device);
+            watchers.put(device, watcher);
+        }
+        device.addObserver(watcher);
+        return new int[] {1, watcher.lastOn ? 1 : 0};
+    }
+    
+    /**
+     * Stops tracking a removed device and updates the totals.
+     */
+    private void detach(SmartDevice device) {
+        if (device instanceof Room) {
+            Room child = (Room) device;
+            child.parent = null;
+            index.detachRoom(this, child);
+            propagate(-child.leafCount.get(), -child.onCount.get(), false);
+            return;
+        }
+        LeafWatcher watcher;
+        synchronized (watchers) {
+            watcher = watchers.remove(device);
+        }
+        if (watcher != null) {
+            device.removeObserver(watcher);
+            propagate(-1, watcher.detach() ? -1 : 0, false);
+        }
+    }
+    
+    /**
+     * Applies a change in device and on counts to this room and every
+     * room above it. Rooms whose on/off state flips notify their
+     * observers. This room only does when {@code notifySelf} is set:
+     * adding and removing devices notify once for the whole change
+     * instead.
+     */
+    private void propagate(int leafDelta, int onDelta, boolean notifySelf) {
+        if (leafDelta == 0 && onDelta == 0) {
+            return;
+        }
+        for (Room r = this; r != null; r = r.parent) {
+            r.leafCount.addAndGet(leafDelta);
+            int on = r.onCount.addAndGet(onDelta);
+            int before = on - onDelta;
+            if ((before > 0) != (on > 0) && (notifySelf || r != this)) {
+                r.notifyObservers();
+            }
+        }
+    }
+    
     /**
      * Turns on ALL devices in the room.
      */
     @Override
     public void turnOn() {
-        System.out.println("[ROOM] Turning on all devices in " + roomName + "...");
-        for (SmartDevice device : devices) {
-            device.turnOn();
+        if (leafCount.get() >= PARALLEL_THRESHOLD) {
+            System.out.println("[ROOM] Turning on " + leafCount.get() + " devices in " + roomName + 
+                             " (parallel)...");
+            switchAll(true);
+        } else {
+            System.out.println("[ROOM] Turning on all devices in " + roomName + "...");
+            for (SmartDevice device : devices) {
+                device.turnOn();
+            }
         }
-        isOn = true;
         System.out.println("[ROOM] All devices in " + roomName + " are now ON");
         notifyObservers();
     }
@@ -98,15 +400,76 @@ public class Room implements SmartDevice {
      */
     @Override
     public void turnOff() {
-        System.out.println("[ROOM] Turning off all devices in " + roomName + "...");
-        for (SmartDevice device : devices) {
-            device.turnOff();
+        if (leafCount.get() >= PARALLEL_THRESHOLD) {
+            System.out.println("[ROOM] Turning off " + leafCount.get() + " devices in " + roomName + 
+                             " (parallel)...");
+            switchAll(false);
+        } else {
+            System.out.println("[ROOM] Turning off all devices in " + roomName + "...");
+            for (SmartDevice device : devices) {
+                device.turnOff();
+            }
         }
-        isOn = false;
         System.out.println("[ROOM] All devices in " + roomName + " are now OFF");
         notifyObservers();
     }
     
+    /**
+     * Switches a large zone. Sub-rooms are switched in parallel, but the
+     * devices directly in one room are always switched in order by one
+     * thread, so the observers of a room's devices never see two of its
+     * changes at once.
+     * 
+     * <p>Inside a home of a multi-home runtime everything stays on the
+     * calling thread: a home's objects are only ever touched by one of
+     * its tasks at a time. Otherwise each pool task runs with the
+     * sub-room's index and the caller's timer executor bound, since
+     * thread-bound state does not follow work onto pool threads.</p>
+     */
+    private void switchAll(boolean on) {
+        List<Room> zones = new ArrayList<>();
+        List<SmartDevice> leaves = new ArrayList<>();
+        for (SmartDevice device : new ArrayList<>(devices)) {
+            if (device instanceof Room) {
+                zones.add((Room) device);
+            } else {
+                leaves.add(device);
+            }
+        }
+        if (DeviceIndex.isBound()) {
+            for (Room zone : zones) {
+                zone.switchTo(on);
+            }
+        } else {
+            Executor timers = DeviceTimers.currentExecutor();
+            zones.parallelStream().forEach(zone -> {
+                DeviceIndex previousIndex = DeviceIndex.bindCurrent(zone.index);
+                Executor previousTimers = DeviceTimers.bindExecutor(timers);
+                try {
+                    zone.switchTo(on);
+                } finally {
+                    DeviceTimers.bindExecutor(previousTimers);
+                    DeviceIndex.bindCurrent(previousIndex);
+                }
+            });
+        }
+        for (SmartDevice device : leaves) {
+            if (on) {
+                device.turnOn();
+            } else {
+                device.turnOff();
+            }
+        }
+    }
+    
+    private void switchTo(boolean on) {
+        if (on) {
+            turnOn();
+        } else {
+            turnOff();
+        }
+    }
+    
     /**
      * Gets the status of the room and all its devices.
      * 
@@ -116,13 +479,20 @@ public class Room implements SmartDevice {
     public String getStatus() {
         StringBuilder status = new StringBuilder();
         status.append("Room: ").append(roomName);
-        status.append(" (").append(devices.size()).append(" devices)\n");
+        status.append(" (").append(devices.size()).append(" devices");
+        if (leafCount.get() != devices.size()) {
+            status.append(", ").append(onCount.get()).append(" of ")
+                  .append(leafCount.get()).append(" on in this zone");
+        }
+        status.append(")\n");
         
         if (devices.isEmpty()) {
             status.append("  - No devices");
         } else {
             for (SmartDevice device : devices) {
-                status.append("  - ").append(device.getStatus()).append("\n");
+                // Indent nested rooms so each level reads as a sub-tree
+                String deviceStatus = device.getStatus().trim().replace("\n", "\n    ");
+                status.append("  - ").append(deviceStatus).append("\n");
             }
         }
         
@@ -139,13 +509,63 @@ public class Room implements SmartDevice {
         return roomName;
     }
     
+    /**
+     * Checks if any device in the room (or its sub-rooms) is on.
+     * 
+     * @return true if at least one device is on
+     */
+    @Override
+    public boolean isOn() {
+        return onCount.get() > 0;
+    }
+    
+    /**
+     * Checks if a device with the given name belongs to this room.
+     * Decorated devices match by the name of the device they wrap.
+     * 
+     * @param deviceName The device name to look for
+     * @return true if the room contains a device with that name
+     */
+    public boolean containsDevice(String deviceName) {
+        for (SmartDevice device : devices) {
+            if (device.getName().equals(deviceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks if a device belongs directly to this room, using the
+     * shared {@link DeviceIndex} instead of scanning the device list.
+     * Decorated devices match the device they wrap.
+     * 
+     * @param device The device to look for
+     * @return true if the device is in this room
+     */
+    public boolean containsDevice(SmartDevice device) {
+        return index.isInRoom(this, device);
+    }
+    
+    /**
+     * Adds a tag to this room, e.g. "bedroom" for a room named
+     * "Master Suite". Strategies select devices by room tag.
+     * 
+     * @param tag The tag
+     */
+    public void addTag(String tag) {
+        index.tagRoom(this, tag);
+    }
+    
     /**
      * Sets the room name.
      * 
      * @param name The new room name
      */
     public void setName(String name) {
+        String oldName = roomName;
         this.roomName = name;
+        index.renameRoom(this, oldName);
         System.out.println("[ROOM] Room renamed to: " + name);
     }
     
@@ -163,22 +583,53 @@ public class Room implements SmartDevice {
      */
     public void displayTree() {
         System.out.println("📁 " + roomName);
+        displayChildren("   ");
+    }
+    
+    private void displayChildren(String indent) {
         for (int i = 0; i < devices.size(); i++) {
             boolean isLast = (i == devices.size() - 1);
             String prefix = isLast ? "└── " : "├── ";
-            System.out.println("   " + prefix + devices.get(i).getName());
+            SmartDevice device = devices.get(i);
+            if (device instanceof Room) {
+                Room child = (Room) device;
+                System.out.println(indent + prefix + "📁 " + child.getName() + " (" + 
+                                 child.getOnCount() + "/" + child.getTotalDeviceCount() + " on)");
+                child.displayChildren(indent + (isLast ? "    " : "│   "));
+            } else {
+                System.out.println(indent + prefix + device.getName());
+            }
         }
     }
     
     @Override
-    public void addObserver(Observer observer) {
+    public synchronized void addObserver(Observer observer) {
         observers.add(observer);
     }
     
+    @Override
+    public synchronized void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+    
     @Override
     public void notifyObservers() {
-        for (Observer observer : observers) {
+        List<Observer> current;
+        synchronized (this) {
+            current = new ArrayList<>(observers);
+        }
+        for (Observer observer : current) {
             observer.update(this);
         }
     }
-}
\ No newline at end of file
+    
+    @Override
+    public Capabilities getCachedCapabilities() {
+        return capabilities;
+    }
+    
+    @Override
+    public void cacheCapabilities(Capabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+}
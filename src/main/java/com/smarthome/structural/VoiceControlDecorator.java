@@ -1,5 +1,6 @@
 package com.smarthome.structural;
 
+import com.smarthome.devices.BulkProvisioning;
 import com.smarthome.devices.SmartDevice;
 
 /**
@@ -23,8 +24,10 @@ public class VoiceControlDecorator extends DeviceDecorator {
         super(device);
         this.voiceAssistant = "Alexa";
         this.voiceEnabled = true;
-        System.out.println("[DECORATOR] Voice control added to: " + device.getName() + 
-                         " (Assistant: " + voiceAssistant + ")");
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[DECORATOR] Voice control added to: " + device.getName() + 
+                             " (Assistant: " + voiceAssistant + ")");
+        }
     }
     
     /**
@@ -37,8 +40,10 @@ public class VoiceControlDecorator extends DeviceDecorator {
         super(device);
         this.voiceAssistant = assistant;
         this.voiceEnabled = true;
-        System.out.println("[DECORATOR] Voice control added to: " + device.getName() + 
-                         " (Assistant: " + voiceAssistant + ")");
+        if (!BulkProvisioning.isActive()) {
+            System.out.println("[DECORATOR] Voice control added to: " + device.getName() + 
+                             " (Assistant: " + voiceAssistant + ")");
+        }
     }
     
     /**